@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.utils;
+
+/**
+ * Class of static methods decoding whitespace separated coordinate strings, such as GML posList and pos contents.
+ * <p>
+ * Ordinates are parsed directly from the characters into double arrays, without splitting the string nor creating intermediate
+ * strings or boxed numbers. Plain decimal ordinates with up to 15 significant digits, by far the most common in coordinate strings,
+ * are converted with a fast exact path; other forms are handed to {@link Double#parseDouble(java.lang.String)}.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class CoordsParser {
+
+    // powers of ten exactly representable as doubles
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    // largest integer exactly representable as a double
+    private static final long MAX_EXACT = 1L << 53;
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CoordsParser() {
+    }
+
+    /**
+     * Counts the whitespace separated ordinates in a coordinates string.
+     *
+     * @param coords the coordinates string
+     * @return the number of ordinates
+     */
+    public static int count(CharSequence coords) {
+        int ret = 0;
+        boolean inToken = false;
+        for (int i = 0, len = coords.length(); i < len; i++) {
+            final boolean space = isSpace(coords.charAt(i));
+            if (!space && !inToken) {
+                ret++;
+            }
+            inToken = !space;
+        }
+        return ret;
+    }
+
+    /**
+     * Parses a coordinates string into a new array of exactly the number of ordinates in the string.
+     *
+     * @param coords the coordinates string
+     * @return the ordinates, in string order
+     * @throws NumberFormatException if an ordinate is not a valid number
+     */
+    public static double[] parse(CharSequence coords) {
+        final double[] ret = new double[count(coords)];
+        parse(coords, ret, 0);
+        return ret;
+    }
+
+    /**
+     * Parses a coordinates string into an existing array.
+     * <p>
+     * The array must have room for {@link #count(java.lang.CharSequence)} ordinates from the given offset.
+     *
+     * @param coords the coordinates string
+     * @param dest the destination array
+     * @param offset the index in the destination array of the first ordinate
+     * @return the number of ordinates parsed
+     * @throws NumberFormatException if an ordinate is not a valid number
+     * @throws ArrayIndexOutOfBoundsException if the destination array is too small
+     */
+    public static int parse(CharSequence coords, double[] dest, int offset) {
+        int n = offset;
+        final int len = coords.length();
+        int i = 0;
+        while (true) {
+            // skip separators
+            while (i < len && isSpace(coords.charAt(i))) {
+                i++;
+            }
+            if (i == len) {
+                break;
+            }
+            // find token end
+            final int start = i;
+            while (i < len && !isSpace(coords.charAt(i))) {
+                i++;
+            }
+            dest[n++] = parseOrdinate(coords, start, i);
+        }
+        return n - offset;
+    }
+
+    /**
+     * Parses a single number from a portion of a character sequence.
+     */
+    private static double parseOrdinate(CharSequence cs, int start, int end) {
+        int i = start;
+        char c = cs.charAt(i);
+        final boolean negative = c == '-';
+        if (c == '-' || c == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigit = false;
+        // integer part
+        while (i < end && (c = cs.charAt(i)) >= '0' && c <= '9') {
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                scale++;
+            }
+            anyDigit = true;
+            i++;
+        }
+        // fractional part
+        if (i < end && cs.charAt(i) == '.') {
+            i++;
+            while (i < end && (c = cs.charAt(i)) >= '0' && c <= '9') {
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    scale--;
+                }
+                anyDigit = true;
+                i++;
+            }
+        }
+        // exponent
+        if (anyDigit && i < end && ((c = cs.charAt(i)) == 'e' || c == 'E')) {
+            i++;
+            final boolean negExp = i < end && cs.charAt(i) == '-';
+            if (i < end && (cs.charAt(i) == '-' || cs.charAt(i) == '+')) {
+                i++;
+            }
+            int exp = 0;
+            boolean anyExpDigit = false;
+            while (i < end && (c = cs.charAt(i)) >= '0' && c <= '9') {
+                exp = Math.min(exp * 10 + (c - '0'), 10000);
+                anyExpDigit = true;
+                i++;
+            }
+            if (!anyExpDigit) {
+                anyDigit = false;
+            }
+            scale += negExp ? -exp : exp;
+        }
+        if (anyDigit && i == end && mantissa <= MAX_EXACT && scale >= -22 && scale <= 22) {
+            // both mantissa and power of ten are exact, a single operation gives the correctly rounded result
+            final double d = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+            return negative ? -d : d;
+        }
+        // uncommon forms, overflows and invalid numbers
+        return Double.parseDouble(cs.subSequence(start, end).toString());
+    }
+
+    /**
+     * Whitespace as matched by the regular expression {@code \s}.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the results of a benchmark run with recorded baselines.
+ * <p>
+ * Both files are JMH results in CSV format ({@code -rf csv}). Benchmarks are matched by name and parameters, a benchmark is
+ * regressed when its score is worse than the baseline score by more than the threshold percentage (higher for average and sample
+ * time modes, lower for the throughput mode). Benchmarks missing from either file are reported but do not fail the check.
+ * <p>
+ * Baselines depend on the machine they were recorded on, lines starting with {@code #} before the CSV header describe it and are
+ * skipped.
+ * <p>
+ * Usage: {@code BaselineCheck <results.csv> [baseline.csv] [threshold%]}, exits with status 1 on usage errors and 2 if any
+ * benchmark regressed.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class BaselineCheck {
+
+    static final String DEFAULT_BASELINE = "hcc-bench/baselines/jmh-baseline.csv";
+    static final double DEFAULT_THRESHOLD = 10;
+
+    private BaselineCheck() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: BaselineCheck <results.csv> [baseline.csv] [threshold%]");
+            System.exit(1);
+        }
+        final File baseline = new File(args.length > 1 ? args[1] : DEFAULT_BASELINE);
+        double threshold = DEFAULT_THRESHOLD;
+        try {
+            if (args.length > 2) {
+                threshold = Double.parseDouble(args[2]);
+            }
+            final Map<String, Result> current = read(new File(args[0]));
+            final Map<String, Result> base = read(baseline);
+            int regressions = 0;
+            for (Map.Entry<String, Result> en : current.entrySet()) {
+                final Result cur = en.getValue();
+                final Result old = base.get(en.getKey());
+                if (old == null) {
+                    System.out.printf(Locale.ROOT, "NEW   %s %.3f %s%n", en.getKey(), cur.score, cur.unit);
+                    continue;
+                }
+                if (!old.unit.equals(cur.unit) || !old.mode.equals(cur.mode)) {
+                    System.out.printf(Locale.ROOT, "SKIP  %s mode or unit changed (%s %s -> %s %s)%n", en.getKey(), old.mode, old.unit,
+                            cur.mode, cur.unit);
+                    continue;
+                }
+                // percentage change, positive when worse
+                double change = (cur.score - old.score) / old.score * 100;
+                if ("thrpt".equals(cur.mode)) {
+                    change = -change;
+                }
+                final boolean regressed = change > threshold;
+                if (regressed) {
+                    regressions++;
+                }
+                System.out.printf(Locale.ROOT, "%s %s %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "WORSE" : "OK   ", en.getKey(),
+                        old.score, cur.score, cur.unit, change);
+            }
+            for (String key : base.keySet()) {
+                if (!current.containsKey(key)) {
+                    System.out.printf("GONE  %s%n", key);
+                }
+            }
+            if (regressions > 0) {
+                System.out.printf(Locale.ROOT, "%d benchmarks regressed by more than %.1f%%%n", regressions, threshold);
+                System.exit(2);
+            }
+        } catch (IOException | NumberFormatException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a JMH CSV result file.
+     *
+     * @param f the file
+     * @return the results keyed by benchmark name and parameter values, in file order
+     * @throws IOException if the file cannot be read or is not a JMH CSV result file
+     */
+    static Map<String, Result> read(File f) throws IOException {
+        Map<String, Result> ret = new LinkedHashMap<>();
+        try (BufferedReader br = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+            String first = br.readLine();
+            while (first != null && first.startsWith("#")) {
+                first = br.readLine();
+            }
+            final List<String> header = split(first);
+            final int iName = header.indexOf("Benchmark");
+            final int iMode = header.indexOf("Mode");
+            final int iScore = header.indexOf("Score");
+            final int iUnit = header.indexOf("Unit");
+            if (iName < 0 || iMode < 0 || iScore < 0 || iUnit < 0) {
+                throw new IOException("Not a JMH CSV result file: " + f);
+            }
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final List<String> cols = split(line);
+                StringBuilder key = new StringBuilder(cols.get(iName));
+                for (int i = 0; i < header.size() && i < cols.size(); i++) {
+                    if (header.get(i).startsWith("Param: ") && !cols.get(i).isEmpty()) {
+                        key.append(' ').append(header.get(i).substring(7)).append('=').append(cols.get(i));
+                    }
+                }
+                Result r = new Result();
+                r.mode = cols.get(iMode);
+                r.score = Double.parseDouble(cols.get(iScore));
+                r.unit = cols.get(iUnit);
+                ret.put(key.toString(), r);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Splits a CSV line, handling quoted fields.
+     */
+    private static List<String> split(String line) throws IOException {
+        if (line == null) {
+            throw new IOException("Empty result file");
+        }
+        List<String> ret = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                ret.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        ret.add(sb.toString());
+        return ret;
+    }
+
+    static class Result {
+
+        String mode;
+        double score;
+        String unit;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import main.data.CatalogueDefinition;
+import main.data.QueryCriteria;
+import main.hma.CatalogueClient;
+import main.hma.CatalogueStubs;
+import main.hma.GetRecordsWriter;
+import main.hma.HttpTransports;
+import main.hma.RecordsPage;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip of a GetRecords RESULTS request through the SOAP and the plain HTTP POST bindings.
+ * <p>
+ * A local server answers every request with the same recorded response, wrapped in a SOAP 1.2 envelope on the SOAP endpoint and
+ * gzipped when the client accepts it. Network latency is absent so the scores highlight the client side costs of each binding.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+
+    @Param({Samples.DEFAULT_RESPONSE})
+    public String response;
+    @Param({"soap", "post"})
+    public String binding;
+    @Param({"false", "true"})
+    public boolean compression;
+    private ExecutorService serverPool;
+    private HttpServer server;
+    private CatalogueClient client;
+    private GetRecordsDocument req;
+
+    @Setup
+    public void setup() throws Exception {
+        final byte[] plain = Samples.response(response);
+        final String xml = new String(plain, StandardCharsets.UTF_8);
+        final String body = xml.startsWith("<?xml") ? xml.substring(xml.indexOf("?>") + 2) : xml;
+        final byte[] soap = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\"><soap:Body>" + body
+                + "</soap:Body></soap:Envelope>").getBytes(StandardCharsets.UTF_8);
+        serverPool = Executors.newFixedThreadPool(2);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/soap", new CannedHandler(soap, "application/soap+xml; charset=UTF-8"));
+        server.createContext("/post", new CannedHandler(plain, "application/xml; charset=UTF-8"));
+        server.setExecutor(serverPool);
+        server.start();
+        final String endpoint = String.format("http://localhost:%d/%s", server.getAddress().getPort(), binding);
+        CatalogueDefinition catDef = new CatalogueDefinition("bench", endpoint, true, 20000);
+        catDef.setHttpPost("post".equals(binding));
+        catDef.setCompression(compression);
+        client = CatalogueStubs.createClient(catDef);
+        QueryCriteria qc = new QueryCriteria();
+        qc.setCollections(new String[]{"MOCK_COLL_A"});
+        GetRecordsWriter writer = new GetRecordsWriter(qc);
+        writer.setResults(true);
+        writer.setDetail(GetRecordsWriter.DETAIL_FULL);
+        req = writer.toDocument(1, 50);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.cleanup();
+        server.stop(0);
+        serverPool.shutdown();
+        HttpTransports.shutdown();
+    }
+
+    @Benchmark
+    public RecordsPage roundTrip() throws Exception {
+        return client.getRecordsPage(req, 1);
+    }
+
+    /**
+     * Answers every request with the same response, gzipped if the client accepts it.
+     */
+    private static class CannedHandler implements HttpHandler {
+
+        private final byte[] plain;
+        private final byte[] gzipped;
+        private final String contentType;
+
+        CannedHandler(byte[] plain, String contentType) throws IOException {
+            this.plain = plain;
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(plain.length / 4);
+            try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+                gos.write(plain);
+            }
+            this.gzipped = bos.toByteArray();
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // consume the request
+            try (InputStream in = exchange.getRequestBody()) {
+                final byte[] buf = new byte[8192];
+                while (in.read(buf) >= 0) {
+                }
+            }
+            final String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            final boolean gz = accept != null && accept.contains("gzip");
+            final byte[] resp = gz ? gzipped : plain;
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            if (gz) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, resp.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(resp);
+            }
+        }
+    }
+}
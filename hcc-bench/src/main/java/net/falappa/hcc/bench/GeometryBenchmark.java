@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import gov.nasa.worldwind.geom.LatLon;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import main.data.FootprintIndex;
+import main.data.Metadata;
+import main.data.MetadataNames;
+import net.falappa.utils.GisUtils;
+import net.falappa.wwind.utils.WWindUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Coordinate conversions applied to the footprints of the records of a recorded response.
+ * <p>
+ * Covers the conversions between ordinate arrays, WorldWind locations and GML posList strings used when showing footprints and
+ * building areas of interest, the WKT to posList conversion and the {@link FootprintIndex} build and point queries at the footprint
+ * centroids.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+
+    @Param({Samples.DEFAULT_RESPONSE})
+    public String response;
+    private double[][] ordinates;
+    private List<List<LatLon>> locations;
+    private String[] wkts;
+    private List<Metadata> records;
+    private FootprintIndex index;
+    private double[] centers;
+
+    @Setup
+    public void setup() throws Exception {
+        final String[] footprints = Samples.footprints(response);
+        ordinates = new double[footprints.length][];
+        locations = new ArrayList<>(footprints.length);
+        wkts = new String[footprints.length];
+        records = new ArrayList<>(footprints.length);
+        centers = new double[footprints.length * 2];
+        for (int i = 0; i < footprints.length; i++) {
+            Metadata m = new Metadata();
+            m.put(MetadataNames.FOOTPRINT, footprints[i]);
+            ordinates[i] = m.getFootprintAsDoubles();
+            locations.add(WWindUtils.latLonOrdinates2LatLonList(ordinates[i]));
+            wkts[i] = toWkt(ordinates[i]);
+            records.add(m);
+            for (int j = 0; j < ordinates[i].length; j += 2) {
+                centers[i * 2] += ordinates[i][j] * 2 / ordinates[i].length;
+                centers[i * 2 + 1] += ordinates[i][j + 1] * 2 / ordinates[i].length;
+            }
+        }
+        index = FootprintIndex.build(records);
+    }
+
+    @Benchmark
+    public void latLonOrdinates2LatLonList(Blackhole bh) {
+        for (double[] o : ordinates) {
+            bh.consume(WWindUtils.latLonOrdinates2LatLonList(o));
+        }
+    }
+
+    @Benchmark
+    public void latLonList2PosList(Blackhole bh) {
+        for (List<LatLon> l : locations) {
+            bh.consume(WWindUtils.latLonList2PosList(l));
+        }
+    }
+
+    @Benchmark
+    public void posListFromWKT(Blackhole bh) {
+        for (String wkt : wkts) {
+            bh.consume(GisUtils.posListFromWKT(wkt));
+        }
+    }
+
+    @Benchmark
+    public FootprintIndex footprintIndexBuild() {
+        return FootprintIndex.build(records);
+    }
+
+    @Benchmark
+    public void footprintIndexContaining(Blackhole bh) {
+        for (int i = 0; i < centers.length; i += 2) {
+            bh.consume(index.containing(centers[i], centers[i + 1]));
+        }
+    }
+
+    private static String toWkt(double[] latLons) {
+        StringBuilder sb = new StringBuilder("POLYGON((");
+        for (int i = 0; i < latLons.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(String.format(Locale.ENGLISH, "%f %f", latLons[i + 1], latLons[i]));
+        }
+        return sb.append("))").toString();
+    }
+}
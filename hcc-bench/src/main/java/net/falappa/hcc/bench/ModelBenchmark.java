@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import java.util.concurrent.TimeUnit;
+import main.data.Metadata;
+import main.data.MetadataNames;
+import main.data.ResultTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Conversion of the footprints of the records of a recorded response to coordinates.
+ * <p>
+ * {@link Metadata#getFootprintAsDoubles()} caches its result, a new record is created for each footprint so that the conversion is
+ * measured rather than the cache lookup. The same footprints are also decoded into the packed ordinates of a {@link ResultTable}
+ * and read back into a reused array.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+    @Param({Samples.DEFAULT_RESPONSE})
+    public String response;
+    private String[] footprints;
+
+    @Setup
+    public void setup() throws Exception {
+        footprints = Samples.footprints(response);
+    }
+
+    @Benchmark
+    public void footprintAsDoubles(Blackhole bh) {
+        for (String fp : footprints) {
+            Metadata m = new Metadata();
+            m.put(MetadataNames.FOOTPRINT, fp);
+            bh.consume(m.getFootprintAsDoubles());
+        }
+    }
+
+    @Benchmark
+    public void footprintsInTable(Blackhole bh) {
+        ResultTable table = new ResultTable();
+        for (String fp : footprints) {
+            Metadata m = new Metadata();
+            m.put(MetadataNames.FOOTPRINT, fp);
+            table.add(m);
+        }
+        double[] buf = new double[64];
+        for (int row = 0; row < table.size(); row++) {
+            int n = table.getOrdinatesCount(row, MetadataNames.FOOTPRINT);
+            if (n > buf.length) {
+                buf = new double[n];
+            }
+            bh.consume(table.getOrdinates(row, MetadataNames.FOOTPRINT, buf, 0));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import java.util.concurrent.TimeUnit;
+import net.falappa.wwind.layers.NightDayLayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recomputation of the night polygon when the time of the night day layer changes.
+ * <p>
+ * Each operation advances the time by ten minutes, as when animating the time slider, which moves the sun and rebuilds the
+ * terminator polygon.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NightPolygonBenchmark {
+
+    private NightDayLayer layer;
+
+    @Setup
+    public void setup() {
+        layer = new NightDayLayer();
+        layer.setTime(1264982400000L);
+    }
+
+    @Benchmark
+    public NightDayLayer advanceTime() {
+        layer.addTimeSeconds(600);
+        return layer;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import _0._3.rim.xsd.ebxml_regrep.tc.names.oasis.RegistryPackageType;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import main.hma.HmaRegPackParser;
+import main.hma.HmaStreamParser;
+import main.hma.RecordsPage;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import org.apache.xmlbeans.XmlObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding of all the registry packages of a recorded GetRecords response, timed per record.
+ * <p>
+ * {@link HmaRegPackParser} and the former XPath decoding of {@link LegacyRegPackParser} work on the XMLBeans document already built by
+ * the SOAP binding, {@link HmaStreamParser} includes the XML lexing of the response bytes. Responses must hold
+ * {@link Samples#DEFAULT_RECORDS} records.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RegPackParserBenchmark {
+
+    @Param({Samples.DEFAULT_RESPONSE})
+    public String response;
+    private final HmaRegPackParser parser = new HmaRegPackParser();
+    private RegistryPackageType[] regPacks;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        responseBytes = Samples.response(response);
+        GetRecordsResponseDocument doc = GetRecordsResponseDocument.Factory.parse(new ByteArrayInputStream(responseBytes));
+        XmlObject[] res = doc.selectPath("declare namespace rim='urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0' .//rim:RegistryPackage");
+        regPacks = new RegistryPackageType[res.length];
+        for (int i = 0; i < res.length; i++) {
+            regPacks[i] = (RegistryPackageType) res[i];
+        }
+        if (regPacks.length != Samples.DEFAULT_RECORDS) {
+            throw new IllegalStateException(String.format("Response %s holds %d records instead of %d", response, regPacks.length,
+                    Samples.DEFAULT_RECORDS));
+        }
+        // the reference must decode the same records, otherwise the comparison is meaningless
+        for (RegistryPackageType rp : regPacks) {
+            if (!LegacyRegPackParser.parseRegistryPackage(rp).equals(parser.parseRegistryPackage(rp))) {
+                throw new IllegalStateException("XPath and cursor decoding differ on registry package " + rp.getId());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Samples.DEFAULT_RECORDS)
+    public void parseRegistryPackage(Blackhole bh) {
+        for (RegistryPackageType rp : regPacks) {
+            bh.consume(parser.parseRegistryPackage(rp));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Samples.DEFAULT_RECORDS)
+    public void legacyParseRegistryPackage(Blackhole bh) {
+        for (RegistryPackageType rp : regPacks) {
+            bh.consume(LegacyRegPackParser.parseRegistryPackage(rp));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Samples.DEFAULT_RECORDS)
+    public RecordsPage streamParse() throws Exception {
+        return new HmaStreamParser().parse(new ByteArrayInputStream(responseBytes), 1);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import main.data.QueryCriteria;
+import main.hma.GetRecordsWriter;
+import main.hma.HmaGetRecordsBuilder;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building of a GetRecords request with collection, temporal and polygon criteria.
+ * <p>
+ * Compares the XMLBeans {@link HmaGetRecordsBuilder} with the {@link GetRecordsWriter} producing either the XMLBeans document or
+ * the request bytes sent on the plain HTTP POST binding.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+
+    private QueryCriteria criteria;
+    private GetRecordsWriter writer;
+    private final ByteArrayOutputStream bos = new ByteArrayOutputStream(8192);
+
+    @Setup
+    public void setup() {
+        criteria = new QueryCriteria();
+        criteria.setCollections(new String[]{"ESA.EECF.ENVISAT_ASA_IMP_1P", "ESA.EECF.ERS_SAR_1P"});
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(2010, Calendar.FEBRUARY, 1);
+        final long from = cal.getTimeInMillis();
+        cal.add(Calendar.MONTH, 1);
+        criteria.setTime(QueryCriteria.TIME_OVERLAPS, new Date(from), cal.getTime());
+        criteria.setAoi(QueryCriteria.AOI_POLYGON, QueryCriteria.SPATIAL_INTERSECTS,
+                new double[]{40, 10, 40, 15, 45, 15, 45, 10, 40, 10}, 0);
+        writer = new GetRecordsWriter(criteria);
+        writer.setDetail(GetRecordsWriter.DETAIL_FULL);
+    }
+
+    @Benchmark
+    public GetRecordsDocument builder() {
+        HmaGetRecordsBuilder builder = new HmaGetRecordsBuilder();
+        builder.setResults();
+        builder.setDetailFull();
+        builder.setMaxRecords(100);
+        builder.addCriteria(criteria);
+        return builder.getRequest();
+    }
+
+    @Benchmark
+    public GetRecordsDocument writerDocument() {
+        return writer.toDocument(1, 100);
+    }
+
+    @Benchmark
+    public int writerBytes() throws Exception {
+        bos.reset();
+        writer.write(bos, 1, 100);
+        return bos.size();
+    }
+}
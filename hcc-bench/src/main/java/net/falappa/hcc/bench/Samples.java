@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import main.data.Metadata;
+import main.data.MetadataNames;
+import main.hma.HmaStreamParser;
+
+/**
+ * Input data shared by the benchmarks.
+ * <p>
+ * The default GetRecords response is a recorded answer of the hcc-mock catalogue to a RESULTS request of 50 records with full
+ * detail. Benchmarks taking a response parameter also accept the path of a response dumped by the client.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+final class Samples {
+
+    static final String DEFAULT_RESPONSE = "getrecords-50-full.xml";
+    // records in the default response, per record benchmarks divide their time by it
+    static final int DEFAULT_RECORDS = 50;
+
+    private Samples() {
+    }
+
+    /**
+     * Reads a recorded GetRecords response.
+     *
+     * @param name the name of a response bundled with the benchmarks or the path of a response file
+     * @return the response bytes
+     * @throws IOException if the response cannot be read
+     */
+    static byte[] response(String name) throws IOException {
+        final File f = new File(name);
+        if (f.isFile()) {
+            return Files.readAllBytes(f.toPath());
+        }
+        try (InputStream in = Samples.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("No recorded response " + name);
+            }
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256 * 1024);
+            final byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                bos.write(buf, 0, n);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    /**
+     * Decodes the records of a recorded response.
+     *
+     * @param name the name of a bundled response or the path of a response file
+     * @return the records
+     * @throws IOException if the response cannot be read or decoded
+     */
+    static List<Metadata> records(String name) throws IOException {
+        try {
+            return new HmaStreamParser().parse(new ByteArrayInputStream(response(name)), 1).getRecords();
+        } catch (XMLStreamException ex) {
+            throw new IOException("Malformed recorded response " + name, ex);
+        }
+    }
+
+    /**
+     * Extracts the footprints of the records of a recorded response.
+     *
+     * @param name the name of a bundled response or the path of a response file
+     * @return the footprint posList strings (lat lon pairs)
+     * @throws IOException if the response cannot be read or decoded
+     */
+    static String[] footprints(String name) throws IOException {
+        List<String> ret = new ArrayList<>();
+        for (Metadata m : records(name)) {
+            if (m.containsKey(MetadataNames.FOOTPRINT)) {
+                ret.add(m.get(MetadataNames.FOOTPRINT));
+            }
+        }
+        if (ret.isEmpty()) {
+            throw new IOException("No footprints in recorded response " + name);
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.mock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers the CSW requests sent to the mock catalogue.
+ * <p>
+ * Each response is delayed by the configured latency plus a random jitter and sent at no more than the configured bandwidth. A
+ * configurable share of the requests fails with HTTP status 503 to exercise the retries of the client. Responses are gzip compressed
+ * when the client accepts it.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+final class CswHandler implements HttpHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(CswHandler.class.getName());
+    private static final XMLOutputFactory xof = XMLOutputFactory.newInstance();
+    private final RecordGenerator generator;
+    private final List<String> collections;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final long bytesPerSecond;
+    private final int failurePercent;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+
+    /**
+     * Initializing constructor.
+     *
+     * @param generator the generator of the catalogue products
+     * @param collections the collections advertised and used when requests do not restrict them
+     * @param latencyMillis the minimum delay before each response
+     * @param jitterMillis the maximum random delay added to the latency
+     * @param bytesPerSecond the maximum rate of each response, zero for no limit
+     * @param failurePercent the percentage of requests failing
+     */
+    CswHandler(RecordGenerator generator, List<String> collections, long latencyMillis, long jitterMillis, long bytesPerSecond,
+            int failurePercent) {
+        this.generator = generator;
+        this.collections = collections;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.bytesPerSecond = bytesPerSecond;
+        this.failurePercent = failurePercent;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        final long start = System.currentTimeMillis();
+        requests.incrementAndGet();
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            CswRequest req;
+            try (InputStream in = exchange.getRequestBody()) {
+                req = CswRequest.parse(in);
+            } catch (XMLStreamException ex) {
+                logger.warn("Malformed request: {}", ex.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            logger.debug("Received {}", req);
+            delay();
+            if (failurePercent > 0 && ThreadLocalRandom.current().nextInt(100) < failurePercent) {
+                failures.incrementAndGet();
+                logger.debug("Failing request on purpose");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            respond(exchange, req);
+            logger.debug("Answered in {} ms", System.currentTimeMillis() - start);
+        } catch (XMLStreamException ex) {
+            logger.error("Could not write response", ex);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns a summary of the requests served so far.
+     *
+     * @return the summary text
+     */
+    String getStats() {
+        return String.format("%d requests, %d failed on purpose, %d records sent", requests.get(), failures.get(), records.get());
+    }
+
+    private void respond(HttpExchange exchange, CswRequest req) throws IOException, XMLStreamException {
+        final String soapNs = req.getSoapNamespace();
+        String contentType = "application/xml; charset=UTF-8";
+        if (CswRequest.NS_SOAP11.equals(soapNs)) {
+            contentType = "text/xml; charset=UTF-8";
+        } else if (CswRequest.NS_SOAP12.equals(soapNs)) {
+            contentType = "application/soap+xml; charset=UTF-8";
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        final String acceptEnc = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        final boolean gzip = acceptEnc != null && acceptEnc.contains("gzip");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        final boolean known = "GetRecords".equals(req.getOperation()) || "GetCapabilities".equals(req.getOperation());
+        // chunked response body
+        exchange.sendResponseHeaders(known ? 200 : 400, 0);
+        OutputStream os = exchange.getResponseBody();
+        if (bytesPerSecond > 0) {
+            // throttle the bytes on the wire, after compression
+            os = new ThrottledOutputStream(os, bytesPerSecond);
+        }
+        if (gzip) {
+            os = new GZIPOutputStream(os, 8192);
+        }
+        try {
+            XMLStreamWriter xsw;
+            synchronized (xof) {
+                xsw = xof.createXMLStreamWriter(os, "UTF-8");
+            }
+            ResponseWriter rw = new ResponseWriter(xsw, soapNs);
+            if ("GetRecords".equals(req.getOperation())) {
+                writeRecords(rw, req);
+            } else if ("GetCapabilities".equals(req.getOperation())) {
+                rw.writeCapabilities(collections);
+            } else {
+                rw.writeException("OperationNotSupported", "Unsupported operation " + req.getOperation());
+            }
+            xsw.close();
+        } finally {
+            os.close();
+        }
+    }
+
+    private void writeRecords(ResponseWriter rw, CswRequest req) throws XMLStreamException {
+        final int[] range = generator.select(req.getComparisons());
+        final int matched = range[1] - range[0];
+        List<RecordGenerator.Product> page = new ArrayList<>();
+        int nextRecord = 0;
+        if (!req.isHits()) {
+            final int first = Math.max(1, req.getStartPosition());
+            final int last = Math.min(matched, first + Math.max(0, req.getMaxRecords()) - 1);
+            final List<String> colls = req.getCollections().isEmpty() ? collections : req.getCollections();
+            for (int pos = first; pos <= last; pos++) {
+                final int idx = range[0] + pos - 1;
+                page.add(generator.product(idx, colls.get(idx % colls.size())));
+            }
+            if (last < matched) {
+                nextRecord = last + 1;
+            }
+            records.addAndGet(page.size());
+        }
+        rw.writeRecords(matched, nextRecord, page, "brief".equalsIgnoreCase(req.getElementSet()));
+    }
+
+    private void delay() {
+        long millis = latencyMillis;
+        if (jitterMillis > 0) {
+            millis += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+        }
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
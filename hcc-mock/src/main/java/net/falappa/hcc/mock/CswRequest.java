@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.mock;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The parts of a CSW request relevant to the mock catalogue.
+ * <p>
+ * Requests may be wrapped in a SOAP 1.1 or 1.2 envelope or sent as plain XML. Of the GetRecords filter only the comparisons between
+ * a property and a literal are kept, regardless of the logical operators combining them; spatial operators are ignored.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+final class CswRequest {
+
+    static final String NS_SOAP11 = "http://schemas.xmlsoap.org/soap/envelope/";
+    static final String NS_SOAP12 = "http://www.w3.org/2003/05/soap-envelope";
+    static final String NS_OGC = "http://www.opengis.net/ogc";
+    private static final XMLInputFactory xif = XMLInputFactory.newInstance();
+    private String soapNamespace = null;
+    private String operation = null;
+    private boolean hits = false;
+    private int startPosition = 1;
+    private int maxRecords = 10;
+    private String elementSet = "summary";
+    private final List<String> collections = new ArrayList<>();
+    private final List<Comparison> comparisons = new ArrayList<>();
+
+    /**
+     * A comparison between a property and a literal.
+     */
+    static final class Comparison {
+
+        final String operator;
+        final String property;
+        final String literal;
+
+        Comparison(String operator, String property, String literal) {
+            this.operator = operator;
+            this.property = property;
+            this.literal = literal;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s", property, operator, literal);
+        }
+    }
+
+    private CswRequest() {
+    }
+
+    /**
+     * Parses a request.
+     *
+     * @param in the request body
+     * @return the parsed request
+     * @throws XMLStreamException in case of malformed XML
+     */
+    static CswRequest parse(InputStream in) throws XMLStreamException {
+        CswRequest req = new CswRequest();
+        XMLStreamReader xsr;
+        synchronized (xif) {
+            xsr = xif.createXMLStreamReader(in);
+        }
+        try {
+            while (xsr.hasNext()) {
+                if (xsr.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String ns = xsr.getNamespaceURI();
+                final String name = xsr.getLocalName();
+                if (NS_SOAP11.equals(ns) || NS_SOAP12.equals(ns)) {
+                    req.soapNamespace = ns;
+                    if ("Header".equals(name)) {
+                        skipElement(xsr);
+                    }
+                } else if (req.operation == null) {
+                    req.operation = name;
+                    req.hits = "hits".equalsIgnoreCase(xsr.getAttributeValue(null, "resultType"));
+                    req.startPosition = intAttribute(xsr, "startPosition", 1);
+                    req.maxRecords = intAttribute(xsr, "maxRecords", 10);
+                } else if ("ElementSetName".equals(name)) {
+                    req.elementSet = xsr.getElementText().trim();
+                } else if (NS_OGC.equals(ns) && name.startsWith("PropertyIs")) {
+                    req.addComparison(name, xsr);
+                }
+            }
+        } finally {
+            xsr.close();
+        }
+        return req;
+    }
+
+    private void addComparison(String operator, XMLStreamReader xsr) throws XMLStreamException {
+        String property = null;
+        String literal = null;
+        int depth = 1;
+        while (depth > 0) {
+            switch (xsr.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if ("PropertyName".equals(xsr.getLocalName()) && property == null) {
+                        property = xsr.getElementText().trim();
+                    } else if ("Literal".equals(xsr.getLocalName())) {
+                        literal = xsr.getElementText().trim();
+                    } else {
+                        depth++;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+        if (property == null || literal == null) {
+            // joins between properties
+            return;
+        }
+        if (property.contains("parentIdentifier") && "PropertyIsEqualTo".equals(operator)) {
+            collections.add(literal);
+        } else {
+            comparisons.add(new Comparison(operator, property, literal));
+        }
+    }
+
+    private static void skipElement(XMLStreamReader xsr) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (xsr.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+    }
+
+    private static int intAttribute(XMLStreamReader xsr, String name, int defValue) {
+        final String val = xsr.getAttributeValue(null, name);
+        if (val == null) {
+            return defValue;
+        }
+        try {
+            return Integer.parseInt(val.trim());
+        } catch (NumberFormatException ex) {
+            return defValue;
+        }
+    }
+
+    /**
+     * The namespace of the SOAP envelope of the request.
+     *
+     * @return the namespace or null for plain requests
+     */
+    String getSoapNamespace() {
+        return soapNamespace;
+    }
+
+    String getOperation() {
+        return operation;
+    }
+
+    boolean isHits() {
+        return hits;
+    }
+
+    int getStartPosition() {
+        return startPosition;
+    }
+
+    int getMaxRecords() {
+        return maxRecords;
+    }
+
+    String getElementSet() {
+        return elementSet;
+    }
+
+    List<String> getCollections() {
+        return collections;
+    }
+
+    List<Comparison> getComparisons() {
+        return comparisons;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s start %d max %d, collections %s, %s", operation, hits ? "hits" : "results", startPosition,
+                maxRecords, collections, comparisons);
+    }
+}
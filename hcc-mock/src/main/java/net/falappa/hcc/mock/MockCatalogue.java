@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.mock;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local stand-in of an HMA catalogue for load testing.
+ * <p>
+ * Answers GetCapabilities and GetRecords (HITS and RESULTS, with paging) requests sent over SOAP 1.1, SOAP 1.2 or plain HTTP POST
+ * with synthetic products, see {@link RecordGenerator}. Latency, bandwidth and failure rate of the responses are configurable. Run it
+ * with:
+ * <pre>
+ * java -jar hcc-mock.jar [options]
+ * </pre>
+ * then define in the client a catalogue with endpoint {@code http://localhost:<port>/csw}.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class MockCatalogue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MockCatalogue.class.getName());
+    private static final String USAGE = "Usage: MockCatalogue [options]\n"
+            + "Options:\n"
+            + "  -port <n>          listening port (default 8080)\n"
+            + "  -records <n>       number of products in the catalogue (default 10000)\n"
+            + "  -collections <c>   comma separated collection identifiers (default MOCK_COLL_A,MOCK_COLL_B)\n"
+            + "  -from <date>       sensing start of the first product, yyyy-MM-dd UTC (default 2015-01-01)\n"
+            + "  -span <days>       days covered by the products sensing starts (default 365)\n"
+            + "  -latency <ms>      delay before each response (default 50)\n"
+            + "  -jitter <ms>       maximum random delay added to the latency (default 0)\n"
+            + "  -bandwidth <KB/s>  maximum transfer rate of each response, 0 for no limit (default 0)\n"
+            + "  -failures <pct>    percentage of requests failing with status 503 (default 0)\n"
+            + "  -threads <n>       requests served in parallel (default 16)\n"
+            + "  -seed <n>          seed of the product attributes (default 42)\n";
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CswHandler handler;
+
+    /**
+     * Creates and starts a mock catalogue.
+     *
+     * @param port the listening port
+     * @param threads the number of requests served in parallel
+     * @param handler the request handler
+     * @throws IOException if the port cannot be bound
+     */
+    public MockCatalogue(int port, int threads, CswHandler handler) throws IOException {
+        this.handler = handler;
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(port), 64);
+        server.createContext("/", handler);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stops the mock catalogue.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Mock catalogue stopped: {}", handler.getStats());
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int port = 8080;
+        int records = 10000;
+        List<String> collections = Arrays.asList("MOCK_COLL_A", "MOCK_COLL_B");
+        long from;
+        int spanDays = 365;
+        long latency = 50;
+        long jitter = 0;
+        long bandwidthKb = 0;
+        int failures = 0;
+        int threads = 16;
+        long seed = 42;
+        try {
+            from = parseDate("2015-01-01");
+            for (int i = 0; i < args.length; i++) {
+                final String a = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for option " + a);
+                }
+                final String v = args[++i];
+                switch (a) {
+                    case "-port":
+                        port = Integer.parseInt(v);
+                        break;
+                    case "-records":
+                        records = Integer.parseInt(v);
+                        break;
+                    case "-collections":
+                        collections = Arrays.asList(v.split(","));
+                        break;
+                    case "-from":
+                        from = parseDate(v);
+                        break;
+                    case "-span":
+                        spanDays = Integer.parseInt(v);
+                        break;
+                    case "-latency":
+                        latency = Long.parseLong(v);
+                        break;
+                    case "-jitter":
+                        jitter = Long.parseLong(v);
+                        break;
+                    case "-bandwidth":
+                        bandwidthKb = Long.parseLong(v);
+                        break;
+                    case "-failures":
+                        failures = Integer.parseInt(v);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(v);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(v);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + a);
+                }
+            }
+            if (records < 0 || spanDays < 1 || latency < 0 || jitter < 0 || bandwidthKb < 0 || failures < 0 || failures > 100
+                    || threads < 1) {
+                throw new IllegalArgumentException("Option value out of range");
+            }
+        } catch (IllegalArgumentException ex) {
+            // number format exceptions included
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            System.exit(1);
+            return;
+        }
+        RecordGenerator generator = new RecordGenerator(records, from, spanDays * 86400000L, seed);
+        CswHandler handler = new CswHandler(generator, collections, latency, jitter, bandwidthKb * 1024, failures);
+        try {
+            final MockCatalogue mock = new MockCatalogue(port, threads, handler);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    mock.stop();
+                }
+            });
+            logger.info("Mock catalogue of {} products in {} listening on http://localhost:{}/csw", records, collections, port);
+            logger.info("Latency {}+{} ms, bandwidth {} KB/s, {}% failures", latency, jitter, bandwidthKb > 0 ? bandwidthKb : "unlimited",
+                    failures);
+        } catch (IOException ex) {
+            logger.error("Could not start mock catalogue: {}", ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private static long parseDate(String txt) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        sdf.setLenient(false);
+        try {
+            return sdf.parse(txt).getTime();
+        } catch (ParseException ex) {
+            throw new IllegalArgumentException("Invalid date " + txt);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.mock;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates the synthetic products of the mock catalogue.
+ * <p>
+ * The catalogue holds a fixed number of products whose sensing start times are evenly spaced over a time span, so that the products
+ * matching time comparisons on sensing start, sensing stop or archiving date are always a contiguous range of product indexes. All
+ * other attributes are derived from a random generator seeded with the product index, the same product is generated identically by
+ * every request and across restarts with the same seed. Footprints are random rectangles over Europe, as those of
+ * {@code WWindUtils.randPolys}.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+final class RecordGenerator {
+
+    static final long SENSING_MILLIS = 25000L;
+    static final long ARCHIVING_DELAY_MILLIS = 3 * 3600 * 1000L;
+    private static final Logger logger = LoggerFactory.getLogger(RecordGenerator.class.getName());
+    private static final String[] PRODUCT_TYPES = {"MOCK_L0", "MOCK_L1B", "MOCK_L2"};
+    private static final String[] DATE_PATTERNS = {"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", "yyyy-MM-dd'T'HH:mm:ss'Z'",
+        "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd"};
+    private final int records;
+    private final long firstStart;
+    private final long step;
+    private final long seed;
+
+    /**
+     * A synthetic product.
+     */
+    static final class Product {
+
+        String id;
+        String collection;
+        String productType;
+        long start;
+        long stop;
+        long archived;
+        int orbit;
+        boolean descending;
+        int cloudCover;
+        // closed ring of lat lon pairs
+        double[] footprint;
+        double[] center;
+    }
+
+    /**
+     * Initializing constructor.
+     *
+     * @param records the number of products in the catalogue
+     * @param firstStart the sensing start of the first product, in milliseconds from the epoch
+     * @param spanMillis the time span covered by the sensing starts
+     * @param seed the seed of the attribute values
+     */
+    RecordGenerator(int records, long firstStart, long spanMillis, long seed) {
+        this.records = Math.max(0, records);
+        this.firstStart = firstStart;
+        this.step = Math.max(1000L, spanMillis / Math.max(1, records));
+        this.seed = seed;
+    }
+
+    int getRecords() {
+        return records;
+    }
+
+    /**
+     * Finds the products satisfying all the given comparisons.
+     * <p>
+     * Only comparisons on sensing start, sensing stop and archiving date restrict the selection, others are ignored.
+     *
+     * @param comparisons the comparisons
+     * @return the first included and last excluded product indexes
+     */
+    int[] select(List<CswRequest.Comparison> comparisons) {
+        long lo = 0;
+        long hi = records;
+        for (CswRequest.Comparison c : comparisons) {
+            long offset;
+            if (c.property.contains("beginPosition")) {
+                offset = 0;
+            } else if (c.property.contains("endPosition")) {
+                offset = SENSING_MILLIS;
+            } else if (c.property.contains("archivingDate")) {
+                offset = ARCHIVING_DELAY_MILLIS;
+            } else {
+                logger.debug("Ignoring comparison {}", c);
+                continue;
+            }
+            final long t = parseTime(c.literal);
+            // indexes whose value equals t exactly, or lies just below or above it
+            final long num = t - firstStart - offset;
+            final long floor = floorDiv(num, step);
+            final long ceil = num % step == 0 ? floor : floor + 1;
+            switch (c.operator) {
+                case "PropertyIsGreaterThanOrEqualTo":
+                    lo = Math.max(lo, ceil);
+                    break;
+                case "PropertyIsGreaterThan":
+                    lo = Math.max(lo, floor + 1);
+                    break;
+                case "PropertyIsLessThanOrEqualTo":
+                    hi = Math.min(hi, floor + 1);
+                    break;
+                case "PropertyIsLessThan":
+                    hi = Math.min(hi, ceil);
+                    break;
+                case "PropertyIsEqualTo":
+                    if (num % step == 0) {
+                        lo = Math.max(lo, floor);
+                        hi = Math.min(hi, floor + 1);
+                    } else {
+                        hi = lo;
+                    }
+                    break;
+                default:
+                    logger.debug("Ignoring comparison {}", c);
+            }
+        }
+        lo = Math.max(0, Math.min(lo, records));
+        hi = Math.max(lo, Math.min(hi, records));
+        return new int[]{(int) lo, (int) hi};
+    }
+
+    /**
+     * Generates a product.
+     *
+     * @param index the product index
+     * @param collection the collection to put the product in
+     * @return the product
+     */
+    Product product(int index, String collection) {
+        final Random rnd = new Random(seed ^ (index * 0x9E3779B97F4A7C15L));
+        Product p = new Product();
+        p.id = String.format("MOCK_PRODUCT_%08d", index);
+        p.collection = collection;
+        p.productType = PRODUCT_TYPES[rnd.nextInt(PRODUCT_TYPES.length)];
+        p.start = firstStart + index * step;
+        p.stop = p.start + SENSING_MILLIS;
+        p.archived = p.start + ARCHIVING_DELAY_MILLIS;
+        p.orbit = 1000 + index / 15;
+        p.descending = rnd.nextBoolean();
+        p.cloudCover = rnd.nextInt(101);
+        final double btmLat = 10 + rnd.nextDouble() * 50;
+        final double btmLon = rnd.nextDouble() * 70;
+        final double w = 2 + rnd.nextDouble() * 3;
+        final double h = 2 + rnd.nextDouble() * 3;
+        p.footprint = new double[]{btmLat, btmLon, btmLat, btmLon + w, btmLat + h, btmLon + w, btmLat + h, btmLon, btmLat, btmLon};
+        p.center = new double[]{btmLat + h / 2, btmLon + w / 2};
+        return p;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    private static long parseTime(String literal) {
+        for (String pattern : DATE_PATTERNS) {
+            SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+            sdf.setLenient(false);
+            try {
+                return sdf.parse(literal).getTime();
+            } catch (ParseException ex) {
+                // try next pattern
+            }
+        }
+        throw new IllegalArgumentException("Invalid time literal " + literal);
+    }
+}
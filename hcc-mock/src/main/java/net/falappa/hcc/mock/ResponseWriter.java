@@ -0,0 +1,282 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.mock;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes the responses of the mock catalogue.
+ * <p>
+ * GetRecords responses follow the CSW ebRIM profile for EO products: each product is a registry package holding the EO product,
+ * acquisition platform, archiving information and browse extrinsic objects with the slots decoded by the client. Responses are
+ * wrapped in a SOAP envelope of the same version of the request, if any.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+final class ResponseWriter {
+
+    static final String NS_CSW = "http://www.opengis.net/cat/csw/2.0.2";
+    static final String NS_RIM = "urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0";
+    static final String NS_WRS = "http://www.opengis.net/cat/wrs/1.0";
+    static final String NS_GML = "http://www.opengis.net/gml";
+    static final String NS_OWS = "http://www.opengis.net/ows";
+    private static final String SLOT_PREFIX = "urn:ogc:def:slot:OGC-CSW-ebRIM-EO::";
+    private static final String OBJTYPE_PREFIX = "urn:ogc:def:objectType:OGC-CSW-ebRIM-EO::";
+    private final XMLStreamWriter w;
+    private final String soapNamespace;
+    private final SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+    /**
+     * Initializing constructor.
+     *
+     * @param w the writer to write to
+     * @param soapNamespace the namespace of the SOAP envelope, null for no envelope
+     */
+    ResponseWriter(XMLStreamWriter w, String soapNamespace) {
+        this.w = w;
+        this.soapNamespace = soapNamespace;
+        df.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Writes a capabilities document advertising the given collections.
+     *
+     * @param collections the collection identifiers
+     * @throws XMLStreamException in case of write errors
+     */
+    void writeCapabilities(List<String> collections) throws XMLStreamException {
+        startDocument();
+        w.writeStartElement("csw", "Capabilities", NS_CSW);
+        w.writeNamespace("csw", NS_CSW);
+        w.writeNamespace("ows", NS_OWS);
+        w.writeNamespace("rim", NS_RIM);
+        w.writeAttribute("version", "2.0.2");
+        w.writeStartElement("ows", "ServiceIdentification", NS_OWS);
+        textElement("ows", NS_OWS, "Title", "HCC mock catalogue");
+        textElement("ows", NS_OWS, "ServiceType", "CSW");
+        textElement("ows", NS_OWS, "ServiceTypeVersion", "2.0.2");
+        w.writeEndElement();
+        w.writeStartElement("ows", "OperationsMetadata", NS_OWS);
+        w.writeStartElement("ows", "ExtendedCapabilities", NS_OWS);
+        w.writeStartElement("rim", "Slot", NS_RIM);
+        w.writeAttribute("name", SLOT_PREFIX + "parentIdentifier");
+        w.writeStartElement("rim", "ValueList", NS_RIM);
+        for (String coll : collections) {
+            textElement("rim", NS_RIM, "Value", coll);
+        }
+        // close ValueList, Slot, ExtendedCapabilities, OperationsMetadata and Capabilities
+        for (int i = 0; i < 5; i++) {
+            w.writeEndElement();
+        }
+        endDocument();
+    }
+
+    /**
+     * Writes a GetRecords response.
+     *
+     * @param matched the number of products matched
+     * @param nextRecord the position of the next record, zero if none
+     * @param products the products of the page, empty for HITS requests
+     * @param brief true to write only identifiers, collection, sensing times and footprint
+     * @throws XMLStreamException in case of write errors
+     */
+    void writeRecords(int matched, int nextRecord, List<RecordGenerator.Product> products, boolean brief) throws XMLStreamException {
+        startDocument();
+        w.writeStartElement("csw", "GetRecordsResponse", NS_CSW);
+        w.writeNamespace("csw", NS_CSW);
+        w.writeNamespace("rim", NS_RIM);
+        w.writeNamespace("wrs", NS_WRS);
+        w.writeNamespace("gml", NS_GML);
+        w.writeAttribute("version", "2.0.2");
+        w.writeEmptyElement("csw", "SearchStatus", NS_CSW);
+        w.writeAttribute("timestamp", df.format(new Date()));
+        w.writeStartElement("csw", "SearchResults", NS_CSW);
+        w.writeAttribute("numberOfRecordsMatched", String.valueOf(matched));
+        w.writeAttribute("numberOfRecordsReturned", String.valueOf(products.size()));
+        w.writeAttribute("nextRecord", String.valueOf(nextRecord));
+        w.writeAttribute("recordSchema", NS_RIM);
+        w.writeAttribute("elementSet", brief ? "brief" : "full");
+        for (RecordGenerator.Product p : products) {
+            writeProduct(p, brief);
+        }
+        w.writeEndElement();
+        w.writeEndElement();
+        endDocument();
+    }
+
+    /**
+     * Writes an OWS exception report.
+     *
+     * @param code the exception code
+     * @param text the exception text
+     * @throws XMLStreamException in case of write errors
+     */
+    void writeException(String code, String text) throws XMLStreamException {
+        startDocument();
+        w.writeStartElement("ows", "ExceptionReport", NS_OWS);
+        w.writeNamespace("ows", NS_OWS);
+        w.writeAttribute("version", "1.0.0");
+        w.writeStartElement("ows", "Exception", NS_OWS);
+        w.writeAttribute("exceptionCode", code);
+        textElement("ows", NS_OWS, "ExceptionText", text);
+        w.writeEndElement();
+        w.writeEndElement();
+        endDocument();
+    }
+
+    private void writeProduct(RecordGenerator.Product p, boolean brief) throws XMLStreamException {
+        w.writeStartElement("rim", "RegistryPackage", NS_RIM);
+        w.writeAttribute("id", p.id);
+        w.writeStartElement("rim", "RegistryObjectList", NS_RIM);
+        // EO product
+        w.writeStartElement("rim", "ExtrinsicObject", NS_RIM);
+        w.writeAttribute("id", p.id + "_EOP");
+        w.writeAttribute("objectType", OBJTYPE_PREFIX + "EOProduct");
+        valueSlot("parentIdentifier", p.collection);
+        valueSlot("beginPosition", df.format(new Date(p.start)));
+        valueSlot("endPosition", df.format(new Date(p.stop)));
+        footprintSlot(p.footprint);
+        if (!brief) {
+            valueSlot("productType", p.productType);
+            valueSlot("orbitNumber", String.valueOf(p.orbit));
+            valueSlot("orbitDirection", p.descending ? "DESCENDING" : "ASCENDING");
+            valueSlot("acquisitionType", "NOMINAL");
+            valueSlot("status", "ARCHIVED");
+            valueSlot("cloudCoverPercentage", String.valueOf(p.cloudCover));
+            centerSlot(p.center);
+        }
+        w.writeEndElement();
+        if (!brief) {
+            // acquisition platform
+            startNamedObject(p.id + "_PLT", "EOAcquisitionPlatform", "MOCKSAT");
+            valueSlot("platformSerialIdentifier", "1");
+            valueSlot("instrumentShortName", "MOCKINST");
+            valueSlot("sensorType", "OPTICAL");
+            w.writeEndElement();
+            // archiving information
+            startNamedObject(p.id + "_ARC", "EOArchivingInformation", "MOCK-PAC");
+            valueSlot("archivingIdentifier", p.id);
+            valueSlot("archivingDate", df.format(new Date(p.archived)));
+            w.writeEndElement();
+            // browse
+            startNamedObject(p.id + "_QLK", "EOBrowseInformation", "QUICKLOOK");
+            valueSlot("fileName", String.format("http://localhost/browse/%s.jpg", p.id));
+            w.writeEndElement();
+        }
+        w.writeEndElement();
+        w.writeEndElement();
+    }
+
+    private void startNamedObject(String id, String type, String name) throws XMLStreamException {
+        w.writeStartElement("rim", "ExtrinsicObject", NS_RIM);
+        w.writeAttribute("id", id);
+        w.writeAttribute("objectType", OBJTYPE_PREFIX + type);
+        w.writeStartElement("rim", "Name", NS_RIM);
+        w.writeEmptyElement("rim", "LocalizedString", NS_RIM);
+        w.writeAttribute("value", name);
+        w.writeEndElement();
+    }
+
+    private void valueSlot(String name, String value) throws XMLStreamException {
+        w.writeStartElement("rim", "Slot", NS_RIM);
+        w.writeAttribute("name", SLOT_PREFIX + name);
+        w.writeStartElement("rim", "ValueList", NS_RIM);
+        textElement("rim", NS_RIM, "Value", value);
+        w.writeEndElement();
+        w.writeEndElement();
+    }
+
+    private void footprintSlot(double[] ring) throws XMLStreamException {
+        startGeometrySlot("multiExtentOf", "GM_MultiSurface");
+        w.writeStartElement("gml", "MultiSurface", NS_GML);
+        w.writeAttribute("srsName", "EPSG:4326");
+        w.writeStartElement("gml", "surfaceMembers", NS_GML);
+        w.writeStartElement("gml", "Polygon", NS_GML);
+        w.writeStartElement("gml", "exterior", NS_GML);
+        w.writeStartElement("gml", "LinearRing", NS_GML);
+        textElement("gml", NS_GML, "posList", coords(ring));
+        // close LinearRing, exterior, Polygon, surfaceMembers and MultiSurface
+        for (int i = 0; i < 5; i++) {
+            w.writeEndElement();
+        }
+        endGeometrySlot();
+    }
+
+    private void centerSlot(double[] center) throws XMLStreamException {
+        startGeometrySlot("centerOf", "GM_Point");
+        w.writeStartElement("gml", "Point", NS_GML);
+        w.writeAttribute("srsName", "EPSG:4326");
+        textElement("gml", NS_GML, "pos", coords(center));
+        w.writeEndElement();
+        endGeometrySlot();
+    }
+
+    private void startGeometrySlot(String name, String type) throws XMLStreamException {
+        w.writeStartElement("rim", "Slot", NS_RIM);
+        w.writeAttribute("name", SLOT_PREFIX + name);
+        w.writeAttribute("slotType", "urn:ogc:def:dataType:ISO-19107:2003:" + type);
+        w.writeStartElement("wrs", "ValueList", NS_WRS);
+        w.writeStartElement("wrs", "AnyValue", NS_WRS);
+    }
+
+    private void endGeometrySlot() throws XMLStreamException {
+        // close AnyValue, ValueList and Slot
+        w.writeEndElement();
+        w.writeEndElement();
+        w.writeEndElement();
+    }
+
+    private void textElement(String prefix, String ns, String name, String text) throws XMLStreamException {
+        w.writeStartElement(prefix, name, ns);
+        w.writeCharacters(text);
+        w.writeEndElement();
+    }
+
+    private void startDocument() throws XMLStreamException {
+        w.writeStartDocument("UTF-8", "1.0");
+        if (soapNamespace != null) {
+            w.writeStartElement("soap", "Envelope", soapNamespace);
+            w.writeNamespace("soap", soapNamespace);
+            w.writeStartElement("soap", "Body", soapNamespace);
+        }
+    }
+
+    private void endDocument() throws XMLStreamException {
+        if (soapNamespace != null) {
+            w.writeEndElement();
+            w.writeEndElement();
+        }
+        w.writeEndDocument();
+        w.flush();
+    }
+
+    private static String coords(double[] latLons) {
+        StringBuilder sb = new StringBuilder(latLons.length * 12);
+        for (int i = 0; i < latLons.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(String.format(Locale.ROOT, "%.5f", latLons[i]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.falappa.hcc.mock;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream limiting the rate at which bytes are written.
+ * <p>
+ * Bytes are written in chunks of at most a tenth of the rate, sleeping as needed to keep the average rate since the stream creation
+ * below the limit.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+final class ThrottledOutputStream extends FilterOutputStream {
+
+    private final long bytesPerSecond;
+    private final int chunk;
+    private final long startNanos = System.nanoTime();
+    private long written = 0;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param out the stream to write to
+     * @param bytesPerSecond the maximum rate, must be positive
+     */
+    ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+        super(out);
+        this.bytesPerSecond = bytesPerSecond;
+        this.chunk = (int) Math.max(1, Math.min(64 * 1024, bytesPerSecond / 10));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        throttle(1);
+        out.write(b);
+        written++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final int n = Math.min(len, chunk);
+            throttle(n);
+            out.write(b, off, n);
+            written += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void throttle(int toWrite) throws IOException {
+        final long dueMillis = (written + toWrite) * 1000 / bytesPerSecond;
+        final long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+        if (dueMillis > elapsedMillis) {
+            try {
+                Thread.sleep(dueMillis - elapsedMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling");
+            }
+        }
+    }
+}
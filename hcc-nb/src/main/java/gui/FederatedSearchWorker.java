@@ -0,0 +1,321 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gui;
+
+import ca.odell.glazedlists.BasicEventList;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.SwingWorker;
+import main.App;
+import main.data.CatalogueDefinition;
+import main.data.Metadata;
+import main.data.MetadataStore;
+import main.data.PageSizeProfile;
+import main.data.ResultTable;
+import main.hma.AbortableTransport;
+import main.hma.PageFetcher;
+import main.hma.PageGap;
+import main.hma.RecordsPage;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SwingWorker to make the same GetRecords RESULTS request on several catalogues at once.
+ * <p>
+ * Each catalogue is queried on its own thread through a {@link PageFetcher}, records are merged in the result list as pages arrive
+ * dropping products already retrieved from another catalogue. The status and latency of each catalogue is published while searching
+ * and summarized at the end. Pages a catalogue could not return after retrying are skipped and counted in its final status.
+ * <p>
+ * Each catalogue has its own {@link AbortableTransport}, {@link #abort()} aborts all of them keeping the records already merged.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class FederatedSearchWorker extends SwingWorker<Integer, FederatedSearchWorker.CatalogueStatus> {
+
+    private static final Logger logger = LoggerFactory.getLogger(FederatedSearchWorker.class.getName());
+
+    private final MainWindow mw;
+    private final List<CatalogueDefinition> catalogues;
+    private final boolean allPages;
+    private final BasicEventList<Metadata> results;
+    // keys of merged products, guarded by the results write lock
+    private final Set<String> productKeys = new HashSet<>();
+    // columnar storage of the merged records, guarded by the results write lock
+    private ResultTable table = new ResultTable();
+    // latest status of each catalogue, accessed on the EDT only
+    private final Map<String, CatalogueStatus> statuses = new LinkedHashMap<>();
+    private final List<AbortableTransport> transports = Collections.synchronizedList(new ArrayList<AbortableTransport>());
+
+    public FederatedSearchWorker(MainWindow mw, List<CatalogueDefinition> catalogues, boolean allPages,
+            BasicEventList<Metadata> resultList) {
+        this.mw = mw;
+        this.catalogues = catalogues;
+        this.allPages = allPages;
+        this.results = resultList;
+        for (CatalogueDefinition cat : catalogues) {
+            statuses.put(cat.getName(), new CatalogueStatus(cat.getName(), "waiting", 0, -1, -1));
+        }
+    }
+
+    /**
+     * Cancels the search aborting the requests in progress on all catalogues.
+     * <p>
+     * Can be called from any thread.
+     */
+    public void abort() {
+        logger.info("Cancelling federated search");
+        cancel(true);
+        synchronized (transports) {
+            for (AbortableTransport at : transports) {
+                at.abort();
+            }
+        }
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        logger.info("Sending federated GetRecords RESULTS request to {} catalogues", catalogues.size());
+        final GetRecordsDocument req = mw.buildReq(true);
+        clearResults();
+        ExecutorService fanOut = Executors.newFixedThreadPool(catalogues.size());
+        try {
+            List<Future<Void>> searches = new ArrayList<>(catalogues.size());
+            for (final CatalogueDefinition cat : catalogues) {
+                searches.add(fanOut.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        searchCatalogue(cat, req);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : searches) {
+                f.get();
+            }
+        } finally {
+            fanOut.shutdownNow();
+        }
+        logger.info("Federated results {} records", results.size());
+        return results.size();
+    }
+
+    @Override
+    protected void process(List<CatalogueStatus> chunks) {
+        if (isCancelled()) {
+            return;
+        }
+        for (CatalogueStatus cs : chunks) {
+            statuses.put(cs.catalogue, cs);
+        }
+        int finished = 0;
+        for (CatalogueStatus cs : statuses.values()) {
+            if (cs.totalMillis >= 0) {
+                finished++;
+            }
+        }
+        mw.lMexs.setText(String.format("Federated search: %d of %d catalogues finished", finished, statuses.size()));
+    }
+
+    @Override
+    protected void done() {
+        try {
+            final Integer records = this.get();
+            mw.lMexs.setText(String.format("Retrieved %d records from %d catalogues", records, catalogues.size()));
+            StringBuilder sb = new StringBuilder("<html><table>");
+            sb.append("<tr><th>Catalogue</th><th>Status</th><th>Records</th><th>First page</th><th>Total</th></tr>");
+            for (CatalogueStatus cs : statuses.values()) {
+                sb.append(cs.toHtmlRow());
+            }
+            sb.append("</table></html>");
+            mw.showInfoDialog("Federated search", sb.toString());
+        } catch (ExecutionException ex) {
+            mw.showErrorDialog("Unexpected error", "Could not perform federated search!", ex);
+            logger.error("Could not retrieve federated results", ex);
+            mw.lMexs.setText("No record retrieved");
+        } catch (CancellationException cex) {
+            logger.info("Federated search cancelled with {} records in the result list", results.size());
+            mw.lMexs.setText(String.format("Federated search cancelled, %d records kept", results.size()));
+        } catch (InterruptedException iex) {
+            // ignored, done is not called before completion
+        } finally {
+            mw.enableSearchButtons(true);
+            mw.postResults();
+        }
+    }
+
+    private void searchCatalogue(final CatalogueDefinition cat, GetRecordsDocument req) {
+        final String name = cat.getName();
+        final long start = System.currentTimeMillis();
+        publish(new CatalogueStatus(name, "searching", 0, -1, -1));
+        final AbortableTransport transport = new AbortableTransport();
+        transports.add(transport);
+        if (isCancelled()) {
+            // cancelled before the transport could be aborted
+            transport.abort();
+        }
+        final PageSizeProfile profile = cat.getPageProfile();
+        final boolean adaptive = allPages && App.isAdaptivePaging();
+        final int parallel = adaptive ? profile.concurrency(cat.getMaxParallelPages()) : cat.getMaxParallelPages();
+        final int maxRecs = req.getGetRecords().getMaxRecords().intValue();
+        final int pageSize = adaptive ? profile.pageSize(maxRecs, cat.getTimeoutMillis(), -1, parallel) : maxRecs;
+        PageFetcher fetcher = new PageFetcher(cat, req, parallel);
+        fetcher.setResponseCache(App.getResponseCache());
+        fetcher.setTransport(transport);
+        fetcher.setProfile(profile);
+        int merged = 0;
+        int retrieved = 0;
+        long firstMillis = -1;
+        try {
+            RecordsPage first = fetcher.fetchPage(req.getGetRecords().getStartPosition().intValue(), pageSize);
+            retrieved += first.getReturned();
+            firstMillis = System.currentTimeMillis() - start;
+            merged += mergeRecords(first.getRecords());
+            saveLocally(cat, first.getRecords());
+            if (allPages) {
+                final int[] mergedCount = new int[]{merged};
+                final long firstLatency = firstMillis;
+                retrieved += fetcher.fetchRemaining(first, new PageFetcher.PageListener() {
+                    @Override
+                    public void pageFetched(RecordsPage page) {
+                        mergedCount[0] += mergeRecords(page.getRecords());
+                        saveLocally(cat, page.getRecords());
+                        publish(new CatalogueStatus(name, "searching", mergedCount[0], firstLatency, -1));
+                    }
+
+                    @Override
+                    public void pageFailed(PageGap gap) {
+                        publish(new CatalogueStatus(name, "searching, missing " + gap, mergedCount[0], firstLatency, -1));
+                    }
+                });
+                merged = mergedCount[0];
+            }
+            final long total = System.currentTimeMillis() - start;
+            if (retrieved > pageSize) {
+                profile.searchDone(parallel, retrieved, total);
+            }
+            final int failedPages = fetcher.getGaps().size();
+            logger.info("Catalogue {} gave {} new records in {} ms, {} pages failed", name, merged, total, failedPages);
+            final String status = failedPages > 0 ? String.format("done, %d pages failed", failedPages) : "done";
+            publish(new CatalogueStatus(name, status, merged, firstMillis, total));
+        } catch (Exception ex) {
+            if (isCancelled()) {
+                logger.info("Federated search on catalogue {} cancelled", name);
+                return;
+            }
+            final long total = System.currentTimeMillis() - start;
+            String reason = ex.getMessage();
+            if (ex instanceof ServiceExceptionReportFault) {
+                // decode error from remote service
+                final ServiceExceptionReportFault serf = (ServiceExceptionReportFault) ex;
+                reason = serf.getFaultMessage().getExceptionReport().getExceptionArray(0).getExceptionTextArray(0);
+            }
+            logger.error("Federated search on catalogue {} failed", name, ex);
+            publish(new CatalogueStatus(name, "failed: " + reason, merged, firstMillis, total));
+        } finally {
+            fetcher.shutdown();
+            transport.release();
+        }
+    }
+
+    private void clearResults() {
+        results.getReadWriteLock().writeLock().lock();
+        try {
+            results.clear();
+            productKeys.clear();
+            table = new ResultTable();
+        } finally {
+            results.getReadWriteLock().writeLock().unlock();
+        }
+    }
+
+    private void saveLocally(CatalogueDefinition cat, List<Metadata> records) {
+        final MetadataStore store = App.getMetadataStore();
+        if (store != null && !isCancelled()) {
+            try {
+                store.save(cat.getEndpoint(), records);
+            } catch (SQLException ex) {
+                logger.warn("Could not save records of {} locally: {}", cat.getName(), ex.getMessage());
+            }
+        }
+    }
+
+    private int mergeRecords(List<Metadata> page) {
+        int added = 0;
+        results.getReadWriteLock().writeLock().lock();
+        try {
+            if (isCancelled()) {
+                // the list may already be in use after cancellation
+                return 0;
+            }
+            for (Metadata m : page) {
+                // skip products already retrieved from another catalogue
+                if (productKeys.add(m.getProductKey())) {
+                    table.add(m);
+                    results.add(m);
+                    added++;
+                }
+            }
+        } finally {
+            results.getReadWriteLock().writeLock().unlock();
+        }
+        return added;
+    }
+
+    /**
+     * Status of the search on a single catalogue.
+     * <p>
+     * Latencies are in milliseconds, negative if not yet known.
+     */
+    public static class CatalogueStatus {
+
+        private final String catalogue;
+        private final String status;
+        private final int records;
+        private final long firstPageMillis;
+        private final long totalMillis;
+
+        CatalogueStatus(String catalogue, String status, int records, long firstPageMillis, long totalMillis) {
+            this.catalogue = catalogue;
+            this.status = status;
+            this.records = records;
+            this.firstPageMillis = firstPageMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        private String toHtmlRow() {
+            return String.format("<tr><td>%s</td><td>%s</td><td align=right>%d</td><td align=right>%s</td><td align=right>%s</td></tr>",
+                    catalogue, status, records, formatMillis(firstPageMillis), formatMillis(totalMillis));
+        }
+
+        private static String formatMillis(long millis) {
+            return millis < 0 ? "-" : String.format("%.1f s", millis / 1000.0);
+        }
+    }
+}
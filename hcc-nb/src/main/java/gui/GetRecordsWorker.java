@@ -16,23 +16,48 @@
 package gui;
 
 import ca.odell.glazedlists.BasicEventList;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.swing.SwingWorker;
 import main.App;
+import main.data.CatalogueDefinition;
 import main.data.Metadata;
-import main.hma.HmaRegPackParser;
+import main.data.MetadataStore;
+import main.data.PageSizeProfile;
+import main.data.QueryCriteria;
+import main.data.ResultTable;
+import main.hma.AbortableTransport;
+import main.hma.CatalogueClient;
+import main.hma.GetRecordsWriter;
+import main.hma.HmaStreamParser;
+import main.hma.PageFetcher;
+import main.hma.PageGap;
+import main.hma.PostCatalogueClient;
+import main.hma.RecordsPage;
+import main.hma.ShardPlanner;
+import main.hma.SoapCatalogueClient;
+import main.metrics.SearchMetrics;
+import main.metrics.SearchTimings;
 import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
 import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
 import net.opengis.www.cat.wrs._1_0.CatalogueStub;
 import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
 import net.opengis.www.ows.ExceptionType;
-import org.apache.xmlbeans.XmlObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * SwingWorker to make the GetRecords request.
+ * SwingWorker to make the GetRecords request, of a single page or of all the pages of a search.
  *
  * @author Alessandro Falappa <alex.falappa@gmail.com>
  */
@@ -42,31 +67,156 @@ public class GetRecordsWorker extends SwingWorker<Integer, String> {
 
     private final MainWindow mw;
     private final CatalogueStub stub;
+    private final CatalogueDefinition catDef;
     private final boolean isResults;
+    private final boolean allPages;
+    private final boolean offline;
     private final BasicEventList<Metadata> results;
+    // columnar storage of the records in the result list, guarded by the results write lock
+    private ResultTable table = new ResultTable();
+    private final AbortableTransport transport;
+    private int knownMatched = -1;
+    // concurrency of the last all pages search and whether it was sharded, reused when retrying its gaps
+    private int pagesParallel = 1;
+    private boolean sharded = false;
+    // gaps of the last all pages search with their request, the paged request or the one of their shard
+    private final List<RequestGaps> gaps = Collections.synchronizedList(new ArrayList<RequestGaps>());
+    // keys of products retrieved by sharded searches, guarded by the results write lock
+    private final Set<String> productKeys;
+    // gaps to fill instead of searching, null for a new search
+    private List<RequestGaps> retryGaps = null;
+    private final SearchTimings timings = new SearchTimings(SearchMetrics.getDefault());
 
-    public GetRecordsWorker(MainWindow mw, CatalogueStub stub, boolean isResults, BasicEventList<Metadata> resultList) {
+    public GetRecordsWorker(MainWindow mw, CatalogueStub stub, boolean isResults, boolean allPages, boolean offline,
+            BasicEventList<Metadata> resultList) {
         this.mw = mw;
         this.stub = stub;
+        this.catDef = mw.getCurrentCatalogue();
         this.isResults = isResults;
+        this.allPages = allPages;
+        this.offline = offline;
         this.results = resultList;
+        this.productKeys = new HashSet<>();
+        this.transport = new AbortableTransport();
+    }
+
+    private GetRecordsWorker(GetRecordsWorker other) {
+        this.mw = other.mw;
+        this.stub = other.stub;
+        this.catDef = other.catDef;
+        this.isResults = true;
+        this.allPages = true;
+        this.offline = false;
+        this.results = other.results;
+        this.table = other.table;
+        this.productKeys = other.productKeys;
+        this.transport = new AbortableTransport();
+        this.pagesParallel = other.pagesParallel;
+        this.sharded = other.sharded;
+        this.retryGaps = new ArrayList<>(other.gaps);
+    }
+
+    /**
+     * Creates a worker requesting again the pages this search could not retrieve.
+     * <p>
+     * Must be called after completion, the returned worker is not started.
+     *
+     * @return the new worker
+     */
+    public GetRecordsWorker gapsRetry() {
+        return new GetRecordsWorker(this);
+    }
+
+    /**
+     * Gives the ranges of records that could not be retrieved.
+     *
+     * @return the list of gaps, empty if all the pages were retrieved
+     */
+    public List<PageGap> getGaps() {
+        final List<PageGap> ret = new ArrayList<>();
+        synchronized (gaps) {
+            for (RequestGaps rg : gaps) {
+                ret.addAll(rg.gaps);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Sets the number of records matched by the search, if known in advance.
+     *
+     * @param knownMatched the number of matched records or -1 if unknown
+     */
+    public void setKnownMatched(int knownMatched) {
+        this.knownMatched = knownMatched;
+    }
+
+    /**
+     * Cancels the search aborting the requests in progress.
+     * <p>
+     * Can be called from any thread.
+     */
+    public void abort() {
+        logger.info("Cancelling GetRecords request");
+        // cancel first so that the failure of the aborted requests is not reported as an error
+        cancel(true);
+        transport.abort();
     }
 
     @Override
     protected Integer doInBackground() throws Exception {
         logger.info("Sending GetRecords {} request", isResults ? "RESULTS" : "HITS");
-        publish("Building request...");
+        try {
+            if (offline) {
+                return searchLocally();
+            }
+            if (retryGaps != null) {
+                return fetchGaps();
+            }
+            publish("Building request...");
+            if (isResults && allPages) {
+                return fetchAllPages();
+            }
+            return fetchSingle();
+        } finally {
+            transport.release();
+        }
+    }
+
+    private int fetchSingle() throws Exception {
+        final long buildStart = System.nanoTime();
         GetRecordsDocument req = mw.buildReq(isResults);
+        timings.requestBuilt(System.nanoTime() - buildStart);
         App.dumpReq(req, isResults);
         publish("Sending request...");
-        final GetRecordsResponseDocument resp = stub.getRecords(req);
-        App.dumpResp(resp, isResults);
+        // the SOAP binding reuses the stub of the main window
+        final CatalogueClient client = catDef.isHttpPost() ? new PostCatalogueClient(catDef) : new SoapCatalogueClient(stub, catDef);
+        client.setTransport(transport);
+        client.setTimings(timings);
         int recs;
-        if (isResults) {
-            publish("Processing response...");
-            recs = processResults(resp);
-        } else {
-            recs = processHits(resp);
+        try {
+            if (isResults && !App.isDumpingResponses()) {
+                // records decoded while received, without the response document
+                final RecordsPage page = App.getResponseCache().getRecordsPage(client, catDef, req,
+                        req.getGetRecords().getStartPosition().intValue(), timings);
+                publish("Processing response...");
+                recs = processResults(page.getRecords());
+            } else {
+                final GetRecordsResponseDocument resp = App.getResponseCache().getRecords(client, catDef, req);
+                App.dumpResp(resp, isResults);
+                if (isResults) {
+                    publish("Processing response...");
+                    final long start = System.nanoTime();
+                    final List<Metadata> records = new HmaStreamParser().parse(resp.newXMLStreamReader(), 0).getRecords();
+                    timings.parsed(records.size(), System.nanoTime() - start);
+                    recs = processResults(records);
+                } else {
+                    recs = processHits(resp);
+                }
+            }
+        } finally {
+            client.setTransport(null);
+            client.setTimings(null);
         }
         publish("Done");
         logger.info("Hits/Results {} records", recs);
@@ -75,14 +225,21 @@ public class GetRecordsWorker extends SwingWorker<Integer, String> {
 
     @Override
     protected void process(List<String> chunks) {
-        mw.lMexs.setText(chunks.get(chunks.size() - 1));
+        if (!isCancelled()) {
+            mw.lMexs.setText(chunks.get(chunks.size() - 1));
+            // timings of the previous search
+            mw.lMexs.setToolTipText(null);
+        }
     }
 
     @Override
     protected void done() {
         try {
             final Integer records = this.get();
-            if (isResults) {
+            final int failedPages = getGaps().size();
+            if (isResults && failedPages > 0) {
+                mw.lMexs.setText(String.format("Retrieved %d records, %d pages failed", records, failedPages));
+            } else if (isResults) {
                 mw.lMexs.setText(String.format("Retrieved %d records", records));
             } else {
                 mw.showInfoDialog("Hits", String.format("Query will give %d records", records));
@@ -101,11 +258,26 @@ public class GetRecordsWorker extends SwingWorker<Integer, String> {
                 logger.error("Could not retrieve results", ex);
             }
             mw.lMexs.setText("No record retrieved");
+        } catch (CancellationException cex) {
+            logger.info("GetRecords request cancelled with {} records in the result list", results.size());
+            mw.lMexs.setText(String.format("Search cancelled, %d records kept", results.size()));
         } catch (InterruptedException iex) {
-            // ignored, interruption currently not supported
+            // ignored, done is not called before completion
         } finally {
             mw.enableSearchButtons(true);
+            final long layersStart = System.nanoTime();
             mw.postResults();
+            timings.layersBuilt(System.nanoTime() - layersStart);
+            timings.finished();
+        }
+        final String summary = timings.summary();
+        logger.info("Search timings: {}", summary);
+        if (isResults && !summary.isEmpty()) {
+            mw.lMexs.setText(String.format("%s (%s)", mw.lMexs.getText(), summary));
+            mw.lMexs.setToolTipText(timings.details());
+        }
+        if (!isCancelled() && !gaps.isEmpty()) {
+            mw.offerGapRetry(this);
         }
     }
 
@@ -113,26 +285,299 @@ public class GetRecordsWorker extends SwingWorker<Integer, String> {
         return resp.getGetRecordsResponse().getSearchResults().getNumberOfRecordsMatched().intValue();
     }
 
-    private int processResults(GetRecordsResponseDocument resp) {
+    private int processResults(List<Metadata> records) {
         logger.debug("Processing GetRecords RESULTS response");
-        // extract registry packages via XPath
-        XmlObject[] res = resp.selectPath("declare namespace rim='urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0' .//rim:RegistryPackage");
-        logger.debug("XPath selected {} registry packages", res.length);
-        // lock and clear the result list
-        results.getReadWriteLock().writeLock().lock();
-        results.clear();
-        // process the registry packages trough a parser
-        HmaRegPackParser regPackParser = new HmaRegPackParser();
-        logger.debug("Decoding metadata");
-        for (XmlObject xo : res) {
-            Metadata m = regPackParser.parseXmlObj(xo);
-            if (m != null) {
-                results.add(m);
-            }
-        }
-        // release the lock for update
-        results.getReadWriteLock().writeLock().unlock();
+        clearResults();
+        appendResults(records);
+        saveLocally(records);
+        return results.size();
+    }
+
+    private int fetchAllPages() throws Exception {
+        final long buildStart = System.nanoTime();
+        final GetRecordsWriter writer = mw.buildWriter(true);
+        final GetRecordsDocument req = writer.toDocument();
+        timings.requestBuilt(System.nanoTime() - buildStart);
+        final int startPos = req.getGetRecords().getStartPosition().intValue();
+        final int maxRecs = req.getGetRecords().getMaxRecords().intValue();
+        // page size and concurrency from the profile of the catalogue if adaptive, from the search panel and the catalogue otherwise
+        final PageSizeProfile profile = catDef.getPageProfile();
+        final boolean adaptive = App.isAdaptivePaging();
+        final int parallel = adaptive ? profile.concurrency(catDef.getMaxParallelPages()) : catDef.getMaxParallelPages();
+        final int pageSize = adaptive ? profile.pageSize(maxRecs, catDef.getTimeoutMillis(), knownMatched, parallel) : maxRecs;
+        clearResults();
+        pagesParallel = parallel;
+        PageFetcher fetcher = createFetcher(req, pagesParallel);
+        fetcher.setProfile(profile);
+        final long start = System.currentTimeMillis();
+        try {
+            publish("Sending request...");
+            final RecordsPage first = knownMatched < 0 ? fetcher.fetchPage(startPos, pageSize) : null;
+            final int matched = first != null ? first.getMatched() : knownMatched;
+            sharded = catDef.getShardRecords() > 0 && matched > catDef.getShardRecords() && ShardPlanner.canSplit(writer.getCriteria());
+            final PageFetcher.PageListener listener = new ResultsListener(String.format("of %d records", matched), sharded);
+            if (sharded) {
+                if (first != null) {
+                    listener.pageFetched(first);
+                }
+                fetchShards(writer, matched, pageSize);
+            } else {
+                logger.info("Fetching {} records in pages of {} with {} parallel requests", matched, pageSize, parallel);
+                if (first != null) {
+                    listener.pageFetched(first);
+                    fetcher.fetchRemaining(first, listener);
+                } else {
+                    // matched records counted in advance, request pages from the first one
+                    fetcher.fetchPlanned(startPos, pageSize, matched, listener);
+                }
+            }
+        } finally {
+            addGaps(req, fetcher);
+            fetcher.shutdown();
+        }
+        if (!sharded && results.size() > pageSize) {
+            profile.searchDone(parallel, results.size(), System.currentTimeMillis() - start);
+            logger.debug("Catalogue {} {}", catDef.getName(), profile);
+        }
+        publish("Done");
+        logger.info("Results {} records, {} gaps", results.size(), getGaps().size());
+        return results.size();
+    }
+
+    /**
+     * Splits the search in shards and retrieves all of them, the first page of the search may already be in the result list.
+     */
+    private void fetchShards(GetRecordsWriter writer, final int matched, final int pageSize) throws Exception {
+        final int parallel = catDef.getMaxParallelPages();
+        publish(String.format("Splitting search of %d records...", matched));
+        final List<ShardPlanner.Shard> shards;
+        ShardPlanner.RemoteHitsCounter counter = new ShardPlanner.RemoteHitsCounter(catDef, writer, transport);
+        counter.setResponseCache(App.getResponseCache());
+        try {
+            shards = new ShardPlanner(counter, catDef.getShardRecords(), parallel).plan(writer.getCriteria(), matched);
+        } finally {
+            counter.cleanup();
+        }
+        logger.info("Fetching {} records in {} shards with {} parallel requests", matched, shards.size(), parallel);
+        // one request at a time for each shard, shards in parallel
+        ExecutorService fanOut = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<Void>> searches = new ArrayList<>(shards.size());
+            for (final ShardPlanner.Shard shard : shards) {
+                final GetRecordsDocument shardReq = writer.withCriteria(shard.getCriteria()).toDocument(1, pageSize);
+                searches.add(fanOut.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        logger.debug("Fetching {}", shard);
+                        PageFetcher fetcher = createFetcher(shardReq, 1);
+                        try {
+                            fetcher.fetchPlanned(1, pageSize, shard.getHits(), new ResultsListener(String.format("of %d records", matched),
+                                    true));
+                        } finally {
+                            // kept with the request of the shard, positions of the gaps are relative to it
+                            addGaps(shardReq, fetcher);
+                            fetcher.shutdown();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : searches) {
+                try {
+                    f.get();
+                } catch (ExecutionException ex) {
+                    // rethrow the original cause so that errors are reported as for single requests
+                    final Throwable cause = ex.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : ex;
+                }
+            }
+        } finally {
+            fanOut.shutdownNow();
+        }
+    }
+
+    private int fetchGaps() throws Exception {
+        logger.info("Retrying failed pages of {} requests", retryGaps.size());
+        final int before = results.size();
+        publish("Retrying failed pages...");
+        // records of sharded searches may have been retrieved by another shard
+        final ResultsListener listener = new ResultsListener("records", sharded);
+        for (RequestGaps rg : retryGaps) {
+            PageFetcher fetcher = createFetcher(rg.request, pagesParallel);
+            try {
+                fetcher.fetchGaps(rg.gaps, listener);
+            } finally {
+                addGaps(rg.request, fetcher);
+                fetcher.shutdown();
+            }
+        }
+        publish("Done");
+        logger.info("Recovered {} records, {} gaps left", results.size() - before, getGaps().size());
+        return results.size();
+    }
+
+    private void addGaps(GetRecordsDocument request, PageFetcher fetcher) {
+        final List<PageGap> left = fetcher.getGaps();
+        if (!left.isEmpty()) {
+            gaps.add(new RequestGaps(request, left));
+        }
+    }
+
+    private PageFetcher createFetcher(GetRecordsDocument template, int parallel) {
+        PageFetcher fetcher = new PageFetcher(catDef, template, parallel) {
+            @Override
+            protected void requestReady(GetRecordsDocument pageReq) {
+                App.dumpReq(pageReq, true);
+            }
+
+            @Override
+            protected void responseReceived(GetRecordsResponseDocument pageResp) {
+                App.dumpResp(pageResp, true);
+            }
+
+            @Override
+            protected boolean needsResponses() {
+                return App.isDumpingResponses();
+            }
+        };
+        fetcher.setResponseCache(App.getResponseCache());
+        fetcher.setTransport(transport);
+        fetcher.setTimings(timings);
+        return fetcher;
+    }
+
+    private int searchLocally() throws SQLException {
+        final MetadataStore store = App.getMetadataStore();
+        if (store == null) {
+            throw new IllegalStateException("Local metadata store not available");
+        }
+        final QueryCriteria criteria = mw.buildCriteria();
+        logger.info("Searching locally with {}", criteria);
+        publish("Searching local store...");
+        if (!isResults) {
+            return store.count(catDef.getEndpoint(), criteria);
+        }
+        // honour start position and maximum records of the request
+        final GetRecordsDocument req = mw.buildReq(true);
+        final int offset = req.getGetRecords().getStartPosition().intValue() - 1;
+        final int limit = allPages ? 0 : req.getGetRecords().getMaxRecords().intValue();
+        clearResults();
+        appendResults(store.query(catDef.getEndpoint(), criteria, offset, limit));
+        publish("Done");
         return results.size();
     }
 
+    private void saveLocally(List<Metadata> records) {
+        final MetadataStore store = App.getMetadataStore();
+        if (store != null && !isCancelled()) {
+            try {
+                store.save(catDef.getEndpoint(), records);
+            } catch (SQLException ex) {
+                logger.warn("Could not save records locally: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private void clearResults() {
+        results.getReadWriteLock().writeLock().lock();
+        try {
+            // once cancelled the list may already be filled by another search
+            if (!isCancelled()) {
+                results.clear();
+                productKeys.clear();
+                table = new ResultTable();
+            }
+        } finally {
+            results.getReadWriteLock().writeLock().unlock();
+        }
+    }
+
+    private void appendResults(List<Metadata> page) {
+        final long start = System.nanoTime();
+        // lock the result list only for appending the decoded page
+        results.getReadWriteLock().writeLock().lock();
+        try {
+            // pages decoded after cancellation are dropped, the list may already be in use
+            if (!isCancelled()) {
+                table.addAll(page);
+                results.addAll(page);
+            }
+        } finally {
+            results.getReadWriteLock().writeLock().unlock();
+        }
+        timings.inserted(System.nanoTime() - start);
+    }
+
+    private void mergeResults(List<Metadata> page) {
+        final long start = System.nanoTime();
+        results.getReadWriteLock().writeLock().lock();
+        try {
+            if (!isCancelled()) {
+                for (Metadata m : page) {
+                    // skip products already retrieved by another shard
+                    if (productKeys.add(m.getProductKey())) {
+                        table.add(m);
+                        results.add(m);
+                    }
+                }
+            }
+        } finally {
+            results.getReadWriteLock().writeLock().unlock();
+        }
+        timings.inserted(System.nanoTime() - start);
+    }
+
+    /**
+     * Appends or merges fetched pages to the result list and reports progress and failed pages.
+     */
+    private class ResultsListener implements PageFetcher.PageListener {
+
+        private final String ofWhat;
+        private final boolean merge;
+        private int failed = 0;
+
+        ResultsListener(String ofWhat, boolean merge) {
+            this.ofWhat = ofWhat;
+            this.merge = merge;
+        }
+
+        @Override
+        public void pageFetched(RecordsPage page) {
+            if (merge) {
+                mergeResults(page.getRecords());
+            } else {
+                appendResults(page.getRecords());
+            }
+            saveLocally(page.getRecords());
+            publish(progress());
+        }
+
+        @Override
+        public void pageFailed(PageGap gap) {
+            failed++;
+            publish(progress());
+        }
+
+        private String progress() {
+            if (failed > 0) {
+                return String.format("Retrieved %d %s, %d pages failed...", results.size(), ofWhat, failed);
+            }
+            return String.format("Retrieved %d %s...", results.size(), ofWhat);
+        }
+    }
+
+    /**
+     * Ranges of records a request of an all pages search could not retrieve.
+     */
+    private static class RequestGaps {
+
+        private final GetRecordsDocument request;
+        private final List<PageGap> gaps;
+
+        RequestGaps(GetRecordsDocument request, List<PageGap> gaps) {
+            this.request = request;
+            this.gaps = gaps;
+        }
+    }
+
 }
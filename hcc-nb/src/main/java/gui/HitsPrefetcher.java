@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import main.App;
+import main.data.CatalogueDefinition;
+import main.data.QueryCriteria;
+import main.hma.AbortableTransport;
+import main.hma.CatalogueClient;
+import main.hma.CatalogueStubs;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the number of records matched by the search being edited up to date.
+ * <p>
+ * Each change of the search constraints restarts a short delay, when the delay expires without further changes a HITS request is
+ * sent in background and the count is shown in the main window status bar. A request still in progress when the constraints change
+ * again is aborted and its result discarded.
+ * <p>
+ * The last count is kept together with the catalogue and criteria it refers to, so that a RESULTS search with the same constraints
+ * can plan all its pages without waiting for the first response.
+ * <p>
+ * All methods must be called on the event dispatch thread.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class HitsPrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(HitsPrefetcher.class.getName());
+    public static final int DEBOUNCE_MILLIS = 800;
+    private final MainWindow mw;
+    private final Timer timer;
+    private boolean enabled = true;
+    private HitsWorker worker = null;
+    private CatalogueDefinition knownCatalogue = null;
+    private QueryCriteria knownCriteria = null;
+    private int knownHits = -1;
+
+    public HitsPrefetcher(MainWindow mw) {
+        this.mw = mw;
+        this.timer = new Timer(DEBOUNCE_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                prefetch();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        criteriaChanged();
+    }
+
+    /**
+     * Notifies a change of the search constraints or of the current catalogue.
+     * <p>
+     * Forgets the last count, cancels the request in progress if any and schedules a new one.
+     */
+    public void criteriaChanged() {
+        if (worker != null) {
+            worker.abort();
+            worker = null;
+        }
+        knownCatalogue = null;
+        knownCriteria = null;
+        knownHits = -1;
+        if (enabled) {
+            timer.restart();
+        } else {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Gives the number of records matched by a search, if already counted.
+     *
+     * @param catDef the catalogue of the search
+     * @param criteria the search constraints
+     * @return the number of matched records or -1 if not known
+     */
+    public int getHits(CatalogueDefinition catDef, QueryCriteria criteria) {
+        if (knownHits >= 0 && catDef == knownCatalogue && criteria.equals(knownCriteria)) {
+            return knownHits;
+        }
+        return -1;
+    }
+
+    private void prefetch() {
+        if (!enabled || !mw.canPrefetchHits()) {
+            return;
+        }
+        worker = new HitsWorker(mw.getCurrentCatalogue(), mw.buildCriteria(), mw.buildReq(false));
+        if (!mw.isSearching()) {
+            mw.lMexs.setText("Counting matching records...");
+        }
+        worker.execute();
+    }
+
+    /**
+     * Sends the background HITS request through its own stub and transport.
+     */
+    private class HitsWorker extends SwingWorker<Integer, Void> {
+
+        private final CatalogueDefinition catDef;
+        private final QueryCriteria criteria;
+        private final GetRecordsDocument req;
+        private final AbortableTransport transport = new AbortableTransport();
+
+        HitsWorker(CatalogueDefinition catDef, QueryCriteria criteria, GetRecordsDocument req) {
+            this.catDef = catDef;
+            this.criteria = criteria;
+            this.req = req;
+        }
+
+        void abort() {
+            cancel(true);
+            transport.abort();
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            logger.debug("Sending background GetRecords HITS request for {}", criteria);
+            CatalogueClient client = CatalogueStubs.createClient(catDef);
+            client.setTransport(transport);
+            try {
+                final GetRecordsResponseDocument resp = App.getResponseCache().getRecords(client, catDef, req);
+                return resp.getGetRecordsResponse().getSearchResults().getNumberOfRecordsMatched().intValue();
+            } finally {
+                transport.release();
+                client.cleanup();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || worker != this) {
+                // constraints changed in the meantime
+                return;
+            }
+            worker = null;
+            try {
+                knownHits = get();
+                knownCatalogue = catDef;
+                knownCriteria = criteria;
+                logger.debug("Background hits {} records", knownHits);
+                if (!mw.isSearching()) {
+                    mw.lMexs.setText(String.format("Query will give %d records", knownHits));
+                }
+            } catch (ExecutionException ex) {
+                logger.warn("Background hits request failed: {}", ex.getCause().toString());
+                if (!mw.isSearching()) {
+                    mw.lMexs.setText("Could not count matching records");
+                }
+            } catch (InterruptedException iex) {
+                // ignored, not waiting
+            }
+        }
+    }
+}
@@ -18,12 +18,16 @@ package gui;
 import ca.odell.glazedlists.BasicEventList;
 import ca.odell.glazedlists.EventList;
 import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Position;
 import gov.nasa.worldwind.layers.Layer;
 import gui.dialogs.AboutDialog;
 import gui.dialogs.CatDefinitionDialog;
 import gui.dialogs.MetadataDetailDialog;
 import gui.dialogs.MetadataGridDialog;
 import gui.dialogs.SettingsDialog;
+import gui.panels.CollectionsPanel;
+import gui.panels.GeoAreaPanel;
+import gui.panels.TimeWindowPanel;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Point;
@@ -32,22 +36,36 @@ import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 import javax.swing.DefaultComboBoxModel;
+import javax.swing.JCheckBox;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import main.App;
 import main.data.CatalogueDefinition;
+import main.data.FootprintIndex;
 import main.data.Metadata;
 import static main.data.MetadataNames.FOOTPRINT;
 import static main.data.MetadataNames.PARENT_IDENTIFIER;
 import static main.data.MetadataNames.PRODUCT_IDENTIFIER;
-import main.hma.HmaGetRecordsBuilder;
+import main.data.QueryCriteria;
+import main.data.SavedSearch;
+import main.data.SensingIndex;
+import main.hma.CatalogueStubs;
+import main.hma.GetRecordsWriter;
+import main.hma.HttpTransports;
+import main.hma.PageGap;
 import net.falappa.prefs.PrefRestorable;
 import net.falappa.utils.GuiUtils;
 import net.falappa.wwind.layers.NightDayLayer;
@@ -55,12 +73,10 @@ import net.falappa.wwind.layers.NoSuchShapeException;
 import net.falappa.wwind.layers.SurfShapeLayer;
 import net.falappa.wwind.layers.SurfShapesLayer;
 import net.falappa.wwind.utils.WWindUtils;
+import net.falappa.wwind.widgets.WWindPanel;
 import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
 import net.opengis.www.cat.wrs._1_0.CatalogueStub;
 import org.apache.axis2.AxisFault;
-import org.apache.axis2.Constants;
-import org.apache.axis2.addressing.EndpointReference;
-import org.apache.axis2.transport.http.HTTPConstants;
 import org.apache.xmlbeans.XmlOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,13 +96,28 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
         Color.GREEN,
         Color.CYAN,
         Color.WHITE,};
+    // color of the footprints acquired around the night and day layer time, a violet not used by the layers palette
+    private static final Color ACQUIRED_COLOR = new Color(0x80, 0x40, 0xFF);
+    // half width of the window of acquisitions shown around the night and day layer time, about half an orbit of a low orbit satellite
+    private static final long ACQUIRED_WINDOW_MILLIS = 30 * 60 * 1000L;
     // preference node names
     private static final String PREFN_WINDOW = "MainWindow";
     private static final String PREFN_CATALOGUES = "catalogues";
+    private static final String PREFN_SAVEDSEARCHES = "savedsearches";
     // preference keys
     private static final String PREFK_CAT_COLLECTIONS = "collections";
     private static final String PREFK_CAT_TIMEOUT = "timeout";
+    private static final String PREFK_CAT_PARALLEL = "parallelpages";
+    private static final String PREFK_CAT_CACHETTL = "cachettl";
+    private static final String PREFK_CAT_MAXCONN = "maxconnections";
+    private static final String PREFK_CAT_GZIP = "compression";
+    private static final String PREFK_CAT_PAGEPROFILE = "pageprofile";
+    private static final String PREFK_CAT_RETRIES = "retries";
+    private static final String PREFK_CAT_HEDGING = "hedging";
+    private static final String PREFK_CAT_ARCHDATE = "archivingdate";
+    private static final String PREFK_CAT_SHARDRECS = "shardrecords";
     private static final String PREFK_CAT_SOAPV12 = "soapv12";
+    private static final String PREFK_CAT_HTTPPOST = "httppost";
     private static final String PREFK_CAT_EDP = "edp";
     private static final Logger logger = LoggerFactory.getLogger(MainWindow.class.getName());
     private final DefaultComboBoxModel<CatalogueDefinition> dcmCatalogues = new DefaultComboBoxModel<>();
@@ -94,6 +125,20 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
     private BasicEventList<Metadata> results = new BasicEventList<>();
     private MetadataGridDialog gridDialog;
     private MetadataDetailDialog detailDialog;
+    // spatial index of the posted results
+    private FootprintIndex footprintIndex = null;
+    // footprints covering the last picked location and the index of the picked one
+    private List<Metadata> pickedCovering = null;
+    private int pickedIdx = 0;
+    // temporal index of the posted results and results currently shown as acquired at the night and day layer time
+    private SensingIndex sensingIndex = null;
+    private List<Metadata> acquiredShown = Collections.emptyList();
+    private final HitsPrefetcher hitsPrefetcher = new HitsPrefetcher(this);
+    private boolean searching = false;
+    private GetRecordsWorker searchWorker = null;
+    private FederatedSearchWorker federatedWorker = null;
+    private SavedSearchWorker savedWorker = null;
+    private final List<SavedSearch> savedSearches = new ArrayList<>();
 
     public MainWindow() {
         initComponents();
@@ -111,6 +156,32 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
         ndl.setEnabled(false);
         wwindPane.addLayer(ndl);
         pTime.setNightDayLayer(ndl, wwindPane.getWWCanvas());
+        // count hits in background when the search constraints change
+        final PropertyChangeListener criteriaListener = new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                hitsPrefetcher.criteriaChanged();
+            }
+        };
+        pCollections.addPropertyChangeListener(CollectionsPanel.PROP_CRITERIA, criteriaListener);
+        pTime.addPropertyChangeListener(TimeWindowPanel.PROP_CRITERIA, criteriaListener);
+        // show the footprints acquired at the night and day layer time
+        pTime.addPropertyChangeListener(TimeWindowPanel.PROP_DAYNIGHT, new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                showAcquiredAt((Date) evt.getNewValue());
+            }
+        });
+        pGeo.addPropertyChangeListener(GeoAreaPanel.PROP_CRITERIA, criteriaListener);
+        wwindPane.addSurfShapeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (WWindPanel.EVENT_AOI_CHANGED.equals(evt.getPropertyName())) {
+                    hitsPrefetcher.criteriaChanged();
+                }
+            }
+        });
+        hitsPrefetcher.setEnabled(App.getAppPrefs().getBoolean(App.PREFK_PREFETCH_HITS, true));
     }
 
     public CatalogueDefinition getCurrentCatalogue() {
@@ -119,18 +190,155 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
 
     public void execHits() {
         if (checkCanSubmit()) {
-            pSearchButons.enableButtons(false);
+            enableSearchButtons(false);
             startWorker(false);
         }
     }
 
     public void execResults() {
         if (checkCanSubmit()) {
-            pSearchButons.enableButtons(false);
+            enableSearchButtons(false);
             startWorker(true);
         }
     }
 
+    public void execFederated() {
+        if (checkCanSubmit()) {
+            // let the user choose the catalogues to query, current one selected by default
+            JList<CatalogueDefinition> lCats = new JList<>(dcmCatalogues);
+            lCats.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+            lCats.setSelectedIndex(cbCatalogues.getSelectedIndex());
+            lCats.setVisibleRowCount(Math.min(10, dcmCatalogues.getSize()));
+            final Object[] msg = new Object[]{"Catalogues to query:", new JScrollPane(lCats)};
+            int ret = JOptionPane.showConfirmDialog(this, msg, "Federated search", JOptionPane.OK_CANCEL_OPTION,
+                    JOptionPane.PLAIN_MESSAGE);
+            if (ret == JOptionPane.OK_OPTION && !lCats.isSelectionEmpty()) {
+                enableSearchButtons(false);
+                FederatedSearchWorker fsw = new FederatedSearchWorker(this, lCats.getSelectedValuesList(), pSearchButons.isAllPages(),
+                        results);
+                federatedWorker = fsw;
+                fsw.execute();
+            }
+        }
+    }
+
+    /**
+     * Lets the user run, create or delete saved searches.
+     * <p>
+     * Saved searches are created from the current catalogue and constraints, running one retrieves only what changed since its last
+     * run.
+     */
+    public void execSavedSearches() {
+        JList<SavedSearch> lSaved = new JList<>(savedSearches.toArray(new SavedSearch[savedSearches.size()]));
+        lSaved.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        lSaved.setVisibleRowCount(Math.max(3, Math.min(10, savedSearches.size())));
+        if (!savedSearches.isEmpty()) {
+            lSaved.setSelectedIndex(0);
+        }
+        final Object[] msg = new Object[]{"Saved searches:", new JScrollPane(lSaved)};
+        final Object[] options = new Object[]{"Run", "Save current...", "Delete", "Close"};
+        int ret = JOptionPane.showOptionDialog(this, msg, "Saved searches", JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null,
+                options, options[0]);
+        final SavedSearch selected = lSaved.getSelectedValue();
+        switch (ret) {
+            case 0:
+                if (selected != null) {
+                    runSavedSearch(selected);
+                }
+                break;
+            case 1:
+                if (checkCanSubmit()) {
+                    saveCurrentSearch();
+                }
+                execSavedSearches();
+                break;
+            case 2:
+                if (selected != null) {
+                    savedSearches.remove(selected);
+                }
+                execSavedSearches();
+                break;
+        }
+    }
+
+    private void saveCurrentSearch() {
+        JTextField txName = new JTextField(20);
+        JCheckBox chArchiving = new JCheckBox("Changes by archiving date instead of sensing time", true);
+        final Object[] msg = new Object[]{"Name:", txName, chArchiving};
+        int ret = JOptionPane.showConfirmDialog(this, msg, "Save search", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        // names identify the preferences nodes
+        String txt = txName.getText().trim().replace('/', '-');
+        final String name = txt.substring(0, Math.min(txt.length(), Preferences.MAX_NAME_LENGTH));
+        if (ret != JOptionPane.OK_OPTION || name.isEmpty()) {
+            return;
+        }
+        for (SavedSearch ss : savedSearches) {
+            if (ss.getName().equals(name)) {
+                showErrorDialog("Save search", String.format("A saved search named %s already exists", name));
+                return;
+            }
+        }
+        SavedSearch ss = new SavedSearch(name, getCurrentCatalogue().getName(), buildCriteria());
+        ss.setByArchiving(chArchiving.isSelected());
+        savedSearches.add(ss);
+    }
+
+    private void runSavedSearch(SavedSearch ss) {
+        CatalogueDefinition catDef = null;
+        for (int i = 0; i < dcmCatalogues.getSize(); i++) {
+            if (dcmCatalogues.getElementAt(i).getName().equals(ss.getCatalogue())) {
+                catDef = dcmCatalogues.getElementAt(i);
+            }
+        }
+        if (catDef == null) {
+            showErrorDialog("Saved search", String.format("Catalogue %s not defined", ss.getCatalogue()));
+            return;
+        }
+        enableSearchButtons(false);
+        savedWorker = new SavedSearchWorker(this, ss, catDef, results);
+        savedWorker.execute();
+    }
+
+    /**
+     * Cancels the search in progress, if any, keeping the records retrieved so far.
+     */
+    public void cancelSearch() {
+        if (searchWorker != null && !searchWorker.isDone()) {
+            searchWorker.abort();
+        }
+        if (federatedWorker != null && !federatedWorker.isDone()) {
+            federatedWorker.abort();
+        }
+        if (savedWorker != null && !savedWorker.isDone()) {
+            savedWorker.abort();
+        }
+    }
+
+    /**
+     * Offers to request again the pages a completed search could not retrieve.
+     *
+     * @param grw the completed search
+     */
+    void offerGapRetry(GetRecordsWorker grw) {
+        final List<PageGap> gaps = grw.getGaps();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d result pages could not be retrieved:\n", gaps.size()));
+        for (PageGap gap : gaps.subList(0, Math.min(10, gaps.size()))) {
+            sb.append(String.format("  %s (%s)\n", gap, gap.getCause().getMessage()));
+        }
+        if (gaps.size() > 10) {
+            sb.append("  ...\n");
+        }
+        sb.append("\nRetry them now?");
+        int ret = JOptionPane.showConfirmDialog(this, sb.toString(), "Incomplete results", JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+        if (ret == JOptionPane.YES_OPTION && !searching) {
+            enableSearchButtons(false);
+            searchWorker = grw.gapsRetry();
+            searchWorker.execute();
+        }
+    }
+
     public String getReqText() {
         if (checkCanSubmit()) {
             GetRecordsDocument req = buildReq(true);
@@ -155,6 +363,15 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
         JOptionPane.showMessageDialog(this, message, title, JOptionPane.INFORMATION_MESSAGE);
     }
 
+    /**
+     * Turns on or off counting the hits in background while the search constraints are edited.
+     *
+     * @param flag true to count hits in background
+     */
+    public void setHitsPrefetch(boolean flag) {
+        hitsPrefetcher.setEnabled(flag);
+    }
+
     /**
      * This method is called from within the constructor to initialize the form. WARNING: Do NOT modify this code. The content of this
      * method is always regenerated by the Form Editor.
@@ -370,6 +587,8 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
 
     private void formWindowClosing(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowClosing
         storePrefs(App.getAppPrefs());
+        App.closeMetadataStore();
+        HttpTransports.shutdown();
     }//GEN-LAST:event_formWindowClosing
 
     private void cbCataloguesItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbCataloguesItemStateChanged
@@ -377,20 +596,10 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
             final CatalogueDefinition selCatDef = getCurrentCatalogue();
             // rewrite collection list
             pCollections.setCollections(selCatDef.getCollections());
-            if (selCatDef.isSoapV12()) {
-                //set soap 1.2 in stub
-                stub._getServiceClient().getOptions().setSoapVersionURI(Constants.URI_SOAP12_ENV);
-            } else {
-                //set soap 1.1 in stub
-                stub._getServiceClient().getOptions().setSoapVersionURI(Constants.URI_SOAP11_ENV);
-            }
-            //set timeout in stub
-            Integer to = selCatDef.getTimeoutMillis();
-            stub._getServiceClient().getOptions().setProperty(HTTPConstants.SO_TIMEOUT, to);
-            stub._getServiceClient().getOptions().setProperty(HTTPConstants.CONNECTION_TIMEOUT, to);
-            // set endpoint url in stub
-            stub._getServiceClient().setTargetEPR(new EndpointReference(selCatDef.getEndpoint()));
+            // set soap version, timeout and endpoint url in stub
+            CatalogueStubs.configure(stub, selCatDef);
         }
+        hitsPrefetcher.criteriaChanged();
     }//GEN-LAST:event_cbCataloguesItemStateChanged
 
     private void bSettingsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bSettingsActionPerformed
@@ -430,90 +639,107 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
         return true;
     }
 
-    GetRecordsDocument buildReq(boolean isResults) {
-        HmaGetRecordsBuilder builder = new HmaGetRecordsBuilder();
-        switch (pSearchButons.getDetail()) {
-            case 0:
-                //brief
-                builder.setDetailBrief();
-                break;
-            case 1:
-                //summary
-                builder.setDetailSummary();
-                break;
-            case 2:
-                //full
-                builder.setDetailFull();
-                break;
-        }
-        // request type
-        if (isResults) {
-            builder.setResults();
-        } else {
-            builder.setHits();
-        }
-        // max records and start position
-        builder.setMaxRecords(pSearchButons.getMaxRecs());
-        builder.setStartPosition(pSearchButons.getStartPos());
-        //add collections
+    /**
+     * Collects the search constraints currently set in the GUI.
+     *
+     * @return the search criteria
+     */
+    QueryCriteria buildCriteria() {
+        QueryCriteria criteria = new QueryCriteria();
+        // collections
         String[] colls = pCollections.getSelectedCollections();
         if (colls != null) {
-            if (colls.length == 1) {
-                builder.addCollection(colls[0]);
-            } else {
-                builder.addCollections(colls);
-            }
+            criteria.setCollections(colls);
         }
-        // add time constraints
+        // time constraints
         if (pTime.constraintsEnabled()) {
-            switch (pTime.getOperator()) {
-                case 0:
-                    builder.addTemporalContained(pTime.getT1(), pTime.getT2());
-                    break;
-                case 1:
-                    builder.addTemporalOverlaps(pTime.getT1(), pTime.getT2());
-                    break;
-                case 2:
-                    builder.addTemporalAfter(pTime.getT1());
-                    break;
-                case 3:
-                    builder.addTemporalBefore(pTime.getT1());
-                    break;
-            }
+            criteria.setTime(pTime.getOperator(), pTime.getT1(), pTime.getT2());
         }
-        // add spatial constraints
+        // spatial constraints
         if (pGeo.constraintsEnabled()) {
-            switch (pGeo.getPrimitive()) {
-                case 0:
-                    builder.addSpatialPolygon(pGeo.getOperator(), WWindUtils.latLonList2PosList(wwindPane.getAOICoordinates()));
+            final int primitive = pGeo.getPrimitive();
+            switch (primitive) {
+                case QueryCriteria.AOI_POLYGON:
+                case QueryCriteria.AOI_POLYLINE:
+                    final double[] coords = WWindUtils.latLonList2LatLonOrdinates(wwindPane.getAOICoordinates());
+                    criteria.setAoi(primitive, pGeo.getOperator(), coords, 0);
                     break;
-                case 1:
+                case QueryCriteria.AOI_CIRCLE:
                     LatLon c = wwindPane.getAOICenter();
-                    builder.addSpatialCircle(pGeo.getOperator(), c.latitude.degrees, c.longitude.degrees, wwindPane.getAOIRadius());
+                    criteria.setAoi(primitive, pGeo.getOperator(), new double[]{c.latitude.degrees, c.longitude.degrees},
+                            wwindPane.getAOIRadius());
                     break;
-                case 2:
-                    builder.addSpatialPolyline(pGeo.getOperator(), WWindUtils.latLonList2PosList(wwindPane.getAOICoordinates()));
-                    break;
-                case 3:
+                case QueryCriteria.AOI_POINT:
                     c = wwindPane.getAOICenter();
-                    builder.addSpatialPoint(pGeo.getOperator(), c.latitude.degrees, c.longitude.degrees);
+                    criteria.setAoi(primitive, pGeo.getOperator(), new double[]{c.latitude.degrees, c.longitude.degrees}, 0);
                     break;
-                case 4:
+                case QueryCriteria.AOI_RANGE:
                     //TODO support lat lon range AOI
-                    builder.addSpatialRange(pGeo.getOperator(), 0, 10, 0, 10);
+                    criteria.setAoi(primitive, pGeo.getOperator(), new double[]{0, 0, 10, 10}, 0);
                     break;
             }
         }
-        final GetRecordsDocument request = builder.getRequest();
-        return request;
+        return criteria;
+    }
+
+    GetRecordsDocument buildReq(boolean isResults) {
+        return buildWriter(isResults).toDocument();
+    }
+
+    /**
+     * Prepares the serializer of the GetRecords request for the search currently set in the GUI.
+     *
+     * @param isResults true for a RESULTS request, false for a HITS request
+     * @return the configured request writer
+     */
+    GetRecordsWriter buildWriter(boolean isResults) {
+        // collections, time and spatial constraints
+        GetRecordsWriter writer = new GetRecordsWriter(buildCriteria());
+        switch (pSearchButons.getDetail()) {
+            case 0:
+                writer.setDetail(GetRecordsWriter.DETAIL_BRIEF);
+                break;
+            case 1:
+                writer.setDetail(GetRecordsWriter.DETAIL_SUMMARY);
+                break;
+            case 2:
+                writer.setDetail(GetRecordsWriter.DETAIL_FULL);
+                break;
+        }
+        // request type
+        writer.setResults(isResults);
+        // max records and start position
+        writer.setMaxRecords(pSearchButons.getMaxRecs());
+        writer.setStartPosition(pSearchButons.getStartPos());
+        return writer;
     }
 
     void enableSearchButtons(boolean enabled) {
         pSearchButons.enableButtons(enabled);
+        searching = !enabled;
+    }
+
+    boolean isSearching() {
+        return searching;
+    }
+
+    /**
+     * Tells if the current constraints allow counting the hits in background.
+     *
+     * @return true if a catalogue and at least one collection are selected and searches are not answered locally
+     */
+    boolean canPrefetchHits() {
+        return getCurrentCatalogue() != null && pCollections.isCollectionSelected() && !pSearchButons.isOffline();
     }
 
     private void startWorker(boolean isResults) {
-        GetRecordsWorker grw = new GetRecordsWorker(this, stub, isResults, results);
+        GetRecordsWorker grw = new GetRecordsWorker(this, stub, isResults, pSearchButons.isAllPages(), pSearchButons.isOffline(),
+                results);
+        if (isResults) {
+            // let all pages be planned upfront if the hits have already been counted
+            grw.setKnownMatched(hitsPrefetcher.getHits(getCurrentCatalogue(), buildCriteria()));
+        }
+        searchWorker = grw;
         grw.execute();
     }
 
@@ -546,7 +772,17 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
             // store endpoint, timeout and soap flag
             catPref.put(PREFK_CAT_EDP, catDef.getEndpoint());
             catPref.putBoolean(PREFK_CAT_SOAPV12, catDef.isSoapV12());
+            catPref.putBoolean(PREFK_CAT_HTTPPOST, catDef.isHttpPost());
             catPref.putInt(PREFK_CAT_TIMEOUT, catDef.getTimeoutMillis());
+            catPref.putInt(PREFK_CAT_PARALLEL, catDef.getMaxParallelPages());
+            catPref.putInt(PREFK_CAT_CACHETTL, catDef.getCacheTtlMinutes());
+            catPref.putInt(PREFK_CAT_MAXCONN, catDef.getMaxConnections());
+            catPref.putBoolean(PREFK_CAT_GZIP, catDef.isCompression());
+            catPref.putInt(PREFK_CAT_RETRIES, catDef.getMaxRetries());
+            catPref.putBoolean(PREFK_CAT_HEDGING, catDef.isHedging());
+            catPref.putBoolean(PREFK_CAT_ARCHDATE, catDef.isArchivingDate());
+            catPref.putInt(PREFK_CAT_SHARDRECS, catDef.getShardRecords());
+            catPref.put(PREFK_CAT_PAGEPROFILE, catDef.getPageProfile().save());
             // store collections as space separated string
             StringBuilder sb = new StringBuilder();
             final int arrLen = catDef.getCollections().length;
@@ -558,6 +794,16 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
             }
             catPref.put(PREFK_CAT_COLLECTIONS, sb.toString());
         }
+        // save searches, replacing the deleted ones
+        try {
+            baseNode.node(PREFN_SAVEDSEARCHES).removeNode();
+        } catch (BackingStoreException ex) {
+            logger.warn("Could not clear saved searches: {}", ex.getMessage());
+        }
+        Preferences pSaved = baseNode.node(PREFN_SAVEDSEARCHES);
+        for (SavedSearch ss : savedSearches) {
+            ss.store(pSaved.node(ss.getName()));
+        }
         // store dialogs size/positions
         if (gridDialog != null) {
             gridDialog.storePrefs(baseNode);
@@ -583,9 +829,28 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
                 CatalogueDefinition catDef = new CatalogueDefinition(nodeName, catPref.get(PREFK_CAT_EDP, "n/a"), catPref.getBoolean(
                         PREFK_CAT_SOAPV12,
                         false), catPref.getInt(PREFK_CAT_TIMEOUT, 20000));
+                catDef.setHttpPost(catPref.getBoolean(PREFK_CAT_HTTPPOST, false));
+                catDef.setMaxParallelPages(catPref.getInt(PREFK_CAT_PARALLEL, CatalogueDefinition.DEFAULT_PARALLEL_PAGES));
+                catDef.setCacheTtlMinutes(catPref.getInt(PREFK_CAT_CACHETTL, CatalogueDefinition.DEFAULT_CACHE_TTL_MINUTES));
+                catDef.setMaxConnections(catPref.getInt(PREFK_CAT_MAXCONN, CatalogueDefinition.DEFAULT_MAX_CONNECTIONS));
+                catDef.setCompression(catPref.getBoolean(PREFK_CAT_GZIP, true));
+                catDef.setMaxRetries(catPref.getInt(PREFK_CAT_RETRIES, CatalogueDefinition.DEFAULT_MAX_RETRIES));
+                catDef.setHedging(catPref.getBoolean(PREFK_CAT_HEDGING, false));
+                catDef.setArchivingDate(catPref.getBoolean(PREFK_CAT_ARCHDATE, true));
+                catDef.setShardRecords(catPref.getInt(PREFK_CAT_SHARDRECS, 0));
+                catDef.getPageProfile().restore(catPref.get(PREFK_CAT_PAGEPROFILE, ""));
                 catDef.setCollections(catPref.get(PREFK_CAT_COLLECTIONS, "").split("\\s"));
                 dcmCatalogues.addElement(catDef);
             }
+            // load saved searches
+            Preferences pSaved = baseNode.node(PREFN_SAVEDSEARCHES);
+            for (String nodeName : pSaved.childrenNames()) {
+                try {
+                    savedSearches.add(SavedSearch.load(pSaved.node(nodeName)));
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+                    logger.warn("Skipping invalid saved search {}: {}", nodeName, ex.toString());
+                }
+            }
         } catch (BackingStoreException ex) {
             // no prefs, do nothing
         }
@@ -650,6 +915,7 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
         HashMap<String, SurfShapesLayer> layerMap = new HashMap<>();
         // prepare and categorize the footprints
         ArrayList<String> prodIds = new ArrayList<>(results.size());
+        ArrayList<Metadata> shown = new ArrayList<>(results.size());
         for (Metadata md : results) {
             if (md.containsKey(PRODUCT_IDENTIFIER) && md.containsKey(PARENT_IDENTIFIER) && md.containsKey(FOOTPRINT)) {
                 String pid = md.get(PRODUCT_IDENTIFIER);
@@ -667,7 +933,12 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
                         public void propertyChange(PropertyChangeEvent evt) {
                             String shpId = (String) evt.getNewValue();
                             String coll = ((Layer) evt.getSource()).getName();
-                            gridDialog.selectRow(coll, shpId);
+                            Metadata picked = nextCovering(coll, shpId != null ? shpId : (String) evt.getOldValue());
+                            if (picked != null) {
+                                gridDialog.selectRow(picked.get(PARENT_IDENTIFIER), picked.get(PRODUCT_IDENTIFIER));
+                            } else {
+                                gridDialog.selectRow(coll, shpId);
+                            }
                         }
                     });
                     wwindPane.addSurfShapeLayer(ssl);
@@ -675,8 +946,17 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
                 }
                 // add a polygon to the layer
                 ssl.addSurfPoly(WWindUtils.latLonOrdinates2LatLonList(md.getFootprintAsDoubles()), pid);
+                shown.add(md);
             }
         }
+        // index the shown footprints and their sensing times
+        footprintIndex = FootprintIndex.build(shown);
+        pickedCovering = null;
+        sensingIndex = SensingIndex.build(shown);
+        acquiredShown = Collections.emptyList();
+        if (pTime.isDayNightShown()) {
+            showAcquiredAt(pTime.getT1());
+        }
         for (Map.Entry<String, SurfShapesLayer> en : layerMap.entrySet()) {
             logger.info("Collection {} recs {}", en.getKey(), en.getValue().getNumShapes());
         }
@@ -695,4 +975,88 @@ public class MainWindow extends javax.swing.JFrame implements PrefRestorable {
         // clear the detail dialog
         detailDialog.setMetadata(null);
     }
+
+    /**
+     * Gives the result to select for a click on a footprint.
+     * <p>
+     * Only the topmost footprint can be picked on the globe, repeated clicks on a spot covered by several footprints cycle through
+     * all of them starting from the clicked one.
+     *
+     * @param coll the collection of the clicked footprint
+     * @param prodId the product identifier of the clicked footprint
+     * @return the result to select or null if the clicked spot is covered by a single footprint
+     */
+    private Metadata nextCovering(String coll, String prodId) {
+        final Position pos = wwindPane.getWWCanvas().getCurrentPosition();
+        if (footprintIndex == null || pos == null) {
+            return null;
+        }
+        final List<Metadata> covering = footprintIndex.containing(pos.latitude.degrees, pos.longitude.degrees);
+        if (covering.size() < 2) {
+            pickedCovering = null;
+            return null;
+        }
+        if (sameRecords(covering, pickedCovering)) {
+            pickedIdx = (pickedIdx + 1) % covering.size();
+        } else {
+            pickedCovering = covering;
+            pickedIdx = 0;
+            for (int i = 0; i < covering.size(); i++) {
+                final Metadata m = covering.get(i);
+                if (m.get(PRODUCT_IDENTIFIER).equals(prodId) && m.get(PARENT_IDENTIFIER).equals(coll)) {
+                    pickedIdx = i;
+                    break;
+                }
+            }
+        }
+        return covering.get(pickedIdx);
+    }
+
+    /**
+     * Colors the footprints of the results acquired around the given time, restoring the footprints previously colored.
+     * <p>
+     * Acquisitions are looked up in the {@link SensingIndex} so that following the night and day layer time does not scan all the
+     * results on every change.
+     *
+     * @param time the time, null to restore all footprints
+     */
+    private void showAcquiredAt(Date time) {
+        for (Metadata m : acquiredShown) {
+            final SurfShapeLayer ssl = wwindPane.getSurfShapeLayer(m.get(PARENT_IDENTIFIER));
+            try {
+                if (ssl != null) {
+                    ssl.resetSurfShapeColor(m.get(PRODUCT_IDENTIFIER));
+                }
+            } catch (NoSuchShapeException ex) {
+                //ignored should not verify
+            }
+        }
+        acquiredShown = Collections.emptyList();
+        if (time != null && sensingIndex != null) {
+            acquiredShown = sensingIndex.overlapping(time.getTime() - ACQUIRED_WINDOW_MILLIS, time.getTime() + ACQUIRED_WINDOW_MILLIS);
+            for (Metadata m : acquiredShown) {
+                final SurfShapeLayer ssl = wwindPane.getSurfShapeLayer(m.get(PARENT_IDENTIFIER));
+                try {
+                    if (ssl != null) {
+                        ssl.setSurfShapeColor(m.get(PRODUCT_IDENTIFIER), ACQUIRED_COLOR, 1.0);
+                    }
+                } catch (NoSuchShapeException ex) {
+                    //ignored should not verify
+                }
+            }
+        }
+        wwindPane.redraw();
+    }
+
+    private static boolean sameRecords(List<Metadata> l1, List<Metadata> l2) {
+        if (l2 == null || l1.size() != l2.size()) {
+            return false;
+        }
+        for (int i = 0; i < l1.size(); i++) {
+            if (l1.get(i) != l2.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gui;
+
+import ca.odell.glazedlists.BasicEventList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+import main.App;
+import main.data.CatalogueDefinition;
+import main.data.Metadata;
+import main.data.MetadataStore;
+import main.data.QueryCriteria;
+import main.data.ResultTable;
+import main.data.SavedSearch;
+import main.hma.AbortableTransport;
+import main.hma.GetRecordsWriter;
+import main.hma.PageFetcher;
+import main.hma.PageGap;
+import main.hma.RecordsPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SwingWorker running a {@link SavedSearch} again.
+ * <p>
+ * Only the records changed since the last successful run are requested to the catalogue. They are merged in the local
+ * {@link MetadataStore}, then the result list is filled with all the stored records matching the saved search, the records not stored
+ * before this run flagged as new.
+ * <p>
+ * The run is recorded as successful only if all the pages were retrieved, the time recorded is the start of the run so that
+ * products made available while running are retrieved next time.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class SavedSearchWorker extends SwingWorker<Integer, String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SavedSearchWorker.class.getName());
+
+    private final MainWindow mw;
+    private final SavedSearch search;
+    private final CatalogueDefinition catDef;
+    private final BasicEventList<Metadata> results;
+    private final AbortableTransport transport = new AbortableTransport();
+    private int newRecords = 0;
+    private int failedPages = 0;
+
+    public SavedSearchWorker(MainWindow mw, SavedSearch search, CatalogueDefinition catDef, BasicEventList<Metadata> resultList) {
+        this.mw = mw;
+        this.search = search;
+        this.catDef = catDef;
+        this.results = resultList;
+    }
+
+    /**
+     * Cancels the run aborting the requests in progress, the last run time is not updated.
+     * <p>
+     * Can be called from any thread.
+     */
+    public void abort() {
+        logger.info("Cancelling saved search {}", search.getName());
+        cancel(true);
+        transport.abort();
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        final MetadataStore store = App.getMetadataStore();
+        if (store == null) {
+            throw new IllegalStateException("Local metadata store not available");
+        }
+        final Date runStart = new Date();
+        final QueryCriteria delta = search.deltaCriteria(catDef.isArchivingDate());
+        logger.info("Running saved search {} with {}", search.getName(), delta);
+        // detail and page size from the search panel
+        final GetRecordsWriter writer = mw.buildWriter(true).withCriteria(delta);
+        final int pageSize = writer.getMaxRecords();
+        final List<Metadata> fetched = new ArrayList<>();
+        PageFetcher fetcher = new PageFetcher(catDef, writer.toDocument(1, pageSize));
+        fetcher.setResponseCache(App.getResponseCache());
+        fetcher.setTransport(transport);
+        try {
+            publish(search.getLastRun() != null ? "Requesting changes since last run..." : "Requesting all records...");
+            final RecordsPage first = fetcher.fetchPage(1, pageSize);
+            fetched.addAll(first.getRecords());
+            final int matched = first.getMatched();
+            fetcher.fetchRemaining(first, new PageFetcher.PageListener() {
+                @Override
+                public void pageFetched(RecordsPage page) {
+                    fetched.addAll(page.getRecords());
+                    publish(String.format("Retrieved %d of %d records...", fetched.size(), matched));
+                }
+
+                @Override
+                public void pageFailed(PageGap gap) {
+                    publish(String.format("Retrieved %d of %d records, missing %s...", fetched.size(), matched, gap));
+                }
+            });
+            failedPages = fetcher.getGaps().size();
+        } finally {
+            fetcher.shutdown();
+            transport.release();
+        }
+        if (isCancelled()) {
+            return 0;
+        }
+        // flag and store the records never seen before
+        final Set<String> known = store.knownKeys(catDef.getEndpoint(), fetched);
+        final Set<String> fresh = new HashSet<>();
+        for (Metadata m : fetched) {
+            if (!known.contains(m.getProductKey())) {
+                fresh.add(m.getProductKey());
+            }
+        }
+        newRecords = fresh.size();
+        store.save(catDef.getEndpoint(), fetched);
+        // show the whole stored result set of the search
+        publish("Reading stored records...");
+        final List<Metadata> all = store.query(catDef.getEndpoint(), search.getCriteria(), 0, 0);
+        for (Metadata m : all) {
+            m.setNewRecord(fresh.contains(m.getProductKey()));
+        }
+        new ResultTable().addAll(all);
+        boolean replaced = false;
+        results.getReadWriteLock().writeLock().lock();
+        try {
+            // once cancelled the list may already be filled by another search
+            if (!isCancelled()) {
+                results.clear();
+                results.addAll(all);
+                replaced = true;
+            }
+        } finally {
+            results.getReadWriteLock().writeLock().unlock();
+        }
+        if (!replaced) {
+            return 0;
+        }
+        if (failedPages == 0) {
+            search.setLastRun(runStart);
+        } else {
+            logger.warn("Saved search {} missed {} pages, last run time not updated", search.getName(), failedPages);
+        }
+        logger.info("Saved search {} retrieved {} records, {} new, {} stored", search.getName(), fetched.size(), newRecords, all.size());
+        publish("Done");
+        return all.size();
+    }
+
+    @Override
+    protected void process(List<String> chunks) {
+        if (!isCancelled()) {
+            mw.lMexs.setText(chunks.get(chunks.size() - 1));
+        }
+    }
+
+    @Override
+    protected void done() {
+        try {
+            final Integer records = this.get();
+            String msg = String.format("%s: %d records, %d new", search.getName(), records, newRecords);
+            if (failedPages > 0) {
+                msg += String.format(", %d pages failed", failedPages);
+            }
+            mw.lMexs.setText(msg);
+        } catch (ExecutionException ex) {
+            mw.showErrorDialog("Unexpected error", String.format("Could not run saved search %s!", search.getName()), ex);
+            logger.error("Could not run saved search", ex);
+            mw.lMexs.setText("No record retrieved");
+        } catch (CancellationException cex) {
+            logger.info("Saved search {} cancelled", search.getName());
+            mw.lMexs.setText("Saved search cancelled");
+        } catch (InterruptedException iex) {
+            // ignored, done is not called before completion
+        } finally {
+            mw.enableSearchButtons(true);
+            mw.postResults();
+        }
+    }
+}
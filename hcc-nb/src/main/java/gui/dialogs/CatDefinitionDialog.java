@@ -25,6 +25,7 @@ import net.opengis.www.cat.wrs._1_0.CatalogueStub;
 public class CatDefinitionDialog extends javax.swing.JDialog {
 
     private boolean okPressed = false;
+    private CatalogueDefinition otherDef = null;
 
     public CatDefinitionDialog(java.awt.Frame parent) {
         super(parent, true);
@@ -34,9 +35,20 @@ public class CatDefinitionDialog extends javax.swing.JDialog {
 
     public CatDefinitionDialog(java.awt.Frame parent, CatalogueDefinition otherDef) {
         this(parent);
+        this.otherDef = otherDef;
         txName.setText(otherDef.getName());
         txEDP.setText(otherDef.getEndpoint());
         cbSoapVer.setSelectedIndex(otherDef.isSoapV12() ? 1 : 0);
+        chHttpPost.setSelected(otherDef.isHttpPost());
+        cbSoapVer.setEnabled(!otherDef.isHttpPost());
+        spParallel.setValue(otherDef.getMaxParallelPages());
+        spCacheTtl.setValue(otherDef.getCacheTtlMinutes());
+        spMaxConns.setValue(otherDef.getMaxConnections());
+        chCompression.setSelected(otherDef.isCompression());
+        spRetries.setValue(otherDef.getMaxRetries());
+        chHedging.setSelected(otherDef.isHedging());
+        chArchDate.setSelected(otherDef.isArchivingDate());
+        spShardRecs.setValue(otherDef.getShardRecords());
         pColls.setCollections(otherDef.getCollections());
     }
 
@@ -46,7 +58,20 @@ public class CatDefinitionDialog extends javax.swing.JDialog {
 
     public CatalogueDefinition getDefinedCatalogue() {
         final CatalogueDefinition newCat = new CatalogueDefinition(txName.getText(), txEDP.getText(), cbSoapVer.getSelectedIndex() == 1, (int) spTimeout.getValue());
+        newCat.setHttpPost(chHttpPost.isSelected());
+        newCat.setMaxParallelPages((int) spParallel.getValue());
+        newCat.setCacheTtlMinutes((int) spCacheTtl.getValue());
+        newCat.setMaxConnections((int) spMaxConns.getValue());
+        newCat.setCompression(chCompression.isSelected());
+        newCat.setMaxRetries((int) spRetries.getValue());
+        newCat.setHedging(chHedging.isSelected());
+        newCat.setArchivingDate(chArchDate.isSelected());
+        newCat.setShardRecords((int) spShardRecs.getValue());
         newCat.setCollections(pColls.getCollections());
+        if (otherDef != null && otherDef.getEndpoint().equals(newCat.getEndpoint())) {
+            // keep what was learned on the same endpoint
+            newCat.setPageProfile(otherDef.getPageProfile());
+        }
         return newCat;
     }
 
@@ -74,6 +99,23 @@ public class CatDefinitionDialog extends javax.swing.JDialog {
         jLabel4 = new javax.swing.JLabel();
         spTimeout = new javax.swing.JSpinner();
         jLabel5 = new javax.swing.JLabel();
+        jLabel6 = new javax.swing.JLabel();
+        spParallel = new javax.swing.JSpinner();
+        jLabel7 = new javax.swing.JLabel();
+        jLabel8 = new javax.swing.JLabel();
+        spCacheTtl = new javax.swing.JSpinner();
+        jLabel9 = new javax.swing.JLabel();
+        jLabel10 = new javax.swing.JLabel();
+        spMaxConns = new javax.swing.JSpinner();
+        chCompression = new javax.swing.JCheckBox();
+        chHttpPost = new javax.swing.JCheckBox();
+        jLabel11 = new javax.swing.JLabel();
+        spRetries = new javax.swing.JSpinner();
+        chHedging = new javax.swing.JCheckBox();
+        jLabel12 = new javax.swing.JLabel();
+        spShardRecs = new javax.swing.JSpinner();
+        jLabel13 = new javax.swing.JLabel();
+        chArchDate = new javax.swing.JCheckBox();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
         setTitle("New Catalogue Definition");
@@ -107,6 +149,56 @@ public class CatDefinitionDialog extends javax.swing.JDialog {
 
         jLabel5.setText("ms");
 
+        jLabel6.setText("Parallel");
+
+        spParallel.setModel(new javax.swing.SpinnerNumberModel(2, 1, 16, 1));
+        spParallel.setToolTipText("Maximum number of result pages requested at the same time");
+
+        jLabel7.setText("pages");
+
+        jLabel8.setText("Cache");
+
+        spCacheTtl.setModel(new javax.swing.SpinnerNumberModel(0, 0, 1440, 5));
+        spCacheTtl.setToolTipText("How long responses are reused for identical requests (0 disables caching)");
+
+        jLabel9.setText("minutes");
+
+        jLabel10.setText("Connections");
+
+        spMaxConns.setModel(new javax.swing.SpinnerNumberModel(4, 1, 32, 1));
+        spMaxConns.setToolTipText("Maximum number of connections kept open to the catalogue host");
+
+        chCompression.setSelected(true);
+        chCompression.setText("Compressed responses");
+        chCompression.setToolTipText("Ask the catalogue for gzip compressed responses");
+
+        chHttpPost.setText("Plain HTTP POST");
+        chHttpPost.setToolTipText("Search by posting CSW requests without SOAP envelope");
+        chHttpPost.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                chHttpPostActionPerformed(evt);
+            }
+        });
+
+        jLabel11.setText("Retries");
+
+        spRetries.setModel(new javax.swing.SpinnerNumberModel(2, 0, 5, 1));
+        spRetries.setToolTipText("How many times a failed result page is requested again");
+
+        chHedging.setText("Hedge slow pages");
+        chHedging.setToolTipText("Request again result pages taking much longer than usual and keep the first response");
+
+        jLabel12.setText("Shards");
+
+        spShardRecs.setModel(new javax.swing.SpinnerNumberModel(0, 0, 1000000, 500));
+        spShardRecs.setToolTipText("Split searches of all pages matching more records than this in time windows or tiles (0 never splits)");
+
+        jLabel13.setText("records");
+
+        chArchDate.setSelected(true);
+        chArchDate.setText("Archiving date queries");
+        chArchDate.setToolTipText("The catalogue can restrict on the archiving date, saved searches otherwise get changes by sensing time");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -119,18 +211,48 @@ public class CatDefinitionDialog extends javax.swing.JDialog {
                             .addComponent(jLabel2)
                             .addComponent(jLabel3, javax.swing.GroupLayout.Alignment.TRAILING)
                             .addComponent(jLabel1, javax.swing.GroupLayout.Alignment.TRAILING)
-                            .addComponent(jLabel4, javax.swing.GroupLayout.Alignment.TRAILING))
+                            .addComponent(jLabel4, javax.swing.GroupLayout.Alignment.TRAILING)
+                            .addComponent(jLabel6, javax.swing.GroupLayout.Alignment.TRAILING)
+                            .addComponent(jLabel8, javax.swing.GroupLayout.Alignment.TRAILING)
+                            .addComponent(jLabel10, javax.swing.GroupLayout.Alignment.TRAILING)
+                            .addComponent(jLabel11, javax.swing.GroupLayout.Alignment.TRAILING)
+                            .addComponent(jLabel12, javax.swing.GroupLayout.Alignment.TRAILING))
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(txEDP)
                             .addGroup(layout.createSequentialGroup()
                                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                                    .addComponent(cbSoapVer, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(cbSoapVer, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                                        .addComponent(chHttpPost))
                                     .addComponent(txName, javax.swing.GroupLayout.PREFERRED_SIZE, 130, javax.swing.GroupLayout.PREFERRED_SIZE)
                                     .addGroup(layout.createSequentialGroup()
                                         .addComponent(spTimeout, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
                                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                                        .addComponent(jLabel5)))
+                                        .addComponent(jLabel5))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(spParallel, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(jLabel7))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(spCacheTtl, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(jLabel9))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(spMaxConns, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                                        .addComponent(chCompression))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(spRetries, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                                        .addComponent(chHedging))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(spShardRecs, javax.swing.GroupLayout.PREFERRED_SIZE, 75, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(jLabel13)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                                        .addComponent(chArchDate)))
                                 .addGap(0, 121, Short.MAX_VALUE))))
                     .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, layout.createSequentialGroup()
                         .addGap(0, 0, Short.MAX_VALUE)
@@ -157,13 +279,40 @@ public class CatDefinitionDialog extends javax.swing.JDialog {
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jLabel3)
-                    .addComponent(cbSoapVer, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(cbSoapVer, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(chHttpPost))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jLabel4)
                     .addComponent(spTimeout, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(jLabel5))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel6)
+                    .addComponent(spParallel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel7))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel8)
+                    .addComponent(spCacheTtl, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel9))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel10)
+                    .addComponent(spMaxConns, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(chCompression))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel11)
+                    .addComponent(spRetries, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(chHedging))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel12)
+                    .addComponent(spShardRecs, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jLabel13)
+                    .addComponent(chArchDate))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(pColls, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .addGap(18, 18, 18)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -184,16 +333,38 @@ public class CatDefinitionDialog extends javax.swing.JDialog {
         setVisible(false);
     }//GEN-LAST:event_bCancelActionPerformed
 
+    private void chHttpPostActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_chHttpPostActionPerformed
+        // the SOAP version is meaningless for the plain POST binding
+        cbSoapVer.setEnabled(!chHttpPost.isSelected());
+    }//GEN-LAST:event_chHttpPostActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton bCancel;
     private javax.swing.JButton bOk;
     private javax.swing.JComboBox cbSoapVer;
+    private javax.swing.JCheckBox chArchDate;
+    private javax.swing.JCheckBox chCompression;
+    private javax.swing.JCheckBox chHedging;
+    private javax.swing.JCheckBox chHttpPost;
     private javax.swing.JLabel jLabel1;
+    private javax.swing.JLabel jLabel10;
+    private javax.swing.JLabel jLabel11;
+    private javax.swing.JLabel jLabel12;
+    private javax.swing.JLabel jLabel13;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
     private javax.swing.JLabel jLabel5;
+    private javax.swing.JLabel jLabel6;
+    private javax.swing.JLabel jLabel7;
+    private javax.swing.JLabel jLabel8;
+    private javax.swing.JLabel jLabel9;
     private gui.panels.CollectionsPanel pColls;
+    private javax.swing.JSpinner spCacheTtl;
+    private javax.swing.JSpinner spMaxConns;
+    private javax.swing.JSpinner spParallel;
+    private javax.swing.JSpinner spRetries;
+    private javax.swing.JSpinner spShardRecs;
     private javax.swing.JSpinner spTimeout;
     private javax.swing.JTextField txEDP;
     private javax.swing.JTextField txName;
@@ -16,18 +16,27 @@
 package gui.dialogs;
 
 import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.GlazedLists;
 import ca.odell.glazedlists.SortedList;
 import ca.odell.glazedlists.swing.AdvancedListSelectionModel;
 import ca.odell.glazedlists.swing.AdvancedTableModel;
 import ca.odell.glazedlists.swing.GlazedListsSwing;
 import gui.glazed.MetadataTableFormat;
 import gui.glazed.MetadataTableFormatFactory;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.prefs.Preferences;
+import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.table.DefaultTableCellRenderer;
 import main.data.Metadata;
+import main.data.MetadataComparators;
 import main.data.MetadataNames;
 import net.falappa.prefs.PrefRestorable;
 import net.falappa.swing.table.TableColumnAdjuster;
@@ -35,6 +44,9 @@ import net.falappa.utils.GuiUtils;
 
 /**
  * Modeless dialog displaying a tabular view of some of the queryed metadata.
+ * <p>
+ * Clicking a column header sorts the rows on the attribute of the column, clicking it again reverses the order. Dates and numbers
+ * are sorted on their decoded values.
  *
  * @author Alessandro Falappa <alex.falappa@gmail.com>
  */
@@ -47,6 +59,10 @@ public class MetadataGridDialog extends javax.swing.JDialog implements PrefResto
     private AdvancedListSelectionModel<Metadata> selModel;
     private final TableColumnAdjuster adjuster;
     private AdvancedTableModel<Metadata> tblModel;
+    private MetadataTableFormat tableFormat;
+    // model index of the sorting column, -1 for the natural order
+    private int sortColumn = -1;
+    private boolean sortAscending = true;
 
     /**
      * Constructor.
@@ -57,6 +73,27 @@ public class MetadataGridDialog extends javax.swing.JDialog implements PrefResto
         super(parent, false);
         initComponents();
         adjuster = new TableColumnAdjuster(tblMetadata);
+        // records new since the last run of a saved search are shown in bold
+        tblMetadata.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row,
+                    int column) {
+                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                if (sortedList != null && row < sortedList.size() && sortedList.get(row).isNewRecord()) {
+                    c.setFont(c.getFont().deriveFont(Font.BOLD));
+                }
+                return c;
+            }
+        });
+        tblMetadata.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                final int col = tblMetadata.columnAtPoint(e.getPoint());
+                if (col >= 0 && sortedList != null) {
+                    sortBy(tblMetadata.convertColumnIndexToModel(col));
+                }
+            }
+        });
     }
 
     /**
@@ -74,8 +111,9 @@ public class MetadataGridDialog extends javax.swing.JDialog implements PrefResto
         selModel = GlazedListsSwing.eventSelectionModel(sortedList);
         selModel.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         tblMetadata.setSelectionModel(selModel);
-        final MetadataTableFormat mtf = MetadataTableFormatFactory.createMinimalTableFormat();
-        tblModel = GlazedListsSwing.eventTableModelWithThreadProxyList(sortedList, mtf);
+        sortColumn = -1;
+        tableFormat = MetadataTableFormatFactory.createMinimalTableFormat();
+        tblModel = GlazedListsSwing.eventTableModelWithThreadProxyList(sortedList, tableFormat);
         tblMetadata.setModel(tblModel);
     }
 
@@ -115,12 +153,32 @@ public class MetadataGridDialog extends javax.swing.JDialog implements PrefResto
      */
     public void updateFinished() {
         if (!dataList.isEmpty()) {
-            final MetadataTableFormat mtf = MetadataTableFormatFactory.createTableFormat(dataList.get(0));
-            tblModel.setTableFormat(mtf);
+            // columns may change, back to the natural order
+            if (sortColumn >= 0) {
+                sortColumn = -1;
+                setComparator(GlazedLists.<Metadata>comparableComparator());
+            }
+            tableFormat = MetadataTableFormatFactory.createTableFormat(dataList.get(0));
+            tblModel.setTableFormat(tableFormat);
             adjuster.adjustColumns();
         }
     }
 
+    private void sortBy(int column) {
+        sortAscending = column != sortColumn || !sortAscending;
+        sortColumn = column;
+        setComparator(MetadataComparators.byAttribute(tableFormat.getColumnKey(column), sortAscending));
+    }
+
+    private void setComparator(Comparator<Metadata> comparator) {
+        dataList.getReadWriteLock().writeLock().lock();
+        try {
+            sortedList.setComparator(comparator);
+        } finally {
+            dataList.getReadWriteLock().writeLock().unlock();
+        }
+    }
+
     @Override
     public synchronized void addMouseListener(MouseListener l) {
         tblMetadata.addMouseListener(l);
@@ -141,7 +199,18 @@ public class MetadataGridDialog extends javax.swing.JDialog implements PrefResto
         Metadata m = new Metadata();
         m.put(MetadataNames.PRODUCT_IDENTIFIER, prodId);
         m.put(MetadataNames.PARENT_IDENTIFIER, coll);
-        int idx = Collections.binarySearch(sortedList, m);
+        int idx = -1;
+        if (sortColumn < 0) {
+            idx = Collections.binarySearch(sortedList, m);
+        } else {
+            // not in natural order
+            for (int i = 0; i < sortedList.size(); i++) {
+                if (sortedList.get(i).compareTo(m) == 0) {
+                    idx = i;
+                    break;
+                }
+            }
+        }
         if (idx >= 0) {
             tblMetadata.changeSelection(idx, 0, false, false);
         }
@@ -55,6 +55,10 @@ public class SettingsDialog extends javax.swing.JDialog {
         dsfReqsDir.setDir(new File(prefs.get(App.PREFK_DUMP_REQS_DIR, System.getProperty("user.home"))));
         chDumpRsps.setSelected(prefs.getBoolean(App.PREFK_DUMP_RESPS_FLAG, false));
         dsfRspsDir.setDir(new File(prefs.get(App.PREFK_DUMP_RESPS_DIR, System.getProperty("user.home"))));
+        // load cache bypass flag from prefs
+        chBypassCache.setSelected(prefs.getBoolean(App.PREFK_CACHE_BYPASS, false));
+        chPrefetchHits.setSelected(prefs.getBoolean(App.PREFK_PREFETCH_HITS, true));
+        chAdaptivePages.setSelected(prefs.getBoolean(App.PREFK_ADAPTIVE_PAGES, true));
     }
 
     /** This method is called from within the constructor to initialize the form. WARNING: Do NOT modify this code. The content of this
@@ -76,6 +80,10 @@ public class SettingsDialog extends javax.swing.JDialog {
         lDrsps = new javax.swing.JLabel();
         dsfRspsDir = new net.falappa.swing.text.DirSelectorField();
         dsfReqsDir = new net.falappa.swing.text.DirSelectorField();
+        chBypassCache = new javax.swing.JCheckBox();
+        bClearCache = new javax.swing.JButton();
+        chPrefetchHits = new javax.swing.JCheckBox();
+        chAdaptivePages = new javax.swing.JCheckBox();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
         setTitle("HCC Settings");
@@ -126,6 +134,22 @@ public class SettingsDialog extends javax.swing.JDialog {
 
         dsfReqsDir.setEnabled(false);
 
+        chBypassCache.setText("Bypass response cache");
+        chBypassCache.setToolTipText("Always send requests to the catalogue, responses are still cached");
+
+        bClearCache.setText("Clear cache");
+        bClearCache.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                bClearCacheActionPerformed(evt);
+            }
+        });
+
+        chPrefetchHits.setText("Count hits while editing the query");
+        chPrefetchHits.setToolTipText("Send a background HITS request when the search constraints change");
+
+        chAdaptivePages.setText("Adapt page size and parallel pages to the catalogue");
+        chAdaptivePages.setToolTipText("When retrieving all pages choose page size and concurrency from the throughput of past searches");
+
         javax.swing.GroupLayout contentPaneLayout = new javax.swing.GroupLayout(contentPane);
         contentPane.setLayout(contentPaneLayout);
         contentPaneLayout.setHorizontalGroup(
@@ -156,7 +180,13 @@ public class SettingsDialog extends javax.swing.JDialog {
                             .addGroup(contentPaneLayout.createSequentialGroup()
                                 .addComponent(lDreqs)
                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                                .addComponent(dsfReqsDir, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)))))
+                                .addComponent(dsfReqsDir, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))))
+                    .addGroup(contentPaneLayout.createSequentialGroup()
+                        .addComponent(chBypassCache)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(bClearCache))
+                    .addComponent(chPrefetchHits)
+                    .addComponent(chAdaptivePages))
                 .addContainerGap())
         );
 
@@ -183,6 +213,14 @@ public class SettingsDialog extends javax.swing.JDialog {
                 .addGroup(contentPaneLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(lDrsps)
                     .addComponent(dsfRspsDir, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addGroup(contentPaneLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(chBypassCache)
+                    .addComponent(bClearCache))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(chPrefetchHits)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(chAdaptivePages)
                 .addGap(18, 18, Short.MAX_VALUE)
                 .addGroup(contentPaneLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(bCancel)
@@ -205,6 +243,12 @@ public class SettingsDialog extends javax.swing.JDialog {
         prefs.put(App.PREFK_DUMP_REQS_DIR, dsfReqsDir.getDir().getAbsolutePath());
         prefs.putBoolean(App.PREFK_DUMP_RESPS_FLAG, chDumpRsps.isSelected());
         prefs.put(App.PREFK_DUMP_RESPS_DIR, dsfRspsDir.getDir().getAbsolutePath());
+        // store and apply cache bypass flag
+        prefs.putBoolean(App.PREFK_CACHE_BYPASS, chBypassCache.isSelected());
+        App.getResponseCache().setBypass(chBypassCache.isSelected());
+        prefs.putBoolean(App.PREFK_PREFETCH_HITS, chPrefetchHits.isSelected());
+        App.frame.setHitsPrefetch(chPrefetchHits.isSelected());
+        prefs.putBoolean(App.PREFK_ADAPTIVE_PAGES, chAdaptivePages.isSelected());
         setVisible(false);
     }//GEN-LAST:event_bOkActionPerformed
 
@@ -224,10 +268,18 @@ public class SettingsDialog extends javax.swing.JDialog {
         dsfRspsDir.setEnabled(flag);
     }//GEN-LAST:event_chDumpRspsItemStateChanged
 
+    private void bClearCacheActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bClearCacheActionPerformed
+        App.getResponseCache().clear();
+    }//GEN-LAST:event_bClearCacheActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton bCancel;
+    private javax.swing.JButton bClearCache;
     private javax.swing.JButton bOk;
     private javax.swing.JComboBox cbLF;
+    private javax.swing.JCheckBox chAdaptivePages;
+    private javax.swing.JCheckBox chBypassCache;
+    private javax.swing.JCheckBox chPrefetchHits;
     private javax.swing.JCheckBox chDumpReqs;
     private javax.swing.JCheckBox chDumpRsps;
     private javax.swing.JPanel contentPane;
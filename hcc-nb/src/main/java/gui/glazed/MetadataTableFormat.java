@@ -46,6 +46,16 @@ public class MetadataTableFormat implements TableFormat<Metadata> {
         return columnNames[column];
     }
 
+    /**
+     * Gives the attribute shown in a column.
+     *
+     * @param column the column index
+     * @return the attribute
+     */
+    public MetadataNames getColumnKey(int column) {
+        return columnKeys[column];
+    }
+
     @Override
     public Object getColumnValue(Metadata baseObject, int column) {
         return baseObject.get(columnKeys[column]);
@@ -29,6 +29,7 @@ import net.opengis.www.cat.wrs._1_0.CatalogueStub;
  */
 public class CollectionsPanel extends javax.swing.JPanel {
 
+    public static final String PROP_CRITERIA = "criteria";
     private final StringListTableModel ctm = new StringListTableModel();
     private CatalogueStub stub = null;
 
@@ -38,6 +39,9 @@ public class CollectionsPanel extends javax.swing.JPanel {
             @Override
             public void valueChanged(ListSelectionEvent e) {
                 bDel.setEnabled(tblColls.getSelectedRow() >= 0);
+                if (!e.getValueIsAdjusting()) {
+                    firePropertyChange(PROP_CRITERIA, null, null);
+                }
             }
         });
         // hack to preserve the space between the list and the panel border when the buttons are made invisible
@@ -23,11 +23,17 @@ import main.App;
 import net.falappa.wwind.widgets.WWindPanel;
 
 /**
+ * Panel to choose the spatial query constraint.
+ * <p>
+ * Changes to the constraint settings are notified as {@link #PROP_CRITERIA} property changes, the area of interest itself is drawn
+ * on the map and notified by the {@link WWindPanel}.
  *
  * @author Alessandro Falappa <alex.falappa@gmail.com>
  */
 public class GeoAreaPanel extends javax.swing.JPanel {
 
+    public static final String PROP_CRITERIA = "criteria";
+
     public GeoAreaPanel() {
         initComponents();
     }
@@ -55,6 +61,11 @@ public class GeoAreaPanel extends javax.swing.JPanel {
 
         cbOper.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Overlaps", "Contains", "Intersect", "Is contained" }));
         cbOper.setEnabled(false);
+        cbOper.addItemListener(new java.awt.event.ItemListener() {
+            public void itemStateChanged(java.awt.event.ItemEvent evt) {
+                cbOperItemStateChanged(evt);
+            }
+        });
 
         cbPrimitive.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Polygon", "Circle", "Line String", "Point", "Lat Lon Range" }));
         cbPrimitive.setEnabled(false);
@@ -143,6 +154,7 @@ public class GeoAreaPanel extends javax.swing.JPanel {
                 bDraw.setIcon(new javax.swing.ImageIcon(getClass().getResource("/gui/images_16x16/glyphicons_099_vector_path_all.png"))); // NOI18N
                 break;
         }
+        fireCriteriaChanged();
     }//GEN-LAST:event_cbPrimitiveItemStateChanged
 
     private void chGeoEnableItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_chGeoEnableItemStateChanged
@@ -151,6 +163,7 @@ public class GeoAreaPanel extends javax.swing.JPanel {
         cbPrimitive.setEnabled(flag);
         bDraw.setEnabled(flag);
         bCoords.setEnabled(flag);
+        fireCriteriaChanged();
     }//GEN-LAST:event_chGeoEnableItemStateChanged
 
     private void bDrawActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bDrawActionPerformed
@@ -223,6 +236,10 @@ public class GeoAreaPanel extends javax.swing.JPanel {
         }
     }//GEN-LAST:event_bCoordsActionPerformed
 
+    private void cbOperItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbOperItemStateChanged
+        fireCriteriaChanged();
+    }//GEN-LAST:event_cbOperItemStateChanged
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton bCoords;
     private javax.swing.JButton bDraw;
@@ -231,6 +248,10 @@ public class GeoAreaPanel extends javax.swing.JPanel {
     private javax.swing.JCheckBox chGeoEnable;
     // End of variables declaration//GEN-END:variables
 
+    private void fireCriteriaChanged() {
+        firePropertyChange(PROP_CRITERIA, null, null);
+    }
+
     public boolean constraintsEnabled() {
         return chGeoEnable.isSelected();
     }
@@ -47,6 +47,11 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
         bShowReq = new javax.swing.JButton();
         jLabel3 = new javax.swing.JLabel();
         cbDetail = new javax.swing.JComboBox();
+        chAllPages = new javax.swing.JCheckBox();
+        bFederated = new javax.swing.JButton();
+        chOffline = new javax.swing.JCheckBox();
+        bCancel = new javax.swing.JButton();
+        bSaved = new javax.swing.JButton();
 
         jLabel1.setText("Max");
 
@@ -85,6 +90,37 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
         cbDetail.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Brief", "Summary", "Full" }));
         cbDetail.setSelectedIndex(1);
 
+        chAllPages.setText("All pages");
+        chAllPages.setToolTipText("Retrieve all matching records page by page");
+
+        bFederated.setIcon(new javax.swing.ImageIcon(getClass().getResource("/gui/images_16x16/glyphicons_099_vector_path_all.png"))); // NOI18N
+        bFederated.setToolTipText("Search results on several catalogues");
+        bFederated.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                bFederatedActionPerformed(evt);
+            }
+        });
+
+        chOffline.setText("Offline");
+        chOffline.setToolTipText("Answer searches from the records stored locally");
+
+        bCancel.setIcon(new javax.swing.ImageIcon(getClass().getResource("/gui/images_16x16/glyphicons_197_remove.png"))); // NOI18N
+        bCancel.setToolTipText("Cancel the search keeping the records retrieved so far");
+        bCancel.setEnabled(false);
+        bCancel.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                bCancelActionPerformed(evt);
+            }
+        });
+
+        bSaved.setIcon(new javax.swing.ImageIcon(getClass().getResource("/gui/images_16x16/glyphicons_414_disk_save.png"))); // NOI18N
+        bSaved.setToolTipText("Saved searches, run again retrieving only what changed");
+        bSaved.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                bSavedActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -92,8 +128,11 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
             .addGroup(layout.createSequentialGroup()
                 .addContainerGap()
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, layout.createSequentialGroup()
-                        .addGap(0, 0, Short.MAX_VALUE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(chAllPages)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(chOffline)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                         .addComponent(jLabel3)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(cbDetail, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
@@ -108,7 +147,13 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
                         .addGap(0, 0, Short.MAX_VALUE))
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(bShowReq)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(bFederated)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(bSaved)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addComponent(bCancel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(bResults)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(bHits)))
@@ -130,6 +175,8 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
                     .addComponent(spStartPos, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(chAllPages)
+                    .addComponent(chOffline)
                     .addComponent(jLabel3)
                     .addComponent(cbDetail, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
@@ -137,6 +184,9 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
                     .addComponent(bHits)
                     .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                         .addComponent(bShowReq, javax.swing.GroupLayout.Alignment.TRAILING)
+                        .addComponent(bFederated, javax.swing.GroupLayout.Alignment.TRAILING)
+                        .addComponent(bSaved, javax.swing.GroupLayout.Alignment.TRAILING)
+                        .addComponent(bCancel, javax.swing.GroupLayout.Alignment.TRAILING)
                         .addComponent(bResults)))
                 .addContainerGap())
         );
@@ -150,6 +200,10 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
         App.frame.execResults();
     }//GEN-LAST:event_bResultsActionPerformed
 
+    private void bFederatedActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bFederatedActionPerformed
+        App.frame.execFederated();
+    }//GEN-LAST:event_bFederatedActionPerformed
+
     private void bShowReqActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bShowReqActionPerformed
         String reqText = App.frame.getReqText();
         if (reqText != null) {
@@ -162,11 +216,25 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
         }
     }//GEN-LAST:event_bShowReqActionPerformed
 
+    private void bCancelActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bCancelActionPerformed
+        bCancel.setEnabled(false);
+        App.frame.cancelSearch();
+    }//GEN-LAST:event_bCancelActionPerformed
+
+    private void bSavedActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bSavedActionPerformed
+        App.frame.execSavedSearches();
+    }//GEN-LAST:event_bSavedActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JButton bCancel;
+    private javax.swing.JButton bFederated;
     private javax.swing.JButton bHits;
     private javax.swing.JButton bResults;
+    private javax.swing.JButton bSaved;
     private javax.swing.JButton bShowReq;
     private javax.swing.JComboBox cbDetail;
+    private javax.swing.JCheckBox chAllPages;
+    private javax.swing.JCheckBox chOffline;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
@@ -177,6 +245,9 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
     public void enableButtons(boolean enabled) {
         bHits.setEnabled(enabled);
         bResults.setEnabled(enabled);
+        bFederated.setEnabled(enabled);
+        bSaved.setEnabled(enabled);
+        bCancel.setEnabled(!enabled);
     }
 
     public int getStartPos() {
@@ -190,4 +261,12 @@ public class SearchButtonsPanel extends javax.swing.JPanel {
     public int getDetail() {
         return cbDetail.getSelectedIndex();
     }
+
+    public boolean isAllPages() {
+        return chAllPages.isSelected();
+    }
+
+    public boolean isOffline() {
+        return chOffline.isSelected();
+    }
 }
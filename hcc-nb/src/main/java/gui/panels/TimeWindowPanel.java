@@ -17,6 +17,8 @@ package gui.panels;
 
 import com.toedter.calendar.JTextFieldDateEditor;
 import gov.nasa.worldwind.WorldWindow;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.Calendar;
@@ -36,6 +38,7 @@ import net.falappa.wwind.utils.ToggleVisibilityAction;
 public class TimeWindowPanel extends javax.swing.JPanel {
 
     public static final String PROP_DAYNIGHT = "daynight";
+    public static final String PROP_CRITERIA = "criteria";
     private NightDayLayer nightDayLayer;
     private WorldWindow wwd;
     private final PropertyChangeListener ndlUpd = new PropertyChangeListener() {
@@ -43,6 +46,7 @@ public class TimeWindowPanel extends javax.swing.JPanel {
         public void propertyChange(PropertyChangeEvent evt) {
             TimeWindowPanel.this.nightDayLayer.setTime(getT1());
             TimeWindowPanel.this.wwd.redraw();
+            fireDayNightChanged();
         }
     };
     private final ChangeListener ndlUpd2 = new ChangeListener() {
@@ -50,11 +54,29 @@ public class TimeWindowPanel extends javax.swing.JPanel {
         public void stateChanged(ChangeEvent e) {
             TimeWindowPanel.this.nightDayLayer.setTime(getT1());
             TimeWindowPanel.this.wwd.redraw();
+            fireDayNightChanged();
         }
     };
 
     public TimeWindowPanel() {
         initComponents();
+        // notify any change of the temporal constraint
+        final PropertyChangeListener dateListener = new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                fireCriteriaChanged();
+            }
+        };
+        jdcT1.addPropertyChangeListener("date", dateListener);
+        jdcT2.addPropertyChangeListener("date", dateListener);
+        final ChangeListener timeListener = new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                fireCriteriaChanged();
+            }
+        };
+        spT1Time.addChangeListener(timeListener);
+        spT2Time.addChangeListener(timeListener);
     }
 
     public void setNightDayLayer(NightDayLayer nightDayLayer, WorldWindow wwd) {
@@ -67,6 +89,12 @@ public class TimeWindowPanel extends javax.swing.JPanel {
             chDayNight.setAction(ndlVisibility);
             jdcT1.addPropertyChangeListener("date", ndlUpd);
             spT1Time.addChangeListener(ndlUpd2);
+            chDayNight.addItemListener(new ItemListener() {
+                @Override
+                public void itemStateChanged(ItemEvent e) {
+                    fireDayNightChanged();
+                }
+            });
         }
     }
     private ToggleVisibilityAction ndlVisibility;
@@ -198,6 +226,7 @@ public class TimeWindowPanel extends javax.swing.JPanel {
         cbOper.setEnabled(flag);
         enableT1(flag);
         enableT2(flag && cbOper.getSelectedIndex() < 2);
+        fireCriteriaChanged();
     }//GEN-LAST:event_chTimeEnabledActionPerformed
 
     private void enableT2(boolean flag) {
@@ -215,6 +244,7 @@ public class TimeWindowPanel extends javax.swing.JPanel {
 
     private void cbOperActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cbOperActionPerformed
         enableT2(cbOper.getSelectedIndex() < 2);
+        fireCriteriaChanged();
     }//GEN-LAST:event_cbOperActionPerformed
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -229,6 +259,26 @@ public class TimeWindowPanel extends javax.swing.JPanel {
     private javax.swing.JSpinner spT2Time;
     // End of variables declaration//GEN-END:variables
 
+    private void fireCriteriaChanged() {
+        firePropertyChange(PROP_CRITERIA, null, null);
+    }
+
+    /**
+     * Notifies the time shown by the night and day layer, null if the layer is hidden.
+     */
+    private void fireDayNightChanged() {
+        firePropertyChange(PROP_DAYNIGHT, null, isDayNightShown() ? getT1() : null);
+    }
+
+    /**
+     * Tells if the night and day layer is shown, at the time given by {@link #getT1()}.
+     *
+     * @return true if shown
+     */
+    public boolean isDayNightShown() {
+        return nightDayLayer != null && chDayNight.isSelected();
+    }
+
     public boolean constraintsEnabled() {
         return chTimeEnabled.isSelected();
     }
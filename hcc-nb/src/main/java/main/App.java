@@ -18,11 +18,14 @@ package main;
 import gui.MainWindow;
 import java.io.File;
 import java.io.IOException;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.prefs.Preferences;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
+import main.data.MetadataStore;
+import main.hma.ResponseCache;
 import net.falappa.utils.LogUtils;
 import net.falappa.wwind.widgets.WWindPanel;
 import org.apache.xmlbeans.XmlObject;
@@ -49,7 +52,13 @@ public class App {
     public static final String PREFK_DUMP_REQS_DIR = "dump-requests-dir";
     public static final String PREFK_DUMP_RESPS_FLAG = "dump-responses";
     public static final String PREFK_DUMP_RESPS_DIR = "dump-responses-dir";
+    public static final String PREFK_CACHE_BYPASS = "cache-bypass";
+    public static final String PREFK_PREFETCH_HITS = "prefetch-hits";
+    public static final String PREFK_ADAPTIVE_PAGES = "adaptive-pages";
     private static final Preferences prefs = Preferences.userRoot().node(PREFN_APP);
+    private static ResponseCache respCache;
+    private static MetadataStore mdStore;
+    private static boolean mdStoreFailed = false;
 
     /**
      * Main method.
@@ -91,6 +100,14 @@ public class App {
         }
     }
 
+    public static boolean isAdaptivePaging() {
+        return prefs.getBoolean(PREFK_ADAPTIVE_PAGES, true);
+    }
+
+    public static boolean isDumpingResponses() {
+        return prefs.getBoolean(PREFK_DUMP_RESPS_FLAG, false);
+    }
+
     public static synchronized void dumpResp(XmlObject req, boolean isResults) {
         if (prefs.getBoolean(PREFK_DUMP_RESPS_FLAG, false)) {
             try {
@@ -108,6 +125,57 @@ public class App {
         return prefs;
     }
 
+    /**
+     * Returns the GetRecords response cache, creating it on first use.
+     * <p>
+     * The on-disk tier lives in the {@code .hcc-cache} folder of the user home.
+     *
+     * @return the shared response cache
+     */
+    public static synchronized ResponseCache getResponseCache() {
+        if (respCache == null) {
+            File cacheDir = new File(System.getProperty("user.home"), ".hcc-cache");
+            respCache = new ResponseCache(cacheDir, ResponseCache.DEFAULT_MEMORY_BUDGET, ResponseCache.DEFAULT_DISK_BUDGET);
+            respCache.setBypass(prefs.getBoolean(PREFK_CACHE_BYPASS, false));
+            logger.debug("Response cache in {}", cacheDir.getAbsolutePath());
+        }
+        return respCache;
+    }
+
+    /**
+     * Returns the local metadata store, opening it on first use.
+     * <p>
+     * The store database lives in the {@code .hcc-metadata} file of the user home.
+     *
+     * @return the shared metadata store or null if it could not be opened
+     */
+    public static synchronized MetadataStore getMetadataStore() {
+        if (mdStore == null && !mdStoreFailed) {
+            final String dbPath = new File(System.getProperty("user.home"), ".hcc-metadata").getAbsolutePath();
+            try {
+                mdStore = new MetadataStore(dbPath);
+            } catch (SQLException ex) {
+                logger.error("Could not open metadata store: {}", ex.getMessage());
+                mdStoreFailed = true;
+            }
+        }
+        return mdStore;
+    }
+
+    /**
+     * Closes the local metadata store if it was opened.
+     */
+    public static synchronized void closeMetadataStore() {
+        if (mdStore != null) {
+            try {
+                mdStore.close();
+            } catch (SQLException ex) {
+                logger.warn("Could not close metadata store: {}", ex.getMessage());
+            }
+            mdStore = null;
+        }
+    }
+
     private static String genDumpFilePath(boolean isReq, boolean isResults) {
         StringBuilder sb = new StringBuilder();
         if (isReq) {
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.cli;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import main.data.CatalogueDefinition;
+import main.data.Metadata;
+import main.data.QueryCriteria;
+import main.hma.AbortableTransport;
+import main.hma.GetRecordsWriter;
+import main.hma.HttpTransports;
+import main.hma.PageFetcher;
+import main.hma.PageGap;
+import main.hma.RecordsPage;
+import net.falappa.utils.LogUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command line entry point running a single search without graphical interface.
+ * <p>
+ * Builds the same GetRecords request as the GUI, retrieves all pages with a {@link PageFetcher} and streams the records to standard
+ * output or to a file as CSV or GeoJSON while pages arrive. Neither Swing nor WorldWind are initialized. Intended for scripted and
+ * scheduled retrievals, run it with:
+ * <pre>
+ * java -cp hcc-nb.jar main.cli.BatchSearch [options] &lt;endpoint&gt; &lt;collection&gt;[,&lt;collection&gt;...]
+ * </pre>
+ * The exit status is 0 on success, 1 for invalid arguments, 2 if the search failed and 3 if some result pages could not be
+ * retrieved.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class BatchSearch {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchSearch.class.getName());
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_USAGE = 1;
+    public static final int EXIT_FAILED = 2;
+    public static final int EXIT_GAPS = 3;
+    private static final String USAGE = "Usage: BatchSearch [options] <endpoint> <collection>[,<collection>...]\n"
+            + "Options:\n"
+            + "  -from <time>       sensing time range start, yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss UTC\n"
+            + "  -to <time>         sensing time range end\n"
+            + "  -contained         products contained in the time range instead of overlapping it\n"
+            + "  -aoi <wkt>         area of interest as WKT POINT, LINESTRING or POLYGON (lon lat order)\n"
+            + "  -spatial <op>      overlaps (default), contains, intersects or within\n"
+            + "  -format <fmt>      csv (default) or geojson\n"
+            + "  -out <file>        output file, standard output if omitted\n"
+            + "  -detail <level>    brief, summary (default) or full\n"
+            + "  -page <n>          records per page (default 100)\n"
+            + "  -max <n>           maximum records to retrieve, 0 for all (default)\n"
+            + "  -parallel <n>      pages requested in parallel (default 2)\n"
+            + "  -timeout <s>       request timeout in seconds (default 60)\n"
+            + "  -soap12            use SOAP 1.2 instead of SOAP 1.1\n"
+            + "  -post              use plain HTTP POST instead of SOAP\n";
+    private final CatalogueDefinition catDef;
+    private final QueryCriteria criteria = new QueryCriteria();
+    private final AbortableTransport transport = new AbortableTransport();
+    private String format = RecordsOutput.FORMAT_CSV;
+    private String outFile = null;
+    private String detail = GetRecordsWriter.DETAIL_SUMMARY;
+    private int pageSize = 100;
+    private int maxRecords = 0;
+    private IOException writeFailure = null;
+
+    private BatchSearch(CatalogueDefinition catDef) {
+        this.catDef = catDef;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        LogUtils.silenceJUL();
+        final BatchSearch bs;
+        try {
+            bs = parseArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            System.exit(EXIT_USAGE);
+            return;
+        }
+        int status;
+        try {
+            status = bs.run();
+        } catch (Exception ex) {
+            logger.error("Search failed", ex);
+            System.err.println("Search failed: " + ex.getMessage());
+            status = EXIT_FAILED;
+        } finally {
+            HttpTransports.shutdown();
+        }
+        System.exit(status);
+    }
+
+    static BatchSearch parseArgs(String[] args) {
+        String endpoint = null;
+        String colls = null;
+        Date from = null;
+        Date to = null;
+        boolean contained = false;
+        String wkt = null;
+        int spatialOp = QueryCriteria.SPATIAL_OVERLAPS;
+        int parallel = CatalogueDefinition.DEFAULT_PARALLEL_PAGES;
+        int timeoutSecs = 60;
+        boolean soap12 = false;
+        boolean post = false;
+        String format = RecordsOutput.FORMAT_CSV;
+        String outFile = null;
+        String detail = GetRecordsWriter.DETAIL_SUMMARY;
+        int pageSize = 100;
+        int maxRecs = 0;
+        for (int i = 0; i < args.length; i++) {
+            final String a = args[i];
+            switch (a) {
+                case "-from":
+                    from = parseTime(value(args, ++i, a));
+                    break;
+                case "-to":
+                    to = parseTime(value(args, ++i, a));
+                    break;
+                case "-contained":
+                    contained = true;
+                    break;
+                case "-aoi":
+                    wkt = value(args, ++i, a);
+                    break;
+                case "-spatial":
+                    spatialOp = parseSpatialOperator(value(args, ++i, a));
+                    break;
+                case "-format":
+                    format = value(args, ++i, a);
+                    break;
+                case "-out":
+                    outFile = value(args, ++i, a);
+                    break;
+                case "-detail":
+                    detail = value(args, ++i, a).toLowerCase(Locale.ENGLISH);
+                    break;
+                case "-page":
+                    pageSize = parsePositive(value(args, ++i, a), a);
+                    break;
+                case "-max":
+                    maxRecs = parseInt(value(args, ++i, a), a);
+                    break;
+                case "-parallel":
+                    parallel = parsePositive(value(args, ++i, a), a);
+                    break;
+                case "-timeout":
+                    timeoutSecs = parsePositive(value(args, ++i, a), a);
+                    break;
+                case "-soap12":
+                    soap12 = true;
+                    break;
+                case "-post":
+                    post = true;
+                    break;
+                default:
+                    if (a.startsWith("-")) {
+                        throw new IllegalArgumentException("Unknown option " + a);
+                    } else if (endpoint == null) {
+                        endpoint = a;
+                    } else if (colls == null) {
+                        colls = a;
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument " + a);
+                    }
+            }
+        }
+        if (endpoint == null || colls == null) {
+            throw new IllegalArgumentException("Endpoint and collections are required");
+        }
+        if (!format.equalsIgnoreCase(RecordsOutput.FORMAT_CSV) && !format.equalsIgnoreCase(RecordsOutput.FORMAT_GEOJSON)) {
+            throw new IllegalArgumentException("Unknown output format " + format);
+        }
+        if (!detail.equals(GetRecordsWriter.DETAIL_BRIEF) && !detail.equals(GetRecordsWriter.DETAIL_SUMMARY)
+                && !detail.equals(GetRecordsWriter.DETAIL_FULL)) {
+            throw new IllegalArgumentException("Unknown detail level " + detail);
+        }
+        CatalogueDefinition catDef = new CatalogueDefinition("batch", endpoint, soap12, timeoutSecs * 1000);
+        catDef.setHttpPost(post);
+        catDef.setMaxParallelPages(parallel);
+        // no reuse of responses between runs
+        catDef.setCacheTtlMinutes(0);
+        BatchSearch bs = new BatchSearch(catDef);
+        bs.criteria.setCollections(colls.split(","));
+        if (from != null && to != null) {
+            if (to.before(from)) {
+                throw new IllegalArgumentException("Time range end before start");
+            }
+            bs.criteria.setTime(contained ? QueryCriteria.TIME_CONTAINED : QueryCriteria.TIME_OVERLAPS, from, to);
+        } else if (from != null) {
+            bs.criteria.setTime(QueryCriteria.TIME_AFTER, from, null);
+        } else if (to != null) {
+            bs.criteria.setTime(QueryCriteria.TIME_BEFORE, to, null);
+        }
+        if (wkt != null) {
+            WktAoi.applyTo(bs.criteria, wkt, spatialOp);
+        }
+        bs.format = format;
+        bs.outFile = outFile;
+        bs.detail = detail;
+        bs.pageSize = pageSize;
+        bs.maxRecords = Math.max(0, maxRecs);
+        return bs;
+    }
+
+    /**
+     * Runs the search writing the records to the output.
+     *
+     * @return the exit status
+     * @throws Exception if the search fails
+     */
+    int run() throws Exception {
+        final long start = System.currentTimeMillis();
+        GetRecordsWriter writer = new GetRecordsWriter(criteria);
+        writer.setResults(true);
+        writer.setDetail(detail);
+        writer.setMaxRecords(pageSize);
+        final int firstSize = maxRecords > 0 ? Math.min(pageSize, maxRecords) : pageSize;
+        logger.info("Searching {} with {}", catDef.getEndpoint(), criteria);
+        // not System.out: a PrintStream swallows write errors, a closed pipe must stop the search
+        final OutputStream os = outFile != null ? new FileOutputStream(outFile) : new NonClosingStream(new FileOutputStream(
+                FileDescriptor.out));
+        PageFetcher fetcher = new PageFetcher(catDef, writer.toDocument(1, pageSize));
+        fetcher.setTransport(transport);
+        try (RecordsOutput output = RecordsOutput.create(format, new BufferedWriter(new OutputStreamWriter(os,
+                StandardCharsets.UTF_8)))) {
+            output.begin();
+            final RecordsPage first = fetcher.fetchPage(1, firstSize);
+            for (Metadata m : first.getRecords()) {
+                output.write(m);
+            }
+            int wanted = first.getMatched();
+            if (maxRecords > 0) {
+                wanted = Math.min(wanted, maxRecords);
+            }
+            logger.info("{} records matched, retrieving {}", first.getMatched(), wanted);
+            if (first.hasMore() && first.getNextPosition() <= wanted) {
+                fetcher.fetchPlanned(first.getNextPosition(), first.getReturned(), wanted, new PageFetcher.PageListener() {
+                    @Override
+                    public void pageFetched(RecordsPage page) {
+                        write(output, page);
+                    }
+
+                    @Override
+                    public void pageFailed(PageGap gap) {
+                        logger.warn("Could not retrieve {}: {}", gap, gap.getCause().getMessage());
+                    }
+                });
+            }
+            if (writeFailure != null) {
+                throw writeFailure;
+            }
+            output.end();
+            final int gaps = fetcher.getGaps().size();
+            logger.info("Written {} records in {} ms, {} pages failed", output.getWritten(), System.currentTimeMillis() - start, gaps);
+            return gaps > 0 ? EXIT_GAPS : EXIT_OK;
+        } finally {
+            fetcher.shutdown();
+            transport.release();
+        }
+    }
+
+    private void write(RecordsOutput output, RecordsPage page) {
+        if (writeFailure != null) {
+            return;
+        }
+        try {
+            for (Metadata m : page.getRecords()) {
+                output.write(m);
+            }
+        } catch (IOException ex) {
+            // stop requesting pages that could not be written anyway
+            writeFailure = ex;
+            transport.abort();
+        }
+    }
+
+    private static String value(String[] args, int idx, String option) {
+        if (idx >= args.length) {
+            throw new IllegalArgumentException("Missing value for option " + option);
+        }
+        return args[idx];
+    }
+
+    private static Date parseTime(String txt) {
+        final String pattern = txt.length() > 10 ? "yyyy-MM-dd'T'HH:mm:ss" : "yyyy-MM-dd";
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern, Locale.ENGLISH);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        sdf.setLenient(false);
+        try {
+            return sdf.parse(txt);
+        } catch (ParseException ex) {
+            throw new IllegalArgumentException("Invalid time " + txt);
+        }
+    }
+
+    private static int parseSpatialOperator(String txt) {
+        switch (txt.toLowerCase(Locale.ENGLISH)) {
+            case "overlaps":
+                return QueryCriteria.SPATIAL_OVERLAPS;
+            case "contains":
+                return QueryCriteria.SPATIAL_CONTAINS;
+            case "intersects":
+                return QueryCriteria.SPATIAL_INTERSECTS;
+            case "within":
+                return QueryCriteria.SPATIAL_WITHIN;
+            default:
+                throw new IllegalArgumentException("Unknown spatial operator " + txt);
+        }
+    }
+
+    private static int parseInt(String txt, String option) {
+        try {
+            return Integer.parseInt(txt);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("Invalid number %s for option %s", txt, option));
+        }
+    }
+
+    private static int parsePositive(String txt, String option) {
+        final int ret = parseInt(txt, option);
+        if (ret < 1) {
+            throw new IllegalArgumentException(String.format("Option %s must be positive", option));
+        }
+        return ret;
+    }
+
+    /**
+     * Keeps the standard output descriptor open when the records output is closed.
+     */
+    private static class NonClosingStream extends FilterOutputStream {
+
+        NonClosingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import main.data.Metadata;
+import main.data.MetadataNames;
+
+/**
+ * Writes records as comma separated values.
+ * <p>
+ * A header line names a column for each {@link MetadataNames} attribute, missing values are left empty. The footprint is written as a
+ * WKT polygon with longitude latitude coordinates. Values are quoted as per RFC 4180 when needed.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class CsvOutput extends RecordsOutput {
+
+    private static final MetadataNames[] columns = MetadataNames.values();
+
+    public CsvOutput(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void begin() throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(columns[i].toString());
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    protected void writeRecord(Metadata m, int index) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String val;
+            if (columns[i] == MetadataNames.FOOTPRINT) {
+                val = footprintWkt(m.getFootprintAsDoubles());
+            } else {
+                val = m.get(columns[i]);
+            }
+            if (val != null) {
+                writeValue(val);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    private void writeValue(String val) throws IOException {
+        if (val.indexOf(',') < 0 && val.indexOf('"') < 0 && val.indexOf('\n') < 0 && val.indexOf('\r') < 0) {
+            out.write(val);
+        } else {
+            out.write('"');
+            out.write(val.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    private static String footprintWkt(double[] latLons) {
+        if (latLons == null || latLons.length < 2) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("POLYGON((");
+        for (int i = 0; i + 1 < latLons.length; i += 2) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(latLons[i + 1]).append(' ').append(latLons[i]);
+        }
+        return sb.append("))").toString();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import main.data.Metadata;
+import main.data.MetadataNames;
+
+/**
+ * Writes records as a GeoJSON feature collection.
+ * <p>
+ * Each record is a feature whose geometry is the footprint polygon, or the scene center point if there is no footprint, and whose
+ * properties are the other metadata attributes. Features are written one per line.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class GeoJsonOutput extends RecordsOutput {
+
+    public GeoJsonOutput(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void begin() throws IOException {
+        out.write("{\"type\":\"FeatureCollection\",\"features\":[\n");
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.write("\n]}\n");
+        super.end();
+    }
+
+    @Override
+    protected void writeRecord(Metadata m, int index) throws IOException {
+        StringBuilder sb = new StringBuilder(512);
+        if (index > 0) {
+            sb.append(",\n");
+        }
+        sb.append("{\"type\":\"Feature\",\"id\":");
+        appendString(sb, m.get(MetadataNames.PRODUCT_IDENTIFIER));
+        sb.append(",\"geometry\":");
+        appendGeometry(sb, m);
+        sb.append(",\"properties\":{");
+        boolean first = true;
+        for (Map.Entry<MetadataNames, String> en : m.entrySet()) {
+            if (en.getKey() == MetadataNames.FOOTPRINT || en.getKey() == MetadataNames.SCENE_CENTER) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            appendString(sb, en.getKey().toString());
+            sb.append(':');
+            appendString(sb, en.getValue());
+        }
+        sb.append("}}");
+        out.write(sb.toString());
+    }
+
+    private static void appendGeometry(StringBuilder sb, Metadata m) {
+        final double[] fp = m.getFootprintAsDoubles();
+        if (fp != null && fp.length >= 6) {
+            sb.append("{\"type\":\"Polygon\",\"coordinates\":[[");
+            for (int i = 0; i + 1 < fp.length; i += 2) {
+                appendPosition(sb, fp[i], fp[i + 1]);
+                sb.append(',');
+            }
+            final int n = fp.length & ~1;
+            if (fp[0] != fp[n - 2] || fp[1] != fp[n - 1]) {
+                // rings must be closed
+                appendPosition(sb, fp[0], fp[1]);
+            } else {
+                sb.setLength(sb.length() - 1);
+            }
+            sb.append("]]}");
+            return;
+        }
+        final double[] ctr = m.getSceneCenterAsDoubles();
+        if (ctr != null && ctr.length >= 2) {
+            sb.append("{\"type\":\"Point\",\"coordinates\":");
+            appendPosition(sb, ctr[0], ctr[1]);
+            sb.append('}');
+            return;
+        }
+        sb.append("null");
+    }
+
+    private static void appendPosition(StringBuilder sb, double lat, double lon) {
+        sb.append('[').append(lon).append(',').append(lat).append(']');
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import main.data.Metadata;
+
+/**
+ * Streams metadata records to a character stream in a textual format.
+ * <p>
+ * Records are written as soon as they are received, nothing is buffered beyond the underlying writer. Subclasses define the format.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public abstract class RecordsOutput implements Closeable {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_GEOJSON = "geojson";
+    protected final Writer out;
+    private int written = 0;
+
+    protected RecordsOutput(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates the output for the given format name.
+     *
+     * @param format one of the {@code FORMAT_} constants, case insensitive
+     * @param out the destination
+     * @return the output
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public static RecordsOutput create(String format, Writer out) {
+        switch (format.toLowerCase(Locale.ENGLISH)) {
+            case FORMAT_CSV:
+                return new CsvOutput(out);
+            case FORMAT_GEOJSON:
+                return new GeoJsonOutput(out);
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + format);
+        }
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param m the record
+     * @throws IOException in case of write errors
+     */
+    public final void write(Metadata m) throws IOException {
+        writeRecord(m, written++);
+    }
+
+    public int getWritten() {
+        return written;
+    }
+
+    /**
+     * Writes what precedes the records.
+     *
+     * @throws IOException in case of write errors
+     */
+    public abstract void begin() throws IOException;
+
+    /**
+     * Writes what follows the records and flushes the destination.
+     *
+     * @throws IOException in case of write errors
+     */
+    public void end() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param m the record
+     * @param index the zero based index of the record in the output
+     * @throws IOException in case of write errors
+     */
+    protected abstract void writeRecord(Metadata m, int index) throws IOException;
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import main.data.QueryCriteria;
+
+/**
+ * Converts Well Known Text geometries to area of interest constraints.
+ * <p>
+ * Supports {@code POINT}, {@code LINESTRING} and {@code POLYGON} geometries, only the exterior ring of polygons is used. WKT
+ * coordinates are longitude latitude pairs while {@link QueryCriteria} takes latitude longitude pairs, the order is swapped.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class WktAoi {
+
+    private WktAoi() {
+    }
+
+    /**
+     * Sets the area of interest of the given criteria from a WKT geometry.
+     *
+     * @param criteria the criteria to modify
+     * @param wkt the geometry text
+     * @param operator one of the {@code QueryCriteria.SPATIAL_} constants
+     * @throws IllegalArgumentException if the text is not a supported geometry
+     */
+    public static void applyTo(QueryCriteria criteria, String wkt, int operator) {
+        final String txt = wkt.trim();
+        final int open = txt.indexOf('(');
+        final int close = txt.lastIndexOf(')');
+        if (open < 0 || close < open) {
+            throw new IllegalArgumentException("Malformed WKT geometry: " + wkt);
+        }
+        final String type = txt.substring(0, open).trim().toUpperCase(Locale.ENGLISH);
+        String body = txt.substring(open + 1, close).trim();
+        switch (type) {
+            case "POINT":
+                final double[] pt = parseCoords(body);
+                if (pt.length != 2) {
+                    throw new IllegalArgumentException("A point must have exactly one coordinate pair");
+                }
+                criteria.setAoi(QueryCriteria.AOI_POINT, operator, pt, 0);
+                break;
+            case "LINESTRING":
+                final double[] line = parseCoords(body);
+                if (line.length < 4) {
+                    throw new IllegalArgumentException("A line must have at least two coordinate pairs");
+                }
+                criteria.setAoi(QueryCriteria.AOI_POLYLINE, operator, line, 0);
+                break;
+            case "POLYGON":
+                // exterior ring only
+                if (!body.startsWith("(")) {
+                    throw new IllegalArgumentException("Malformed polygon ring: " + wkt);
+                }
+                final int ringEnd = body.indexOf(')');
+                if (ringEnd < 0) {
+                    throw new IllegalArgumentException("Malformed polygon ring: " + wkt);
+                }
+                final double[] ring = closeRing(parseCoords(body.substring(1, ringEnd)));
+                if (ring.length < 8) {
+                    throw new IllegalArgumentException("A polygon must have at least three distinct coordinate pairs");
+                }
+                criteria.setAoi(QueryCriteria.AOI_POLYGON, operator, ring, 0);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported WKT geometry type: " + type);
+        }
+    }
+
+    /**
+     * Parses a comma separated list of longitude latitude pairs.
+     *
+     * @return latitude longitude ordinates
+     */
+    private static double[] parseCoords(String list) {
+        List<double[]> pairs = new ArrayList<>();
+        for (String pos : list.split(",")) {
+            final String[] xy = pos.trim().split("\\s+");
+            if (xy.length < 2) {
+                throw new IllegalArgumentException("Invalid coordinate pair: " + pos);
+            }
+            final double lon = Double.parseDouble(xy[0]);
+            final double lat = Double.parseDouble(xy[1]);
+            if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+                throw new IllegalArgumentException("Coordinate out of range: " + pos);
+            }
+            pairs.add(new double[]{lat, lon});
+        }
+        double[] ret = new double[pairs.size() * 2];
+        for (int i = 0; i < pairs.size(); i++) {
+            ret[2 * i] = pairs.get(i)[0];
+            ret[2 * i + 1] = pairs.get(i)[1];
+        }
+        return ret;
+    }
+
+    private static double[] closeRing(double[] c) {
+        final int n = c.length;
+        if (n >= 2 && (c[0] != c[n - 2] || c[1] != c[n - 1])) {
+            double[] ret = new double[n + 2];
+            System.arraycopy(c, 0, ret, 0, n);
+            ret[n] = c[0];
+            ret[n + 1] = c[1];
+            return ret;
+        }
+        return c;
+    }
+}
@@ -18,17 +18,31 @@ package main.data;
 /**
  * A catalogue definition.
  * <p>
- * Includes a name, the service endpoint URL and the SOAP version to use.
+ * Includes a name, the service endpoint URL, the binding to use and the settings ruling how the catalogue is searched.
  *
  * @author Alessandro Falappa <alex.falappa@gmail.com>
  */
 public class CatalogueDefinition {
 
+    public static final int DEFAULT_PARALLEL_PAGES = 2;
+    public static final int DEFAULT_CACHE_TTL_MINUTES = 0;
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final int DEFAULT_MAX_RETRIES = 2;
     private String name;
     private String endpoint;
     private boolean soapV12;
+    private boolean httpPost = false;
     private int timeoutMillis;
+    private int maxParallelPages = DEFAULT_PARALLEL_PAGES;
+    private int cacheTtlMinutes = DEFAULT_CACHE_TTL_MINUTES;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private boolean compression = true;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private boolean hedging = false;
+    private boolean archivingDate = true;
+    private int shardRecords = 0;
     private String[] collections;
+    private PageSizeProfile pageProfile = new PageSizeProfile();
 
     public CatalogueDefinition(String name, String endpoint, boolean soapV12, int timeout) {
         this.name = name;
@@ -62,6 +76,14 @@ public class CatalogueDefinition {
         this.soapV12 = soapV12;
     }
 
+    public boolean isHttpPost() {
+        return httpPost;
+    }
+
+    public void setHttpPost(boolean httpPost) {
+        this.httpPost = httpPost;
+    }
+
     public String[] getCollections() {
         return collections;
     }
@@ -78,6 +100,81 @@ public class CatalogueDefinition {
         this.timeoutMillis = timeoutMillis;
     }
 
+    public int getMaxParallelPages() {
+        return maxParallelPages;
+    }
+
+    public void setMaxParallelPages(int maxParallelPages) {
+        this.maxParallelPages = Math.max(1, maxParallelPages);
+    }
+
+    public int getCacheTtlMinutes() {
+        return cacheTtlMinutes;
+    }
+
+    public void setCacheTtlMinutes(int cacheTtlMinutes) {
+        this.cacheTtlMinutes = Math.max(0, cacheTtlMinutes);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * Tells if the catalogue accepts constraints on the archiving date, used to compute the changes of saved searches.
+     */
+    public boolean isArchivingDate() {
+        return archivingDate;
+    }
+
+    public void setArchivingDate(boolean archivingDate) {
+        this.archivingDate = archivingDate;
+    }
+
+    public int getShardRecords() {
+        return shardRecords;
+    }
+
+    public void setShardRecords(int shardRecords) {
+        this.shardRecords = Math.max(0, shardRecords);
+    }
+
+    public PageSizeProfile getPageProfile() {
+        return pageProfile;
+    }
+
+    public void setPageProfile(PageSizeProfile pageProfile) {
+        this.pageProfile = pageProfile;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Spatial index of the footprints of a set of {@link Metadata} records.
+ * <p>
+ * A static R-tree over footprint bounding boxes, bulk loaded with the Sort-Tile-Recursive algorithm: boxes are sorted by longitude,
+ * cut in vertical slices, sorted by latitude within each slice and packed into full leaves. Upper levels group consecutive nodes.
+ * Queries select the records whose bounding box matches, then test their footprint polygons exactly.
+ * <p>
+ * Ordinates are handled as planar latitude longitude degrees, footprints crossing the antimeridian are not treated specially.
+ * Records without a valid footprint are not indexed. Results are given in index order.
+ * <p>
+ * Instances are immutable and thread safe, a new index is built for each set of results.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class FootprintIndex {
+
+    private static final int NODE_SIZE = 16;
+    // indexed records in leaf order
+    private final Metadata[] records;
+    // footprints of the records packed in leaf order, record i spans offsets[i] to offsets[i + 1]
+    private final double[] ordinates;
+    private final int[] offsets;
+    // bounding boxes (min lat, min lon, max lat, max lon) of the records at level 0 and of the nodes above, the last level is the root
+    private final double[][] levels;
+
+    private FootprintIndex(Metadata[] records, double[] ordinates, int[] offsets, double[][] levels) {
+        this.records = records;
+        this.ordinates = ordinates;
+        this.offsets = offsets;
+        this.levels = levels;
+    }
+
+    /**
+     * Builds the index of the footprints of the given records.
+     *
+     * @param records the records
+     * @return the index
+     */
+    public static FootprintIndex build(Collection<Metadata> records) {
+        // collect the records with a valid footprint and their bounding boxes, reading the ordinates in a scratch array
+        final List<Metadata> recs = new ArrayList<>(records.size());
+        final double[] boxes = new double[records.size() * 4];
+        double[] scratch = new double[64];
+        int totOrds = 0;
+        for (Metadata m : records) {
+            final int count = m.getFootprintCount();
+            if (count >= 2 && count % 2 == 0) {
+                if (count > scratch.length) {
+                    scratch = new double[Math.max(count, scratch.length * 2)];
+                }
+                m.getFootprint(scratch, 0);
+                bounds(scratch, count, boxes, recs.size());
+                recs.add(m);
+                totOrds += count;
+            }
+        }
+        final int n = recs.size();
+        // sort tile recursive ordering
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new CenterComparator(boxes, 1));
+        final int leaves = (n + NODE_SIZE - 1) / NODE_SIZE;
+        final int sliceSize = (int) Math.ceil(Math.sqrt(leaves)) * NODE_SIZE;
+        final CenterComparator byLat = new CenterComparator(boxes, 0);
+        for (int s = 0; s < n; s += sliceSize) {
+            Arrays.sort(order, s, Math.min(s + sliceSize, n), byLat);
+        }
+        // lay out records, footprints and boxes in leaf order, the ordinates copied directly from the records
+        final Metadata[] sortedRecs = new Metadata[n];
+        final double[] ords = new double[totOrds];
+        final int[] offs = new int[n + 1];
+        final double[] level0 = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            final int src = order[i];
+            sortedRecs[i] = recs.get(src);
+            offs[i + 1] = offs[i] + sortedRecs[i].getFootprint(ords, offs[i]);
+            System.arraycopy(boxes, src * 4, level0, i * 4, 4);
+        }
+        // build upper levels up to a single root
+        final List<double[]> lvls = new ArrayList<>();
+        lvls.add(level0);
+        double[] below = level0;
+        while (below.length > 4) {
+            final int count = below.length / 4;
+            final double[] level = new double[(count + NODE_SIZE - 1) / NODE_SIZE * 4];
+            for (int node = 0; node < level.length / 4; node++) {
+                final int first = node * NODE_SIZE;
+                System.arraycopy(below, first * 4, level, node * 4, 4);
+                for (int c = first + 1; c < Math.min(first + NODE_SIZE, count); c++) {
+                    level[node * 4] = Math.min(level[node * 4], below[c * 4]);
+                    level[node * 4 + 1] = Math.min(level[node * 4 + 1], below[c * 4 + 1]);
+                    level[node * 4 + 2] = Math.max(level[node * 4 + 2], below[c * 4 + 2]);
+                    level[node * 4 + 3] = Math.max(level[node * 4 + 3], below[c * 4 + 3]);
+                }
+            }
+            lvls.add(level);
+            below = level;
+        }
+        return new FootprintIndex(sortedRecs, ords, offs, lvls.toArray(new double[lvls.size()][]));
+    }
+
+    /**
+     * Gives the number of indexed records.
+     *
+     * @return the number of records with a valid footprint
+     */
+    public int size() {
+        return records.length;
+    }
+
+    /**
+     * Finds the records whose footprint covers a point.
+     *
+     * @param lat the point latitude
+     * @param lon the point longitude
+     * @return the records found, empty if none
+     */
+    public List<Metadata> containing(final double lat, final double lon) {
+        return search(lat, lon, lat, lon, new Refinement() {
+            @Override
+            public boolean matches(int from, int to) {
+                return polygonContains(ordinates, from, to, lat, lon);
+            }
+        });
+    }
+
+    /**
+     * Finds the records whose footprint intersects a box.
+     *
+     * @param minLat the box minimum latitude
+     * @param minLon the box minimum longitude
+     * @param maxLat the box maximum latitude
+     * @param maxLon the box maximum longitude
+     * @return the records found, empty if none
+     */
+    public List<Metadata> intersecting(double minLat, double minLon, double maxLat, double maxLon) {
+        return intersecting(new double[]{minLat, minLon, minLat, maxLon, maxLat, maxLon, maxLat, minLon});
+    }
+
+    /**
+     * Finds the records whose footprint intersects a polygon.
+     *
+     * @param polygon the polygon vertices (lat lon pairs), optionally closed
+     * @return the records found, empty if none
+     * @throws IllegalArgumentException if the ordinates are odd or fewer than two
+     */
+    public List<Metadata> intersecting(final double[] polygon) {
+        if (polygon.length < 2 || polygon.length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid number of polygon ordinates");
+        }
+        final double[] qb = new double[4];
+        bounds(polygon, polygon.length, qb, 0);
+        return search(qb[0], qb[1], qb[2], qb[3], new Refinement() {
+            @Override
+            public boolean matches(int from, int to) {
+                return polygonsIntersect(ordinates, from, to, polygon, 0, polygon.length);
+            }
+        });
+    }
+
+    private List<Metadata> search(double minLat, double minLon, double maxLat, double maxLon, Refinement ref) {
+        if (records.length == 0) {
+            return Collections.emptyList();
+        }
+        final List<Metadata> ret = new ArrayList<>();
+        visit(levels.length - 1, 0, new double[]{minLat, minLon, maxLat, maxLon}, ref, ret);
+        return ret;
+    }
+
+    private void visit(int level, int node, double[] query, Refinement ref, List<Metadata> out) {
+        final double[] boxes = levels[level];
+        final int b = node * 4;
+        if (boxes[b] > query[2] || boxes[b + 2] < query[0] || boxes[b + 1] > query[3] || boxes[b + 3] < query[1]) {
+            return;
+        }
+        if (level == 0) {
+            if (ref.matches(offsets[node], offsets[node + 1])) {
+                out.add(records[node]);
+            }
+            return;
+        }
+        final int count = levels[level - 1].length / 4;
+        for (int c = node * NODE_SIZE, end = Math.min(c + NODE_SIZE, count); c < end; c++) {
+            visit(level - 1, c, query, ref, out);
+        }
+    }
+
+    /**
+     * Stores the bounding box of the first ordinates of an array at the given box index.
+     */
+    private static void bounds(double[] ords, int count, double[] boxes, int idx) {
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i += 2) {
+            minLat = Math.min(minLat, ords[i]);
+            maxLat = Math.max(maxLat, ords[i]);
+            minLon = Math.min(minLon, ords[i + 1]);
+            maxLon = Math.max(maxLon, ords[i + 1]);
+        }
+        boxes[idx * 4] = minLat;
+        boxes[idx * 4 + 1] = minLon;
+        boxes[idx * 4 + 2] = maxLat;
+        boxes[idx * 4 + 3] = maxLon;
+    }
+
+    /**
+     * Tells if a polygon (lat lon pairs from index from to index to, optionally closed) covers a point, by crossing number.
+     */
+    static boolean polygonContains(double[] ords, int from, int to, double lat, double lon) {
+        if (to - from < 6) {
+            return false;
+        }
+        boolean inside = false;
+        for (int i = from, j = to - 2; i < to; j = i, i += 2) {
+            final double latI = ords[i];
+            final double lonI = ords[i + 1];
+            final double latJ = ords[j];
+            final double lonJ = ords[j + 1];
+            if ((latI > lat) != (latJ > lat) && lon < (lonJ - lonI) * (lat - latI) / (latJ - latI) + lonI) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Tells if two polygons (lat lon pairs, optionally closed) intersect: their edges cross or one contains the other.
+     */
+    static boolean polygonsIntersect(double[] a, int aFrom, int aTo, double[] b, int bFrom, int bTo) {
+        for (int i = aFrom, j = aTo - 2; i < aTo; j = i, i += 2) {
+            for (int k = bFrom, l = bTo - 2; k < bTo; l = k, k += 2) {
+                if (segmentsIntersect(a[j], a[j + 1], a[i], a[i + 1], b[l], b[l + 1], b[k], b[k + 1])) {
+                    return true;
+                }
+            }
+        }
+        return polygonContains(a, aFrom, aTo, b[bFrom], b[bFrom + 1]) || polygonContains(b, bFrom, bTo, a[aFrom], a[aFrom + 1]);
+    }
+
+    private static boolean segmentsIntersect(double y1, double x1, double y2, double x2, double y3, double x3, double y4, double x4) {
+        final int o1 = orientation(x1, y1, x2, y2, x3, y3);
+        final int o2 = orientation(x1, y1, x2, y2, x4, y4);
+        final int o3 = orientation(x3, y3, x4, y4, x1, y1);
+        final int o4 = orientation(x3, y3, x4, y4, x2, y2);
+        if (o1 != o2 && o3 != o4) {
+            return true;
+        }
+        // collinear cases
+        return (o1 == 0 && onSegment(x1, y1, x2, y2, x3, y3)) || (o2 == 0 && onSegment(x1, y1, x2, y2, x4, y4))
+                || (o3 == 0 && onSegment(x3, y3, x4, y4, x1, y1)) || (o4 == 0 && onSegment(x3, y3, x4, y4, x2, y2));
+    }
+
+    private static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        final double cross = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        return cross > 0 ? 1 : cross < 0 ? -1 : 0;
+    }
+
+    /**
+     * Tells if point c, collinear with segment a b, lies on the segment.
+     */
+    private static boolean onSegment(double ax, double ay, double bx, double by, double cx, double cy) {
+        return cx >= Math.min(ax, bx) && cx <= Math.max(ax, bx) && cy >= Math.min(ay, by) && cy <= Math.max(ay, by);
+    }
+
+    /**
+     * Exact test of an indexed footprint, given by its span in the packed ordinates.
+     */
+    private interface Refinement {
+
+        boolean matches(int from, int to);
+    }
+
+    /**
+     * Orders box indexes by the center of the boxes along latitude (axis 0) or longitude (axis 1).
+     */
+    private static class CenterComparator implements Comparator<Integer> {
+
+        private final double[] boxes;
+        private final int axis;
+
+        CenterComparator(double[] boxes, int axis) {
+            this.boxes = boxes;
+            this.axis = axis;
+        }
+
+        @Override
+        public int compare(Integer o1, Integer o2) {
+            return Double.compare(boxes[o1 * 4 + axis] + boxes[o1 * 4 + axis + 2], boxes[o2 * 4 + axis] + boxes[o2 * 4 + axis + 2]);
+        }
+    }
+}
@@ -15,81 +15,337 @@
  */
 package main.data;
 
-import java.util.EnumMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import static main.data.MetadataNames.FOOTPRINT;
 import static main.data.MetadataNames.PARENT_IDENTIFIER;
 import static main.data.MetadataNames.PRODUCT_IDENTIFIER;
 import static main.data.MetadataNames.SCENE_CENTER;
+import net.falappa.utils.CoordsParser;
 
 /**
  * A domain object representing HMA metadata of an EO product.
  * <p>
- * It's actually an {@link EnumMap} with {@link MetadataNames} as keys. Maintains footprint and scene center caches converted from strings
- * to doubles.
+ * It's actually a map with {@link MetadataNames} as keys, iterated in key order. Maintains footprint and scene center caches converted
+ * from strings to doubles, records in a table read them from the ordinates the table decoded instead.
+ * <p>
+ * A newly created record holds its values in a small array. Once added to a {@link ResultTable} it becomes a lightweight view of a
+ * table row: values are read from and written to the columns of the table. Null values are not stored, putting a null value removes
+ * the attribute.
+ * <p>
+ * Date time and numeric attributes (see {@link ResultTable#TIME} and {@link ResultTable#NUMERIC}) are decoded once when put, e.g. by
+ * the response parsers, and read with {@link #getTime(MetadataNames)} and {@link #getNumber(MetadataNames)}. Other attributes are
+ * decoded on each call of the typed accessors.
+ * <p>
+ * Records can be flagged as new, e.g. when retrieved by a saved search for the first time.
  *
  * @author Alessandro Falappa <alex.falappa@gmail.com>
  */
-public class Metadata extends EnumMap<MetadataNames, String> implements Comparable<Metadata> {
+public class Metadata extends AbstractMap<MetadataNames, String> implements Comparable<Metadata> {
 
+    private static final MetadataNames[] NAMES = MetadataNames.values();
+    // slot of the decoded value of each typed attribute, -1 for other attributes
+    private static final int[] TYPED_SLOTS = new int[NAMES.length];
+    private static final int TYPED_COUNT;
+    // values of a record not yet in a table, null once attached
+    private volatile String[] values = new String[NAMES.length];
+    // decoded typed values of a record not yet in a table, allocated on first use
+    private volatile long[] typed = null;
+    private volatile ResultTable table = null;
+    private int row = -1;
     // footprint ordinates cache
     private transient double[] fpOrdinates = null;
     // scene center ordinates cache
     private transient double[] fpCenter = null;
+    private transient boolean newRecord = false;
+
+    static {
+        int slot = 0;
+        for (MetadataNames mn : NAMES) {
+            TYPED_SLOTS[mn.ordinal()] = ResultTable.TIME.contains(mn) || ResultTable.NUMERIC.contains(mn) ? slot++ : -1;
+        }
+        TYPED_COUNT = slot;
+    }
 
     public Metadata() {
-        super(MetadataNames.class);
+    }
+
+    /**
+     * Gives the value of a date time attribute.
+     *
+     * @param name the attribute
+     * @return the milliseconds since the epoch or {@link TypedValues#NO_TIME} if missing or invalid
+     */
+    public long getTime(MetadataNames name) {
+        if (!ResultTable.TIME.contains(name)) {
+            return TypedValues.parseTime(get(name));
+        }
+        final String[] v = values;
+        final long[] ty = typed;
+        final ResultTable t = table;
+        if (t != null) {
+            return t.getTime(row, name);
+        }
+        return v[name.ordinal()] != null ? ty[TYPED_SLOTS[name.ordinal()]] : TypedValues.NO_TIME;
+    }
+
+    /**
+     * Gives the value of a numeric attribute.
+     *
+     * @param name the attribute
+     * @return the value or NaN if missing or not a number
+     */
+    public double getNumber(MetadataNames name) {
+        if (!ResultTable.NUMERIC.contains(name)) {
+            return TypedValues.parseNumber(get(name));
+        }
+        final String[] v = values;
+        final long[] ty = typed;
+        final ResultTable t = table;
+        if (t != null) {
+            return t.getNumber(row, name);
+        }
+        return v[name.ordinal()] != null ? Double.longBitsToDouble(ty[TYPED_SLOTS[name.ordinal()]]) : Double.NaN;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof MetadataNames)) {
+            return null;
+        }
+        final MetadataNames name = (MetadataNames) key;
+        // read the values first: once they are released the table is set
+        final String[] v = values;
+        final ResultTable t = table;
+        return t != null ? t.get(row, name) : v[name.ordinal()];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public String put(MetadataNames key, String value) {
+        final String prev = get(key);
+        final String[] v = values;
+        final ResultTable t = table;
+        if (t != null) {
+            t.set(row, key, value);
+        } else {
+            final int slot = TYPED_SLOTS[key.ordinal()];
+            if (slot >= 0 && value != null) {
+                // decode typed attributes once
+                if (typed == null) {
+                    typed = new long[TYPED_COUNT];
+                }
+                typed[slot] = ResultTable.TIME.contains(key) ? TypedValues.parseTime(value)
+                        : Double.doubleToRawLongBits(TypedValues.parseNumber(value));
+            }
+            v[key.ordinal()] = value;
+        }
+        return prev;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof MetadataNames)) {
+            return null;
+        }
+        return put((MetadataNames) key, null);
+    }
+
+    @Override
+    public int size() {
+        final String[] v = values;
+        final ResultTable t = table;
+        if (t != null) {
+            return t.count(row);
+        }
+        int ret = 0;
+        for (String s : v) {
+            if (s != null) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void clear() {
+        for (MetadataNames mn : NAMES) {
+            remove(mn);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<MetadataNames, String>> entrySet() {
+        return new AbstractSet<Map.Entry<MetadataNames, String>>() {
+            @Override
+            public Iterator<Map.Entry<MetadataNames, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return Metadata.this.size();
+            }
+        };
+    }
+
+    /**
+     * Gives the table this record is a view of.
+     *
+     * @return the table or null if the record was not added to a table
+     */
+    public ResultTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gives the values of a record not yet added to a table.
+     */
+    String[] detachedValues() {
+        return values;
+    }
+
+    /**
+     * Gives the decoded typed values of a record not yet added to a table, null if none.
+     */
+    long[] detachedTyped() {
+        return typed;
+    }
+
+    /**
+     * Gives the slot of the decoded value of an attribute in the typed values array, -1 if the attribute is not typed.
+     */
+    static int typedSlot(MetadataNames name) {
+        return TYPED_SLOTS[name.ordinal()];
+    }
+
+    /**
+     * Turns the record into a view of the given table row, the values must have been copied to the row.
+     */
+    void attach(ResultTable table, int row) {
+        this.row = row;
+        this.table = table;
+        this.values = null;
+        this.typed = null;
+        this.fpOrdinates = null;
+        this.fpCenter = null;
     }
 
     /**
      * Returns the footprint as an array of coordinates (lat lon pairs).
      * <p>
-     * The string to double conversion from the footprint attribute is performed once then cached.
+     * The string to double conversion from the footprint attribute is performed once then cached. Records in a table copy the
+     * ordinates decoded by the table on each call.
      *
      * @return the footprint ordinates or null if invalid footprint or no footprint present
      */
     public double[] getFootprintAsDoubles() {
+        final ResultTable t = table;
+        if (t != null) {
+            return t.getOrdinates(row, FOOTPRINT);
+        }
         if (fpOrdinates == null && containsKey(FOOTPRINT)) {
             // parse and cache the ordinates
-            String[] coords = get(FOOTPRINT).split("\\s+");
-            try {
-                fpOrdinates = new double[coords.length];
-                for (int i = 0; i < coords.length; i++) {
-                    fpOrdinates[i] = Double.valueOf(coords[i]);
-                }
-            } catch (NumberFormatException nfe) {
-                // remove invalid footprint content
-                remove(FOOTPRINT);
-                fpOrdinates = null;
-            }
+            fpOrdinates = parseCoords(FOOTPRINT);
         }
         return fpOrdinates;
     }
 
+    /**
+     * Gives the number of footprint ordinates.
+     *
+     * @return the number of ordinates, -1 if invalid footprint or no footprint present
+     */
+    int getFootprintCount() {
+        final ResultTable t = table;
+        if (t != null) {
+            return t.getOrdinatesCount(row, FOOTPRINT);
+        }
+        final double[] fp = getFootprintAsDoubles();
+        return fp != null ? fp.length : -1;
+    }
+
+    /**
+     * Copies the footprint ordinates into an array, with room for {@link #getFootprintCount()} ordinates from the given offset.
+     *
+     * @return the number of ordinates copied, -1 if invalid footprint or no footprint present
+     */
+    int getFootprint(double[] dest, int offset) {
+        final ResultTable t = table;
+        if (t != null) {
+            return t.getOrdinates(row, FOOTPRINT, dest, offset);
+        }
+        final double[] fp = getFootprintAsDoubles();
+        if (fp == null) {
+            return -1;
+        }
+        System.arraycopy(fp, 0, dest, offset, fp.length);
+        return fp.length;
+    }
+
     /**
      * Returns the scene center as an array of coordinates (lat lon pair).
      * <p>
-     * The string to double conversion from the scene center attribute is performed once then cached.
+     * The string to double conversion from the scene center attribute is performed once then cached. Records in a table copy the
+     * ordinates decoded by the table on each call.
      *
      * @return the scene center ordinates or null if invalid center or no center present
      */
     public double[] getSceneCenterAsDoubles() {
+        final ResultTable t = table;
+        if (t != null) {
+            return t.getOrdinates(row, SCENE_CENTER);
+        }
         if (fpCenter == null && containsKey(SCENE_CENTER)) {
             // parse and cache the ordinates
-            String[] coords = get(SCENE_CENTER).split("\\s+");
-            try {
-                fpCenter = new double[coords.length];
-                for (int i = 0; i < coords.length; i++) {
-                    fpCenter[i] = Double.valueOf(coords[i]);
-                }
-            } catch (NumberFormatException nfe) {
-                // remove invalid footprint content
-                remove(SCENE_CENTER);
-                fpCenter = null;
-            }
+            fpCenter = parseCoords(SCENE_CENTER);
         }
         return fpCenter;
     }
 
+    /**
+     * Decodes a coordinates attribute, invalid contents are removed.
+     */
+    private double[] parseCoords(MetadataNames name) {
+        try {
+            final double[] ret = CoordsParser.parse(get(name));
+            if (ret.length > 0) {
+                return ret;
+            }
+        } catch (NumberFormatException nfe) {
+            // handled below
+        }
+        remove(name);
+        return null;
+    }
+
+    public boolean isNewRecord() {
+        return newRecord;
+    }
+
+    public void setNewRecord(boolean newRecord) {
+        this.newRecord = newRecord;
+    }
+
+    /**
+     * Returns a key identifying the product regardless of the catalogue it was retrieved from.
+     * <p>
+     * Made of the parent and product identifiers, consistently with {@link #compareTo(main.data.Metadata)}.
+     *
+     * @return the product key
+     */
+    public String getProductKey() {
+        return get(PARENT_IDENTIFIER) + '|' + get(PRODUCT_IDENTIFIER);
+    }
+
     @Override
     public int compareTo(Metadata o) {
         if (o == null) {
@@ -112,4 +368,60 @@ public class Metadata extends EnumMap<MetadataNames, String> implements Comparab
         return 0;
     }
 
+    /**
+     * Iterates the attributes present in key order.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<MetadataNames, String>> {
+
+        private int next = advance(0);
+        private MetadataNames last = null;
+
+        private int advance(int from) {
+            int i = from;
+            while (i < NAMES.length && get(NAMES[i]) == null) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < NAMES.length;
+        }
+
+        @Override
+        public Map.Entry<MetadataNames, String> next() {
+            if (next >= NAMES.length) {
+                throw new NoSuchElementException();
+            }
+            last = NAMES[next];
+            next = advance(next + 1);
+            return new ValueEntry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            Metadata.this.remove(last);
+            last = null;
+        }
+    }
+
+    /**
+     * Entry reading and writing through to the record.
+     */
+    private class ValueEntry extends AbstractMap.SimpleEntry<MetadataNames, String> {
+
+        ValueEntry(MetadataNames key) {
+            super(key, Metadata.this.get(key));
+        }
+
+        @Override
+        public String setValue(String value) {
+            super.setValue(value);
+            return put(getKey(), value);
+        }
+    }
 }
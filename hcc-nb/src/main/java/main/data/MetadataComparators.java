@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.util.Comparator;
+
+/**
+ * Comparators of {@link Metadata} records on a single attribute.
+ * <p>
+ * Date time and numeric attributes are compared on their decoded values, without decoding the text or allocating objects, so that
+ * e.g. cloud cover or orbit number are sorted numerically. Other attributes are compared as text. Records missing the attribute,
+ * or with an invalid value, come last; ties are broken by the natural order of records.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class MetadataComparators {
+
+    private MetadataComparators() {
+    }
+
+    /**
+     * Gives a comparator on the given attribute.
+     *
+     * @param name the attribute
+     * @param ascending true for ascending order, false for descending (records missing the attribute still come last)
+     * @return the comparator
+     */
+    public static Comparator<Metadata> byAttribute(final MetadataNames name, final boolean ascending) {
+        final int sign = ascending ? 1 : -1;
+        if (ResultTable.TIME.contains(name)) {
+            return new Comparator<Metadata>() {
+                @Override
+                public int compare(Metadata o1, Metadata o2) {
+                    final long t1 = o1.getTime(name);
+                    final long t2 = o2.getTime(name);
+                    if (t1 == t2) {
+                        return o1.compareTo(o2);
+                    }
+                    if (t1 == TypedValues.NO_TIME || t2 == TypedValues.NO_TIME) {
+                        return t1 == TypedValues.NO_TIME ? 1 : -1;
+                    }
+                    return sign * (t1 < t2 ? -1 : 1);
+                }
+            };
+        }
+        if (ResultTable.NUMERIC.contains(name)) {
+            return new Comparator<Metadata>() {
+                @Override
+                public int compare(Metadata o1, Metadata o2) {
+                    final double d1 = o1.getNumber(name);
+                    final double d2 = o2.getNumber(name);
+                    final boolean nan1 = Double.isNaN(d1);
+                    final boolean nan2 = Double.isNaN(d2);
+                    if (nan1 || nan2) {
+                        return nan1 == nan2 ? o1.compareTo(o2) : (nan1 ? 1 : -1);
+                    }
+                    final int c = Double.compare(d1, d2);
+                    return c != 0 ? sign * c : o1.compareTo(o2);
+                }
+            };
+        }
+        return new Comparator<Metadata>() {
+            @Override
+            public int compare(Metadata o1, Metadata o2) {
+                final String s1 = o1.get(name);
+                final String s2 = o2.get(name);
+                if (s1 == null || s2 == null) {
+                    return s1 == s2 ? o1.compareTo(o2) : (s1 == null ? 1 : -1);
+                }
+                final int c = s1.compareTo(s2);
+                return c != 0 ? sign * c : o1.compareTo(o2);
+            }
+        };
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static main.data.MetadataNames.PARENT_IDENTIFIER;
+import static main.data.MetadataNames.START_SENSING;
+import static main.data.MetadataNames.STOP_SENSING;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local store of retrieved {@link Metadata} records in an embedded H2 database.
+ * <p>
+ * Records are kept per catalogue (identified by its endpoint) in a METADATA table with a VARCHAR column for each {@link MetadataNames}
+ * value plus the following indexed columns:
+ * <ul>
+ * <li>START_MS, STOP_MS sensing start and stop times in epoch milliseconds
+ * <li>MIN_LAT, MIN_LON, MAX_LAT, MAX_LON footprint bounding box in degrees
+ * </ul>
+ * The parent identifier column is indexed too. Records are replaced when stored again.
+ * <p>
+ * {@link QueryCriteria} are answered with the same semantics of the OGC filter sent to catalogues, except spatial operators which
+ * are evaluated on footprint bounding boxes and the archiving date restriction which is ignored.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class MetadataStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataStore.class.getName());
+    private static final MetadataNames[] NAMES = MetadataNames.values();
+    private final Connection conn;
+    private final PreparedStatement psMerge;
+    private final String selectCols;
+
+    /**
+     * Opens (creating if missing) the store in the given database file.
+     *
+     * @param dbPath the H2 database file path, without extensions. The H2 connection string is built as {@code jdbc:h2:<dbPath>}.
+     * @throws SQLException in case of problems opening the database
+     */
+    public MetadataStore(String dbPath) throws SQLException {
+        conn = DriverManager.getConnection(String.format("jdbc:h2:%s;TRACE_LEVEL_FILE=0;TRACE_LEVEL_SYSTEM_OUT=0", dbPath));
+        createSchema();
+        StringBuilder cols = new StringBuilder();
+        StringBuilder params = new StringBuilder();
+        for (MetadataNames mn : NAMES) {
+            cols.append(',').append(mn.name());
+            params.append(",?");
+        }
+        selectCols = cols.substring(1);
+        psMerge = conn.prepareStatement("merge into metadata(catalogue,product_key,stored_ms,start_ms,stop_ms,"
+                + "min_lat,min_lon,max_lat,max_lon" + cols + ") key(catalogue,product_key) values(?,?,?,?,?,?,?,?,?" + params + ")");
+        logger.info("Metadata store opened in {}", dbPath);
+    }
+
+    /**
+     * Stores or replaces the given records.
+     *
+     * @param catalogue the catalogue endpoint the records come from
+     * @param records the records
+     * @throws SQLException in case of database problems
+     */
+    public synchronized void save(String catalogue, List<Metadata> records) throws SQLException {
+        if (records.isEmpty()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        conn.setAutoCommit(false);
+        try {
+            for (Metadata m : records) {
+                int i = 1;
+                psMerge.setString(i++, catalogue);
+                psMerge.setString(i++, m.getProductKey());
+                psMerge.setLong(i++, now);
+                setTime(psMerge, i++, m.getTime(START_SENSING));
+                setTime(psMerge, i++, m.getTime(STOP_SENSING));
+                double[] bbox = null;
+                final double[] fp = m.getFootprintAsDoubles();
+                if (fp != null && fp.length >= 2) {
+                    bbox = QueryCriteria.bounds(fp);
+                }
+                for (int b = 0; b < 4; b++) {
+                    if (bbox != null) {
+                        psMerge.setDouble(i++, bbox[b]);
+                    } else {
+                        psMerge.setNull(i++, Types.DOUBLE);
+                    }
+                }
+                for (MetadataNames mn : NAMES) {
+                    psMerge.setString(i++, m.get(mn));
+                }
+                psMerge.addBatch();
+            }
+            psMerge.executeBatch();
+            conn.commit();
+            logger.debug("Stored {} records of {}", records.size(), catalogue);
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Retrieves the stored records of a catalogue satisfying the given criteria.
+     * <p>
+     * Records are ordered by sensing start time.
+     *
+     * @param catalogue the catalogue endpoint
+     * @param criteria the search criteria
+     * @param offset the number of matching records to skip
+     * @param limit the maximum number of records to return, zero or negative for all
+     * @return the matching records
+     * @throws SQLException in case of database problems
+     */
+    public synchronized List<Metadata> query(String catalogue, QueryCriteria criteria, int offset, int limit) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select ").append(selectCols).append(" from metadata");
+        appendWhere(sql, params, catalogue, criteria);
+        sql.append(" order by start_ms, product_key");
+        if (limit > 0 || offset > 0) {
+            // a negative limit returns all rows
+            sql.append(" limit ").append(limit > 0 ? limit : -1).append(" offset ").append(Math.max(0, offset));
+        }
+        List<Metadata> ret = new ArrayList<>();
+        try (PreparedStatement ps = prepare(sql.toString(), params)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Metadata m = new Metadata();
+                    for (int i = 0; i < NAMES.length; i++) {
+                        final String val = rs.getString(i + 1);
+                        if (val != null) {
+                            m.put(NAMES[i], val);
+                        }
+                    }
+                    ret.add(m);
+                }
+            }
+        }
+        logger.debug("Local query on {} returned {} records", catalogue, ret.size());
+        return ret;
+    }
+
+    /**
+     * Counts the stored records of a catalogue satisfying the given criteria.
+     *
+     * @param catalogue the catalogue endpoint
+     * @param criteria the search criteria
+     * @return the number of matching records
+     * @throws SQLException in case of database problems
+     */
+    public synchronized int count(String catalogue, QueryCriteria criteria) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select count(*) from metadata");
+        appendWhere(sql, params, catalogue, criteria);
+        try (PreparedStatement ps = prepare(sql.toString(), params)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Tells which of the given records are already stored.
+     *
+     * @param catalogue the catalogue endpoint
+     * @param records the records to look for
+     * @return the product keys of the records already stored
+     * @throws SQLException in case of database problems
+     */
+    public synchronized Set<String> knownKeys(String catalogue, List<Metadata> records) throws SQLException {
+        Set<String> ret = new HashSet<>();
+        // look up keys in batches to bound the statement size
+        final int batch = 500;
+        for (int from = 0; from < records.size(); from += batch) {
+            final List<Metadata> sub = records.subList(from, Math.min(records.size(), from + batch));
+            List<Object> params = new ArrayList<>(sub.size() + 1);
+            StringBuilder sql = new StringBuilder("select product_key from metadata where catalogue=? and product_key in (");
+            params.add(catalogue);
+            for (int i = 0; i < sub.size(); i++) {
+                sql.append(i > 0 ? ",?" : "?");
+                params.add(sub.get(i).getProductKey());
+            }
+            sql.append(')');
+            try (PreparedStatement ps = prepare(sql.toString(), params)) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ret.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        psMerge.close();
+        conn.close();
+        logger.info("Metadata store closed");
+    }
+
+    private void createSchema() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("create table if not exists metadata("
+                    + "catalogue varchar not null,"
+                    + "product_key varchar not null,"
+                    + "stored_ms bigint not null,"
+                    + "start_ms bigint,"
+                    + "stop_ms bigint,"
+                    + "min_lat double,"
+                    + "min_lon double,"
+                    + "max_lat double,"
+                    + "max_lon double,"
+                    + "primary key(catalogue,product_key))");
+            // one column per metadata name, added when missing to follow additions to the enumeration
+            for (MetadataNames mn : NAMES) {
+                stmt.execute("alter table metadata add column if not exists " + mn.name() + " varchar");
+            }
+            stmt.execute("create index if not exists idx_md_parent on metadata(catalogue," + PARENT_IDENTIFIER.name() + ")");
+            stmt.execute("create index if not exists idx_md_start on metadata(start_ms)");
+            stmt.execute("create index if not exists idx_md_stop on metadata(stop_ms)");
+            stmt.execute("create index if not exists idx_md_bbox_lat on metadata(min_lat,max_lat)");
+            stmt.execute("create index if not exists idx_md_bbox_lon on metadata(min_lon,max_lon)");
+        }
+    }
+
+    private static void appendWhere(StringBuilder sql, List<Object> params, String catalogue, QueryCriteria criteria) {
+        sql.append(" where catalogue=?");
+        params.add(catalogue);
+        // collections
+        final String[] colls = criteria.getCollections();
+        if (colls.length > 0) {
+            sql.append(" and ").append(PARENT_IDENTIFIER.name()).append(" in (");
+            for (int i = 0; i < colls.length; i++) {
+                sql.append(i > 0 ? ",?" : "?");
+                params.add(colls[i]);
+            }
+            sql.append(')');
+        }
+        // time constraints, on the same properties as the catalogue filter
+        switch (criteria.getTimeOperator()) {
+            case QueryCriteria.TIME_CONTAINED:
+                sql.append(" and start_ms>=? and stop_ms<=?");
+                params.add(criteria.getTime1().getTime());
+                params.add(criteria.getTime2().getTime());
+                break;
+            case QueryCriteria.TIME_OVERLAPS:
+                sql.append(" and stop_ms>=? and start_ms<=?");
+                params.add(criteria.getTime1().getTime());
+                params.add(criteria.getTime2().getTime());
+                break;
+            case QueryCriteria.TIME_AFTER:
+                sql.append(" and start_ms>=?");
+                params.add(criteria.getTime1().getTime());
+                break;
+            case QueryCriteria.TIME_BEFORE:
+                sql.append(" and stop_ms<=?");
+                params.add(criteria.getTime1().getTime());
+                break;
+        }
+        // spatial constraints on bounding boxes
+        final double[] aoi = criteria.getAoiBounds();
+        if (aoi != null) {
+            switch (criteria.getSpatialOperator()) {
+                case QueryCriteria.SPATIAL_CONTAINS:
+                    // footprint contains the area of interest
+                    sql.append(" and min_lat<=? and min_lon<=? and max_lat>=? and max_lon>=?");
+                    params.add(aoi[0]);
+                    params.add(aoi[1]);
+                    params.add(aoi[2]);
+                    params.add(aoi[3]);
+                    break;
+                case QueryCriteria.SPATIAL_WITHIN:
+                    // footprint within the area of interest
+                    sql.append(" and min_lat>=? and min_lon>=? and max_lat<=? and max_lon<=?");
+                    params.add(aoi[0]);
+                    params.add(aoi[1]);
+                    params.add(aoi[2]);
+                    params.add(aoi[3]);
+                    break;
+                default:
+                    // overlaps and intersects
+                    sql.append(" and min_lat<=? and max_lat>=? and min_lon<=? and max_lon>=?");
+                    params.add(aoi[2]);
+                    params.add(aoi[0]);
+                    params.add(aoi[3]);
+                    params.add(aoi[1]);
+            }
+        }
+        // shard restrictions
+        if (criteria.getShardFrom() != null) {
+            sql.append(" and start_ms>=?");
+            params.add(criteria.getShardFrom().getTime());
+        }
+        if (criteria.getShardTo() != null) {
+            sql.append(" and start_ms<?");
+            params.add(criteria.getShardTo().getTime());
+        }
+        final double[] tile = criteria.getShardTile();
+        if (tile != null) {
+            sql.append(" and min_lat<=? and max_lat>=? and min_lon<=? and max_lon>=?");
+            params.add(tile[2]);
+            params.add(tile[0]);
+            params.add(tile[3]);
+            params.add(tile[1]);
+        }
+    }
+
+    private PreparedStatement prepare(String sql, List<Object> params) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sql);
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+        return ps;
+    }
+
+    private void setTime(PreparedStatement ps, int idx, long millis) throws SQLException {
+        if (millis != TypedValues.NO_TIME) {
+            ps.setLong(idx, millis);
+        } else {
+            ps.setNull(idx, Types.BIGINT);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Throughput profile of a catalogue learned from the result pages retrieved, used to choose page size and concurrency of searches.
+ * <p>
+ * Page latencies are fitted with exponentially decaying weights to a fixed overhead plus a per record cost, the latter including the
+ * payload transfer and decoding. Since the records per second of a single stream grow with the page size, the chosen size is the
+ * largest one whose predicted latency stays within a share of the catalogue timeout, capped by the record limit the server applies to
+ * its responses and, after a failed page, by a ceiling halving the failed size.
+ * <p>
+ * The records per second of whole searches are tracked for each concurrency level, the chosen level climbs towards the best
+ * measured one trying its untried neighbours first.
+ * <p>
+ * Instances are thread safe. The profile can be saved to and restored from a string for storing in preferences.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class PageSizeProfile {
+
+    public static final int MIN_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_CONCURRENCY = 16;
+    // weight of past samples when adding a new one
+    private static final double DECAY = 0.9;
+    // predicted page latency must stay below this share of the timeout
+    private static final double TIMEOUT_SHARE = 0.5;
+    // page samples needed before trusting the latency model
+    private static final int MIN_SAMPLES = 3;
+    private static final String FORMAT_VERSION = "1";
+    private int serverLimit = 0;
+    private int ceiling = 0;
+    // decayed sums of the least squares fit of latency (millis) over page size (records)
+    private double sw, sx, sy, sxx, sxy;
+    private int samples = 0;
+    // decayed records per second of searches by concurrency level, zero when not measured
+    private final double[] rates = new double[MAX_CONCURRENCY + 1];
+
+    /**
+     * Records a page retrieved successfully.
+     *
+     * @param requested the number of records asked for
+     * @param returned the number of records returned
+     * @param more true if the search matched records beyond the page
+     * @param millis the page latency
+     */
+    public synchronized void pageFetched(int requested, int returned, boolean more, long millis) {
+        if (returned < requested && more && returned > 0) {
+            // the server caps the records in a response
+            serverLimit = returned;
+        } else if (returned > serverLimit && serverLimit > 0) {
+            serverLimit = returned;
+        }
+        if (ceiling > 0 && requested >= ceiling) {
+            ceiling = Math.min(MAX_PAGE_SIZE, requested + requested / 4);
+        }
+        if (returned > 0) {
+            sw = sw * DECAY + 1;
+            sx = sx * DECAY + returned;
+            sy = sy * DECAY + millis;
+            sxx = sxx * DECAY + (double) returned * returned;
+            sxy = sxy * DECAY + (double) returned * millis;
+            samples++;
+        }
+    }
+
+    /**
+     * Records a page request that failed, e.g. timing out.
+     *
+     * @param requested the number of records asked for
+     * @param concurrency the concurrency level of the search
+     */
+    public synchronized void pageFailed(int requested, int concurrency) {
+        ceiling = Math.max(MIN_PAGE_SIZE, requested / 2);
+        final int c = clampConcurrency(concurrency);
+        rates[c] /= 2;
+    }
+
+    /**
+     * Records the outcome of a search retrieving several pages.
+     *
+     * @param concurrency the concurrency level of the search
+     * @param records the number of records retrieved
+     * @param millis the duration of the search
+     */
+    public synchronized void searchDone(int concurrency, int records, long millis) {
+        if (records <= 0 || millis <= 0) {
+            return;
+        }
+        final int c = clampConcurrency(concurrency);
+        final double rate = records * 1000.0 / millis;
+        rates[c] = rates[c] > 0 ? rates[c] * DECAY + rate * (1 - DECAY) : rate;
+    }
+
+    /**
+     * Chooses the page size.
+     *
+     * @param fallback the size to use when nothing is known about the catalogue
+     * @param timeoutMillis the request timeout of the catalogue
+     * @param matched the number of records to retrieve, zero or negative if unknown
+     * @param concurrency the number of pages that will be requested at the same time
+     * @return the number of records to ask for in each page
+     */
+    public synchronized int pageSize(int fallback, int timeoutMillis, int matched, int concurrency) {
+        int size = fallback;
+        if (samples >= MIN_SAMPLES) {
+            final double perRecord = perRecordMillis();
+            final double budget = timeoutMillis * TIMEOUT_SHARE - overheadMillis(perRecord);
+            size = budget > 0 ? (int) Math.min(MAX_PAGE_SIZE, budget / perRecord) : MIN_PAGE_SIZE;
+            size = Math.max(MIN_PAGE_SIZE, size);
+        }
+        if (matched > 0 && concurrency > 1) {
+            // keep all the concurrent requests busy
+            size = Math.min(size, Math.max(MIN_PAGE_SIZE, (matched + concurrency - 1) / concurrency));
+        }
+        if (ceiling > 0) {
+            size = Math.min(size, ceiling);
+        }
+        if (serverLimit > 0) {
+            size = Math.min(size, serverLimit);
+        }
+        return Math.max(1, size);
+    }
+
+    /**
+     * Chooses the concurrency level.
+     *
+     * @param maxParallel the maximum level allowed for the catalogue
+     * @return the number of pages to request at the same time
+     */
+    public synchronized int concurrency(int maxParallel) {
+        final int max = clampConcurrency(maxParallel);
+        int best = 0;
+        for (int c = 1; c <= max; c++) {
+            if (rates[c] > 0 && (best == 0 || rates[c] > rates[best])) {
+                best = c;
+            }
+        }
+        if (best == 0) {
+            return max;
+        }
+        // explore untried neighbours of the best level
+        if (best < max && rates[best + 1] == 0) {
+            return best + 1;
+        }
+        if (best > 1 && rates[best - 1] == 0) {
+            return best - 1;
+        }
+        return best;
+    }
+
+    /**
+     * Gives the record limit the server was seen to apply to its responses.
+     *
+     * @return the limit or zero if not detected
+     */
+    public synchronized int getServerLimit() {
+        return serverLimit;
+    }
+
+    /**
+     * Forgets everything learned.
+     */
+    public synchronized void reset() {
+        serverLimit = ceiling = samples = 0;
+        sw = sx = sy = sxx = sxy = 0;
+        Arrays.fill(rates, 0);
+    }
+
+    /**
+     * Saves the profile to a string.
+     *
+     * @return the string form of the profile
+     */
+    public synchronized String save() {
+        StringBuilder sb = new StringBuilder(FORMAT_VERSION);
+        sb.append(';').append(serverLimit).append(';').append(ceiling).append(';').append(samples);
+        for (double d : new double[]{sw, sx, sy, sxx, sxy}) {
+            sb.append(';').append(String.format(Locale.ROOT, "%.6g", d));
+        }
+        sb.append(';');
+        for (int c = 1; c < rates.length; c++) {
+            if (c > 1) {
+                sb.append(',');
+            }
+            sb.append(String.format(Locale.ROOT, "%.3f", rates[c]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Restores the profile from a string produced by {@link #save()}.
+     * <p>
+     * Unreadable strings reset the profile.
+     *
+     * @param saved the string form of the profile
+     */
+    public synchronized void restore(String saved) {
+        reset();
+        if (saved == null || saved.isEmpty()) {
+            return;
+        }
+        try {
+            final String[] parts = saved.split(";");
+            if (parts.length != 10 || !FORMAT_VERSION.equals(parts[0])) {
+                return;
+            }
+            serverLimit = Integer.parseInt(parts[1]);
+            ceiling = Integer.parseInt(parts[2]);
+            samples = Integer.parseInt(parts[3]);
+            sw = Double.parseDouble(parts[4]);
+            sx = Double.parseDouble(parts[5]);
+            sy = Double.parseDouble(parts[6]);
+            sxx = Double.parseDouble(parts[7]);
+            sxy = Double.parseDouble(parts[8]);
+            final String[] rs = parts[9].split(",");
+            for (int c = 1; c < rates.length && c <= rs.length; c++) {
+                rates[c] = Double.parseDouble(rs[c - 1]);
+            }
+        } catch (NumberFormatException ex) {
+            reset();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (samples < MIN_SAMPLES) {
+            return String.format("PageSizeProfile[%d samples, server limit %d]", samples, serverLimit);
+        }
+        final double perRecord = perRecordMillis();
+        return String.format(Locale.ROOT, "PageSizeProfile[%d samples, overhead %.0f ms, %.2f ms/record, server limit %d, ceiling %d]",
+                samples, overheadMillis(perRecord), perRecord, serverLimit, ceiling);
+    }
+
+    private double perRecordMillis() {
+        final double den = sw * sxx - sx * sx;
+        double slope = 0;
+        if (Math.abs(den) > 1e-9 * sw * sxx) {
+            slope = (sw * sxy - sx * sy) / den;
+        }
+        if (slope <= 0) {
+            // pages of the same size (or noise) do not separate overhead and per record cost, assume no overhead
+            slope = sx > 0 ? sy / sx : 1;
+        }
+        return Math.max(slope, 1e-3);
+    }
+
+    private double overheadMillis(double perRecord) {
+        return sw > 0 ? Math.max(0, (sy - perRecord * sx) / sw) : 0;
+    }
+
+    private static int clampConcurrency(int c) {
+        return Math.max(1, Math.min(MAX_CONCURRENCY, c));
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * The constraints of a catalogue search: collections, time window and area of interest.
+ * <p>
+ * Criteria are independent from the way they are evaluated: they are turned into an OGC filter when querying a catalogue and into
+ * SQL when querying the local metadata store.
+ * <p>
+ * Area of interest coordinates are latitude longitude pairs in degrees: the vertices for polygons and polylines, the center for
+ * circles and points, the lower and upper corners for lat-lon ranges. Circle radius is in meters.
+ * <p>
+ * Criteria can be restricted to a shard of the search: a window on the sensing start time, bounds are inclusive lower and exclusive
+ * upper so that adjacent windows do not share products, and a tile products must intersect, adjacent tiles may share products
+ * crossing their border.
+ * <p>
+ * Products can also be restricted to those archived since a given time, a constraint only evaluated by catalogues.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class QueryCriteria {
+
+    // temporal operators, in the order of the time window panel
+    public static final int TIME_NONE = -1;
+    public static final int TIME_CONTAINED = 0;
+    public static final int TIME_OVERLAPS = 1;
+    public static final int TIME_AFTER = 2;
+    public static final int TIME_BEFORE = 3;
+    // area of interest primitives, in the order of the geo area panel
+    public static final int AOI_NONE = -1;
+    public static final int AOI_POLYGON = 0;
+    public static final int AOI_CIRCLE = 1;
+    public static final int AOI_POLYLINE = 2;
+    public static final int AOI_POINT = 3;
+    public static final int AOI_RANGE = 4;
+    // spatial operators, in the order of the geo area panel
+    public static final int SPATIAL_OVERLAPS = 0;
+    public static final int SPATIAL_CONTAINS = 1;
+    public static final int SPATIAL_INTERSECTS = 2;
+    public static final int SPATIAL_WITHIN = 3;
+    // approximate length of a degree of latitude in meters
+    private static final double METERS_PER_DEGREE = 111320d;
+    private String[] collections = new String[0];
+    private int timeOperator = TIME_NONE;
+    private Date time1;
+    private Date time2;
+    private int aoiPrimitive = AOI_NONE;
+    private int spatialOperator = SPATIAL_OVERLAPS;
+    private double[] aoiCoords = new double[0];
+    private double aoiRadius;
+    private Date shardFrom;
+    private Date shardTo;
+    private double[] shardTile;
+    private Date archivedSince;
+
+    public String[] getCollections() {
+        return collections;
+    }
+
+    public void setCollections(String[] collections) {
+        this.collections = collections != null ? collections : new String[0];
+    }
+
+    public int getTimeOperator() {
+        return timeOperator;
+    }
+
+    public Date getTime1() {
+        return time1;
+    }
+
+    public Date getTime2() {
+        return time2;
+    }
+
+    /**
+     * Sets the time constraint.
+     *
+     * @param operator one of the {@code TIME_} constants
+     * @param t1 the first or only instant
+     * @param t2 the second instant, ignored for {@link #TIME_AFTER} and {@link #TIME_BEFORE}
+     */
+    public void setTime(int operator, Date t1, Date t2) {
+        this.timeOperator = operator;
+        this.time1 = t1;
+        this.time2 = t2;
+    }
+
+    public boolean hasTime() {
+        return timeOperator != TIME_NONE;
+    }
+
+    public int getAoiPrimitive() {
+        return aoiPrimitive;
+    }
+
+    public int getSpatialOperator() {
+        return spatialOperator;
+    }
+
+    public double[] getAoiCoords() {
+        return aoiCoords;
+    }
+
+    public double getAoiRadius() {
+        return aoiRadius;
+    }
+
+    /**
+     * Sets the area of interest constraint.
+     *
+     * @param primitive one of the {@code AOI_} constants
+     * @param operator one of the {@code SPATIAL_} constants
+     * @param coords the latitude longitude pairs
+     * @param radius the radius in meters, only for {@link #AOI_CIRCLE}
+     */
+    public void setAoi(int primitive, int operator, double[] coords, double radius) {
+        this.aoiPrimitive = primitive;
+        this.spatialOperator = operator;
+        this.aoiCoords = coords;
+        this.aoiRadius = radius;
+    }
+
+    public boolean hasAoi() {
+        return aoiPrimitive != AOI_NONE;
+    }
+
+    public Date getShardFrom() {
+        return shardFrom;
+    }
+
+    public Date getShardTo() {
+        return shardTo;
+    }
+
+    /**
+     * Restricts the criteria to products whose sensing starts in a time window.
+     *
+     * @param from the inclusive lower bound, null for no lower bound
+     * @param to the exclusive upper bound, null for no upper bound
+     */
+    public void setShardWindow(Date from, Date to) {
+        this.shardFrom = from;
+        this.shardTo = to;
+    }
+
+    public boolean hasShardWindow() {
+        return shardFrom != null || shardTo != null;
+    }
+
+    public double[] getShardTile() {
+        return shardTile;
+    }
+
+    /**
+     * Restricts the criteria to products intersecting a tile.
+     *
+     * @param bounds the tile as minimum latitude, minimum longitude, maximum latitude and maximum longitude, null for no tile
+     */
+    public void setShardTile(double[] bounds) {
+        this.shardTile = bounds;
+    }
+
+    public boolean hasShardTile() {
+        return shardTile != null;
+    }
+
+    public Date getArchivedSince() {
+        return archivedSince;
+    }
+
+    /**
+     * Restricts the criteria to products archived since a given time.
+     *
+     * @param since the inclusive lower bound of the archiving date, null for no restriction
+     */
+    public void setArchivedSince(Date since) {
+        this.archivedSince = since;
+    }
+
+    /**
+     * Copies the criteria, including shard restrictions.
+     *
+     * @return a new independent instance
+     */
+    public QueryCriteria copy() {
+        QueryCriteria ret = new QueryCriteria();
+        ret.collections = collections.clone();
+        ret.timeOperator = timeOperator;
+        ret.time1 = time1;
+        ret.time2 = time2;
+        ret.aoiPrimitive = aoiPrimitive;
+        ret.spatialOperator = spatialOperator;
+        ret.aoiCoords = aoiCoords.clone();
+        ret.aoiRadius = aoiRadius;
+        ret.shardFrom = shardFrom;
+        ret.shardTo = shardTo;
+        ret.shardTile = shardTile != null ? shardTile.clone() : null;
+        ret.archivedSince = archivedSince;
+        return ret;
+    }
+
+    /**
+     * Computes the bounding box of the area of interest.
+     * <p>
+     * Circles are approximated with the box of their radius in degrees at the center latitude.
+     *
+     * @return the bounds as minimum latitude, minimum longitude, maximum latitude and maximum longitude or null if no area of interest
+     */
+    public double[] getAoiBounds() {
+        if (!hasAoi() || aoiCoords.length < 2) {
+            return null;
+        }
+        if (aoiPrimitive == AOI_CIRCLE) {
+            final double dLat = aoiRadius / METERS_PER_DEGREE;
+            final double cosLat = Math.cos(Math.toRadians(aoiCoords[0]));
+            final double dLon = cosLat > 1e-6 ? Math.min(180, dLat / cosLat) : 180;
+            return new double[]{
+                Math.max(-90, aoiCoords[0] - dLat), Math.max(-180, aoiCoords[1] - dLon),
+                Math.min(90, aoiCoords[0] + dLat), Math.min(180, aoiCoords[1] + dLon)};
+        }
+        return bounds(aoiCoords);
+    }
+
+    /**
+     * Computes the bounding box of a sequence of latitude longitude pairs.
+     *
+     * @param latLons the coordinates
+     * @return the bounds as minimum latitude, minimum longitude, maximum latitude and maximum longitude
+     */
+    public static double[] bounds(double[] latLons) {
+        double[] ret = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = 0; i + 1 < latLons.length; i += 2) {
+            ret[0] = Math.min(ret[0], latLons[i]);
+            ret[1] = Math.min(ret[1], latLons[i + 1]);
+            ret[2] = Math.max(ret[2], latLons[i]);
+            ret[3] = Math.max(ret[3], latLons[i + 1]);
+        }
+        return ret;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 53 * hash + Arrays.hashCode(collections);
+        hash = 53 * hash + timeOperator;
+        hash = 53 * hash + Objects.hashCode(time1);
+        hash = 53 * hash + Objects.hashCode(time2);
+        hash = 53 * hash + aoiPrimitive;
+        hash = 53 * hash + spatialOperator;
+        hash = 53 * hash + Arrays.hashCode(aoiCoords);
+        hash = 53 * hash + Objects.hashCode(aoiRadius);
+        hash = 53 * hash + Objects.hashCode(shardFrom);
+        hash = 53 * hash + Objects.hashCode(shardTo);
+        hash = 53 * hash + Arrays.hashCode(shardTile);
+        hash = 53 * hash + Objects.hashCode(archivedSince);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final QueryCriteria other = (QueryCriteria) obj;
+        return timeOperator == other.timeOperator
+                && aoiPrimitive == other.aoiPrimitive
+                && spatialOperator == other.spatialOperator
+                && Double.compare(aoiRadius, other.aoiRadius) == 0
+                && Objects.equals(time1, other.time1)
+                && Objects.equals(time2, other.time2)
+                && Arrays.equals(collections, other.collections)
+                && Arrays.equals(aoiCoords, other.aoiCoords)
+                && Objects.equals(shardFrom, other.shardFrom)
+                && Objects.equals(shardTo, other.shardTo)
+                && Arrays.equals(shardTile, other.shardTile)
+                && Objects.equals(archivedSince, other.archivedSince);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("QueryCriteria{collections=%s, time=%d %s %s, aoi=%d op %d %s r=%s", Arrays.toString(collections),
+                timeOperator, time1, time2, aoiPrimitive, spatialOperator, Arrays.toString(aoiCoords), aoiRadius));
+        if (hasShardWindow() || hasShardTile()) {
+            sb.append(String.format(", shard=%s %s %s", shardFrom, shardTo, Arrays.toString(shardTile)));
+        }
+        if (archivedSince != null) {
+            sb.append(", archived since ").append(archivedSince);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,796 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import static main.data.MetadataNames.ACQ_DATE;
+import static main.data.MetadataNames.ACQ_STATION;
+import static main.data.MetadataNames.ACQ_SUBTYPE;
+import static main.data.MetadataNames.ACQ_TYPE;
+import static main.data.MetadataNames.ARCH_CENTER;
+import static main.data.MetadataNames.ARCH_DATE;
+import static main.data.MetadataNames.ASC_NODE_LON;
+import static main.data.MetadataNames.CLOUD_COVER;
+import static main.data.MetadataNames.DOPPLER_FREQ;
+import static main.data.MetadataNames.FOOTPRINT;
+import static main.data.MetadataNames.ILLUM_ANGLE_AZIM;
+import static main.data.MetadataNames.ILLUM_ANGLE_ELEV;
+import static main.data.MetadataNames.IMG_DEGRADATION;
+import static main.data.MetadataNames.INCID_ANGLE;
+import static main.data.MetadataNames.INCID_ANGLE_ACROSS;
+import static main.data.MetadataNames.INCID_ANGLE_ALONG;
+import static main.data.MetadataNames.INCID_ANGLE_VAR;
+import static main.data.MetadataNames.INST_NAME;
+import static main.data.MetadataNames.LAST_ORBIT_NUMBER;
+import static main.data.MetadataNames.LOOK_SIDE;
+import static main.data.MetadataNames.MAX_INCID_ANGLE;
+import static main.data.MetadataNames.MIN_INCID_ANGLE;
+import static main.data.MetadataNames.MISSION_NAME;
+import static main.data.MetadataNames.ORBIT_DIRECTION;
+import static main.data.MetadataNames.ORBIT_NUMBER;
+import static main.data.MetadataNames.PARENT_IDENTIFIER;
+import static main.data.MetadataNames.POLARISN_CHANNELS;
+import static main.data.MetadataNames.POLARISN_MODE;
+import static main.data.MetadataNames.PROC_LEVEL;
+import static main.data.MetadataNames.PRODUCT_TYPE;
+import static main.data.MetadataNames.SAT_NAME;
+import static main.data.MetadataNames.SAT_SERIAL;
+import static main.data.MetadataNames.SCENE_CENTER;
+import static main.data.MetadataNames.SENS_OP_MODE;
+import static main.data.MetadataNames.SENS_RESOLUTION;
+import static main.data.MetadataNames.SENS_SWATH;
+import static main.data.MetadataNames.SENS_TYPE;
+import static main.data.MetadataNames.SNOW_COVER;
+import static main.data.MetadataNames.START_DOWNLINK;
+import static main.data.MetadataNames.START_SENSING;
+import static main.data.MetadataNames.STATUS;
+import static main.data.MetadataNames.STOP_DOWNLINK;
+import static main.data.MetadataNames.STOP_SENSING;
+import static main.data.MetadataNames.WRS_LAT;
+import static main.data.MetadataNames.WRS_LON;
+import net.falappa.utils.CoordsParser;
+
+/**
+ * Columnar store of search results.
+ * <p>
+ * Holds one column per {@link MetadataNames} key, allocated when the first value of the key is stored. Low cardinality attributes
+ * (collection, platform, product type, orbit direction...) are dictionary encoded, numeric attributes are kept in primitive arrays
+ * and all other attributes in plain string arrays. Numeric values whose text is not the canonical representation of the number
+ * (e.g. {@code "12.50"}) keep their original text apart, so that values are always given back unchanged. Likewise date time
+ * attributes are kept as decoded instants and coordinates attributes as decoded ordinates, packed in a single array shared by all
+ * the rows, their text being formatted when asked.
+ * <p>
+ * Typed values are read with {@link #getNumber(int, MetadataNames)} and {@link #getTime(int, MetadataNames)} without decoding the
+ * text again, values already decoded by the records being added are reused. Ordinates are read with
+ * {@link #getOrdinates(int, MetadataNames, double[], int)} into a caller provided array, without allocations.
+ * <p>
+ * Records added to the table become lightweight row views: their values are moved to the columns and accessing the record reads
+ * and writes the table. A record belongs to at most one table. Tables grow but never shrink, a new search should fill a new table.
+ * <p>
+ * Instances are thread safe. Writers are serialized by the table lock, readers do not lock: columns only grow by copying their
+ * arrays and each write is published by the volatile row count, so readers see rows as of the last completed write.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class ResultTable {
+
+    /**
+     * Attributes taking few distinct values across a result set.
+     */
+    public static final EnumSet<MetadataNames> DICTIONARY = EnumSet.of(PARENT_IDENTIFIER, PRODUCT_TYPE, ACQ_STATION, ACQ_TYPE,
+            ACQ_SUBTYPE, ARCH_CENTER, STATUS, ORBIT_DIRECTION, MISSION_NAME, SAT_NAME, INST_NAME, SAT_SERIAL, SENS_TYPE, SENS_OP_MODE,
+            SENS_RESOLUTION, PROC_LEVEL, SENS_SWATH, POLARISN_CHANNELS, POLARISN_MODE, LOOK_SIDE);
+    /**
+     * Attributes with numeric values.
+     */
+    public static final EnumSet<MetadataNames> NUMERIC = EnumSet.of(ORBIT_NUMBER, LAST_ORBIT_NUMBER, CLOUD_COVER, SNOW_COVER,
+            ASC_NODE_LON, WRS_LON, WRS_LAT, INCID_ANGLE, INCID_ANGLE_ALONG, INCID_ANGLE_ACROSS, ILLUM_ANGLE_AZIM, ILLUM_ANGLE_ELEV,
+            MIN_INCID_ANGLE, MAX_INCID_ANGLE, INCID_ANGLE_VAR, DOPPLER_FREQ, IMG_DEGRADATION);
+    /**
+     * Attributes with date time values.
+     */
+    public static final EnumSet<MetadataNames> TIME = EnumSet.of(START_SENSING, STOP_SENSING, ACQ_DATE, ARCH_DATE, START_DOWNLINK,
+            STOP_DOWNLINK);
+    /**
+     * Attributes with whitespace separated coordinates values.
+     */
+    public static final EnumSet<MetadataNames> COORDINATES = EnumSet.of(FOOTPRINT, SCENE_CENTER);
+    private static final MetadataNames[] NAMES = MetadataNames.values();
+    private static final int INITIAL_CAPACITY = 256;
+    private final Column[] columns = new Column[NAMES.length];
+    private int capacity = INITIAL_CAPACITY;
+    // written last by each writer, read first by readers
+    private volatile int rows = 0;
+
+    /**
+     * Adds a record to the table, the record becomes a view of the new row.
+     * <p>
+     * Records already belonging to a table are left untouched.
+     *
+     * @param m the record
+     * @return true if the record was added
+     */
+    public synchronized boolean add(Metadata m) {
+        final String[] values = m.detachedValues();
+        if (values == null) {
+            return false;
+        }
+        final long[] typed = m.detachedTyped();
+        if (rows == capacity) {
+            capacity *= 2;
+            for (Column c : columns) {
+                if (c != null) {
+                    c.grow(capacity);
+                }
+            }
+        }
+        final int row = rows;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                final int slot = Metadata.typedSlot(NAMES[i]);
+                if (slot >= 0 && typed != null) {
+                    column(i).set(row, values[i], typed[slot]);
+                } else {
+                    column(i).set(row, values[i]);
+                }
+            }
+        }
+        // publish the row before the record becomes a view of it
+        rows = row + 1;
+        m.attach(this, row);
+        return true;
+    }
+
+    /**
+     * Adds all the given records, in iteration order.
+     *
+     * @param records the records
+     */
+    public synchronized void addAll(Collection<Metadata> records) {
+        for (Metadata m : records) {
+            add(m);
+        }
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    String get(int row, MetadataNames name) {
+        final Column c = published(name);
+        return c != null ? c.get(row) : null;
+    }
+
+    synchronized void set(int row, MetadataNames name, String value) {
+        final Column c = columns[name.ordinal()];
+        if (c != null) {
+            c.set(row, value);
+        } else if (value != null) {
+            column(name.ordinal()).set(row, value);
+        }
+        // publish the change, a volatile write even if the count is unchanged
+        rows = rows;
+    }
+
+    /**
+     * Gives a numeric attribute of a row.
+     *
+     * @param row the row
+     * @param name the attribute
+     * @return the value or NaN if missing, not numeric or not stored as a number
+     */
+    public double getNumber(int row, MetadataNames name) {
+        final Column c = published(name);
+        return c != null ? c.number(row) : Double.NaN;
+    }
+
+    /**
+     * Gives a date time attribute of a row.
+     *
+     * @param row the row
+     * @param name the attribute
+     * @return the milliseconds since the epoch or {@link TypedValues#NO_TIME} if missing, invalid or not stored as a date time
+     */
+    public long getTime(int row, MetadataNames name) {
+        final Column c = published(name);
+        return c != null ? c.time(row) : TypedValues.NO_TIME;
+    }
+
+    /**
+     * Gives the number of ordinates of a coordinates attribute of a row.
+     *
+     * @param row the row
+     * @param name the attribute
+     * @return the number of ordinates, -1 if missing, invalid or not stored as coordinates
+     */
+    public int getOrdinatesCount(int row, MetadataNames name) {
+        final Column c = published(name);
+        return c != null ? c.ordinatesCount(row) : -1;
+    }
+
+    /**
+     * Copies the ordinates of a coordinates attribute of a row into an array.
+     * <p>
+     * The array must have room for {@link #getOrdinatesCount(int, MetadataNames)} ordinates from the given offset.
+     *
+     * @param row the row
+     * @param name the attribute
+     * @param dest the destination array
+     * @param offset the index in the destination array of the first ordinate
+     * @return the number of ordinates copied, -1 if missing, invalid or not stored as coordinates
+     */
+    public int getOrdinates(int row, MetadataNames name, double[] dest, int offset) {
+        final Column c = published(name);
+        return c != null ? c.ordinates(row, dest, offset) : -1;
+    }
+
+    /**
+     * Gives a copy of the ordinates of a coordinates attribute of a row.
+     *
+     * @return the ordinates or null if missing, empty, invalid or not stored as coordinates
+     */
+    double[] getOrdinates(int row, MetadataNames name) {
+        final Column c = published(name);
+        return c != null ? c.ordinates(row) : null;
+    }
+
+    /**
+     * Counts the attributes of a row.
+     */
+    int count(int row) {
+        int ret = 0;
+        if (rows == 0) {
+            return 0;
+        }
+        for (Column c : columns) {
+            if (c != null && c.get(row) != null) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gives the number of distinct values of a dictionary encoded attribute.
+     *
+     * @param name the attribute
+     * @return the dictionary size, 0 if the attribute is not dictionary encoded or has no values
+     */
+    public int getDictionarySize(MetadataNames name) {
+        final Column c = published(name);
+        return c instanceof DictColumn ? ((DictColumn) c).size : 0;
+    }
+
+    @Override
+    public String toString() {
+        final int n = rows;
+        int cols = 0;
+        for (Column c : columns) {
+            if (c != null) {
+                cols++;
+            }
+        }
+        return String.format("ResultTable[%d rows, %d columns]", n, cols);
+    }
+
+    /**
+     * Gives the column of an attribute for reading, after the volatile read making the last completed write visible.
+     */
+    private Column published(MetadataNames name) {
+        return rows > 0 ? columns[name.ordinal()] : null;
+    }
+
+    private Column column(int ordinal) {
+        Column c = columns[ordinal];
+        if (c == null) {
+            final MetadataNames name = NAMES[ordinal];
+            if (DICTIONARY.contains(name)) {
+                c = new DictColumn(capacity);
+            } else if (NUMERIC.contains(name)) {
+                c = new NumberColumn(capacity);
+            } else if (TIME.contains(name)) {
+                c = new TimeColumn(capacity);
+            } else if (COORDINATES.contains(name)) {
+                c = new CoordsColumn(capacity);
+            } else {
+                c = new StringColumn(capacity);
+            }
+            columns[ordinal] = c;
+        }
+        return c;
+    }
+
+    /**
+     * Values of an attribute, null for rows without the attribute.
+     */
+    private abstract static class Column {
+
+        abstract String get(int row);
+
+        abstract void set(int row, String value);
+
+        /**
+         * Sets a value already decoded, the decoded value being the instant or the raw bits of the number.
+         */
+        void set(int row, String value, long decoded) {
+            set(row, value);
+        }
+
+        abstract void grow(int capacity);
+
+        double number(int row) {
+            return Double.NaN;
+        }
+
+        long time(int row) {
+            return TypedValues.NO_TIME;
+        }
+
+        int ordinatesCount(int row) {
+            return -1;
+        }
+
+        int ordinates(int row, double[] dest, int offset) {
+            return -1;
+        }
+
+        double[] ordinates(int row) {
+            return null;
+        }
+    }
+
+    private static class StringColumn extends Column {
+
+        private volatile String[] data;
+
+        StringColumn(int capacity) {
+            data = new String[capacity];
+        }
+
+        @Override
+        String get(int row) {
+            return data[row];
+        }
+
+        @Override
+        void set(int row, String value) {
+            data[row] = value;
+        }
+
+        @Override
+        void grow(int capacity) {
+            data = Arrays.copyOf(data, capacity);
+        }
+    }
+
+    /**
+     * Column storing for each row the index of the value in a dictionary of distinct values (offset by one, zero meaning no value).
+     */
+    private static class DictColumn extends Column {
+
+        // distinct values, appended only
+        private volatile String[] dict = new String[16];
+        private int size = 0;
+        // used by writers only
+        private final HashMap<String, Integer> codes = new HashMap<>();
+        private volatile int[] data;
+
+        DictColumn(int capacity) {
+            data = new int[capacity];
+        }
+
+        @Override
+        String get(int row) {
+            final int code = data[row];
+            return code > 0 ? dict[code - 1] : null;
+        }
+
+        @Override
+        void set(int row, String value) {
+            if (value == null) {
+                data[row] = 0;
+                return;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                String[] d = dict;
+                if (size == d.length) {
+                    d = Arrays.copyOf(d, size * 2);
+                }
+                d[size] = value;
+                dict = d;
+                code = ++size;
+                codes.put(value, code);
+            }
+            data[row] = code;
+        }
+
+        @Override
+        void grow(int capacity) {
+            data = Arrays.copyOf(data, capacity);
+        }
+    }
+
+    /**
+     * Column storing numbers as doubles together with the form of their text.
+     */
+    private static class NumberColumn extends Column {
+
+        private static final byte ABSENT = 0;
+        private static final byte INTEGER = 1;
+        private static final byte DECIMAL = 2;
+        private static final byte TEXT = 3;
+        // largest integer exactly representable as a double
+        private static final long MAX_EXACT = 1L << 53;
+        private final ConcurrentHashMap<Integer, String> texts = new ConcurrentHashMap<>();
+        private volatile double[] values;
+        private volatile byte[] forms;
+
+        NumberColumn(int capacity) {
+            values = new double[capacity];
+            forms = new byte[capacity];
+        }
+
+        @Override
+        String get(int row) {
+            final byte form = forms[row];
+            switch (form) {
+                case INTEGER:
+                    return Long.toString((long) values[row]);
+                case DECIMAL:
+                    return Double.toString(values[row]);
+                case TEXT:
+                    return texts.get(row);
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        void set(int row, String value) {
+            set(row, value, Double.doubleToRawLongBits(TypedValues.parseNumber(value)));
+        }
+
+        @Override
+        void set(int row, String value, long decoded) {
+            final byte[] f = forms;
+            if (value == null) {
+                f[row] = ABSENT;
+                texts.remove(row);
+                return;
+            }
+            final double d = Double.longBitsToDouble(decoded);
+            final byte form;
+            if (Double.isNaN(d)) {
+                // not a number, kept as text
+                form = TEXT;
+            } else if (Math.abs(d) <= MAX_EXACT && isCanonicalInteger(value)) {
+                form = INTEGER;
+            } else if (Double.toString(d).equals(value)) {
+                form = DECIMAL;
+            } else {
+                form = TEXT;
+            }
+            // value and text first, the form tells readers which one to use
+            values[row] = d;
+            if (form == TEXT) {
+                texts.put(row, value);
+            }
+            f[row] = form;
+            if (form != TEXT) {
+                texts.remove(row);
+            }
+        }
+
+        @Override
+        double number(int row) {
+            return forms[row] != ABSENT ? values[row] : Double.NaN;
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+            forms = Arrays.copyOf(forms, capacity);
+        }
+
+        /**
+         * Tells if a string is an integer without sign or leading zeros other than a minus, as produced by {@link Long#toString()}.
+         */
+        private static boolean isCanonicalInteger(String s) {
+            final int len = s.length();
+            final int first = len > 0 && s.charAt(0) == '-' ? 1 : 0;
+            // at most 15 digits, any of which is exact as a double and printed back the same
+            if (len == first || len - first > 15 || (s.charAt(first) == '0' && len - first > 1) || "-0".equals(s)) {
+                return false;
+            }
+            for (int i = first; i < len; i++) {
+                final char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Column storing date times as decoded instants, the text being formatted back when asked.
+     * <p>
+     * Texts not given back by formatting the instant in one of the ISO 8601 UTC forms are kept apart.
+     */
+    private static class TimeColumn extends Column {
+
+        private static final byte ABSENT = 0;
+        private static final byte DATE = 1;
+        private static final byte SECONDS = 2;
+        private static final byte MILLIS = 3;
+        private static final byte TEXT = 4;
+        private final ConcurrentHashMap<Integer, String> texts = new ConcurrentHashMap<>();
+        private volatile long[] millis;
+        private volatile byte[] forms;
+
+        TimeColumn(int capacity) {
+            millis = new long[capacity];
+            forms = new byte[capacity];
+        }
+
+        @Override
+        String get(int row) {
+            final byte form = forms[row];
+            switch (form) {
+                case ABSENT:
+                    return null;
+                case TEXT:
+                    return texts.get(row);
+                default:
+                    return TypedValues.formatTime(millis[row], form - DATE);
+            }
+        }
+
+        @Override
+        void set(int row, String value) {
+            set(row, value, TypedValues.parseTime(value));
+        }
+
+        @Override
+        void set(int row, String value, long decoded) {
+            final byte[] f = forms;
+            if (value == null) {
+                f[row] = ABSENT;
+                texts.remove(row);
+                return;
+            }
+            byte form = TEXT;
+            if (decoded != TypedValues.NO_TIME) {
+                // the form of the text tells the fields to format
+                final byte candidate = value.length() == 10 ? DATE : value.length() == 20 ? SECONDS : MILLIS;
+                if (value.equals(TypedValues.formatTime(decoded, candidate - DATE))) {
+                    form = candidate;
+                }
+            }
+            // instant and text first, the form tells readers which one to use
+            millis[row] = decoded;
+            if (form == TEXT) {
+                texts.put(row, value);
+            }
+            f[row] = form;
+            if (form != TEXT) {
+                texts.remove(row);
+            }
+        }
+
+        @Override
+        void grow(int capacity) {
+            millis = Arrays.copyOf(millis, capacity);
+            forms = Arrays.copyOf(forms, capacity);
+        }
+
+        @Override
+        long time(int row) {
+            return forms[row] != ABSENT ? millis[row] : TypedValues.NO_TIME;
+        }
+    }
+
+    /**
+     * Column storing coordinates as decoded ordinates, the text being formatted back when asked.
+     * <p>
+     * Ordinates of all rows are appended to a single packed array, each row keeping the offset and count of its ordinates. Texts not
+     * given back by formatting the ordinates, with integral values with or without a decimal zero, are kept apart as well as
+     * invalid coordinates.
+     * <p>
+     * Replacing the value of a row copies the ordinates of all the rows in a new store, leaving out the replaced ones, so that
+     * readers never see ordinates being overwritten. Values of the rows of a table are hardly ever replaced.
+     */
+    private static class CoordsColumn extends Column {
+
+        private static final byte ABSENT = 0;
+        // integral ordinates without decimal zero
+        private static final byte COMPACT = 1;
+        // ordinates as given by Double.toString
+        private static final byte PLAIN = 2;
+        private static final byte TEXT = 3;
+        private final ConcurrentHashMap<Integer, String> texts = new ConcurrentHashMap<>();
+        private volatile Store store;
+        // ordinates stored in the packed array of the current store, accessed by writers only
+        private int used = 0;
+
+        CoordsColumn(int capacity) {
+            // room for a few vertices per row
+            store = new Store(new double[capacity * 16], new int[capacity], new int[capacity], new byte[capacity]);
+        }
+
+        @Override
+        String get(int row) {
+            final Store st = store;
+            final byte form = st.forms[row];
+            switch (form) {
+                case ABSENT:
+                    return null;
+                case TEXT:
+                    return texts.get(row);
+                default:
+                    return format(st.packed, st.offsets[row], st.counts[row], form == COMPACT);
+            }
+        }
+
+        @Override
+        void set(int row, String value) {
+            Store st = store;
+            if (st.forms[row] != ABSENT) {
+                // replaced value, the row may be being read
+                st = compacted(st, row);
+            }
+            if (value == null) {
+                st.forms[row] = ABSENT;
+                texts.remove(row);
+                store = st;
+                return;
+            }
+            int n = -1;
+            byte form = TEXT;
+            try {
+                n = CoordsParser.count(value);
+                if (used + n > st.packed.length) {
+                    st = new Store(Arrays.copyOf(st.packed, Math.max(st.packed.length * 2, used + n)), st.offsets, st.counts, st.forms);
+                }
+                CoordsParser.parse(value, st.packed, used);
+                if (value.equals(format(st.packed, used, n, true))) {
+                    form = COMPACT;
+                } else if (value.equals(format(st.packed, used, n, false))) {
+                    form = PLAIN;
+                }
+            } catch (NumberFormatException nfe) {
+                // invalid, kept as text only
+                n = -1;
+            }
+            if (n >= 0) {
+                st.offsets[row] = used;
+                used += n;
+            }
+            st.counts[row] = n;
+            if (form == TEXT) {
+                texts.put(row, value);
+            }
+            st.forms[row] = form;
+            store = st;
+        }
+
+        @Override
+        void grow(int capacity) {
+            final Store st = store;
+            final int prev = st.counts.length;
+            final int[] c = Arrays.copyOf(st.counts, capacity);
+            Arrays.fill(c, prev, capacity, -1);
+            store = new Store(st.packed, Arrays.copyOf(st.offsets, capacity), c, Arrays.copyOf(st.forms, capacity));
+        }
+
+        @Override
+        int ordinatesCount(int row) {
+            final Store st = store;
+            return st.forms[row] != ABSENT ? st.counts[row] : -1;
+        }
+
+        @Override
+        int ordinates(int row, double[] dest, int offset) {
+            final Store st = store;
+            final int n = st.forms[row] != ABSENT ? st.counts[row] : -1;
+            if (n > 0) {
+                System.arraycopy(st.packed, st.offsets[row], dest, offset, n);
+            }
+            return n;
+        }
+
+        @Override
+        double[] ordinates(int row) {
+            final Store st = store;
+            final int n = st.forms[row] != ABSENT ? st.counts[row] : -1;
+            if (n <= 0) {
+                return null;
+            }
+            final double[] ret = new double[n];
+            System.arraycopy(st.packed, st.offsets[row], ret, 0, n);
+            return ret;
+        }
+
+        /**
+         * Copies the store leaving out the ordinates of the given row, which is left without value.
+         */
+        private Store compacted(Store st, int skipRow) {
+            final int rowsCount = st.counts.length;
+            int live = 0;
+            for (int r = 0; r < rowsCount; r++) {
+                if (r != skipRow && st.forms[r] != ABSENT && st.counts[r] > 0) {
+                    live += st.counts[r];
+                }
+            }
+            final Store ret = new Store(new double[live + live / 2 + 16], new int[rowsCount],
+                    Arrays.copyOf(st.counts, rowsCount), Arrays.copyOf(st.forms, rowsCount));
+            used = 0;
+            for (int r = 0; r < rowsCount; r++) {
+                if (r != skipRow && st.forms[r] != ABSENT && st.counts[r] > 0) {
+                    System.arraycopy(st.packed, st.offsets[r], ret.packed, used, st.counts[r]);
+                    ret.offsets[r] = used;
+                    used += st.counts[r];
+                }
+            }
+            ret.counts[skipRow] = -1;
+            ret.forms[skipRow] = ABSENT;
+            return ret;
+        }
+
+        /**
+         * Formats ordinates separated by single spaces.
+         */
+        private static String format(double[] packed, int from, int count, boolean compact) {
+            final StringBuilder sb = new StringBuilder(count * 10);
+            for (int i = from; i < from + count; i++) {
+                if (i > from) {
+                    sb.append(' ');
+                }
+                final double v = packed[i];
+                if (compact && v == Math.rint(v) && Math.abs(v) < 1e15) {
+                    sb.append((long) v);
+                } else {
+                    sb.append(v);
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Ordinates of the rows, replaced as a whole so that readers see consistent arrays.
+         */
+        private static class Store {
+
+            private final double[] packed;
+            private final int[] offsets;
+            // ordinates count, -1 for invalid values
+            private final int[] counts;
+            private final byte[] forms;
+
+            Store(double[] packed, int[] offsets, int[] counts, byte[] forms) {
+                this.packed = packed;
+                this.offsets = offsets;
+                this.counts = counts;
+                this.forms = forms;
+            }
+        }
+    }
+}
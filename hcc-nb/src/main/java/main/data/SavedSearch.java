@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.prefs.Preferences;
+
+/**
+ * A named search on a catalogue that can be run again retrieving only what changed since its last successful run.
+ * <p>
+ * The first run retrieves everything matched by the criteria. Following runs narrow the criteria to the products archived after
+ * the last run, or whose sensing starts after it when the catalogue cannot restrict on the archiving date. The delta starts some
+ * minutes before the last run: on the archiving date the overlap only covers the lag between archiving and cataloguing, on the
+ * sensing time it must also cover the delay between sensing and archiving, hence it is at least
+ * {@link #SENSING_OVERLAP_MINUTES}.
+ * <p>
+ * Saved searches are persisted in a preferences node each, the catalogue is referred to by name.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class SavedSearch {
+
+    public static final int DEFAULT_OVERLAP_MINUTES = 60;
+    public static final int SENSING_OVERLAP_MINUTES = 12 * 60;
+    private static final String PREFK_CATALOGUE = "catalogue";
+    private static final String PREFK_LASTRUN = "lastrun";
+    private static final String PREFK_OVERLAP = "overlap";
+    private static final String PREFK_ARCHIVING = "byarchiving";
+    private static final String PREFK_COLLECTIONS = "collections";
+    private static final String PREFK_TIME = "time";
+    private static final String PREFK_AOI = "aoi";
+    private static final String PREFK_COORDS = "coords";
+    // stored in place of missing times
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private final String name;
+    private final String catalogue;
+    private final QueryCriteria criteria;
+    private Date lastRun = null;
+    private int overlapMinutes = DEFAULT_OVERLAP_MINUTES;
+    private boolean byArchiving = true;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param name the name of the search
+     * @param catalogue the name of the catalogue to query
+     * @param criteria the search constraints
+     */
+    public SavedSearch(String name, String catalogue, QueryCriteria criteria) {
+        this.name = name;
+        this.catalogue = catalogue;
+        this.criteria = criteria;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCatalogue() {
+        return catalogue;
+    }
+
+    public QueryCriteria getCriteria() {
+        return criteria;
+    }
+
+    public Date getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * Records a successful run.
+     *
+     * @param lastRun the time the run started, null to retrieve everything on next run
+     */
+    public void setLastRun(Date lastRun) {
+        this.lastRun = lastRun;
+    }
+
+    public int getOverlapMinutes() {
+        return overlapMinutes;
+    }
+
+    public void setOverlapMinutes(int overlapMinutes) {
+        this.overlapMinutes = Math.max(0, overlapMinutes);
+    }
+
+    public boolean isByArchiving() {
+        return byArchiving;
+    }
+
+    /**
+     * Chooses how the delta is computed, by default on the archiving date.
+     *
+     * @param byArchiving true to restrict on the archiving date, false on the sensing start time
+     */
+    public void setByArchiving(boolean byArchiving) {
+        this.byArchiving = byArchiving;
+    }
+
+    /**
+     * Computes the criteria for the next run.
+     *
+     * @param archivingDate true if the catalogue can restrict on the archiving date, otherwise the sensing time is used
+     * @return a copy of the criteria narrowed to what changed since the last run, or not narrowed if never run
+     */
+    public QueryCriteria deltaCriteria(boolean archivingDate) {
+        QueryCriteria ret = criteria.copy();
+        if (lastRun != null) {
+            if (byArchiving && archivingDate) {
+                ret.setArchivedSince(new Date(lastRun.getTime() - overlapMinutes * 60000L));
+            } else {
+                final int overlap = Math.max(overlapMinutes, SENSING_OVERLAP_MINUTES);
+                final Date since = new Date(lastRun.getTime() - overlap * 60000L);
+                final Date from = ret.getShardFrom() != null && ret.getShardFrom().after(since) ? ret.getShardFrom() : since;
+                ret.setShardWindow(from, ret.getShardTo());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Stores the search in a preferences node.
+     *
+     * @param node the node of the search
+     */
+    public void store(Preferences node) {
+        node.put(PREFK_CATALOGUE, catalogue);
+        node.putLong(PREFK_LASTRUN, millis(lastRun));
+        node.putInt(PREFK_OVERLAP, overlapMinutes);
+        node.putBoolean(PREFK_ARCHIVING, byArchiving);
+        node.put(PREFK_COLLECTIONS, join(criteria.getCollections()));
+        node.put(PREFK_TIME, String.format("%d %d %d", criteria.getTimeOperator(), millis(criteria.getTime1()),
+                millis(criteria.getTime2())));
+        node.put(PREFK_AOI, String.format(Locale.ENGLISH, "%d %d %s", criteria.getAoiPrimitive(), criteria.getSpatialOperator(),
+                criteria.getAoiRadius()));
+        final double[] coords = criteria.getAoiCoords();
+        StringBuilder sb = new StringBuilder();
+        for (double c : coords) {
+            sb.append(sb.length() > 0 ? " " : "").append(c);
+        }
+        node.put(PREFK_COORDS, sb.toString());
+    }
+
+    /**
+     * Loads a search from a preferences node.
+     *
+     * @param node the node of the search, named after it
+     * @return the loaded search
+     * @throws IllegalArgumentException if the node content is invalid
+     */
+    public static SavedSearch load(Preferences node) {
+        QueryCriteria qc = new QueryCriteria();
+        final String colls = node.get(PREFK_COLLECTIONS, "");
+        qc.setCollections(colls.isEmpty() ? new String[0] : colls.split(" "));
+        final String[] time = node.get(PREFK_TIME, String.format("-1 %d %d", NO_TIME, NO_TIME)).split(" ");
+        qc.setTime(Integer.parseInt(time[0]), date(Long.parseLong(time[1])), date(Long.parseLong(time[2])));
+        final String[] aoi = node.get(PREFK_AOI, "-1 0 0").split(" ");
+        final String coordsText = node.get(PREFK_COORDS, "");
+        final String[] coordsParts = coordsText.isEmpty() ? new String[0] : coordsText.split(" ");
+        double[] coords = new double[coordsParts.length];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = Double.parseDouble(coordsParts[i]);
+        }
+        qc.setAoi(Integer.parseInt(aoi[0]), Integer.parseInt(aoi[1]), coords, Double.parseDouble(aoi[2]));
+        SavedSearch ret = new SavedSearch(node.name(), node.get(PREFK_CATALOGUE, ""), qc);
+        ret.setLastRun(date(node.getLong(PREFK_LASTRUN, NO_TIME)));
+        ret.setOverlapMinutes(node.getInt(PREFK_OVERLAP, DEFAULT_OVERLAP_MINUTES));
+        ret.setByArchiving(node.getBoolean(PREFK_ARCHIVING, true));
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        final String when = lastRun != null ? new SimpleDateFormat("yyyy-MM-dd HH:mm").format(lastRun) : "never";
+        return String.format("%s (%s, last run %s)", name, catalogue, when);
+    }
+
+    private static String join(String[] parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String p : parts) {
+            sb.append(sb.length() > 0 ? " " : "").append(p);
+        }
+        return sb.toString();
+    }
+
+    private static long millis(Date d) {
+        return d != null ? d.getTime() : NO_TIME;
+    }
+
+    private static Date date(long millis) {
+        return millis != NO_TIME ? new Date(millis) : null;
+    }
+}
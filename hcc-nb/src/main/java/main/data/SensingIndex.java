@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import static main.data.MetadataNames.START_SENSING;
+import static main.data.MetadataNames.STOP_SENSING;
+
+/**
+ * Temporal index of the sensing intervals of a set of {@link Metadata} records.
+ * <p>
+ * An augmented interval tree laid out in arrays: intervals are sorted by start, the tree over the sorted array is implicit (the
+ * middle of each range is the root of the range) and each node stores the latest stop of its subtree. Overlap and instant queries
+ * take logarithmic time plus the number of records found.
+ * <p>
+ * Intervals are taken from the decoded sensing times, see {@link Metadata#getTime(MetadataNames)}. Records without a sensing start
+ * are not indexed, records without a valid sensing stop are indexed as instants. Results are given in sensing start order.
+ * <p>
+ * Instances are immutable and thread safe, a new index is built for each set of results.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class SensingIndex {
+
+    // indexed records and their intervals sorted by start
+    private final Metadata[] records;
+    private final long[] starts;
+    private final long[] stops;
+    // latest stop in the subtree rooted at each position
+    private final long[] maxStops;
+
+    private SensingIndex(Metadata[] records, long[] starts, long[] stops) {
+        this.records = records;
+        this.starts = starts;
+        this.stops = stops;
+        this.maxStops = new long[records.length];
+        fillMaxStops(0, records.length);
+    }
+
+    /**
+     * Builds the index of the sensing intervals of the given records.
+     *
+     * @param records the records
+     * @return the index
+     */
+    public static SensingIndex build(Collection<Metadata> records) {
+        final List<Metadata> recs = new ArrayList<>(records.size());
+        final List<long[]> ivals = new ArrayList<>(records.size());
+        for (Metadata m : records) {
+            final long start = m.getTime(START_SENSING);
+            if (start != TypedValues.NO_TIME) {
+                final long stop = m.getTime(STOP_SENSING);
+                recs.add(m);
+                ivals.add(new long[]{start, Math.max(start, stop)});
+            }
+        }
+        final Integer[] order = new Integer[recs.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                final long s1 = ivals.get(o1)[0];
+                final long s2 = ivals.get(o2)[0];
+                return s1 < s2 ? -1 : s1 > s2 ? 1 : 0;
+            }
+        });
+        final Metadata[] sortedRecs = new Metadata[order.length];
+        final long[] starts = new long[order.length];
+        final long[] stops = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedRecs[i] = recs.get(order[i]);
+            starts[i] = ivals.get(order[i])[0];
+            stops[i] = ivals.get(order[i])[1];
+        }
+        return new SensingIndex(sortedRecs, starts, stops);
+    }
+
+    /**
+     * Gives the number of indexed records.
+     *
+     * @return the number of records with a sensing start
+     */
+    public int size() {
+        return records.length;
+    }
+
+    /**
+     * Finds the records whose sensing interval overlaps a time range, bounds included.
+     *
+     * @param t1 the range start in milliseconds since the epoch
+     * @param t2 the range end in milliseconds since the epoch
+     * @return the records found, empty if none
+     */
+    public List<Metadata> overlapping(long t1, long t2) {
+        final List<Metadata> ret = new ArrayList<>();
+        if (t1 <= t2) {
+            collect(0, records.length, t1, t2, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Finds the records being sensed at an instant, interval bounds included.
+     *
+     * @param t the instant in milliseconds since the epoch
+     * @return the records found, empty if none
+     */
+    public List<Metadata> activeAt(long t) {
+        return overlapping(t, t);
+    }
+
+    private long fillMaxStops(int lo, int hi) {
+        if (lo >= hi) {
+            return Long.MIN_VALUE;
+        }
+        final int mid = (lo + hi) >>> 1;
+        final long max = Math.max(stops[mid], Math.max(fillMaxStops(lo, mid), fillMaxStops(mid + 1, hi)));
+        maxStops[mid] = max;
+        return max;
+    }
+
+    private void collect(int lo, int hi, long t1, long t2, List<Metadata> out) {
+        if (lo >= hi) {
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        if (maxStops[mid] < t1) {
+            // all intervals in the subtree end before the range
+            return;
+        }
+        collect(lo, mid, t1, t2, out);
+        if (starts[mid] <= t2) {
+            if (stops[mid] >= t1) {
+                out.add(records[mid]);
+            }
+            // later starts may still be in range
+            collect(mid + 1, hi, t1, t2, out);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.data;
+
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Decoding of metadata values to numbers and instants.
+ * <p>
+ * Instants are ISO 8601 date times as found in HMA responses ({@code 2010-02-01T10:20:30.123Z}), with optional seconds, fraction
+ * and time zone offset ({@code +hh}, {@code +hh:mm} or {@code +hhmm}), or plain dates. Date times without time zone are taken as
+ * UTC. Decoding is hand written to avoid the allocations of the JDK date and calendar classes when decoding large result sets, a
+ * per thread non-lenient calendar only checks days past the 28th against their month.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class TypedValues {
+
+    /**
+     * Value given for missing or invalid instants.
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+    private static final ThreadLocal<GregorianCalendar> checkCal = new ThreadLocal<GregorianCalendar>() {
+        @Override
+        protected GregorianCalendar initialValue() {
+            GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+            // proleptic Gregorian calendar, as the decoding
+            cal.setGregorianChange(new Date(Long.MIN_VALUE));
+            cal.setLenient(false);
+            return cal;
+        }
+    };
+
+    private TypedValues() {
+    }
+
+    /**
+     * Decodes a number.
+     *
+     * @param s the text, may be null
+     * @return the number or NaN if missing or invalid
+     */
+    public static double parseNumber(String s) {
+        if (s == null || s.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Decodes an ISO 8601 date time or date.
+     *
+     * @param s the text, may be null
+     * @return the milliseconds since the epoch or {@link #NO_TIME} if missing or invalid
+     */
+    public static long parseTime(String s) {
+        if (s == null) {
+            return NO_TIME;
+        }
+        final String t = s.trim();
+        final int len = t.length();
+        // yyyy-MM-dd
+        if (len < 10 || t.charAt(4) != '-' || t.charAt(7) != '-') {
+            return NO_TIME;
+        }
+        final int year = digits(t, 0, 4);
+        final int month = digits(t, 5, 2);
+        final int day = digits(t, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || day > 28 && !isValidDate(year, month, day)) {
+            return NO_TIME;
+        }
+        long millis = daysFromCivil(year, month, day) * 86400000L;
+        int pos = 10;
+        if (pos < len && (t.charAt(pos) == 'T' || t.charAt(pos) == ' ')) {
+            // hh:mm[:ss[.fff]]
+            if (len < pos + 6 || t.charAt(pos + 3) != ':') {
+                return NO_TIME;
+            }
+            final int hour = digits(t, pos + 1, 2);
+            final int minute = digits(t, pos + 4, 2);
+            if (hour < 0 || hour > 24 || minute < 0 || minute > 59) {
+                return NO_TIME;
+            }
+            millis += hour * 3600000L + minute * 60000L;
+            pos += 6;
+            if (pos < len && t.charAt(pos) == ':') {
+                final int second = digits(t, pos + 1, 2);
+                if (second < 0 || second > 60) {
+                    return NO_TIME;
+                }
+                millis += second * 1000L;
+                pos += 3;
+                if (pos < len && (t.charAt(pos) == '.' || t.charAt(pos) == ',')) {
+                    // fraction of second, digits beyond milliseconds are dropped
+                    int scale = 100;
+                    pos++;
+                    final int start = pos;
+                    while (pos < len && Character.isDigit(t.charAt(pos))) {
+                        millis += (t.charAt(pos) - '0') * scale;
+                        scale /= 10;
+                        pos++;
+                    }
+                    if (pos == start) {
+                        return NO_TIME;
+                    }
+                }
+            }
+        }
+        // time zone
+        if (pos < len) {
+            final char c = t.charAt(pos);
+            if (c == 'Z' && pos == len - 1) {
+                return millis;
+            }
+            // +hh, +hh:mm or +hhmm
+            if ((c == '+' || c == '-') && (len == pos + 6 && t.charAt(pos + 3) == ':' || len == pos + 5 || len == pos + 3)) {
+                final int hours = digits(t, pos + 1, 2);
+                final int minutes = len > pos + 3 ? digits(t, len - 2, 2) : 0;
+                if (hours < 0 || minutes < 0 || minutes > 59) {
+                    return NO_TIME;
+                }
+                final long offset = hours * 3600000L + minutes * 60000L;
+                return c == '+' ? millis - offset : millis + offset;
+            }
+            return NO_TIME;
+        }
+        return millis;
+    }
+
+    /**
+     * Formats an instant as an ISO 8601 UTC date time, giving back the texts {@link #parseTime(String)} decodes in that form.
+     *
+     * @param millis the milliseconds since the epoch
+     * @param precision 0 for the date only, 1 for the date time to the second, 2 to the millisecond
+     * @return the text or null if the year is out of the 0-9999 range
+     */
+    static String formatTime(long millis, int precision) {
+        long days = millis / 86400000L;
+        int msOfDay = (int) (millis - days * 86400000L);
+        if (msOfDay < 0) {
+            days--;
+            msOfDay += 86400000;
+        }
+        // inverse of daysFromCivil
+        final long z = days + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final int doe = (int) (z - era * 146097);
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return null;
+        }
+        final char[] buf = new char[24];
+        put(buf, 0, (int) year, 4);
+        buf[4] = '-';
+        put(buf, 5, month, 2);
+        buf[7] = '-';
+        put(buf, 8, day, 2);
+        if (precision == 0) {
+            return new String(buf, 0, 10);
+        }
+        buf[10] = 'T';
+        put(buf, 11, msOfDay / 3600000, 2);
+        buf[13] = ':';
+        put(buf, 14, msOfDay / 60000 % 60, 2);
+        buf[16] = ':';
+        put(buf, 17, msOfDay / 1000 % 60, 2);
+        if (precision == 1) {
+            buf[19] = 'Z';
+            return new String(buf, 0, 20);
+        }
+        buf[19] = '.';
+        put(buf, 20, msOfDay % 1000, 3);
+        buf[23] = 'Z';
+        return new String(buf);
+    }
+
+    /**
+     * Writes a number as a fixed number of decimal digits.
+     */
+    private static void put(char[] buf, int from, int value, int count) {
+        for (int i = from + count - 1; i >= from; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Tells if a day exists in its month, checked with a non-lenient calendar.
+     */
+    private static boolean isValidDate(int year, int month, int day) {
+        final GregorianCalendar cal = checkCal.get();
+        cal.clear();
+        cal.set(year, month - 1, day);
+        try {
+            cal.getTimeInMillis();
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes a fixed number of decimal digits.
+     *
+     * @return the value or -1 if any of the characters is not a digit
+     */
+    private static int digits(String s, int from, int count) {
+        if (from + count > s.length()) {
+            return -1;
+        }
+        int ret = 0;
+        for (int i = from; i < from + count; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            ret = ret * 10 + (c - '0');
+        }
+        return ret;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date of the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+}
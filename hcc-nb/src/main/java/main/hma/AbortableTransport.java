@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import net.opengis.www.cat.wrs._1_0.CatalogueStub;
+import org.apache.axis2.client.Options;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP transport of a search that can be aborted.
+ * <p>
+ * Stubs attached to a transport take their connections from the shared pool of {@link HttpTransports} through a manager keeping
+ * track of the connections handed out. Aborting closes those connections, so that requests waiting for a response fail immediately
+ * instead of when the socket timeout expires, and makes requests still waiting for a free connection fail. The responses received by
+ * a thread can also be timed, see {@link #startTiming()}.
+ * <p>
+ * A transport serves a single search: once aborted or released it cannot be used again.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class AbortableTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbortableTransport.class.getName());
+    // how often requests waiting for a pooled connection check for abortion
+    private static final long WAIT_SLICE_MILLIS = 500;
+    private final TrackingConnectionManager connManager = new TrackingConnectionManager(HttpTransports.sharedManager());
+    private final HttpClient httpClient = new HttpClient(connManager);
+    private final ThreadLocal<TimedConnection.Exchange> exchanges = new ThreadLocal<>();
+    private volatile boolean aborted = false;
+
+    /**
+     * Makes the given stub send its requests through this transport.
+     *
+     * @param stub the stub
+     */
+    public void attach(CatalogueStub stub) {
+        final Options options = stub._getServiceClient().getOptions();
+        options.setProperty(HTTPConstants.MULTITHREAD_HTTP_CONNECTION_MANAGER, connManager);
+        options.setProperty(HTTPConstants.CACHED_HTTP_CLIENT, httpClient);
+    }
+
+    /**
+     * Restores the shared transport of the given stub.
+     *
+     * @param stub the stub previously attached
+     */
+    public void detach(CatalogueStub stub) {
+        HttpTransports.useShared(stub._getServiceClient().getOptions());
+    }
+
+    /**
+     * Aborts the transfers in progress and prevents new ones.
+     * <p>
+     * Can be called from any thread.
+     */
+    public void abort() {
+        aborted = true;
+        logger.debug("Aborting HTTP transfers");
+        for (HttpConnection conn : connManager.handedOut()) {
+            // no effect on connections already given back to the pool
+            conn.close();
+        }
+    }
+
+    /**
+     * Gives the HTTP client sending requests through this transport, for clients not based on Axis2 stubs.
+     *
+     * @return the client
+     */
+    HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Starts timing the responses received by the calling thread, for clients not exposing the transfer.
+     *
+     * @return the timings of the responses, until {@link #stopTiming()} is called
+     */
+    TimedConnection.Exchange startTiming() {
+        final TimedConnection.Exchange ret = new TimedConnection.Exchange();
+        exchanges.set(ret);
+        return ret;
+    }
+
+    /**
+     * Stops timing the responses received by the calling thread.
+     */
+    void stopTiming() {
+        exchanges.remove();
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Gives back to the pool the connections not released at the end of the search.
+     */
+    public void release() {
+        if (!aborted) {
+            for (HttpConnection conn : connManager.handedOut()) {
+                if (conn.isOpen()) {
+                    conn.releaseConnection();
+                }
+            }
+        }
+        connManager.handedOut.clear();
+    }
+
+    /**
+     * Connection manager delegating to the shared pool and recording the connections obtained.
+     * <p>
+     * HTTP clients give connections back to the pool through the connections themselves, bypassing this manager: the connections
+     * are referenced weakly so that the released ones, discarded by the clients, do not pile up over a long search.
+     */
+    private class TrackingConnectionManager implements HttpConnectionManager {
+
+        private final HttpConnectionManager delegate;
+        private final Set<HttpConnection> handedOut = Collections.synchronizedSet(Collections.newSetFromMap(
+                new WeakHashMap<HttpConnection, Boolean>()));
+        // kept apart from the shared pool parameters, which rule the pooling
+        private HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+
+        TrackingConnectionManager(HttpConnectionManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpConnection getConnection(HostConfiguration hostConfiguration) {
+            try {
+                return getConnectionWithTimeout(hostConfiguration, 0);
+            } catch (ConnectionPoolTimeoutException ex) {
+                // cannot happen without a timeout
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        @Deprecated
+        public HttpConnection getConnection(HostConfiguration hostConfiguration, long timeout) throws HttpException {
+            return getConnectionWithTimeout(hostConfiguration, timeout);
+        }
+
+        @Override
+        public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout) throws
+                ConnectionPoolTimeoutException {
+            final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+            while (true) {
+                if (aborted) {
+                    throw new IllegalStateException("HTTP transport aborted");
+                }
+                final long slice = Math.min(WAIT_SLICE_MILLIS, deadline - System.currentTimeMillis());
+                if (slice <= 0) {
+                    throw new ConnectionPoolTimeoutException("Timeout waiting for a pooled connection");
+                }
+                try {
+                    final HttpConnection conn = delegate.getConnectionWithTimeout(hostConfiguration, slice);
+                    handedOut.add(conn);
+                    if (aborted) {
+                        // aborted while waiting
+                        handedOut.remove(conn);
+                        conn.releaseConnection();
+                        throw new IllegalStateException("HTTP transport aborted");
+                    }
+                    final TimedConnection.Exchange exchange = exchanges.get();
+                    return exchange != null ? new TimedConnection(conn, exchange) : conn;
+                } catch (ConnectionPoolTimeoutException ex) {
+                    // no free connection yet, check for abortion and wait again
+                }
+            }
+        }
+
+        @Override
+        public void releaseConnection(HttpConnection conn) {
+            handedOut.remove(conn);
+            delegate.releaseConnection(conn);
+        }
+
+        /**
+         * Gives a copy of the connections handed out and not yet collected.
+         */
+        List<HttpConnection> handedOut() {
+            synchronized (handedOut) {
+                return new ArrayList<>(handedOut);
+            }
+        }
+
+        @Override
+        public void closeIdleConnections(long idleTimeout) {
+            delegate.closeIdleConnections(idleTimeout);
+        }
+
+        @Override
+        public HttpConnectionManagerParams getParams() {
+            return params;
+        }
+
+        @Override
+        public void setParams(HttpConnectionManagerParams params) {
+            this.params = params;
+        }
+    }
+}
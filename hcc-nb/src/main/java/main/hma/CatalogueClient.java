@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.rmi.RemoteException;
+import javax.xml.stream.XMLStreamException;
+import main.data.CatalogueDefinition;
+import main.metrics.SearchTimings;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
+
+/**
+ * Sends GetRecords requests to a catalogue through one of the supported bindings.
+ * <p>
+ * Instances are created by {@link CatalogueStubs#createClient(CatalogueDefinition)} according to the binding of the catalogue: SOAP
+ * through an Axis2 {@link net.opengis.www.cat.wrs._1_0.CatalogueStub} or plain HTTP POST of the request XML. Other operations
+ * (capabilities, collections) always go through the SOAP stub.
+ * <p>
+ * Clients are not thread safe, each thread issuing requests should use its own.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public interface CatalogueClient {
+
+    /**
+     * Sends a GetRecords request returning the whole response document.
+     *
+     * @param req the request
+     * @return the response
+     * @throws RemoteException if the request fails
+     * @throws ServiceExceptionReportFault if the catalogue replies with an exception report
+     */
+    GetRecordsResponseDocument getRecords(GetRecordsDocument req) throws RemoteException, ServiceExceptionReportFault;
+
+    /**
+     * Sends a GetRecords RESULTS request decoding the records in the response.
+     * <p>
+     * Bindings able to do so decode the response while it is received, without building the response document.
+     *
+     * @param req the request
+     * @param startPos the start position of the request
+     * @return the decoded page
+     * @throws RemoteException if the request fails
+     * @throws ServiceExceptionReportFault if the catalogue replies with an exception report
+     * @throws XMLStreamException in case of malformed response
+     */
+    RecordsPage getRecordsPage(GetRecordsDocument req, int startPos) throws RemoteException, ServiceExceptionReportFault,
+            XMLStreamException;
+
+    /**
+     * Sets the transport requests are sent through.
+     *
+     * @param transport the transport, null for the shared one
+     */
+    void setTransport(AbortableTransport transport);
+
+    /**
+     * Sets the timings the phases of the requests are reported to.
+     *
+     * @param timings the timings of the search, null to report nothing
+     */
+    void setTimings(SearchTimings timings);
+
+    /**
+     * Releases the resources held by the client.
+     */
+    void cleanup();
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import main.data.CatalogueDefinition;
+import net.opengis.www.cat.wrs._1_0.CatalogueStub;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.client.Options;
+import org.apache.axis2.transport.http.HTTPConstants;
+
+/**
+ * Utility methods to create and configure {@link CatalogueStub} and {@link CatalogueClient} objects from {@link CatalogueDefinition}
+ * objects.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class CatalogueStubs {
+
+    // prevent instantiation
+    private CatalogueStubs() {
+    }
+
+    /**
+     * Creates a new stub pointing to the given catalogue.
+     * <p>
+     * Stubs are not thread safe, each thread issuing requests should use its own.
+     *
+     * @param catDef the catalogue definition
+     * @return the configured stub
+     * @throws AxisFault if the stub could not be created
+     */
+    public static CatalogueStub create(CatalogueDefinition catDef) throws AxisFault {
+        CatalogueStub stub = new CatalogueStub();
+        configure(stub, catDef);
+        return stub;
+    }
+
+    /**
+     * Creates a new client sending GetRecords requests to the given catalogue through its binding.
+     *
+     * @param catDef the catalogue definition
+     * @return the client
+     * @throws AxisFault if the stub of the SOAP binding could not be created
+     */
+    public static CatalogueClient createClient(CatalogueDefinition catDef) throws AxisFault {
+        if (catDef.isHttpPost()) {
+            return new PostCatalogueClient(catDef);
+        }
+        return new SoapCatalogueClient(create(catDef), catDef);
+    }
+
+    /**
+     * Configures SOAP version, timeouts, endpoint and HTTP transport of a stub according to the given catalogue.
+     *
+     * @param stub the stub to configure
+     * @param catDef the catalogue definition
+     */
+    public static void configure(CatalogueStub stub, CatalogueDefinition catDef) {
+        final Options options = stub._getServiceClient().getOptions();
+        if (catDef.isSoapV12()) {
+            //set soap 1.2 in stub
+            options.setSoapVersionURI(Constants.URI_SOAP12_ENV);
+        } else {
+            //set soap 1.1 in stub
+            options.setSoapVersionURI(Constants.URI_SOAP11_ENV);
+        }
+        //set timeout in stub
+        Integer to = catDef.getTimeoutMillis();
+        options.setProperty(HTTPConstants.SO_TIMEOUT, to);
+        options.setProperty(HTTPConstants.CONNECTION_TIMEOUT, to);
+        // set endpoint url in stub
+        stub._getServiceClient().setTargetEPR(new EndpointReference(catDef.getEndpoint()));
+        // pooled connections, per host cap and compression
+        HttpTransports.configure(options, catDef);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.util.EnumMap;
+import main.data.MetadataNames;
+import static main.data.MetadataNames.ARCH_CENTER;
+import static main.data.MetadataNames.SAT_NAME;
+import static main.data.MetadataNames.URL_QLOOK;
+import static main.data.MetadataNames.URL_THUMB;
+
+/**
+ * Information collected by the parsers while going through an extrinsic object of a registry package.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+class ExtObj {
+
+    private final String objectType;
+    // nesting depth of the extrinsic object element
+    final int depth;
+    String name;
+    String firstSlotValue;
+
+    ExtObj(String objectType, int depth) {
+        this.objectType = objectType != null ? objectType : "";
+        this.depth = depth;
+    }
+
+    /**
+     * Stores the values carried by the extrinsic object in the given map.
+     *
+     * @param values the values of the record
+     */
+    void applyTo(EnumMap<MetadataNames, String> values) {
+        if (name == null) {
+            return;
+        }
+        if (objectType.contains("EOArchivingInformation")) {
+            // archiving center
+            values.put(ARCH_CENTER, name);
+        } else if (objectType.contains("EOAcquisitionPlatform")) {
+            // satellite name
+            values.put(SAT_NAME, name);
+        } else if (objectType.contains("EOBrowseInformation") && firstSlotValue != null) {
+            // quicklook or thumbnail urls
+            switch (name) {
+                case "THUMBNAIL":
+                    values.put(URL_THUMB, firstSlotValue);
+                    break;
+                case "QUICKLOOK":
+                    values.put(URL_QLOOK, firstSlotValue);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import main.data.MetadataNames;
+import main.data.QueryCriteria;
+import main.data.Slots;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import org.apache.xmlbeans.XmlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serializes HMA GetRecords requests directly to a stream.
+ * <p>
+ * Produces the same requests of {@link HmaGetRecordsBuilder} (same fixed clauses and same collection, temporal and spatial
+ * clauses for the given {@link QueryCriteria}) without parsing the XML template and editing it with cursors. Shard restrictions of
+ * the criteria and the archiving date restriction are only supported by this writer.
+ * <p>
+ * Once configured a writer is not modified by the {@code write} methods, so it can be shared among threads writing the pages of the
+ * same search, each with its own start position and maximum records.
+ * <p>
+ * Typical usage is as follows:
+ * <pre>
+ * GetRecordsWriter writer = new GetRecordsWriter(criteria);
+ * writer.setResults(true);
+ * writer.setDetail(GetRecordsWriter.DETAIL_FULL);
+ * writer.write(out, 1, 100);
+ * </pre>
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class GetRecordsWriter {
+
+    public static final String DETAIL_BRIEF = "brief";
+    public static final String DETAIL_SUMMARY = "summary";
+    public static final String DETAIL_FULL = "full";
+    private static final Logger logger = LoggerFactory.getLogger(GetRecordsWriter.class.getName());
+    private static final String NS_CSW = "http://www.opengis.net/cat/csw/2.0.2";
+    private static final String NS_OGC = "http://www.opengis.net/ogc";
+    private static final String NS_GML = "http://www.opengis.net/gml";
+    private static final String NS_OWS = "http://www.opengis.net/ows";
+    private static final String NS_RIM = "urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0";
+    private static final String SRS_NAME = "urn:ogc:def:crs:EPSG:6.3:4326";
+    private static final String TYPE_NAMES = "rim:RegistryPackage   rim:ExtrinsicObject   rim:ExtrinsicObject_acquisitionPlatform   "
+            + "rim:Association_acquisitionPlatAsso   rim:Classification   rim:ClassificationNode";
+    private static final XMLOutputFactory xof = XMLOutputFactory.newInstance();
+    // date formats are not thread safe
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        }
+    };
+    private final QueryCriteria criteria;
+    private boolean results = true;
+    private String detail = DETAIL_FULL;
+    private int startPosition = 1;
+    private int maxRecords = 100;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param criteria the search constraints
+     */
+    public GetRecordsWriter(QueryCriteria criteria) {
+        this.criteria = criteria;
+    }
+
+    public QueryCriteria getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Creates a writer with the same configuration and different search constraints, e.g. for a shard of the search.
+     *
+     * @param otherCriteria the search constraints of the new writer
+     * @return the new writer
+     */
+    public GetRecordsWriter withCriteria(QueryCriteria otherCriteria) {
+        GetRecordsWriter ret = new GetRecordsWriter(otherCriteria);
+        ret.results = results;
+        ret.detail = detail;
+        ret.startPosition = startPosition;
+        ret.maxRecords = maxRecords;
+        return ret;
+    }
+
+    public boolean isResults() {
+        return results;
+    }
+
+    /**
+     * Sets the request type.
+     *
+     * @param results true for a RESULTS request, false for a HITS request
+     */
+    public void setResults(boolean results) {
+        this.results = results;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * Sets the requested detail.
+     *
+     * @param detail one of {@link #DETAIL_BRIEF}, {@link #DETAIL_SUMMARY} or {@link #DETAIL_FULL}
+     */
+    public void setDetail(String detail) {
+        this.detail = detail;
+    }
+
+    public int getStartPosition() {
+        return startPosition;
+    }
+
+    public void setStartPosition(int startPosition) {
+        this.startPosition = startPosition;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    public void setMaxRecords(int maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * Writes the request with the configured start position and maximum records.
+     *
+     * @param out the stream to write to, UTF-8 encoded, left open
+     * @throws XMLStreamException in case of errors writing to the stream
+     */
+    public void write(OutputStream out) throws XMLStreamException {
+        write(out, startPosition, maxRecords);
+    }
+
+    /**
+     * Writes the request for a page of the search.
+     *
+     * @param out the stream to write to, UTF-8 encoded, left open
+     * @param startPos the position of the first record
+     * @param maxRecs the number of records to ask for
+     * @throws XMLStreamException in case of errors writing to the stream
+     */
+    public void write(OutputStream out, int startPos, int maxRecs) throws XMLStreamException {
+        XMLStreamWriter w = xof.createXMLStreamWriter(out, "UTF-8");
+        w.writeStartDocument("UTF-8", "1.0");
+        write(w, startPos, maxRecs);
+        w.writeEndDocument();
+        w.close();
+    }
+
+    /**
+     * Writes the request element for a page of the search.
+     *
+     * @param w the writer positioned where the request element goes
+     * @param startPos the position of the first record
+     * @param maxRecs the number of records to ask for
+     * @throws XMLStreamException in case of errors writing
+     */
+    public void write(XMLStreamWriter w, int startPos, int maxRecs) throws XMLStreamException {
+        w.setDefaultNamespace(NS_CSW);
+        w.setPrefix("csw", NS_CSW);
+        w.setPrefix("gml", NS_GML);
+        w.setPrefix("ogc", NS_OGC);
+        w.setPrefix("ows", NS_OWS);
+        w.setPrefix("rim", NS_RIM);
+        w.writeStartElement("", "GetRecords", NS_CSW);
+        w.writeDefaultNamespace(NS_CSW);
+        w.writeNamespace("csw", NS_CSW);
+        w.writeNamespace("gml", NS_GML);
+        w.writeNamespace("ogc", NS_OGC);
+        w.writeNamespace("ows", NS_OWS);
+        w.writeNamespace("rim", NS_RIM);
+        w.writeAttribute("service", "CSW");
+        w.writeAttribute("version", "2.0.2");
+        w.writeAttribute("requestId", "ignored");
+        w.writeAttribute("resultType", results ? "results" : "hits");
+        w.writeAttribute("outputFormat", "application/xml");
+        w.writeAttribute("outputSchema", NS_RIM);
+        w.writeAttribute("startPosition", String.valueOf(startPos));
+        w.writeAttribute("maxRecords", String.valueOf(maxRecs));
+        textElement(w, "", NS_CSW, "ResponseHandler", "ignored");
+        w.writeStartElement("csw", "Query", NS_CSW);
+        w.writeAttribute("typeNames", TYPE_NAMES);
+        textElement(w, "", NS_CSW, "ElementSetName", detail);
+        w.writeStartElement("", "Constraint", NS_CSW);
+        w.writeAttribute("version", "1.1.0");
+        w.writeStartElement("ogc", "Filter", NS_OGC);
+        w.writeStartElement("ogc", "And", NS_OGC);
+        // fixed clauses selecting EO products
+        w.writeStartElement("ogc", "PropertyIsEqualTo", NS_OGC);
+        textElement(w, "ogc", NS_OGC, "PropertyName", "/rim:RegistryPackage/rim:RegistryObjectList[*]/rim:RegistryObject/@id");
+        textElement(w, "ogc", NS_OGC, "PropertyName", "/rim:ExtrinsicObject/@id");
+        w.writeEndElement();
+        w.writeStartElement("ogc", "PropertyIsEqualTo", NS_OGC);
+        textElement(w, "ogc", NS_OGC, "PropertyName", "/rim:ExtrinsicObject/@objectType");
+        textElement(w, "ogc", NS_OGC, "Literal", "urn:x-ogc:specification:csw-ebrim:ObjectType:EO:EOProduct");
+        w.writeEndElement();
+        // search constraints
+        writeCollections(w);
+        writeTemporal(w);
+        writeSpatial(w);
+        writeShard(w);
+        if (criteria.getArchivedSince() != null) {
+            writePropertyClause(w, "PropertyIsGreaterThanOrEqualTo", MetadataNames.ARCH_DATE, dateFormat.get().format(
+                    criteria.getArchivedSince()));
+        }
+        // close And, Filter, Constraint, Query and GetRecords
+        for (int i = 0; i < 5; i++) {
+            w.writeEndElement();
+        }
+    }
+
+    /**
+     * Writes the request to memory and parses it, for the clients requiring an XMLBeans document.
+     *
+     * @return the request document
+     */
+    public GetRecordsDocument toDocument() {
+        return toDocument(startPosition, maxRecords);
+    }
+
+    /**
+     * Writes the request for a page of the search to memory and parses it, for the clients requiring an XMLBeans document.
+     *
+     * @param startPos the position of the first record
+     * @param maxRecs the number of records to ask for
+     * @return the request document
+     */
+    public GetRecordsDocument toDocument(int startPos, int maxRecs) {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(2048);
+            write(bos, startPos, maxRecs);
+            return GetRecordsDocument.Factory.parse(new ByteArrayInputStream(bos.toByteArray()));
+        } catch (XMLStreamException | XmlException | IOException ex) {
+            // should never happen writing to memory
+            throw new IllegalStateException("Could not write GetRecords request", ex);
+        }
+    }
+
+    private void writeCollections(XMLStreamWriter w) throws XMLStreamException {
+        final String[] colls = criteria.getCollections();
+        if (colls.length == 1) {
+            writePropertyClause(w, "PropertyIsEqualTo", MetadataNames.PARENT_IDENTIFIER, colls[0]);
+        } else if (colls.length > 1) {
+            w.writeStartElement("ogc", "Or", NS_OGC);
+            for (String c : colls) {
+                writePropertyClause(w, "PropertyIsEqualTo", MetadataNames.PARENT_IDENTIFIER, c);
+            }
+            w.writeEndElement();
+        }
+        logger.trace("Written {} parent identifier clauses", colls.length);
+    }
+
+    private void writeTemporal(XMLStreamWriter w) throws XMLStreamException {
+        final SimpleDateFormat df = dateFormat.get();
+        switch (criteria.getTimeOperator()) {
+            case QueryCriteria.TIME_CONTAINED:
+                writePropertyClause(w, "PropertyIsGreaterThanOrEqualTo", MetadataNames.START_SENSING, df.format(criteria.getTime1()));
+                writePropertyClause(w, "PropertyIsLessThanOrEqualTo", MetadataNames.STOP_SENSING, df.format(criteria.getTime2()));
+                break;
+            case QueryCriteria.TIME_OVERLAPS:
+                writePropertyClause(w, "PropertyIsGreaterThanOrEqualTo", MetadataNames.STOP_SENSING, df.format(criteria.getTime1()));
+                writePropertyClause(w, "PropertyIsLessThanOrEqualTo", MetadataNames.START_SENSING, df.format(criteria.getTime2()));
+                break;
+            case QueryCriteria.TIME_AFTER:
+                writePropertyClause(w, "PropertyIsGreaterThanOrEqualTo", MetadataNames.START_SENSING, df.format(criteria.getTime1()));
+                break;
+            case QueryCriteria.TIME_BEFORE:
+                writePropertyClause(w, "PropertyIsLessThanOrEqualTo", MetadataNames.STOP_SENSING, df.format(criteria.getTime1()));
+                break;
+        }
+    }
+
+    private void writeSpatial(XMLStreamWriter w) throws XMLStreamException {
+        if (!criteria.hasAoi()) {
+            return;
+        }
+        final double[] c = criteria.getAoiCoords();
+        w.writeStartElement("ogc", spatialOperator(criteria.getSpatialOperator()), NS_OGC);
+        textElement(w, "ogc", NS_OGC, "PropertyName", Slots.meta2req.get(MetadataNames.FOOTPRINT));
+        switch (criteria.getAoiPrimitive()) {
+            case QueryCriteria.AOI_POLYGON:
+                startGeometry(w, "Polygon");
+                w.writeStartElement("gml", "exterior", NS_GML);
+                w.writeStartElement("gml", "LinearRing", NS_GML);
+                textElement(w, "gml", NS_GML, "posList", toPosList(c));
+                w.writeEndElement();
+                w.writeEndElement();
+                break;
+            case QueryCriteria.AOI_CIRCLE:
+                w.writeStartElement("gml", "CircleByCenterPoint", NS_GML);
+                w.writeAttribute("numArc", "1");
+                w.writeAttribute("srsName", SRS_NAME);
+                textElement(w, "gml", NS_GML, "pos", toPos(c[0], c[1]));
+                w.writeStartElement("gml", "radius", NS_GML);
+                w.writeAttribute("uom", "m");
+                w.writeCharacters(String.valueOf(criteria.getAoiRadius()));
+                w.writeEndElement();
+                break;
+            case QueryCriteria.AOI_POLYLINE:
+                startGeometry(w, "LineString");
+                textElement(w, "gml", NS_GML, "posList", toPosList(c));
+                break;
+            case QueryCriteria.AOI_POINT:
+                startGeometry(w, "Point");
+                textElement(w, "gml", NS_GML, "pos", toPos(c[0], c[1]));
+                break;
+            case QueryCriteria.AOI_RANGE:
+                startGeometry(w, "Envelope");
+                textElement(w, "gml", NS_GML, "lowerCorner", toPos(c[0], c[1]));
+                textElement(w, "gml", NS_GML, "upperCorner", toPos(c[2], c[3]));
+                break;
+            default:
+                throw new AssertionError("unknown area of interest primitive");
+        }
+        // close geometry and spatial operator
+        w.writeEndElement();
+        w.writeEndElement();
+        logger.trace("Written spatial clause for {} coordinates", c.length / 2);
+    }
+
+    private void writeShard(XMLStreamWriter w) throws XMLStreamException {
+        final SimpleDateFormat df = dateFormat.get();
+        if (criteria.getShardFrom() != null) {
+            writePropertyClause(w, "PropertyIsGreaterThanOrEqualTo", MetadataNames.START_SENSING, df.format(criteria.getShardFrom()));
+        }
+        if (criteria.getShardTo() != null) {
+            writePropertyClause(w, "PropertyIsLessThan", MetadataNames.START_SENSING, df.format(criteria.getShardTo()));
+        }
+        final double[] tile = criteria.getShardTile();
+        if (tile != null) {
+            w.writeStartElement("ogc", "Intersects", NS_OGC);
+            textElement(w, "ogc", NS_OGC, "PropertyName", Slots.meta2req.get(MetadataNames.FOOTPRINT));
+            startGeometry(w, "Envelope");
+            textElement(w, "gml", NS_GML, "lowerCorner", toPos(tile[0], tile[1]));
+            textElement(w, "gml", NS_GML, "upperCorner", toPos(tile[2], tile[3]));
+            w.writeEndElement();
+            w.writeEndElement();
+        }
+    }
+
+    private static String spatialOperator(int operator) {
+        switch (operator) {
+            case QueryCriteria.SPATIAL_OVERLAPS:
+                return "Overlaps";
+            case QueryCriteria.SPATIAL_CONTAINS:
+                return "Contains";
+            case QueryCriteria.SPATIAL_INTERSECTS:
+                return "Intersects";
+            case QueryCriteria.SPATIAL_WITHIN:
+                return "Within";
+            default:
+                throw new AssertionError("unknown spatial operator");
+        }
+    }
+
+    private static void startGeometry(XMLStreamWriter w, String name) throws XMLStreamException {
+        w.writeStartElement("gml", name, NS_GML);
+        w.writeAttribute("srsName", SRS_NAME);
+    }
+
+    private static void writePropertyClause(XMLStreamWriter w, String clause, MetadataNames property, String literal)
+            throws XMLStreamException {
+        w.writeStartElement("ogc", clause, NS_OGC);
+        textElement(w, "ogc", NS_OGC, "PropertyName", Slots.meta2req.get(property));
+        textElement(w, "ogc", NS_OGC, "Literal", literal);
+        w.writeEndElement();
+    }
+
+    private static void textElement(XMLStreamWriter w, String prefix, String ns, String name, String text) throws XMLStreamException {
+        w.writeStartElement(prefix, name, ns);
+        w.writeCharacters(text);
+        w.writeEndElement();
+    }
+
+    private static String toPos(double lat, double lon) {
+        return String.format(Locale.ENGLISH, "%f %f", lat, lon);
+    }
+
+    private static String toPosList(double[] latLons) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < latLons.length; i += 2) {
+            sb.append(toPos(latLons[i], latLons[i + 1])).append(' ');
+        }
+        if (sb.length() > 0) {
+            sb.deleteCharAt(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+}
@@ -21,6 +21,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import main.data.MetadataNames;
+import main.data.QueryCriteria;
 import main.data.Slots;
 import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
 import net.opengis.www.cat.csw._2_0_2.QueryType;
@@ -37,6 +38,9 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Follows the <i>Builder</i> Design pattern.
  * <p>
+ * When many requests differing only in the page are needed, e.g. when retrieving all the pages of a search, {@link GetRecordsWriter}
+ * avoids parsing the template for each of them.
+ * <p>
  * Typical usage is as follows:
  * <pre>
  * HmaGetRecordsBuilder builder=new HmaGetRecordsBuilder();
@@ -257,11 +261,72 @@ public class HmaGetRecordsBuilder {
         logger.trace("Added spatial constraint with circle center [{};{}] radius {}", lat, lon, radius);
     }
 
+    /**
+     * Adds the collection, temporal and spatial clauses corresponding to the given search criteria.
+     *
+     * @param criteria the search criteria
+     */
+    public void addCriteria(QueryCriteria criteria) {
+        // collections
+        final String[] colls = criteria.getCollections();
+        if (colls.length == 1) {
+            addCollection(colls[0]);
+        } else if (colls.length > 1) {
+            addCollections(colls);
+        }
+        // time constraints
+        switch (criteria.getTimeOperator()) {
+            case QueryCriteria.TIME_CONTAINED:
+                addTemporalContained(criteria.getTime1(), criteria.getTime2());
+                break;
+            case QueryCriteria.TIME_OVERLAPS:
+                addTemporalOverlaps(criteria.getTime1(), criteria.getTime2());
+                break;
+            case QueryCriteria.TIME_AFTER:
+                addTemporalAfter(criteria.getTime1());
+                break;
+            case QueryCriteria.TIME_BEFORE:
+                addTemporalBefore(criteria.getTime1());
+                break;
+        }
+        // spatial constraints
+        final int op = criteria.getSpatialOperator();
+        final double[] c = criteria.getAoiCoords();
+        switch (criteria.getAoiPrimitive()) {
+            case QueryCriteria.AOI_POLYGON:
+                addSpatialPolygon(op, toPosList(c));
+                break;
+            case QueryCriteria.AOI_CIRCLE:
+                addSpatialCircle(op, c[0], c[1], criteria.getAoiRadius());
+                break;
+            case QueryCriteria.AOI_POLYLINE:
+                addSpatialPolyline(op, toPosList(c));
+                break;
+            case QueryCriteria.AOI_POINT:
+                addSpatialPoint(op, c[0], c[1]);
+                break;
+            case QueryCriteria.AOI_RANGE:
+                addSpatialRange(op, c[0], c[2], c[1], c[3]);
+                break;
+        }
+    }
+
     public GetRecordsDocument getRequest() {
         logger.trace("Returning built request");
         return reqDoc;
     }
 
+    private static String toPosList(double[] latLons) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < latLons.length; i += 2) {
+            sb.append(String.format(Locale.ENGLISH, "%f %f ", latLons[i], latLons[i + 1]));
+        }
+        if (sb.length() > 0) {
+            sb.deleteCharAt(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
     private XmlCursor getGlobalAndCur() {
         XmlCursor xc = query.getConstraint().getFilter().newCursor();
         xc.toFirstChild();
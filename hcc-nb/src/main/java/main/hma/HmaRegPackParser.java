@@ -15,31 +15,86 @@
  */
 package main.hma;
 
-import _0._3.rim.xsd.ebxml_regrep.tc.names.oasis.ExtrinsicObjectType;
 import _0._3.rim.xsd.ebxml_regrep.tc.names.oasis.RegistryPackageType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.xml.namespace.QName;
 import main.data.Metadata;
 import main.data.MetadataNames;
-import static main.data.MetadataNames.ARCH_CENTER;
-import static main.data.MetadataNames.FOOTPRINT;
-import static main.data.MetadataNames.SAT_NAME;
-import static main.data.MetadataNames.SCENE_CENTER;
-import static main.data.MetadataNames.URL_QLOOK;
-import static main.data.MetadataNames.URL_THUMB;
 import main.data.Slots;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
 import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlCursor.TokenType;
 import org.apache.xmlbeans.XmlObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Maps registry packages in HMA GetRecords responses to {@link Metadata objects}.
+ * <p>
+ * Each registry package is decoded in a single {@link XmlCursor} walk: slots are dispatched to their handler through a table built
+ * once from {@link Slots#resp2meta} and the archiving, platform and browse extrinsic objects are decoded during the same walk.
  *
  * @author Alessandro Falappa <alex.falappa@gmail.com>
  */
 public final class HmaRegPackParser {
 
     private static final Logger logger = LoggerFactory.getLogger(HmaRegPackParser.class.getName());
+    private static final String NS_RIM = "urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0";
+    private static final String NS_GML = "http://www.opengis.net/gml";
+    private static final QName QN_SLOT = new QName(NS_RIM, "Slot");
+    private static final QName QN_EXTOBJ = new QName(NS_RIM, "ExtrinsicObject");
+    private static final QName QN_NAME = new QName(NS_RIM, "Name");
+    private static final QName QN_LOCSTRING = new QName(NS_RIM, "LocalizedString");
+    private static final QName QN_ATT_NAME = new QName("name");
+    private static final QName QN_ATT_OBJTYPE = new QName("objectType");
+    private static final QName QN_ATT_VALUE = new QName("value");
+    // slot name to handler dispatch table
+    private static final HashMap<String, SlotHandler> slotHandlers = new HashMap<>();
+
+    static {
+        for (Map.Entry<String, MetadataNames> en : Slots.resp2meta.entrySet()) {
+            final MetadataNames mn = en.getValue();
+            switch (mn) {
+                case FOOTPRINT:
+                    // footprint coordinates
+                    slotHandlers.put(en.getKey(), new CoordsSlotHandler(mn, new QName(NS_GML, "posList")));
+                    break;
+                case SCENE_CENTER:
+                    // center coordinates
+                    slotHandlers.put(en.getKey(), new CoordsSlotHandler(mn, new QName(NS_GML, "pos")));
+                    break;
+                default:
+                    // all other single valued slots
+                    slotHandlers.put(en.getKey(), new ValueSlotHandler(mn));
+            }
+        }
+    }
+
+    /**
+     * Decodes all the registry packages in a GetRecords RESULTS response.
+     *
+     * @param resp the response
+     * @return the list of decoded metadata, in response order
+     */
+    public List<Metadata> parseResponse(GetRecordsResponseDocument resp) {
+        // extract registry packages via XPath
+        XmlObject[] res = resp.selectPath("declare namespace rim='urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0' .//rim:RegistryPackage");
+        logger.debug("XPath selected {} registry packages", res.length);
+        List<Metadata> ret = new ArrayList<>(res.length);
+        for (XmlObject xo : res) {
+            Metadata m = parseXmlObj(xo);
+            if (m != null) {
+                ret.add(m);
+            }
+        }
+        return ret;
+    }
 
     public Metadata parseXmlObj(XmlObject xobj) {
         if (xobj instanceof RegistryPackageType) {
@@ -51,85 +106,143 @@ public final class HmaRegPackParser {
 
     public Metadata parseRegistryPackage(RegistryPackageType regPack) {
         Metadata m = new Metadata();
-        XmlCursor xc;
         // extract product id
         m.put(MetadataNames.PRODUCT_IDENTIFIER, regPack.getId());
         logger.debug("Parsing registry package for {}", regPack.getId());
-        // process slots
-        XmlObject[] slots = regPack.selectPath("declare namespace rim='urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0' .//rim:Slot");
-        for (XmlObject slot : slots) {
-            xc = slot.newCursor();
-            final String slotName = xc.getAttributeText(new QName("name"));
-            if (Slots.resp2meta.containsKey(slotName)) {
-                final MetadataNames mn = Slots.resp2meta.get(slotName);
-                switch (mn) {
-                    case FOOTPRINT:
-                        // extract footprint coordinates
-                        XmlObject[] xposlist = slot.selectPath("declare namespace gml='http://www.opengis.net/gml' .//gml:posList");
-                        if (xposlist.length > 0) {
-                            XmlCursor xc2 = xposlist[0].newCursor();
-                            m.put(FOOTPRINT, xc2.getTextValue());
-                            xc2.dispose();
-                        }
-                        break;
-                    case SCENE_CENTER:
-                        // extract center coordinates
-                        XmlObject[] xpos = slot.selectPath("declare namespace gml='http://www.opengis.net/gml' .//gml:pos");
-                        if (xpos.length > 0) {
-                            XmlCursor xc3 = xpos[0].newCursor();
-                            m.put(SCENE_CENTER, xc3.getTextValue());
-                            xc3.dispose();
-                        }
-                        break;
-                    default:
-                        // all other single valued slots (containing inner <rim:ValueList><rim:Value> tags)
-                        xc.toFirstChild();
-                        xc.toFirstChild();
-                        m.put(mn, xc.getTextValue());
-                }
-            } else {
-                logger.trace("Unknown hma slot {}", slotName);
-            }
-            xc.dispose();
-        }
-        // process <rim:Name> tags
-        XmlObject[] extObjs = regPack.selectPath(
-                "declare namespace rim='urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0' .//rim:ExtrinsicObject");
-        for (XmlObject extObj : extObjs) {
-            if (extObj instanceof ExtrinsicObjectType) {
-                ExtrinsicObjectType xExtObj = (ExtrinsicObjectType) extObj;
-                if (xExtObj.getObjectType().contains("EOArchivingInformation")) {
-                    // archiving center
-                    String center = xExtObj.getName().getLocalizedStringArray(0).getValue();
-                    m.put(ARCH_CENTER, center);
-                } else if (xExtObj.getObjectType().contains("EOAcquisitionPlatform")) {
-                    // satellite name
-                    String satName = xExtObj.getName().getLocalizedStringArray(0).getValue();
-                    m.put(SAT_NAME, satName);
-                } else if (xExtObj.getObjectType().contains("EOBrowseInformation")) {
-                    // quicklook or thumbnail urls
-                    XmlCursor xc2 = xExtObj.newCursor();
-                    xc2.toChild(new QName("urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0", "Slot"));
-                    xc2.toFirstChild();
-                    xc2.toFirstChild();
-                    String url = xc2.getTextValue();
-                    xc2.dispose();
-                    String brwsType = xExtObj.getName().getLocalizedStringArray(0).getValue();
-                    switch (brwsType) {
-                        case "THUMBNAIL":
-                            m.put(URL_THUMB, url);
-                            break;
-                        case "QUICKLOOK":
-                            m.put(URL_QLOOK, url);
-                            break;
+        // values from extrinsic objects override slot values so they are applied at the end
+        EnumMap<MetadataNames, String> fromExtObjs = new EnumMap<>(MetadataNames.class);
+        Deque<ExtObj> extObjs = new ArrayDeque<>();
+        XmlCursor xc = regPack.newCursor();
+        int depth = 0;
+        while (true) {
+            final TokenType tt = xc.toNextToken();
+            if (tt.isStart()) {
+                depth++;
+                final QName qn = xc.getName();
+                final ExtObj parent = extObjs.peek();
+                if (QN_SLOT.equals(qn)) {
+                    // process slot then skip its content
+                    final String slotName = xc.getAttributeText(QN_ATT_NAME);
+                    final SlotHandler sh = slotHandlers.get(slotName);
+                    if (sh != null) {
+                        sh.handle(xc, m);
+                    } else {
+                        logger.trace("Unknown hma slot {}", slotName);
+                    }
+                    if (parent != null && parent.depth == depth - 1 && parent.firstSlotValue == null) {
+                        parent.firstSlotValue = ValueSlotHandler.valueOf(xc);
                     }
+                    xc.toEndToken();
+                    depth--;
+                } else if (QN_EXTOBJ.equals(qn)) {
+                    extObjs.push(new ExtObj(xc.getAttributeText(QN_ATT_OBJTYPE), depth));
+                } else if (QN_NAME.equals(qn) && parent != null && parent.depth == depth - 1 && parent.name == null) {
+                    // name of the extrinsic object from the first localized string
+                    xc.push();
+                    if (xc.toChild(QN_LOCSTRING)) {
+                        parent.name = xc.getAttributeText(QN_ATT_VALUE);
+                    }
+                    xc.pop();
+                    xc.toEndToken();
+                    depth--;
+                }
+            } else if (tt.isEnd()) {
+                if (depth == 0) {
+                    // end of the registry package
+                    break;
+                }
+                final ExtObj eo = extObjs.peek();
+                if (eo != null && eo.depth == depth) {
+                    extObjs.pop();
+                    eo.applyTo(fromExtObjs);
                 }
+                depth--;
+            } else if (tt.isEnddoc() || tt.isNone()) {
+                break;
             }
         }
+        xc.dispose();
+        m.putAll(fromExtObjs);
         // TODO process Classification ???
         if (logger.isTraceEnabled()) {
             logger.trace(m.toString());
         }
         return m;
     }
+
+    /**
+     * Decodes a slot to metadata, cursor positioned on the slot start, position must be preserved.
+     */
+    private abstract static class SlotHandler {
+
+        protected final MetadataNames name;
+
+        SlotHandler(MetadataNames name) {
+            this.name = name;
+        }
+
+        abstract void handle(XmlCursor xc, Metadata m);
+    }
+
+    /**
+     * Handles single valued slots (containing inner &lt;rim:ValueList&gt;&lt;rim:Value&gt; tags).
+     */
+    private static class ValueSlotHandler extends SlotHandler {
+
+        ValueSlotHandler(MetadataNames name) {
+            super(name);
+        }
+
+        @Override
+        void handle(XmlCursor xc, Metadata m) {
+            m.put(name, valueOf(xc));
+        }
+
+        static String valueOf(XmlCursor xc) {
+            xc.push();
+            xc.toFirstChild();
+            xc.toFirstChild();
+            final String ret = xc.getTextValue();
+            xc.pop();
+            return ret;
+        }
+    }
+
+    /**
+     * Handles slots containing geometries, takes the text of the first coordinates element.
+     */
+    private static class CoordsSlotHandler extends SlotHandler {
+
+        private final QName coordsElement;
+
+        CoordsSlotHandler(MetadataNames name, QName coordsElement) {
+            super(name);
+            this.coordsElement = coordsElement;
+        }
+
+        @Override
+        void handle(XmlCursor xc, Metadata m) {
+            xc.push();
+            int depth = 0;
+            while (true) {
+                final TokenType tt = xc.toNextToken();
+                if (tt.isStart()) {
+                    if (coordsElement.equals(xc.getName())) {
+                        m.put(name, xc.getTextValue());
+                        break;
+                    }
+                    depth++;
+                } else if (tt.isEnd()) {
+                    if (depth == 0) {
+                        // end of slot
+                        break;
+                    }
+                    depth--;
+                } else if (tt.isEnddoc() || tt.isNone()) {
+                    break;
+                }
+            }
+            xc.pop();
+        }
+    }
 }
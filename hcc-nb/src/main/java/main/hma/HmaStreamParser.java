@@ -0,0 +1,298 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import main.data.Metadata;
+import main.data.MetadataNames;
+import static main.data.MetadataNames.FOOTPRINT;
+import static main.data.MetadataNames.SCENE_CENTER;
+import main.data.Slots;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming parser of HMA GetRecords responses.
+ * <p>
+ * Decodes registry packages to {@link Metadata} objects in a single pass over an {@link XMLStreamReader}, without building a document
+ * tree, giving the same results of {@link HmaRegPackParser}. Works on plain responses as well as on responses wrapped in a SOAP
+ * envelope.
+ * <p>
+ * Instances are not thread safe but are cheap to create.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class HmaStreamParser {
+
+    static final String NS_RIM = "urn:oasis:names:tc:ebxml-regrep:xsd:rim:3.0";
+    static final String NS_GML = "http://www.opengis.net/gml";
+    static final String NS_CSW = "http://www.opengis.net/cat/csw/2.0.2";
+    private static final Logger logger = LoggerFactory.getLogger(HmaStreamParser.class.getName());
+    private static final XMLInputFactory xif = XMLInputFactory.newInstance();
+    private final StringBuilder text = new StringBuilder(512);
+    private int matched = 0;
+    private int returned = 0;
+    private int nextRecord = 0;
+
+    /**
+     * Parses a GetRecords response read from a stream.
+     *
+     * @param in the stream to read from, not closed
+     * @param startPosition the start position of the request
+     * @return the decoded page
+     * @throws XMLStreamException in case of malformed XML
+     */
+    public RecordsPage parse(InputStream in, int startPosition) throws XMLStreamException {
+        XMLStreamReader xsr;
+        synchronized (xif) {
+            xsr = xif.createXMLStreamReader(in);
+        }
+        try {
+            return parse(xsr, startPosition);
+        } finally {
+            xsr.close();
+        }
+    }
+
+    /**
+     * Parses a GetRecords response from a stream reader.
+     * <p>
+     * The reader is consumed to the end of the document.
+     *
+     * @param xsr the reader
+     * @param startPosition the start position of the request
+     * @return the decoded page
+     * @throws XMLStreamException in case of malformed XML
+     */
+    public RecordsPage parse(XMLStreamReader xsr, int startPosition) throws XMLStreamException {
+        matched = returned = nextRecord = 0;
+        List<Metadata> records = new ArrayList<>();
+        while (xsr.hasNext()) {
+            if (xsr.next() == XMLStreamConstants.START_ELEMENT) {
+                if (isElement(xsr, NS_RIM, "RegistryPackage")) {
+                    records.add(parseRegistryPackage(xsr));
+                } else if (isElement(xsr, NS_CSW, "SearchResults")) {
+                    matched = intAttribute(xsr, "numberOfRecordsMatched");
+                    returned = intAttribute(xsr, "numberOfRecordsReturned");
+                    nextRecord = intAttribute(xsr, "nextRecord");
+                }
+            }
+        }
+        logger.debug("Streamed {} registry packages", records.size());
+        return new RecordsPage(startPosition, matched, returned, nextRecord, records);
+    }
+
+    private Metadata parseRegistryPackage(XMLStreamReader xsr) throws XMLStreamException {
+        Metadata m = new Metadata();
+        // extract product id
+        final String prodId = xsr.getAttributeValue(null, "id");
+        m.put(MetadataNames.PRODUCT_IDENTIFIER, prodId);
+        logger.debug("Parsing registry package for {}", prodId);
+        // values from extrinsic objects are applied after all the slots, as in HmaRegPackParser
+        EnumMap<MetadataNames, String> fromExtObjs = new EnumMap<>(MetadataNames.class);
+        Deque<ExtObj> extObjs = new ArrayDeque<>();
+        int depth = 1;
+        while (depth > 0) {
+            switch (xsr.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    final ExtObj parent = extObjs.peek();
+                    if (isElement(xsr, NS_RIM, "Slot")) {
+                        final boolean isChild = parent != null && parent.depth == depth - 1;
+                        final String value = parseSlot(xsr, m);
+                        depth--;
+                        if (isChild && parent.firstSlotValue == null) {
+                            parent.firstSlotValue = value;
+                        }
+                    } else if (isElement(xsr, NS_RIM, "ExtrinsicObject")) {
+                        extObjs.push(new ExtObj(xsr.getAttributeValue(null, "objectType"), depth));
+                    } else if (parent != null && parent.name == null && parent.depth == depth - 1 && isElement(xsr, NS_RIM, "Name")) {
+                        parent.name = parseFirstLocalizedString(xsr);
+                        depth--;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    final ExtObj eo = extObjs.peek();
+                    if (eo != null && eo.depth == depth) {
+                        extObjs.pop();
+                        eo.applyTo(fromExtObjs);
+                    }
+                    depth--;
+                    break;
+            }
+        }
+        m.putAll(fromExtObjs);
+        if (logger.isTraceEnabled()) {
+            logger.trace(m.toString());
+        }
+        return m;
+    }
+
+    /**
+     * Parses a slot, reader positioned on the start tag, consumed up to the end tag.
+     *
+     * @return the slot value as the text of the first grandchild element, null for footprint and scene center slots
+     */
+    private String parseSlot(XMLStreamReader xsr, Metadata m) throws XMLStreamException {
+        final String slotName = xsr.getAttributeValue(null, "name");
+        final MetadataNames mn = Slots.resp2meta.get(slotName);
+        if (mn == null) {
+            logger.trace("Unknown hma slot {}", slotName);
+        }
+        if (mn == FOOTPRINT || mn == SCENE_CENTER) {
+            // extract the coordinates from the first gml:posList or gml:pos
+            final String coordsTag = mn == FOOTPRINT ? "posList" : "pos";
+            int depth = 1;
+            boolean found = false;
+            while (depth > 0) {
+                switch (xsr.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (!found && isElement(xsr, NS_GML, coordsTag)) {
+                            m.put(mn, readTextValue(xsr));
+                            found = true;
+                        } else {
+                            depth++;
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        break;
+                }
+            }
+            return null;
+        }
+        // single valued slots (containing inner <rim:ValueList><rim:Value> tags)
+        String value = null;
+        text.setLength(0);
+        int depth = 1;
+        boolean inFirstChild = false;
+        boolean childSeen = false;
+        while (depth > 0) {
+            switch (xsr.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (inFirstChild && value == null) {
+                        // first element inside the first child
+                        value = readTextValue(xsr);
+                    } else {
+                        depth++;
+                        if (depth == 2 && !childSeen) {
+                            inFirstChild = true;
+                            childSeen = true;
+                            text.setLength(0);
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (!childSeen || inFirstChild) {
+                        text.append(xsr.getTextCharacters(), xsr.getTextStart(), xsr.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (depth == 2 && inFirstChild) {
+                        inFirstChild = false;
+                        if (value == null) {
+                            // no grandchild, value is the text of the first child
+                            value = text.toString();
+                        }
+                    }
+                    depth--;
+                    break;
+            }
+        }
+        if (value == null) {
+            // no child, value is the text of the slot
+            value = text.toString();
+        }
+        if (mn != null) {
+            m.put(mn, value);
+        }
+        return value;
+    }
+
+    /**
+     * Reads the value attribute of the first LocalizedString, reader positioned on a Name start tag, consumed up to the end tag.
+     */
+    private String parseFirstLocalizedString(XMLStreamReader xsr) throws XMLStreamException {
+        String ret = null;
+        int depth = 1;
+        while (depth > 0) {
+            switch (xsr.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (ret == null && isElement(xsr, NS_RIM, "LocalizedString")) {
+                        ret = xsr.getAttributeValue(null, "value");
+                    }
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Concatenates all the text inside an element, reader positioned on the start tag, consumed up to the end tag.
+     */
+    private String readTextValue(XMLStreamReader xsr) throws XMLStreamException {
+        final StringBuilder sb = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (xsr.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    sb.append(xsr.getTextCharacters(), xsr.getTextStart(), xsr.getTextLength());
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isElement(XMLStreamReader xsr, String ns, String localName) {
+        return localName.equals(xsr.getLocalName()) && ns.equals(xsr.getNamespaceURI());
+    }
+
+    private static int intAttribute(XMLStreamReader xsr, String name) {
+        final String val = xsr.getAttributeValue(null, name);
+        if (val == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(val.trim());
+        } catch (NumberFormatException nfe) {
+            logger.warn("Invalid {} attribute value: {}", name, val);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import main.data.CatalogueDefinition;
+import org.apache.axis2.client.Options;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared HTTP transport configuration of catalogue stubs.
+ * <p>
+ * All stubs send their requests through a single multi-threaded connection manager so that connections to a catalogue are kept alive
+ * and reused across requests and searches. The number of connections open to each catalogue host is capped according to its
+ * {@link CatalogueDefinition}, which also tells if gzip compressed responses are accepted. Compressed responses are decoded
+ * transparently by the Axis2 HTTP transport.
+ * <p>
+ * Connections left idle are closed by a background thread.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public final class HttpTransports {
+
+    public static final int MAX_TOTAL_CONNECTIONS = 32;
+    private static final long IDLE_TIMEOUT_MILLIS = 60000;
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransports.class.getName());
+    private static final MultiThreadedHttpConnectionManager connManager = new MultiThreadedHttpConnectionManager();
+    private static final HttpClient httpClient;
+    private static final IdleConnectionTimeoutThread idleCloser = new IdleConnectionTimeoutThread();
+
+    static {
+        HttpConnectionManagerParams params = connManager.getParams();
+        params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+        params.setDefaultMaxConnectionsPerHost(CatalogueDefinition.DEFAULT_MAX_CONNECTIONS);
+        // check pooled connections have not been closed by the server before reusing them
+        params.setStaleCheckingEnabled(true);
+        httpClient = new HttpClient(connManager);
+        idleCloser.addConnectionManager(connManager);
+        idleCloser.setConnectionTimeout(IDLE_TIMEOUT_MILLIS);
+        idleCloser.setTimeoutInterval(IDLE_TIMEOUT_MILLIS / 2);
+        idleCloser.start();
+    }
+
+    // prevent instantiation
+    private HttpTransports() {
+    }
+
+    /**
+     * Configures the HTTP transport options of a stub according to the given catalogue.
+     * <p>
+     * Sets HTTP/1.1 persistent connections from the shared pool, the connection cap of the catalogue host and gzip compression.
+     *
+     * @param options the stub options
+     * @param catDef the catalogue definition
+     */
+    public static void configure(Options options, CatalogueDefinition catDef) {
+        configureHost(catDef);
+        options.setProperty(HTTPConstants.HTTP_PROTOCOL_VERSION, HTTPConstants.HEADER_PROTOCOL_11);
+        options.setProperty(HTTPConstants.MC_ACCEPT_GZIP, catDef.isCompression());
+        useShared(options);
+    }
+
+    /**
+     * Makes the stub options point to the shared connection pool.
+     *
+     * @param options the stub options
+     */
+    public static void useShared(Options options) {
+        options.setProperty(HTTPConstants.REUSE_HTTP_CLIENT, Boolean.TRUE);
+        options.setProperty(HTTPConstants.MULTITHREAD_HTTP_CONNECTION_MANAGER, connManager);
+        options.setProperty(HTTPConstants.CACHED_HTTP_CLIENT, httpClient);
+    }
+
+    /**
+     * Applies the connection cap and the connect timeout of the catalogue to the shared pool.
+     * <p>
+     * The connect timeout is a pool wide setting: as for the Axis2 transport the last configured catalogue wins.
+     *
+     * @param catDef the catalogue definition
+     */
+    static void configureHost(CatalogueDefinition catDef) {
+        final HttpConnectionManagerParams params = connManager.getParams();
+        final HostConfiguration hostConf = hostOf(catDef.getEndpoint());
+        if (hostConf != null) {
+            params.setMaxConnectionsPerHost(hostConf, catDef.getMaxConnections());
+        }
+        params.setConnectionTimeout(catDef.getTimeoutMillis());
+    }
+
+    /**
+     * Gives the HTTP client sending requests through the shared pool.
+     *
+     * @return the shared client
+     */
+    static HttpClient sharedClient() {
+        return httpClient;
+    }
+
+    /**
+     * Gives the shared connection manager, to be wrapped by transports needing control over their connections.
+     *
+     * @return the shared connection manager
+     */
+    static HttpConnectionManager sharedManager() {
+        return connManager;
+    }
+
+    /**
+     * Closes all pooled connections, to be called on application exit.
+     */
+    public static void shutdown() {
+        logger.debug("Shutting down HTTP connection pool");
+        idleCloser.shutdown();
+        connManager.shutdown();
+    }
+
+    private static HostConfiguration hostOf(String endpoint) {
+        try {
+            final URL url = new URL(endpoint);
+            HostConfiguration ret = new HostConfiguration();
+            ret.setHost(url.getHost(), url.getPort(), url.getProtocol());
+            return ret;
+        } catch (MalformedURLException | IllegalArgumentException | IllegalStateException ex) {
+            logger.warn("Cannot cap connections to endpoint {}: {}", endpoint, ex.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,672 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.stream.XMLStreamException;
+import main.data.CatalogueDefinition;
+import main.data.PageSizeProfile;
+import main.metrics.SearchTimings;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
+import org.apache.axis2.AxisFault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retrieves the pages of a GetRecords RESULTS search with a bounded number of concurrent requests.
+ * <p>
+ * At most {@link CatalogueDefinition#getMaxParallelPages()} requests are in progress at the same time. Each fetching thread uses its
+ * own {@link CatalogueClient} as clients cannot be shared between threads. Pages are handed back in start position order regardless of
+ * the order in which responses arrive.
+ * <p>
+ * Failed page requests are retried according to a {@link RetryPolicy}. With hedging enabled a page still waited for after the 95th
+ * percentile of the page latencies seen so far is requested a second time, the first response is used. Pages failing after all
+ * retries do not stop the search: they are reported as {@link PageGap gaps} that can be fetched again later. Records the catalogue
+ * does not return although matched are reported as gaps too.
+ * <p>
+ * Unless a subclass needs the response documents, pages are decoded while they are received or from the bytes of cached responses.
+ * <p>
+ * Latency and size of the pages actually requested to the catalogue, not served by the cache, can be recorded in a
+ * {@link PageSizeProfile}.
+ * <p>
+ * Building of the page requests, responses and records decoding are reported to the {@link SearchTimings} set, if any.
+ * <p>
+ * Typical usage is as follows:
+ * <pre>
+ * PageFetcher fetcher = new PageFetcher(catDef, request);
+ * try {
+ *     RecordsPage first = fetcher.fetchPage(1, 100);
+ *     fetcher.fetchRemaining(first, listener);
+ * } finally {
+ *     fetcher.shutdown();
+ * }
+ * </pre>
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class PageFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageFetcher.class.getName());
+    private static final AtomicInteger poolCount = new AtomicInteger();
+    private final CatalogueDefinition catDef;
+    private final GetRecordsDocument template;
+    private final int maxParallel;
+    private final ExecutorService pool;
+    private final List<CatalogueClient> clients = Collections.synchronizedList(new ArrayList<CatalogueClient>());
+    private final ThreadLocal<CountingClient> threadClient = new ThreadLocal<>();
+    private final List<PageGap> gaps = Collections.synchronizedList(new ArrayList<PageGap>());
+    private final LatencyWindow latencies = new LatencyWindow();
+    // a single hedged request at a time, run by the spare thread of the pool
+    private final Semaphore hedgeSlot = new Semaphore(1);
+    private volatile ResponseCache cache = null;
+    private volatile AbortableTransport transport = null;
+    private volatile PageSizeProfile profile = null;
+    private volatile SearchTimings timings = null;
+    private volatile RetryPolicy retryPolicy;
+    private volatile boolean hedging;
+
+    /**
+     * Receives the outcome of page requests in start position order.
+     */
+    public interface PageListener {
+
+        void pageFetched(RecordsPage page);
+
+        void pageFailed(PageGap gap);
+    }
+
+    /**
+     * Initializing constructor.
+     *
+     * @param catDef the catalogue to query
+     * @param template the RESULTS request, start position and maximum records are overridden for each page
+     */
+    public PageFetcher(CatalogueDefinition catDef, GetRecordsDocument template) {
+        this(catDef, template, catDef.getMaxParallelPages());
+    }
+
+    /**
+     * Initializing constructor with explicit concurrency.
+     * <p>
+     * Retry policy and hedging are initialized from the catalogue definition.
+     *
+     * @param catDef the catalogue to query
+     * @param template the RESULTS request, start position and maximum records are overridden for each page
+     * @param maxParallel the maximum number of requests in progress at the same time
+     */
+    public PageFetcher(CatalogueDefinition catDef, GetRecordsDocument template, int maxParallel) {
+        this.catDef = catDef;
+        this.template = template;
+        this.maxParallel = Math.max(1, maxParallel);
+        this.retryPolicy = RetryPolicy.forCatalogue(catDef);
+        this.hedging = catDef.isHedging();
+        final String poolName = String.format("page-fetcher-%d-", poolCount.incrementAndGet());
+        // one more thread than the concurrent pages for hedged requests
+        this.pool = Executors.newFixedThreadPool(this.maxParallel + 1, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, poolName + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Sets the cache the page requests go through.
+     *
+     * @param cache the response cache, null to always send requests
+     */
+    public void setResponseCache(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the transport the page requests are sent through, to be able to abort them.
+     * <p>
+     * Must be called before the first page is requested.
+     *
+     * @param transport the transport, null for the default one
+     */
+    public void setTransport(AbortableTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Sets the profile recording latency and size of the pages requested to the catalogue.
+     *
+     * @param profile the profile, null to record nothing
+     */
+    public void setProfile(PageSizeProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Sets the timings the phases of the page requests are reported to.
+     * <p>
+     * Must be called before the first page is requested.
+     *
+     * @param timings the timings of the search, null to report nothing
+     */
+    public void setTimings(SearchTimings timings) {
+        this.timings = timings;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.NONE;
+    }
+
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    public int getMaxParallel() {
+        return maxParallel;
+    }
+
+    /**
+     * Gives the ranges of records that could not be retrieved so far.
+     *
+     * @return a copy of the list of gaps, in start position order
+     */
+    public List<PageGap> getGaps() {
+        synchronized (gaps) {
+            return new ArrayList<>(gaps);
+        }
+    }
+
+    /**
+     * Retrieves a single page, blocking until it is available.
+     *
+     * @param startPos the position of the first record
+     * @param maxRecords the number of records to ask for
+     * @return the decoded page
+     * @throws Exception if the request fails after all retries
+     */
+    public RecordsPage fetchPage(int startPos, int maxRecords) throws Exception {
+        return await(new PendingPage(startPos, maxRecords));
+    }
+
+    /**
+     * Retrieves all the pages following the given one.
+     * <p>
+     * The page size is the number of records returned in the given page, as servers may cap the requested maximum.
+     *
+     * @param first the first page of the search
+     * @param listener the listener receiving each page in start position order, called on the invoking thread
+     * @return the number of records retrieved
+     * @throws Exception if the search is aborted
+     */
+    public int fetchRemaining(RecordsPage first, PageListener listener) throws Exception {
+        if (!first.hasMore()) {
+            return 0;
+        }
+        return fetchPages(first.getNextPosition(), first.getReturned(), first.getMatched(), listener);
+    }
+
+    /**
+     * Retrieves all the pages of a search whose number of matched records is already known, e.g. from a previous HITS request.
+     * <p>
+     * Differently from {@link #fetchRemaining(RecordsPage, PageListener)} the first page is not awaited before requesting the
+     * following ones, the window of concurrent requests is filled from the start. Records matched beyond the given number, if the
+     * catalogue contents changed in the meantime, are not retrieved.
+     *
+     * @param startPos the position of the first record
+     * @param pageSize the number of records to ask for in each page
+     * @param matched the number of records matched by the search
+     * @param listener the listener receiving each page in start position order, called on the invoking thread
+     * @return the number of records retrieved
+     * @throws Exception if the search is aborted
+     */
+    public int fetchPlanned(int startPos, int pageSize, int matched, PageListener listener) throws Exception {
+        return fetchPages(startPos, Math.max(1, pageSize), matched, listener);
+    }
+
+    /**
+     * Retrieves again the records of gaps left by a previous search with the same request.
+     *
+     * @param toFill the gaps to fill
+     * @param listener the listener receiving each page in start position order, called on the invoking thread
+     * @return the number of records retrieved
+     * @throws Exception if the search is aborted
+     */
+    public int fetchGaps(List<PageGap> toFill, PageListener listener) throws Exception {
+        Deque<int[]> ranges = new ArrayDeque<>();
+        for (PageGap gap : toFill) {
+            ranges.add(new int[]{gap.getStartPosition(), gap.getSize()});
+        }
+        logger.debug("Fetching {} gaps with {} concurrent requests", ranges.size(), maxParallel);
+        return fetchRanges(ranges, listener);
+    }
+
+    private int fetchPages(int fromPos, int pageSize, int matched, PageListener listener) throws Exception {
+        logger.debug("Fetching records {} to {} in pages of {} with {} concurrent requests", fromPos, matched, pageSize, maxParallel);
+        Deque<int[]> ranges = new ArrayDeque<>();
+        for (int pos = fromPos; pos <= matched; pos += pageSize) {
+            ranges.add(new int[]{pos, Math.min(pageSize, matched - pos + 1)});
+        }
+        return fetchRanges(ranges, listener);
+    }
+
+    private int fetchRanges(Deque<int[]> ranges, PageListener listener) throws Exception {
+        int fetched = 0;
+        Deque<PendingPage> window = new ArrayDeque<>();
+        try {
+            while (true) {
+                // keep the window of concurrent requests full
+                while (window.size() < maxParallel && !ranges.isEmpty()) {
+                    final int[] range = ranges.poll();
+                    window.add(new PendingPage(range[0], range[1]));
+                }
+                final PendingPage head = window.poll();
+                if (head == null) {
+                    break;
+                }
+                RecordsPage page;
+                try {
+                    page = await(head);
+                } catch (InterruptedException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    checkAborted(ex);
+                    pageFailed(new PageGap(head.startPos, head.size, ex), listener);
+                    continue;
+                }
+                listener.pageFetched(page);
+                fetched += page.getReturned();
+                // request again the records the server did not return in this page
+                int missingPos = head.startPos + page.getReturned();
+                int missing = head.size - page.getReturned();
+                while (page.getReturned() > 0 && missing > 0) {
+                    logger.warn("Page at {} returned {} records less than expected, requesting them again", head.startPos, missing);
+                    try {
+                        page = fetchPage(missingPos, missing);
+                    } catch (InterruptedException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
+                        checkAborted(ex);
+                        pageFailed(new PageGap(missingPos, missing, ex), listener);
+                        break;
+                    }
+                    listener.pageFetched(page);
+                    fetched += page.getReturned();
+                    missingPos += page.getReturned();
+                    missing -= page.getReturned();
+                }
+                if (page.getReturned() == 0 && missing > 0) {
+                    // keep going with the following ranges, the catalogue may have skipped only some records
+                    pageFailed(new PageGap(missingPos, missing, new IOException(String.format("No records returned at %d", missingPos))),
+                            listener);
+                }
+            }
+        } finally {
+            for (PendingPage pp : window) {
+                pp.cancel();
+            }
+        }
+        return fetched;
+    }
+
+    private void pageFailed(PageGap gap, PageListener listener) {
+        logger.warn("Could not retrieve {}: {}", gap, gap.getCause().toString());
+        gaps.add(gap);
+        listener.pageFailed(gap);
+    }
+
+    private void checkAborted(Exception ex) throws Exception {
+        final AbortableTransport at = transport;
+        if ((at != null && at.isAborted()) || Thread.currentThread().isInterrupted()) {
+            // search cancelled, not a gap
+            throw ex;
+        }
+    }
+
+    /**
+     * Stops the fetching threads and releases the clients.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        synchronized (clients) {
+            for (CatalogueClient client : clients) {
+                client.cleanup();
+            }
+            clients.clear();
+        }
+    }
+
+    /**
+     * Called on the fetching thread before sending a page request.
+     * <p>
+     * Does nothing by default, subclasses may override e.g. for dumping.
+     *
+     * @param req the page request
+     */
+    protected void requestReady(GetRecordsDocument req) {
+    }
+
+    /**
+     * Called on the fetching thread after receiving a page response and before decoding it.
+     * <p>
+     * Does nothing by default, subclasses may override e.g. for dumping.
+     *
+     * @param resp the page response
+     */
+    protected void responseReceived(GetRecordsResponseDocument resp) {
+    }
+
+    /**
+     * Tells if {@link #responseReceived(GetRecordsResponseDocument)} needs the response documents.
+     * <p>
+     * Returns false by default, subclasses overriding {@code responseReceived} should return true when they use the documents.
+     *
+     * @return true to always build the response documents
+     */
+    protected boolean needsResponses() {
+        return false;
+    }
+
+    /**
+     * Waits for the first successful response to the requests of a page, hedging it if late.
+     */
+    private RecordsPage await(PendingPage pp) throws Exception {
+        while (true) {
+            Outcome outcome = null;
+            final long threshold = hedging && !pp.hedged ? latencies.percentile95() : -1;
+            if (threshold > 0) {
+                final long wait = threshold - (System.currentTimeMillis() - pp.started);
+                outcome = pp.outcomes.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (outcome == null) {
+                    // only one hedge per page, skipped if another page is being hedged
+                    pp.hedged = true;
+                    if (hedgeSlot.tryAcquire()) {
+                        logger.info("Page at {} late after {} ms, sending a hedged request", pp.startPos, threshold);
+                        pp.launch(true);
+                    }
+                    continue;
+                }
+            } else {
+                outcome = pp.outcomes.take();
+            }
+            pp.running--;
+            if (outcome.page != null) {
+                pp.cancel();
+                return outcome.page;
+            }
+            if (pp.running == 0) {
+                throw outcome.error;
+            }
+        }
+    }
+
+    private RecordsPage getPageRetrying(GetRecordsDocument req, int startPos) throws Exception {
+        final RetryPolicy policy = retryPolicy;
+        for (int retry = 1;; retry++) {
+            try {
+                return getPage(req, startPos);
+            } catch (Exception ex) {
+                final AbortableTransport at = transport;
+                if (retry > policy.getMaxRetries() || !policy.isRetryable(ex) || (at != null && at.isAborted())) {
+                    throw ex;
+                }
+                final long backoff = policy.backoffMillis(retry);
+                logger.warn("Page at {} failed ({}), retry {} in {} ms", startPos, ex.toString(), retry, backoff);
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    private RecordsPage getPage(GetRecordsDocument req, int startPos) throws Exception {
+        requestReady(req);
+        logger.debug("Requesting page starting at {}", startPos);
+        final CountingClient client = getClient();
+        final int requested = req.getGetRecords().getMaxRecords().intValue();
+        final int sentBefore = client.sent;
+        final long start = System.currentTimeMillis();
+        final RecordsPage page;
+        try {
+            page = fetch(client, req, startPos);
+        } catch (Exception ex) {
+            final PageSizeProfile p = profile;
+            if (p != null && isTimeout(ex)) {
+                p.pageFailed(requested, maxParallel);
+            }
+            throw ex;
+        }
+        if (client.sent > sentBefore) {
+            // learn only from responses of the catalogue
+            final long millis = System.currentTimeMillis() - start;
+            latencies.add(millis);
+            final PageSizeProfile p = profile;
+            if (p != null) {
+                final boolean more = page.getMatched() > startPos - 1 + page.getReturned();
+                p.pageFetched(requested, page.getReturned(), more, millis);
+            }
+        }
+        return page;
+    }
+
+    private RecordsPage fetch(CatalogueClient client, GetRecordsDocument req, int startPos) throws Exception {
+        final ResponseCache rc = cache;
+        if (!needsResponses()) {
+            return rc != null ? rc.getRecordsPage(client, catDef, req, startPos, timings) : client.getRecordsPage(req, startPos);
+        }
+        final GetRecordsResponseDocument resp = rc != null ? rc.getRecords(client, catDef, req) : client.getRecords(req);
+        responseReceived(resp);
+        final long start = System.nanoTime();
+        final RecordsPage page = new HmaStreamParser().parse(resp.newXMLStreamReader(), startPos);
+        final SearchTimings st = timings;
+        if (st != null) {
+            st.parsed(page.getRecords().size(), System.nanoTime() - start);
+        }
+        return page;
+    }
+
+    private CountingClient getClient() throws AxisFault {
+        CountingClient client = threadClient.get();
+        if (client == null) {
+            client = new CountingClient(CatalogueStubs.createClient(catDef));
+            final AbortableTransport at = transport;
+            if (at != null) {
+                client.setTransport(at);
+            }
+            client.setTimings(timings);
+            threadClient.set(client);
+            clients.add(client);
+        }
+        return client;
+    }
+
+    private static boolean isTimeout(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The requests in progress for a page: the first one and possibly a hedged one.
+     * <p>
+     * Accessed by the thread waiting for the page, the requests only post their outcome.
+     */
+    private class PendingPage {
+
+        private final int startPos;
+        private final int size;
+        private final long started = System.currentTimeMillis();
+        private final LinkedBlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        private final List<Future<?>> requests = new ArrayList<>(2);
+        private int running = 0;
+        private boolean hedged = false;
+
+        PendingPage(int startPos, int size) {
+            this.startPos = startPos;
+            this.size = size;
+            launch(false);
+        }
+
+        final void launch(final boolean hedge) {
+            // each request gets its own copy of the template
+            final long start = System.nanoTime();
+            final GetRecordsDocument req = (GetRecordsDocument) template.copy();
+            req.getGetRecords().setStartPosition(BigInteger.valueOf(startPos));
+            req.getGetRecords().setMaxRecords(BigInteger.valueOf(size));
+            final SearchTimings st = timings;
+            if (st != null) {
+                st.requestBuilt(System.nanoTime() - start);
+            }
+            // claimed either by the request when it starts or by the cancellation of a request not started yet
+            final AtomicBoolean claimed = new AtomicBoolean();
+            FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return;
+                    }
+                    try {
+                        outcomes.add(new Outcome(getPageRetrying(req, startPos), null));
+                    } catch (Exception ex) {
+                        outcomes.add(new Outcome(null, ex));
+                    } finally {
+                        if (hedge) {
+                            // cancelling does not stop a blocked read, the slot is freed only when the request is over
+                            hedgeSlot.release();
+                        }
+                    }
+                }
+            }, null) {
+                @Override
+                protected void done() {
+                    if (hedge && isCancelled() && claimed.compareAndSet(false, true)) {
+                        // cancelled before running
+                        hedgeSlot.release();
+                    }
+                }
+            };
+            running++;
+            requests.add(task);
+            pool.execute(task);
+        }
+
+        void cancel() {
+            for (Future<?> f : requests) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private static class Outcome {
+
+        private final RecordsPage page;
+        private final Exception error;
+
+        Outcome(RecordsPage page, Exception error) {
+            this.page = page;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Latencies of the most recent page responses.
+     */
+    private static class LatencyWindow {
+
+        private static final int SIZE = 64;
+        private static final int MIN_SAMPLES = 5;
+        private final long[] samples = new long[SIZE];
+        private int count = 0;
+
+        synchronized void add(long millis) {
+            samples[count % SIZE] = millis;
+            count++;
+        }
+
+        synchronized long percentile95() {
+            final int n = Math.min(count, SIZE);
+            if (n < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, n);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(n * 0.95) - 1];
+        }
+    }
+
+    /**
+     * Client counting the requests actually sent, to tell them apart from responses served by the cache.
+     */
+    private static class CountingClient implements CatalogueClient {
+
+        private final CatalogueClient delegate;
+        private int sent = 0;
+
+        CountingClient(CatalogueClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public GetRecordsResponseDocument getRecords(GetRecordsDocument req) throws RemoteException, ServiceExceptionReportFault {
+            sent++;
+            return delegate.getRecords(req);
+        }
+
+        @Override
+        public RecordsPage getRecordsPage(GetRecordsDocument req, int startPos) throws RemoteException, ServiceExceptionReportFault,
+                XMLStreamException {
+            sent++;
+            return delegate.getRecordsPage(req, startPos);
+        }
+
+        @Override
+        public void setTransport(AbortableTransport transport) {
+            delegate.setTransport(transport);
+        }
+
+        @Override
+        public void setTimings(SearchTimings timings) {
+            delegate.setTimings(timings);
+        }
+
+        @Override
+        public void cleanup() {
+            delegate.cleanup();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+/**
+ * A range of records of a search that could not be retrieved.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class PageGap {
+
+    private final int startPosition;
+    private final int size;
+    private final Exception cause;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param startPosition the position of the first missing record
+     * @param size the number of missing records
+     * @param cause the failure of the last request for the records
+     */
+    public PageGap(int startPosition, int size, Exception cause) {
+        this.startPosition = startPosition;
+        this.size = size;
+        this.cause = cause;
+    }
+
+    public int getStartPosition() {
+        return startPosition;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Exception getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("records %d-%d", startPosition, startPosition + size - 1);
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import main.data.CatalogueDefinition;
+import main.metrics.SearchTimings;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
+import net.opengis.www.ows.ExceptionReportDocument;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link CatalogueClient} of the plain HTTP POST binding.
+ * <p>
+ * The request XML is written directly on the connection and the response is decoded while it is read, skipping the SOAP envelope
+ * handling and the intermediate object model of Axis2. Connections come from the pool of {@link HttpTransports}, gzip compressed
+ * responses are requested and decoded if the catalogue definition allows compression.
+ * <p>
+ * The {@link SoapCatalogueClient} uses an instance wrapping the requests in a SOAP envelope to decode records pages the same way.
+ * <p>
+ * Exception reports sent by the catalogue, as such or as detail of a SOAP fault, are thrown as {@link ServiceExceptionReportFault}
+ * as for the SOAP binding.
+ * <p>
+ * Time to the first response byte, bytes received and time spent waiting for them are reported to the {@link SearchTimings} set, if
+ * any. For responses decoded while received the remaining time is reported as records decoding.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class PostCatalogueClient implements CatalogueClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostCatalogueClient.class.getName());
+    private static final String CONTENT_TYPE = "application/xml; charset=UTF-8";
+    // SOAP action of the GetRecords operation in the HMA catalogue WSDL
+    private static final String GETRECORDS_ACTION = "http://www.opengis.net/cat/csw/2.0.2/requests#GetRecords";
+    private static final String NS_SOAP11 = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String NS_SOAP12 = "http://www.w3.org/2003/05/soap-envelope";
+    private static final XMLInputFactory xif = XMLInputFactory.newInstance();
+    private static final XmlOptions saveOpts = new XmlOptions().setSaveAggressiveNamespaces().setCharacterEncoding("UTF-8");
+    private static final XmlOptions bodySaveOpts = new XmlOptions(saveOpts).setSaveNoXmlDecl();
+    private final CatalogueDefinition catDef;
+    private final boolean soap;
+    private volatile HttpClient httpClient = HttpTransports.sharedClient();
+    private volatile SearchTimings timings = null;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param catDef the catalogue to send requests to
+     */
+    public PostCatalogueClient(CatalogueDefinition catDef) {
+        this(catDef, false);
+    }
+
+    /**
+     * Creates a client sending the requests as such or wrapped in a SOAP envelope of the version of the catalogue.
+     *
+     * @param catDef the catalogue to send requests to
+     * @param soap true to use SOAP envelopes
+     */
+    PostCatalogueClient(CatalogueDefinition catDef, boolean soap) {
+        this.catDef = catDef;
+        this.soap = soap;
+        HttpTransports.configureHost(catDef);
+    }
+
+    @Override
+    public GetRecordsResponseDocument getRecords(GetRecordsDocument req) throws RemoteException, ServiceExceptionReportFault {
+        try {
+            return post(req, new ResponseReader<GetRecordsResponseDocument>() {
+                @Override
+                GetRecordsResponseDocument read(XMLStreamReader xsr) throws XmlException {
+                    return GetRecordsResponseDocument.Factory.parse(xsr);
+                }
+            });
+        } catch (XMLStreamException ex) {
+            throw new RemoteException("Malformed GetRecords response", ex);
+        }
+    }
+
+    @Override
+    public RecordsPage getRecordsPage(GetRecordsDocument req, final int startPos) throws RemoteException,
+            ServiceExceptionReportFault, XMLStreamException {
+        return post(req, new ResponseReader<RecordsPage>() {
+            @Override
+            RecordsPage read(XMLStreamReader xsr) throws XMLStreamException {
+                return new HmaStreamParser().parse(xsr, startPos);
+            }
+
+            @Override
+            void decoded(SearchTimings st, RecordsPage page, long nanos) {
+                st.parsed(page.getRecords().size(), nanos);
+            }
+        });
+    }
+
+    @Override
+    public void setTransport(AbortableTransport transport) {
+        httpClient = transport != null ? transport.getHttpClient() : HttpTransports.sharedClient();
+    }
+
+    @Override
+    public void setTimings(SearchTimings timings) {
+        this.timings = timings;
+    }
+
+    @Override
+    public void cleanup() {
+        // connections are given back to the pool after each request
+    }
+
+    private <T> T post(final GetRecordsDocument req, ResponseReader<T> reader) throws RemoteException, ServiceExceptionReportFault,
+            XMLStreamException {
+        PostMethod post = new PostMethod(catDef.getEndpoint());
+        post.setRequestEntity(new RequestEntity() {
+            @Override
+            public boolean isRepeatable() {
+                return true;
+            }
+
+            @Override
+            public void writeRequest(OutputStream out) throws IOException {
+                if (soap) {
+                    out.write(String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?><soap:Envelope xmlns:soap=\"%s\"><soap:Body>",
+                            soapNamespace()).getBytes(StandardCharsets.UTF_8));
+                    req.save(out, bodySaveOpts);
+                    out.write("</soap:Body></soap:Envelope>".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    req.save(out, saveOpts);
+                }
+            }
+
+            @Override
+            public long getContentLength() {
+                // sent chunked
+                return -1;
+            }
+
+            @Override
+            public String getContentType() {
+                if (!soap) {
+                    return CONTENT_TYPE;
+                }
+                return catDef.isSoapV12() ? String.format("application/soap+xml; charset=UTF-8; action=\"%s\"", GETRECORDS_ACTION)
+                        : "text/xml; charset=UTF-8";
+            }
+        });
+        if (soap && !catDef.isSoapV12()) {
+            post.setRequestHeader("SOAPAction", String.format("\"%s\"", GETRECORDS_ACTION));
+        }
+        if (catDef.isCompression()) {
+            post.setRequestHeader("Accept-Encoding", "gzip");
+        }
+        post.getParams().setSoTimeout(catDef.getTimeoutMillis());
+        final SearchTimings st = timings;
+        try {
+            final long start = System.nanoTime();
+            final int status = httpClient.executeMethod(post);
+            // the status line and headers have been read
+            final long headersAt = System.nanoTime();
+            logger.debug("POST to {} answered {}", catDef.getEndpoint(), post.getStatusLine());
+            final InputStream body = post.getResponseBodyAsStream();
+            if (body == null) {
+                throw new RemoteException(String.format("Empty response: %s", post.getStatusLine()));
+            }
+            if (st != null) {
+                st.firstByte(headersAt - start);
+            }
+            final TimedInputStream timed = new TimedInputStream(body);
+            InputStream in = timed;
+            final Header encoding = post.getResponseHeader("Content-Encoding");
+            if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+                in = new GZIPInputStream(in);
+            }
+            XMLStreamReader xsr;
+            synchronized (xif) {
+                xsr = xif.createXMLStreamReader(in);
+            }
+            try {
+                try {
+                    xsr.nextTag();
+                } catch (XMLStreamException ex) {
+                    if (status != HttpStatus.SC_OK) {
+                        // not an XML error response
+                        throw new RemoteException(String.format("Request failed: %s", post.getStatusLine()), ex);
+                    }
+                    throw ex;
+                }
+                if (soap && "Envelope".equals(xsr.getLocalName())) {
+                    toBodyContent(xsr);
+                    if ("Fault".equals(xsr.getLocalName())) {
+                        raiseFault(xsr);
+                    }
+                }
+                if ("ExceptionReport".equals(xsr.getLocalName())) {
+                    throw toFault(ExceptionReportDocument.Factory.parse(xsr));
+                }
+                final T ret = reader.read(xsr);
+                if (st != null) {
+                    final long end = System.nanoTime();
+                    st.responseReceived(end - start);
+                    st.transferred(timed.getBytes(), timed.getNanos());
+                    reader.decoded(st, ret, end - headersAt - timed.getNanos());
+                }
+                return ret;
+            } finally {
+                xsr.close();
+            }
+        } catch (XmlException ex) {
+            throw new RemoteException("Malformed response", ex);
+        } catch (RemoteException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            throw new RemoteException(String.format("Could not POST to %s", catDef.getEndpoint()), ex);
+        } finally {
+            post.releaseConnection();
+        }
+    }
+
+    private String soapNamespace() {
+        return catDef.isSoapV12() ? NS_SOAP12 : NS_SOAP11;
+    }
+
+    /**
+     * Moves a reader positioned on a SOAP envelope to the first element of the body.
+     */
+    private static void toBodyContent(XMLStreamReader xsr) throws XMLStreamException {
+        // header, if any, then body
+        while (xsr.nextTag() == XMLStreamConstants.START_ELEMENT && !"Body".equals(xsr.getLocalName())) {
+            skipElement(xsr);
+        }
+        if (!xsr.isStartElement() || xsr.nextTag() != XMLStreamConstants.START_ELEMENT) {
+            throw new XMLStreamException("SOAP envelope without body content");
+        }
+    }
+
+    private static void skipElement(XMLStreamReader xsr) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int ev = xsr.next();
+            if (ev == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (ev == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Throws the exception report in the detail of a SOAP fault or a remote exception with the fault reason.
+     *
+     * @param xsr a reader positioned on the fault element
+     */
+    private static void raiseFault(XMLStreamReader xsr) throws RemoteException, ServiceExceptionReportFault, XMLStreamException,
+            XmlException {
+        StringBuilder reason = new StringBuilder();
+        int depth = 1;
+        boolean inReason = false;
+        while (depth > 0) {
+            final int ev = xsr.next();
+            if (ev == XMLStreamConstants.START_ELEMENT) {
+                if ("ExceptionReport".equals(xsr.getLocalName())) {
+                    throw toFault(ExceptionReportDocument.Factory.parse(xsr));
+                }
+                depth++;
+                // faultstring in SOAP 1.1, Reason/Text in SOAP 1.2
+                inReason = "faultstring".equals(xsr.getLocalName()) || "Text".equals(xsr.getLocalName());
+            } else if (ev == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                inReason = false;
+            } else if (inReason && ev == XMLStreamConstants.CHARACTERS) {
+                reason.append(xsr.getText());
+            }
+        }
+        throw new RemoteException(String.format("SOAP fault: %s", reason.toString().trim()));
+    }
+
+    private static ServiceExceptionReportFault toFault(ExceptionReportDocument report) {
+        final ServiceExceptionReportFault fault = new ServiceExceptionReportFault("Exception report from catalogue");
+        fault.setFaultMessage(report);
+        return fault;
+    }
+
+    /**
+     * Decodes a response from a reader positioned on the root element.
+     */
+    private abstract static class ResponseReader<T> {
+
+        abstract T read(XMLStreamReader xsr) throws XMLStreamException, XmlException;
+
+        /**
+         * Reports the decoding time of a response, does nothing by default.
+         */
+        void decoded(SearchTimings st, T result, long nanos) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.util.List;
+import main.data.Metadata;
+
+/**
+ * A page of records retrieved by a GetRecords RESULTS request.
+ * <p>
+ * Holds the decoded records together with the paging information of the response.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class RecordsPage {
+
+    private final int startPosition;
+    private final int matched;
+    private final int returned;
+    private final int nextRecord;
+    private final List<Metadata> records;
+
+    public RecordsPage(int startPosition, int matched, int returned, int nextRecord, List<Metadata> records) {
+        this.startPosition = startPosition;
+        this.matched = matched;
+        this.returned = returned;
+        this.nextRecord = nextRecord;
+        this.records = records;
+    }
+
+    public int getStartPosition() {
+        return startPosition;
+    }
+
+    public int getMatched() {
+        return matched;
+    }
+
+    public int getReturned() {
+        return returned;
+    }
+
+    public int getNextRecord() {
+        return nextRecord;
+    }
+
+    public List<Metadata> getRecords() {
+        return records;
+    }
+
+    /**
+     * The position of the first record following this page.
+     * <p>
+     * Uses the next record indication of the server if present, otherwise advances by the number of records actually returned.
+     *
+     * @return the start position of the next page
+     */
+    public int getNextPosition() {
+        return nextRecord > 0 ? nextRecord : startPosition + returned;
+    }
+
+    /**
+     * Tells if there are matched records following this page.
+     *
+     * @return true if another page should be requested
+     */
+    public boolean hasMore() {
+        return returned > 0 && getNextPosition() <= matched;
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLStreamException;
+import main.data.CatalogueDefinition;
+import main.metrics.SearchTimings;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlCursor.TokenType;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of GetRecords responses in front of {@link CatalogueClient#getRecords(GetRecordsDocument)}, also decoding records pages.
+ * <p>
+ * Responses are keyed by the catalogue endpoint and a canonical form of the request, insensitive to namespace prefixes, attribute
+ * order and formatting whitespace. Recently used responses are kept in memory, all of them are also saved gzip compressed in a cache
+ * directory. When exceeding their size budget the memory tier evicts least recently used entries, the disk tier the oldest ones.
+ * <p>
+ * Entries older than the {@link CatalogueDefinition#getCacheTtlMinutes() time to live} of the catalogue are not used. When bypassed
+ * the cache is not looked up but fresh responses are still stored, refreshing the entries.
+ * <p>
+ * Instances are thread safe. Only the memory tier is accessed under the cache lock, disk files are read and written outside of it
+ * coordinating the requests for the same key with a set of striped locks, so that parallel page requests do not wait on each other
+ * disk operations. Files are written to a temporary file then renamed.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class.getName());
+    public static final long DEFAULT_MEMORY_BUDGET = 32L * 1024 * 1024;
+    public static final long DEFAULT_DISK_BUDGET = 256L * 1024 * 1024;
+    private static final String FILE_SUFFIX = ".xml.gz";
+    private static final int KEY_LOCKS = 32;
+    private final File dir;
+    private final long memoryBudget;
+    private final long diskBudget;
+    // access ordered map giving LRU iteration order
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memorySize = 0;
+    // approximate total size of the disk tier, negative until computed
+    private final AtomicLong diskSize = new AtomicLong(-1);
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    // locks of the disk files, chosen by key
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+    private volatile boolean bypass = false;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param dir the directory for the on-disk tier, created if missing
+     * @param memoryBudget maximum bytes of responses kept in memory
+     * @param diskBudget maximum bytes of compressed responses kept on disk
+     */
+    public ResponseCache(File dir, long memoryBudget, long diskBudget) {
+        this.dir = dir;
+        this.memoryBudget = memoryBudget;
+        this.diskBudget = diskBudget;
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    public boolean isBypass() {
+        return bypass;
+    }
+
+    public void setBypass(boolean bypass) {
+        this.bypass = bypass;
+    }
+
+    /**
+     * Sends a GetRecords request unless an unexpired response to an identical request is cached.
+     *
+     * @param client the client to use on cache misses
+     * @param catDef the catalogue the client points to
+     * @param req the request
+     * @return the cached or received response
+     * @throws RemoteException if the request fails
+     * @throws ServiceExceptionReportFault if the catalogue replies with an exception report
+     */
+    public GetRecordsResponseDocument getRecords(CatalogueClient client, CatalogueDefinition catDef, GetRecordsDocument req) throws
+            RemoteException, ServiceExceptionReportFault {
+        final long ttl = TimeUnit.MINUTES.toMillis(catDef.getCacheTtlMinutes());
+        if (ttl <= 0) {
+            return client.getRecords(req);
+        }
+        final String key = keyFor(catDef.getEndpoint(), req);
+        if (!bypass) {
+            byte[] xml = lookup(key, ttl);
+            if (xml != null) {
+                try {
+                    GetRecordsResponseDocument resp = GetRecordsResponseDocument.Factory.parse(new ByteArrayInputStream(xml));
+                    logger.debug("Cache hit for {} on {}", key, catDef.getName());
+                    return resp;
+                } catch (XmlException | IOException ex) {
+                    logger.warn("Discarding unreadable cache entry {}: {}", key, ex.getMessage());
+                    remove(key);
+                }
+            }
+        }
+        final GetRecordsResponseDocument resp = client.getRecords(req);
+        store(key, resp);
+        return resp;
+    }
+
+    /**
+     * Sends a GetRecords RESULTS request decoding its records unless an unexpired response to an identical request is cached.
+     * <p>
+     * Records of cached responses are decoded from the cached bytes. Without caching for the catalogue they are decoded while
+     * received, by bindings able to do so.
+     *
+     * @param client the client to use on cache misses
+     * @param catDef the catalogue the client points to
+     * @param req the request
+     * @param startPos the start position of the request
+     * @param timings the timings decoding of cached responses is reported to, may be null
+     * @return the decoded page
+     * @throws RemoteException if the request fails
+     * @throws ServiceExceptionReportFault if the catalogue replies with an exception report
+     * @throws XMLStreamException in case of malformed response
+     */
+    public RecordsPage getRecordsPage(CatalogueClient client, CatalogueDefinition catDef, GetRecordsDocument req, int startPos,
+            SearchTimings timings) throws RemoteException, ServiceExceptionReportFault, XMLStreamException {
+        final long ttl = TimeUnit.MINUTES.toMillis(catDef.getCacheTtlMinutes());
+        if (ttl <= 0) {
+            return client.getRecordsPage(req, startPos);
+        }
+        final String key = keyFor(catDef.getEndpoint(), req);
+        RecordsPage page = null;
+        long start = 0;
+        if (!bypass) {
+            byte[] xml = lookup(key, ttl);
+            if (xml != null) {
+                try {
+                    start = System.nanoTime();
+                    page = new HmaStreamParser().parse(new ByteArrayInputStream(xml), startPos);
+                    logger.debug("Cache hit for {} on {}", key, catDef.getName());
+                } catch (XMLStreamException ex) {
+                    logger.warn("Discarding unreadable cache entry {}: {}", key, ex.getMessage());
+                    remove(key);
+                }
+            }
+        }
+        if (page == null) {
+            // the document is needed to store the response
+            final GetRecordsResponseDocument resp = client.getRecords(req);
+            store(key, resp);
+            start = System.nanoTime();
+            page = new HmaStreamParser().parse(resp.newXMLStreamReader(), startPos);
+        }
+        if (timings != null) {
+            timings.parsed(page.getRecords().size(), System.nanoTime() - start);
+        }
+        return page;
+    }
+
+    /**
+     * Empties both cache tiers.
+     */
+    public void clear() {
+        synchronized (this) {
+            memory.clear();
+            memorySize = 0;
+        }
+        for (File f : cacheFiles()) {
+            synchronized (lockFor(keyOf(f))) {
+                if (!f.delete()) {
+                    logger.warn("Could not delete cache file {}", f);
+                }
+            }
+        }
+        diskSize.set(0);
+        logger.info("Response cache cleared");
+    }
+
+    /**
+     * Computes the cache key of a request to the given endpoint.
+     * <p>
+     * The key is the SHA-256 digest of the endpoint followed by the canonical form of the request.
+     *
+     * @param endpoint the catalogue endpoint url
+     * @param req the request
+     * @return the key as an hexadecimal string
+     */
+    public static String keyFor(String endpoint, XmlObject req) {
+        StringBuilder sb = new StringBuilder(endpoint).append('\n');
+        XmlCursor xc = req.newCursor();
+        appendCanonical(xc, sb);
+        xc.dispose();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // every JRE provides SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void appendCanonical(XmlCursor xc, StringBuilder sb) {
+        while (!xc.toNextToken().isNone()) {
+            final TokenType tt = xc.currentTokenType();
+            if (tt.isStart()) {
+                // elements by namespace uri, attributes sorted by name, namespace declarations left out
+                sb.append('<').append(xc.getName());
+                TreeMap<String, String> atts = new TreeMap<>();
+                xc.push();
+                for (boolean more = xc.toFirstAttribute(); more; more = xc.toNextAttribute()) {
+                    atts.put(xc.getName().toString(), xc.getTextValue());
+                }
+                xc.pop();
+                for (Map.Entry<String, String> att : atts.entrySet()) {
+                    sb.append(' ').append(att.getKey()).append("=\"").append(att.getValue()).append('"');
+                }
+                sb.append('>');
+            } else if (tt.isText()) {
+                // formatting whitespace ignored
+                final String text = xc.getChars().trim();
+                if (!text.isEmpty()) {
+                    sb.append(text);
+                }
+            } else if (tt.isEnd()) {
+                sb.append("</>");
+            } else if (tt.isEnddoc()) {
+                break;
+            }
+        }
+    }
+
+    private byte[] lookup(String key, long ttl) {
+        final long now = System.currentTimeMillis();
+        final Entry e;
+        synchronized (this) {
+            e = memory.get(key);
+        }
+        if (e != null) {
+            if (now - e.timestamp < ttl) {
+                return e.xml;
+            }
+            // the file has the same timestamp, expired too
+            remove(key);
+            return null;
+        }
+        final File f = fileFor(key);
+        final byte[] xml;
+        final long timestamp;
+        synchronized (lockFor(key)) {
+            if (!f.isFile()) {
+                return null;
+            }
+            timestamp = f.lastModified();
+            if (now - timestamp >= ttl) {
+                deleteFile(f);
+                return null;
+            }
+            try (InputStream in = new GZIPInputStream(new FileInputStream(f))) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream((int) f.length() * 8);
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    bos.write(buf, 0, n);
+                }
+                xml = bos.toByteArray();
+            } catch (IOException ex) {
+                logger.warn("Could not read cache file {}: {}", f, ex.getMessage());
+                return null;
+            }
+        }
+        // promote to memory keeping the original timestamp
+        synchronized (this) {
+            putInMemory(key, new Entry(xml, timestamp));
+        }
+        return xml;
+    }
+
+    private void store(String key, GetRecordsResponseDocument resp) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64 * 1024);
+        try {
+            resp.save(bos);
+        } catch (IOException ex) {
+            logger.warn("Could not serialize response for caching: {}", ex.getMessage());
+            return;
+        }
+        final byte[] xml = bos.toByteArray();
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            putInMemory(key, new Entry(xml, now));
+        }
+        writeToDisk(key, xml, now);
+    }
+
+    /**
+     * Adds an entry to the memory tier, to be called holding the cache lock.
+     */
+    private void putInMemory(String key, Entry e) {
+        Entry old = memory.put(key, e);
+        if (old != null) {
+            memorySize -= old.xml.length;
+        }
+        memorySize += e.xml.length;
+        // evict least recently used entries
+        Iterator<Entry> it = memory.values().iterator();
+        while (memorySize > memoryBudget && it.hasNext()) {
+            memorySize -= it.next().xml.length;
+            it.remove();
+        }
+    }
+
+    private void writeToDisk(String key, byte[] xml, long timestamp) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            logger.warn("Could not create cache directory {}", dir);
+            return;
+        }
+        ensureDiskSize();
+        final File f = fileFor(key);
+        final File tmp = new File(dir, key + ".tmp");
+        synchronized (lockFor(key)) {
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp))) {
+                out.write(xml);
+            } catch (IOException ex) {
+                logger.warn("Could not write cache file {}: {}", tmp, ex.getMessage());
+                tmp.delete();
+                return;
+            }
+            final long oldLen = f.length();
+            if (!tmp.renameTo(f)) {
+                // some platforms do not rename over existing files
+                f.delete();
+                if (!tmp.renameTo(f)) {
+                    logger.warn("Could not move cache file to {}", f);
+                    tmp.delete();
+                    diskSize.addAndGet(-oldLen);
+                    return;
+                }
+            }
+            f.setLastModified(timestamp);
+            diskSize.addAndGet(f.length() - oldLen);
+        }
+        trimDisk();
+    }
+
+    private void ensureDiskSize() {
+        if (diskSize.get() < 0) {
+            long total = 0;
+            for (File f : cacheFiles()) {
+                total += f.length();
+            }
+            diskSize.compareAndSet(-1, total);
+        }
+    }
+
+    private void trimDisk() {
+        // a single thread trims at a time
+        if (diskSize.get() <= diskBudget || !trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // delete oldest files first
+            File[] files = cacheFiles();
+            final long[] modified = new long[files.length];
+            final Integer[] order = new Integer[files.length];
+            for (int i = 0; i < files.length; i++) {
+                modified[i] = files[i].lastModified();
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    return Long.compare(modified[i1], modified[i2]);
+                }
+            });
+            for (int i = 0; diskSize.get() > diskBudget && i < files.length; i++) {
+                final File f = files[order[i]];
+                synchronized (lockFor(keyOf(f))) {
+                    deleteFile(f);
+                }
+            }
+            logger.debug("Cache directory trimmed to {} bytes", diskSize.get());
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Entry e = memory.remove(key);
+            if (e != null) {
+                memorySize -= e.xml.length;
+            }
+        }
+        final File f = fileFor(key);
+        synchronized (lockFor(key)) {
+            if (f.isFile()) {
+                deleteFile(f);
+            }
+        }
+    }
+
+    /**
+     * Deletes a cache file updating the disk tier size, to be called holding the lock of the file key.
+     */
+    private void deleteFile(File f) {
+        final long len = f.length();
+        if (f.delete() && diskSize.get() >= 0) {
+            diskSize.addAndGet(-len);
+        }
+    }
+
+    private File[] cacheFiles() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int n = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(FILE_SUFFIX)) {
+                files[n++] = f;
+            }
+        }
+        return Arrays.copyOf(files, n);
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, key + FILE_SUFFIX);
+    }
+
+    private static String keyOf(File f) {
+        final String name = f.getName();
+        return name.substring(0, name.length() - FILE_SUFFIX.length());
+    }
+
+    private Object lockFor(String key) {
+        return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % KEY_LOCKS];
+    }
+
+    private static class Entry {
+
+        private final byte[] xml;
+        private final long timestamp;
+
+        Entry(byte[] xml, long timestamp) {
+            this.xml = xml;
+            this.timestamp = timestamp;
+        }
+    }
+}
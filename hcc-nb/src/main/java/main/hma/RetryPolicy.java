@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.xml.stream.XMLStreamException;
+import main.data.CatalogueDefinition;
+import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
+
+/**
+ * Retry policy of page requests with exponential backoff.
+ * <p>
+ * Only transient failures are retried: network errors, timeouts and truncated responses. Exception reports of the catalogue are
+ * not, as the same request would get the same report. The delay before each retry doubles up to a maximum, half of it is randomized
+ * so that concurrent requests failing together do not retry together.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class RetryPolicy {
+
+    public static final long DEFAULT_INITIAL_BACKOFF = 500;
+    public static final long DEFAULT_MAX_BACKOFF = 8000;
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param maxRetries the maximum number of retries after the first attempt
+     * @param initialBackoffMillis the delay before the first retry
+     * @param maxBackoffMillis the maximum delay between retries
+     */
+    public RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * Creates the policy configured for the given catalogue.
+     *
+     * @param catDef the catalogue definition
+     * @return the retry policy
+     */
+    public static RetryPolicy forCatalogue(CatalogueDefinition catDef) {
+        return new RetryPolicy(catDef.getMaxRetries(), DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Computes the delay before a retry.
+     *
+     * @param retry the retry number, starting from 1
+     * @return the delay in milliseconds
+     */
+    public long backoffMillis(int retry) {
+        if (initialBackoffMillis <= 0) {
+            return 0;
+        }
+        final long exp = initialBackoffMillis << Math.min(Math.max(0, retry - 1), 20);
+        final long delay = Math.min(maxBackoffMillis, exp);
+        final long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Tells if a failed request may succeed if sent again.
+     *
+     * @param ex the failure
+     * @return true for transient failures
+     */
+    public boolean isRetryable(Throwable ex) {
+        if (ex instanceof ServiceExceptionReportFault || ex instanceof InterruptedException) {
+            return false;
+        }
+        // remote exceptions are io exceptions too
+        return ex instanceof IOException || ex instanceof XMLStreamException;
+    }
+}
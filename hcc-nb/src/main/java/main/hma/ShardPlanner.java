@@ -0,0 +1,343 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import main.data.CatalogueDefinition;
+import main.data.QueryCriteria;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import org.apache.axis2.AxisFault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits a search matching too many records into shards that can be retrieved in parallel.
+ * <p>
+ * Shards are obtained restricting the {@link QueryCriteria} of the search: first on the sensing start time, in adjacent windows
+ * covering the time constraint, then in tiles covering the area of interest when the windows can not be made shorter. Each shard is
+ * counted with a HITS request and shards still matching more than the wanted number of records are split again, in as many parts as
+ * their count suggests. Shards matching nothing are dropped.
+ * <p>
+ * The union of the shards matches the same records of the search. Products crossing the border of adjacent tiles are matched by
+ * more than one shard, so records must be deduplicated when merging the shard results.
+ * <p>
+ * Typical usage is as follows:
+ * <pre>
+ * ShardPlanner.RemoteHitsCounter counter = new ShardPlanner.RemoteHitsCounter(catDef, writer, transport);
+ * try {
+ *     List&lt;ShardPlanner.Shard&gt; shards = new ShardPlanner(counter, 5000, 4).plan(writer.getCriteria(), hits);
+ * } finally {
+ *     counter.cleanup();
+ * }
+ * </pre>
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class ShardPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardPlanner.class.getName());
+    public static final int MAX_SHARDS = 64;
+    public static final int MAX_FANOUT = 8;
+    public static final long MIN_WINDOW_MILLIS = 60 * 1000L;
+    public static final double MIN_TILE_DEGREES = 0.01;
+    private static final AtomicInteger poolCount = new AtomicInteger();
+    private final HitsCounter counter;
+    private final int shardRecords;
+    private final int parallel;
+
+    /**
+     * Counts the records matched by a shard.
+     */
+    public interface HitsCounter {
+
+        int count(QueryCriteria criteria) throws Exception;
+    }
+
+    /**
+     * Initializing constructor.
+     *
+     * @param counter the counter of the records matched by shards, called from several threads at the same time
+     * @param shardRecords the wanted maximum number of records matched by each shard
+     * @param parallel the number of shards counted at the same time
+     */
+    public ShardPlanner(HitsCounter counter, int shardRecords, int parallel) {
+        this.counter = counter;
+        this.shardRecords = Math.max(1, shardRecords);
+        this.parallel = Math.max(1, parallel);
+    }
+
+    /**
+     * Tells if a search can be split into shards.
+     *
+     * @param criteria the search constraints
+     * @return true if the search has a time constraint with a known start or an area of interest
+     */
+    public static boolean canSplit(QueryCriteria criteria) {
+        return split(criteria, 2) != null;
+    }
+
+    /**
+     * Plans the shards of a search.
+     *
+     * @param criteria the search constraints
+     * @param hits the number of records matched by the search
+     * @return the shards, a single one with the given criteria if the search is small enough or can not be split
+     * @throws Exception if counting a shard fails
+     */
+    public List<Shard> plan(QueryCriteria criteria, int hits) throws Exception {
+        List<Shard> planned = new ArrayList<>();
+        List<Shard> toSplit = Collections.singletonList(new Shard(criteria, hits));
+        final String poolName = String.format("shard-planner-%d-", poolCount.incrementAndGet());
+        ExecutorService pool = Executors.newFixedThreadPool(parallel, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, poolName + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            int round = 0;
+            while (!toSplit.isEmpty()) {
+                round++;
+                // shards planned or still to split, bounding how many more can be created
+                int total = planned.size() + toSplit.size();
+                List<Future<Shard>> counting = new ArrayList<>();
+                for (Shard s : toSplit) {
+                    if (s.hits <= shardRecords) {
+                        planned.add(s);
+                        continue;
+                    }
+                    final int wanted = (int) Math.ceil(s.hits / (double) shardRecords);
+                    final int parts = Math.min(Math.min(MAX_FANOUT, wanted), MAX_SHARDS - total + 1);
+                    final List<QueryCriteria> children = parts >= 2 ? split(s.criteria, parts) : null;
+                    if (children == null) {
+                        logger.warn("Shard matching {} records can not be split further", s.hits);
+                        planned.add(s);
+                        continue;
+                    }
+                    total += children.size() - 1;
+                    for (final QueryCriteria child : children) {
+                        counting.add(pool.submit(new Callable<Shard>() {
+                            @Override
+                            public Shard call() throws Exception {
+                                return new Shard(child, counter.count(child));
+                            }
+                        }));
+                    }
+                }
+                toSplit = new ArrayList<>();
+                for (Future<Shard> f : counting) {
+                    final Shard s = await(f);
+                    if (s.hits > 0) {
+                        toSplit.add(s);
+                    }
+                }
+                logger.debug("Shard planning round {}: {} shards planned, {} to check", round, planned.size(), toSplit.size());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.info("Search matching {} records split in {} shards", hits, planned.size());
+        return planned;
+    }
+
+    /**
+     * Splits criteria in the given number of parts, on time if possible, in tiles otherwise.
+     *
+     * @return the criteria of the parts or null if they can not be split
+     */
+    private static List<QueryCriteria> split(QueryCriteria criteria, int parts) {
+        final long[] range = timeRange(criteria);
+        if (range != null && range[1] - range[0] >= 2 * MIN_WINDOW_MILLIS) {
+            final int n = (int) Math.min(parts, (range[1] - range[0]) / MIN_WINDOW_MILLIS);
+            final long step = (range[1] - range[0]) / n;
+            List<QueryCriteria> ret = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                // outer windows keep the bounds of the shard, possibly open
+                final Date from = i == 0 ? criteria.getShardFrom() : new Date(range[0] + i * step);
+                final Date to = i == n - 1 ? criteria.getShardTo() : new Date(range[0] + (i + 1) * step);
+                QueryCriteria qc = criteria.copy();
+                qc.setShardWindow(from, to);
+                ret.add(qc);
+            }
+            return ret;
+        }
+        final double[] tile = criteria.hasShardTile() ? criteria.getShardTile() : criteria.getAoiBounds();
+        if (tile != null && tile[2] - tile[0] >= 2 * MIN_TILE_DEGREES && tile[3] - tile[1] >= 2 * MIN_TILE_DEGREES) {
+            final int rows = (int) Math.ceil(Math.sqrt(parts));
+            final int cols = (int) Math.ceil(parts / (double) rows);
+            final double dLat = (tile[2] - tile[0]) / rows;
+            final double dLon = (tile[3] - tile[1]) / cols;
+            List<QueryCriteria> ret = new ArrayList<>(rows * cols);
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    // last row and column end exactly on the bounds
+                    final double maxLat = r == rows - 1 ? tile[2] : tile[0] + (r + 1) * dLat;
+                    final double maxLon = c == cols - 1 ? tile[3] : tile[1] + (c + 1) * dLon;
+                    QueryCriteria qc = criteria.copy();
+                    qc.setShardTile(new double[]{tile[0] + r * dLat, tile[1] + c * dLon, maxLat, maxLon});
+                    ret.add(qc);
+                }
+            }
+            return ret;
+        }
+        return null;
+    }
+
+    /**
+     * Computes the range of sensing start times of the products matched by the criteria.
+     *
+     * @return the range start and end in milliseconds or null if unbounded
+     */
+    private static long[] timeRange(QueryCriteria criteria) {
+        Date lo = criteria.getShardFrom();
+        Date hi = criteria.getShardTo();
+        switch (criteria.getTimeOperator()) {
+            case QueryCriteria.TIME_CONTAINED:
+            case QueryCriteria.TIME_OVERLAPS:
+                // overlapping products may start before the window, they fall in the first shard
+                lo = lo != null ? lo : criteria.getTime1();
+                hi = hi != null ? hi : criteria.getTime2();
+                break;
+            case QueryCriteria.TIME_AFTER:
+                // products sensed after now fall in the last shard
+                lo = lo != null ? lo : criteria.getTime1();
+                hi = hi != null ? hi : new Date();
+                break;
+        }
+        if (lo == null || hi == null || !hi.after(lo)) {
+            return null;
+        }
+        return new long[]{lo.getTime(), hi.getTime()};
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            // rethrow the original cause so that errors are reported as for single requests
+            final Throwable cause = ex.getCause();
+            throw cause instanceof Exception ? (Exception) cause : ex;
+        }
+    }
+
+    /**
+     * A shard of a search with the number of records it matches.
+     */
+    public static class Shard {
+
+        private final QueryCriteria criteria;
+        private final int hits;
+
+        public Shard(QueryCriteria criteria, int hits) {
+            this.criteria = criteria;
+            this.hits = hits;
+        }
+
+        public QueryCriteria getCriteria() {
+            return criteria;
+        }
+
+        public int getHits() {
+            return hits;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Shard{hits=%d, %s}", hits, criteria);
+        }
+    }
+
+    /**
+     * Counts shards with HITS requests to a catalogue, each counting thread with its own client.
+     */
+    public static class RemoteHitsCounter implements HitsCounter {
+
+        private final CatalogueDefinition catDef;
+        private final GetRecordsWriter writer;
+        private final AbortableTransport transport;
+        private final ThreadLocal<CatalogueClient> threadClient = new ThreadLocal<>();
+        private final List<CatalogueClient> clients = Collections.synchronizedList(new ArrayList<CatalogueClient>());
+        private volatile ResponseCache cache = null;
+
+        /**
+         * Initializing constructor.
+         *
+         * @param catDef the catalogue to query
+         * @param writer the writer of the search requests, its criteria are replaced by those of the shards
+         * @param transport the transport the requests are sent through, null for the default one
+         */
+        public RemoteHitsCounter(CatalogueDefinition catDef, GetRecordsWriter writer, AbortableTransport transport) {
+            this.catDef = catDef;
+            this.writer = writer;
+            this.transport = transport;
+        }
+
+        public void setResponseCache(ResponseCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public int count(QueryCriteria criteria) throws Exception {
+            GetRecordsWriter w = writer.withCriteria(criteria);
+            w.setResults(false);
+            final GetRecordsDocument req = w.toDocument(1, 1);
+            final CatalogueClient client = getClient();
+            final ResponseCache rc = cache;
+            final GetRecordsResponseDocument resp = rc != null ? rc.getRecords(client, catDef, req) : client.getRecords(req);
+            return resp.getGetRecordsResponse().getSearchResults().getNumberOfRecordsMatched().intValue();
+        }
+
+        /**
+         * Releases the clients.
+         */
+        public void cleanup() {
+            synchronized (clients) {
+                for (CatalogueClient client : clients) {
+                    client.cleanup();
+                }
+                clients.clear();
+            }
+        }
+
+        private CatalogueClient getClient() throws AxisFault {
+            CatalogueClient client = threadClient.get();
+            if (client == null) {
+                client = CatalogueStubs.createClient(catDef);
+                if (transport != null) {
+                    client.setTransport(transport);
+                }
+                threadClient.set(client);
+                clients.add(client);
+            }
+            return client;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.rmi.RemoteException;
+import javax.xml.stream.XMLStreamException;
+import main.data.CatalogueDefinition;
+import main.metrics.SearchTimings;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsDocument;
+import net.opengis.www.cat.csw._2_0_2.GetRecordsResponseDocument;
+import net.opengis.www.cat.wrs._1_0.CatalogueStub;
+import net.opengis.www.cat.wrs._1_0.ServiceExceptionReportFault;
+import org.apache.axis2.AxisFault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link CatalogueClient} of the SOAP binding, delegating to an Axis2 {@link CatalogueStub}.
+ * <p>
+ * Records pages are requested through a {@link PostCatalogueClient} sending SOAP envelopes, so that they are decoded while received
+ * instead of from the response document built by the stub.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class SoapCatalogueClient implements CatalogueClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoapCatalogueClient.class.getName());
+    private final CatalogueStub stub;
+    private final PostCatalogueClient pages;
+    private AbortableTransport transport = null;
+    private SearchTimings timings = null;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param stub the stub to delegate to, configured for the catalogue
+     * @param catDef the catalogue
+     */
+    public SoapCatalogueClient(CatalogueStub stub, CatalogueDefinition catDef) {
+        this.stub = stub;
+        this.pages = new PostCatalogueClient(catDef, true);
+    }
+
+    @Override
+    public GetRecordsResponseDocument getRecords(GetRecordsDocument req) throws RemoteException, ServiceExceptionReportFault {
+        final SearchTimings st = timings;
+        final AbortableTransport tr = transport;
+        // the stub does not expose the transfer, it is timed on the connections of the transport
+        final TimedConnection.Exchange exchange = st != null && tr != null ? tr.startTiming() : null;
+        final long start = System.nanoTime();
+        final GetRecordsResponseDocument resp;
+        try {
+            resp = stub.getRecords(req);
+        } finally {
+            if (exchange != null) {
+                tr.stopTiming();
+            }
+        }
+        if (st != null) {
+            st.responseReceived(System.nanoTime() - start);
+            if (exchange != null && exchange.getFirstLineAt() != 0) {
+                st.firstByte(exchange.getFirstLineAt() - start);
+                st.transferred(exchange.getBytes(), exchange.getNanos());
+            }
+        }
+        return resp;
+    }
+
+    @Override
+    public RecordsPage getRecordsPage(GetRecordsDocument req, int startPos) throws RemoteException, ServiceExceptionReportFault,
+            XMLStreamException {
+        // the stub would build the whole response document
+        return pages.getRecordsPage(req, startPos);
+    }
+
+    @Override
+    public void setTransport(AbortableTransport transport) {
+        if (transport != null) {
+            transport.attach(stub);
+        } else if (this.transport != null) {
+            this.transport.detach(stub);
+        }
+        this.transport = transport;
+        pages.setTransport(transport);
+    }
+
+    @Override
+    public void setTimings(SearchTimings timings) {
+        this.timings = timings;
+        pages.setTimings(timings);
+    }
+
+    @Override
+    public void cleanup() {
+        try {
+            stub.cleanup();
+        } catch (AxisFault ex) {
+            logger.debug("Could not cleanup stub", ex);
+        }
+    }
+}
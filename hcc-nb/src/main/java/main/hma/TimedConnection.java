@@ -0,0 +1,388 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.hma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+
+/**
+ * Pooled HTTP connection recording when the response starts arriving and counting the bytes received.
+ * <p>
+ * Delegates everything to the connection obtained from the pool, like the adapters of the pool itself.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+class TimedConnection extends HttpConnection {
+
+    private final HttpConnection delegate;
+    private final Exchange exchange;
+    private InputStream lastRaw = null;
+    private TimedInputStream lastTimed = null;
+
+    TimedConnection(HttpConnection delegate, Exchange exchange) {
+        super(delegate.getHost(), delegate.getPort(), delegate.getProtocol());
+        this.delegate = delegate;
+        this.exchange = exchange;
+    }
+
+    @Override
+    public String readLine(String charset) throws IOException, IllegalStateException {
+        final String line = delegate.readLine(charset);
+        // the status line is the first read
+        exchange.lineRead();
+        return line;
+    }
+
+    @Override
+    @Deprecated
+    public String readLine() throws IOException, IllegalStateException {
+        final String line = delegate.readLine();
+        exchange.lineRead();
+        return line;
+    }
+
+    @Override
+    public InputStream getResponseInputStream() throws IOException, IllegalStateException {
+        final InputStream raw = delegate.getResponseInputStream();
+        // headers and body are read from the same stream
+        if (raw != lastRaw) {
+            lastRaw = raw;
+            lastTimed = new TimedInputStream(raw);
+            exchange.add(lastTimed);
+        }
+        return lastTimed;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return delegate.getLocalAddress();
+    }
+
+    @Override
+    public void setLocalAddress(InetAddress localAddress) {
+        delegate.setLocalAddress(localAddress);
+    }
+
+    @Override
+    @Deprecated
+    public boolean isStaleCheckingEnabled() {
+        return delegate.isStaleCheckingEnabled();
+    }
+
+    @Override
+    @Deprecated
+    public void setStaleCheckingEnabled(boolean staleCheckEnabled) {
+        delegate.setStaleCheckingEnabled(staleCheckEnabled);
+    }
+
+    @Override
+    public String getHost() {
+        return delegate.getHost();
+    }
+
+    @Override
+    public void setHost(String host) throws IllegalStateException {
+        delegate.setHost(host);
+    }
+
+    @Override
+    @Deprecated
+    public String getVirtualHost() {
+        return delegate.getVirtualHost();
+    }
+
+    @Override
+    @Deprecated
+    public void setVirtualHost(String host) throws IllegalStateException {
+        delegate.setVirtualHost(host);
+    }
+
+    @Override
+    public int getPort() {
+        return delegate.getPort();
+    }
+
+    @Override
+    public void setPort(int port) throws IllegalStateException {
+        delegate.setPort(port);
+    }
+
+    @Override
+    public Protocol getProtocol() {
+        return delegate.getProtocol();
+    }
+
+    @Override
+    public void setProtocol(Protocol protocol) {
+        delegate.setProtocol(protocol);
+    }
+
+    @Override
+    public String getProxyHost() {
+        return delegate.getProxyHost();
+    }
+
+    @Override
+    public void setProxyHost(String host) throws IllegalStateException {
+        delegate.setProxyHost(host);
+    }
+
+    @Override
+    public int getProxyPort() {
+        return delegate.getProxyPort();
+    }
+
+    @Override
+    public void setProxyPort(int port) throws IllegalStateException {
+        delegate.setProxyPort(port);
+    }
+
+    @Override
+    public HttpConnectionManager getHttpConnectionManager() {
+        return delegate.getHttpConnectionManager();
+    }
+
+    @Override
+    public void setHttpConnectionManager(HttpConnectionManager httpConnectionManager) {
+        delegate.setHttpConnectionManager(httpConnectionManager);
+    }
+
+    @Override
+    public InputStream getLastResponseInputStream() {
+        return delegate.getLastResponseInputStream();
+    }
+
+    @Override
+    public void setLastResponseInputStream(InputStream inStream) {
+        delegate.setLastResponseInputStream(inStream);
+    }
+
+    @Override
+    public HttpConnectionParams getParams() {
+        return delegate.getParams();
+    }
+
+    @Override
+    public void setParams(HttpConnectionParams params) {
+        delegate.setParams(params);
+    }
+
+    @Override
+    public OutputStream getRequestOutputStream() throws IOException, IllegalStateException {
+        return delegate.getRequestOutputStream();
+    }
+
+    @Override
+    public void flushRequestOutputStream() throws IOException {
+        delegate.flushRequestOutputStream();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public boolean closeIfStale() throws IOException {
+        return delegate.closeIfStale();
+    }
+
+    @Override
+    public boolean isProxied() {
+        return delegate.isProxied();
+    }
+
+    @Override
+    public boolean isSecure() {
+        return delegate.isSecure();
+    }
+
+    @Override
+    public boolean isTransparent() {
+        return delegate.isTransparent();
+    }
+
+    @Override
+    public boolean isResponseAvailable() throws IOException {
+        return delegate.isResponseAvailable();
+    }
+
+    @Override
+    public boolean isResponseAvailable(int timeout) throws IOException {
+        return delegate.isResponseAvailable(timeout);
+    }
+
+    @Override
+    public void open() throws IOException {
+        delegate.open();
+    }
+
+    @Override
+    public void tunnelCreated() throws IllegalStateException, IOException {
+        delegate.tunnelCreated();
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException, IllegalStateException {
+        delegate.write(data);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException, IllegalStateException {
+        delegate.write(data, offset, length);
+    }
+
+    @Override
+    public void writeLine() throws IOException, IllegalStateException {
+        delegate.writeLine();
+    }
+
+    @Override
+    public void writeLine(byte[] data) throws IOException, IllegalStateException {
+        delegate.writeLine(data);
+    }
+
+    @Override
+    @Deprecated
+    public void print(String data) throws IOException, IllegalStateException {
+        delegate.print(data);
+    }
+
+    @Override
+    public void print(String data, String charset) throws IOException, IllegalStateException {
+        delegate.print(data, charset);
+    }
+
+    @Override
+    public void printLine() throws IOException, IllegalStateException {
+        delegate.printLine();
+    }
+
+    @Override
+    @Deprecated
+    public void printLine(String data) throws IOException, IllegalStateException {
+        delegate.printLine(data);
+    }
+
+    @Override
+    public void printLine(String data, String charset) throws IOException, IllegalStateException {
+        delegate.printLine(data, charset);
+    }
+
+    @Override
+    @Deprecated
+    public void shutdownOutput() {
+        delegate.shutdownOutput();
+    }
+
+    @Override
+    public void releaseConnection() {
+        delegate.releaseConnection();
+    }
+
+    @Override
+    @Deprecated
+    public void setConnectionTimeout(int timeout) {
+        delegate.setConnectionTimeout(timeout);
+    }
+
+    @Override
+    @Deprecated
+    public int getSoTimeout() throws SocketException {
+        return delegate.getSoTimeout();
+    }
+
+    @Override
+    @Deprecated
+    public void setSoTimeout(int timeout) throws SocketException, IllegalStateException {
+        delegate.setSoTimeout(timeout);
+    }
+
+    @Override
+    public void setSocketTimeout(int timeout) throws SocketException, IllegalStateException {
+        delegate.setSocketTimeout(timeout);
+    }
+
+    @Override
+    @Deprecated
+    public int getSendBufferSize() throws SocketException {
+        return delegate.getSendBufferSize();
+    }
+
+    @Override
+    @Deprecated
+    public void setSendBufferSize(int sendBufferSize) throws SocketException {
+        delegate.setSendBufferSize(sendBufferSize);
+    }
+
+    /**
+     * The responses received by a thread on timed connections.
+     */
+    static final class Exchange {
+
+        private long firstLineAt = 0;
+        private final List<TimedInputStream> streams = new ArrayList<>(1);
+
+        private void lineRead() {
+            if (firstLineAt == 0) {
+                firstLineAt = System.nanoTime();
+            }
+        }
+
+        private void add(TimedInputStream in) {
+            streams.add(in);
+        }
+
+        /**
+         * Gives the time the first status line was read.
+         *
+         * @return the {@link System#nanoTime()} of the status line, 0 if no response was received
+         */
+        long getFirstLineAt() {
+            return firstLineAt;
+        }
+
+        long getBytes() {
+            long ret = 0;
+            for (TimedInputStream in : streams) {
+                ret += in.getBytes();
+            }
+            return ret;
+        }
+
+        long getNanos() {
+            long ret = 0;
+            for (TimedInputStream in : streams) {
+                ret += in.getNanos();
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of the most recent values of a measure.
+ * <p>
+ * Keeps the last samples in a ring buffer, percentiles are computed on request by sorting a copy of the window. Adding a sample is
+ * cheap, reading the statistics is meant to be infrequent (JMX consoles, status summaries).
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class RollingHistogram implements RollingHistogramMBean {
+
+    public static final int DEFAULT_SIZE = 1024;
+    private final String unit;
+    private final long[] samples;
+    private long count = 0;
+
+    /**
+     * Initializing constructor.
+     *
+     * @param unit the unit of measure of the values
+     * @param size the number of most recent samples kept
+     */
+    public RollingHistogram(String unit, int size) {
+        this.unit = unit;
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    public RollingHistogram(String unit) {
+        this(unit, DEFAULT_SIZE);
+    }
+
+    public synchronized void add(long value) {
+        samples[(int) (count % samples.length)] = value;
+        count++;
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public int getWindowSize() {
+        return samples.length;
+    }
+
+    @Override
+    public long getMin() {
+        final long[] w = window();
+        return w.length > 0 ? w[0] : 0;
+    }
+
+    @Override
+    public long getMax() {
+        final long[] w = window();
+        return w.length > 0 ? w[w.length - 1] : 0;
+    }
+
+    @Override
+    public double getMean() {
+        final long[] w = window();
+        if (w.length == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (long v : w) {
+            sum += v;
+        }
+        return sum / w.length;
+    }
+
+    @Override
+    public long getPercentile50() {
+        return percentile(50);
+    }
+
+    @Override
+    public long getPercentile95() {
+        return percentile(95);
+    }
+
+    @Override
+    public long getPercentile99() {
+        return percentile(99);
+    }
+
+    /**
+     * Gives a percentile of the most recent samples (nearest rank).
+     *
+     * @param pct the percentile, between 0 and 100
+     * @return the value or 0 if there are no samples
+     */
+    public long percentile(double pct) {
+        final long[] w = window();
+        if (w.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(w.length * pct / 100);
+        return w[Math.min(w.length - 1, Math.max(0, rank - 1))];
+    }
+
+    @Override
+    public synchronized void reset() {
+        count = 0;
+    }
+
+    /**
+     * Sorted copy of the samples in the window.
+     */
+    private synchronized long[] window() {
+        long[] ret = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%d p95=%d max=%d %s", getCount(), getPercentile50(), getPercentile95(), getMax(), unit);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application wide statistics of the phases of GetRecords searches.
+ * <p>
+ * Each phase is a {@link RollingHistogram} fed by the {@link SearchTimings} of the single searches. The default instance registers
+ * on the platform MBean server the totals as {@code net.falappa.hcc:type=SearchMetrics} and each histogram as
+ * {@code net.falappa.hcc:type=SearchMetrics,phase=<name>}, so that they can be watched with JConsole or VisualVM.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+    public static final String DOMAIN = "net.falappa.hcc";
+    private static final Logger logger = LoggerFactory.getLogger(SearchMetrics.class.getName());
+    private static SearchMetrics defaultInstance;
+    // request building, per request
+    final RollingHistogram requestBuild = new RollingHistogram("us");
+    // from sending a request to the first byte of the response, per page
+    final RollingHistogram firstByte = new RollingHistogram("ms");
+    // whole request round trip, per page
+    final RollingHistogram response = new RollingHistogram("ms");
+    // response size on the wire, per page
+    final RollingHistogram transferBytes = new RollingHistogram("bytes");
+    // response transfer rate, per page
+    final RollingHistogram transferRate = new RollingHistogram("KB/s");
+    // records decoding, per page
+    final RollingHistogram parsePerRecord = new RollingHistogram("us/record");
+    // appending to the result list, per page
+    final RollingHistogram insert = new RollingHistogram("us");
+    // building the map layers of the results, per search
+    final RollingHistogram layers = new RollingHistogram("ms");
+    // whole search, per search
+    final RollingHistogram search = new RollingHistogram("ms");
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * Gives the default instance, creating and registering it on first use.
+     *
+     * @return the application wide metrics
+     */
+    public static synchronized SearchMetrics getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new SearchMetrics();
+            defaultInstance.register(ManagementFactory.getPlatformMBeanServer());
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Gives the histograms of the phases by name.
+     *
+     * @return an unmodifiable map of the histograms
+     */
+    public Map<String, RollingHistogram> getHistograms() {
+        Map<String, RollingHistogram> ret = new LinkedHashMap<>();
+        ret.put("requestBuild", requestBuild);
+        ret.put("firstByte", firstByte);
+        ret.put("response", response);
+        ret.put("transferBytes", transferBytes);
+        ret.put("transferRate", transferRate);
+        ret.put("parsePerRecord", parsePerRecord);
+        ret.put("insert", insert);
+        ret.put("layers", layers);
+        ret.put("search", search);
+        return Collections.unmodifiableMap(ret);
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.get();
+    }
+
+    @Override
+    public long getPages() {
+        return pages.get();
+    }
+
+    @Override
+    public long getRecords() {
+        return records.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void reset() {
+        searches.set(0);
+        pages.set(0);
+        records.set(0);
+        bytesReceived.set(0);
+        for (RollingHistogram h : getHistograms().values()) {
+            h.reset();
+        }
+    }
+
+    void searchDone(long millis) {
+        searches.incrementAndGet();
+        search.add(millis);
+    }
+
+    void pageParsed(int recs) {
+        pages.incrementAndGet();
+        records.addAndGet(recs);
+    }
+
+    void bytesReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    private void register(MBeanServer mbs) {
+        try {
+            mbs.registerMBean(this, new ObjectName(DOMAIN + ":type=SearchMetrics"));
+            for (Map.Entry<String, RollingHistogram> en : getHistograms().entrySet()) {
+                mbs.registerMBean(en.getValue(), new ObjectName(DOMAIN + ":type=SearchMetrics,phase=" + en.getKey()));
+            }
+            logger.debug("Search metrics registered as {} MBeans", DOMAIN);
+        } catch (JMException ex) {
+            logger.warn("Could not register search metrics MBeans: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 Alessandro Falappa <alex.falappa@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings of the phases of a single search.
+ * <p>
+ * Phases are reported by the code performing them, possibly from several threads when pages are fetched in parallel: request
+ * building, time to the first byte of the response, response transfer, records decoding, appending to the result list and
+ * building the map layers. Each report is also added to the histograms of the {@link SearchMetrics} given at construction.
+ * <p>
+ * Time to first byte and transfer are reported only by bindings reading the response themselves (plain HTTP POST), with the SOAP
+ * binding only the whole round trip is known. Time spent waiting for response bytes is accounted to the transfer, the rest of the
+ * decoding of responses parsed while received to the records decoding.
+ *
+ * @author Alessandro Falappa <alex.falappa@gmail.com>
+ */
+public class SearchTimings {
+
+    private final SearchMetrics metrics;
+    private final long started = System.nanoTime();
+    private final AtomicLong buildNanos = new AtomicLong();
+    private final AtomicLong firstByteAt = new AtomicLong(-1);
+    private final AtomicLong firstResponseAt = new AtomicLong(-1);
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong transferNanos = new AtomicLong();
+    private final AtomicLong parsedRecords = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong insertNanos = new AtomicLong();
+    private final AtomicLong layersNanos = new AtomicLong(-1);
+    private volatile long finishedNanos = -1;
+
+    /**
+     * Initializing constructor, the search is considered started at construction.
+     *
+     * @param metrics the application wide metrics to feed, null to keep the timings of this search only
+     */
+    public SearchTimings(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports the building of a request.
+     *
+     * @param nanos the building time
+     */
+    public void requestBuilt(long nanos) {
+        buildNanos.addAndGet(nanos);
+        if (metrics != null) {
+            metrics.requestBuild.add(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+
+    /**
+     * Reports the arrival of the first byte of a response.
+     *
+     * @param nanos the time since the request started being sent
+     */
+    public void firstByte(long nanos) {
+        firstByteAt.compareAndSet(-1, System.nanoTime() - started);
+        if (metrics != null) {
+            metrics.firstByte.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * Reports the completion of a request.
+     *
+     * @param nanos the whole round trip time
+     */
+    public void responseReceived(long nanos) {
+        firstResponseAt.compareAndSet(-1, System.nanoTime() - started);
+        responses.incrementAndGet();
+        if (metrics != null) {
+            metrics.response.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * Reports the transfer of a response body.
+     *
+     * @param byteCount the number of bytes received, before decompression
+     * @param nanos the time spent waiting for the bytes
+     */
+    public void transferred(long byteCount, long nanos) {
+        bytes.addAndGet(byteCount);
+        transferNanos.addAndGet(nanos);
+        if (metrics != null) {
+            metrics.bytesReceived(byteCount);
+            metrics.transferBytes.add(byteCount);
+            metrics.transferRate.add(kbPerSecond(byteCount, nanos));
+        }
+    }
+
+    /**
+     * Reports the decoding of the records of a response.
+     *
+     * @param records the number of records decoded
+     * @param nanos the decoding time
+     */
+    public void parsed(int records, long nanos) {
+        parsedRecords.addAndGet(records);
+        parseNanos.addAndGet(nanos);
+        if (metrics != null) {
+            metrics.pageParsed(records);
+            if (records > 0) {
+                metrics.parsePerRecord.add(TimeUnit.NANOSECONDS.toMicros(nanos / records));
+            }
+        }
+    }
+
+    /**
+     * Reports the appending of records to the result list.
+     *
+     * @param nanos the time spent, including waiting for the list lock
+     */
+    public void inserted(long nanos) {
+        insertNanos.addAndGet(nanos);
+        if (metrics != null) {
+            metrics.insert.add(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+
+    /**
+     * Reports the building of the map layers of the results.
+     *
+     * @param nanos the building time
+     */
+    public void layersBuilt(long nanos) {
+        layersNanos.set(nanos);
+        if (metrics != null) {
+            metrics.layers.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * Marks the end of the search, further calls have no effect.
+     */
+    public synchronized void finished() {
+        if (finishedNanos < 0) {
+            finishedNanos = System.nanoTime() - started;
+            if (metrics != null) {
+                metrics.searchDone(TimeUnit.NANOSECONDS.toMillis(finishedNanos));
+            }
+        }
+    }
+
+    /**
+     * Gives a one line summary of the phases reported so far, for the status bar.
+     *
+     * @return the summary, empty if nothing was reported
+     */
+    public String summary() {
+        List<String> parts = new ArrayList<>();
+        if (firstByteAt.get() >= 0) {
+            parts.add(String.format("first byte %d ms", millis(firstByteAt.get())));
+        } else if (firstResponseAt.get() >= 0) {
+            parts.add(String.format("first response %d ms", millis(firstResponseAt.get())));
+        }
+        if (bytes.get() > 0) {
+            parts.add(String.format(Locale.ROOT, "%s at %d KB/s", size(bytes.get()), kbPerSecond(bytes.get(), transferNanos.get())));
+        }
+        if (parsedRecords.get() > 0) {
+            parts.add(String.format("parse %d us/rec", TimeUnit.NANOSECONDS.toMicros(parseNanos.get() / parsedRecords.get())));
+        }
+        if (insertNanos.get() > 0) {
+            parts.add(String.format("insert %d ms", millis(insertNanos.get())));
+        }
+        if (layersNanos.get() >= 0) {
+            parts.add(String.format("map %d ms", millis(layersNanos.get())));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String p : parts) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(p);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gives the timings of all the phases as HTML, for a tooltip.
+     *
+     * @return the HTML text
+     */
+    public String details() {
+        StringBuilder sb = new StringBuilder("<html>");
+        sb.append(String.format("Request building: %d ms<br>", millis(buildNanos.get())));
+        if (firstByteAt.get() >= 0) {
+            sb.append(String.format("First byte after: %d ms<br>", millis(firstByteAt.get())));
+        }
+        if (firstResponseAt.get() >= 0) {
+            sb.append(String.format("First response after: %d ms<br>", millis(firstResponseAt.get())));
+        }
+        sb.append(String.format("Responses: %d<br>", responses.get()));
+        if (bytes.get() > 0) {
+            sb.append(String.format(Locale.ROOT, "Transfer: %s in %d ms, %d KB/s per connection<br>", size(bytes.get()),
+                    millis(transferNanos.get()), kbPerSecond(bytes.get(), transferNanos.get())));
+        }
+        sb.append(String.format("Decoding: %d records in %d ms<br>", parsedRecords.get(), millis(parseNanos.get())));
+        sb.append(String.format("Result list insertion: %d ms<br>", millis(insertNanos.get())));
+        if (layersNanos.get() >= 0) {
+            sb.append(String.format("Map layers building: %d ms<br>", millis(layersNanos.get())));
+        }
+        if (finishedNanos >= 0) {
+            sb.append(String.format("Whole search: %d ms", millis(finishedNanos)));
+        }
+        return sb.append("</html>").toString();
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long kbPerSecond(long byteCount, long nanos) {
+        return nanos > 0 ? (long) (byteCount / 1024d / (nanos / 1e9)) : 0;
+    }
+
+    private static String size(long byteCount) {
+        if (byteCount >= 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f MB", byteCount / (1024d * 1024));
+        }
+        return String.format("%d KB", byteCount / 1024);
+    }
+}
@@ -1,5 +1,6 @@
 package net.falappa.wwind.utils;
 
+import net.falappa.utils.CoordsParser;
 import net.falappa.wwind.helpers.ExtVisibilityViewController;
 import net.falappa.wwind.layers.MultiPolygonShapesLayer;
 import net.falappa.wwind.layers.SurfShapesLayer;
@@ -12,6 +13,8 @@ import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.view.orbit.BasicOrbitView;
 import gov.nasa.worldwind.view.orbit.FlatOrbitView;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 
@@ -35,7 +38,7 @@ public final class WWindUtils {
      * @return a List of LatLon objects
      */
     public static List<LatLon> latLonOrdinates2LatLonList(double[] ordinates) {
-        List<LatLon> ret = new ArrayList<>();
+        List<LatLon> ret = new ArrayList<>(ordinates.length / 2);
         if (ordinates.length % 2 != 0) {
             throw new IllegalArgumentException("Odd number of ordinates in given array");
         }
@@ -52,7 +55,7 @@ public final class WWindUtils {
      * @return a List of LatLon objects
      */
     public static List<LatLon> lonLatOrdinates2LatLonList(double[] ordinates) {
-        List<LatLon> ret = new ArrayList<>();
+        List<LatLon> ret = new ArrayList<>(ordinates.length / 2);
         if (ordinates.length % 2 != 0) {
             throw new IllegalArgumentException("Odd number of ordinates in given array");
         }
@@ -62,6 +65,26 @@ public final class WWindUtils {
         return ret;
     }
 
+    /**
+     * Unpacks a list of <code>LatLon</code> derived objects into an array of Lat Lon double coordinates (decimal degrees).
+     *
+     * @param latlonList a List of LatLon derived objects
+     * @return an array of doubles with point coordinates (lat lon pairs)
+     */
+    public static double[] latLonList2LatLonOrdinates(Iterable<? extends LatLon> latlonList) {
+        // size exactly when the count is known, otherwise grow as needed
+        double[] ret = new double[latlonList instanceof Collection ? ((Collection<?>) latlonList).size() * 2 : 16];
+        int n = 0;
+        for (LatLon ll : latlonList) {
+            if (n + 2 > ret.length) {
+                ret = Arrays.copyOf(ret, ret.length * 2 + 2);
+            }
+            ret[n++] = ll.latitude.degrees;
+            ret[n++] = ll.longitude.degrees;
+        }
+        return n == ret.length ? ret : Arrays.copyOf(ret, n);
+    }
+
     /**
      * Parses a string of Lat Lon coordinates in degrees and creates a list of <code>LatLon</code> objects.
      *
@@ -69,17 +92,11 @@ public final class WWindUtils {
      * @return a List of LatLon objects
      */
     public static List<LatLon> posList2LatLonList(String posList) {
-        List<LatLon> ret = new ArrayList<>();
-        String[] coords = posList.split("\\s+");
+        double[] coords = CoordsParser.parse(posList);
         if (coords.length % 2 != 0) {
             throw new IllegalArgumentException("Odd number of coordinates in given posList");
         }
-        for (int i = 0; i < coords.length; i += 2) {
-            double lat = Double.valueOf(coords[i]);
-            double lon = Double.valueOf(coords[i + 1]);
-            ret.add(LatLon.fromDegrees(lat, lon));
-        }
-        return ret;
+        return latLonOrdinates2LatLonList(coords);
     }
 
     /**
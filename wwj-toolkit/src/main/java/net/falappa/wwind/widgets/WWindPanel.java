@@ -117,6 +117,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
     }
     public static final String EVENT_SURF_LAYER_ADDED = "WWindPanel.SurfShapeLayerAdded";
     public static final String EVENT_SURF_LAYER_REMOVED = "WWindPanel.SurfShapeLayerRemoved";
+    public static final String EVENT_AOI_CHANGED = "WWindPanel.AOIChanged";
     public static final String WWINDPANEL_BASECARTO_CONFIG_URL = "wwindpanel.basecarto.config.url";
     // preference node names
     private static final String PREFN_WWP = "view";
@@ -497,6 +498,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
                     break;
             }
         }
+        fireAOIChanged();
     }
 
     /**
@@ -522,7 +524,8 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
     }
 
     /**
-     * Adds a listener which gets notified of actions on managed {@link SurfShapesLayer} objects.
+     * Adds a listener which gets notified of actions on managed {@link SurfShapesLayer} objects and of changes to the Area Of
+     * Interest ({@link #EVENT_AOI_CHANGED} events).
      *
      * @param listener a PropertyChangeListener object
      */
@@ -851,6 +854,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
     public void clearAOI() {
         aoi.clear();
         moi.clear();
+        fireAOIChanged();
     }
 
     /**
@@ -881,6 +885,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
     public void setAOICircle(Position center, double radius) {
         aoi.setSurfCircle(center, radius);
         moi.clear();
+        fireAOIChanged();
     }
 
     /**
@@ -891,6 +896,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
     public void setAOIPoint(Position pos) {
         moi.setPosition(pos);
         aoi.clear();
+        fireAOIChanged();
     }
 
     /**
@@ -902,6 +908,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
     public void setAOIPoint(Position pos, String text) {
         moi.setPosition(pos, text);
         aoi.clear();
+        fireAOIChanged();
     }
 
     /**
@@ -916,6 +923,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
         }
         aoi.setSurfPoly(pointsCopy);
         moi.clear();
+        fireAOIChanged();
     }
 
     /**
@@ -930,6 +938,7 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
         }
         aoi.setSurfLine(pointsCopy);
         moi.clear();
+        fireAOIChanged();
     }
 
     /**
@@ -1389,6 +1398,11 @@ public class WWindPanel extends javax.swing.JPanel implements PrefRestorable {
         }
     }
 
+    // notify listeners that the Area Of Interest has been set or cleared
+    private void fireAOIChanged() {
+        changeSupport.firePropertyChange(EVENT_AOI_CHANGED, null, getAOIType());
+    }
+
     // lazily construct the MeasureTool and the EditableMarkerLayer
     private void mtInit() {
         if (mt == null) {